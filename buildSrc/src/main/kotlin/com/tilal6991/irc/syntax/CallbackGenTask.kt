@@ -6,8 +6,10 @@ import org.gradle.api.tasks.SourceTask
 import org.gradle.api.tasks.TaskAction
 import org.gradle.api.tasks.incremental.IncrementalTaskInputs
 import java.io.File
+import java.lang.reflect.Method
 import java.net.URLClassLoader
 import javax.annotation.Nonnull
+import javax.annotation.Nullable
 import javax.lang.model.element.Modifier
 
 open class CallbackGenTask : SourceTask() {
@@ -15,6 +17,8 @@ open class CallbackGenTask : SourceTask() {
 
   private val callbackClassName = ClassName.get(outputPackage, "MessageCallback")
   private val abstractClassName = ClassName.get(outputPackage, "AbstractMessageCallback")
+  private val forwardingClassName = ClassName.get(outputPackage, "ForwardingMessageCallback")
+  private val deliveryClassName = ClassName.get("", "Delivery")
 
   private val canonicalCallbackTypeVariable = TypeVariableName.get("T")
   private val parameterizedCallbackName =
@@ -44,19 +48,31 @@ open class CallbackGenTask : SourceTask() {
         ClassName.get(code.klass.enclosingClass),
         ClassName.get(clientCap.klass.enclosingClass))
 
+    val error = ErrorGenerator(loader.loadClass("$outputPackage.ParseError\$Callback"))
+
     val tokenizer = TokenizerGenerator(
-        loader.loadClass(callbackClass("MessageTokenizer")),
+        loader.loadClass("$outputPackage.MessageTokens"),
         ClassName.get(argument.klass.enclosingClass))
-    val tokenizerName = ClassName.get(tokenizer.klass.enclosingClass)
+    val tokenizerName = ClassName.get(outputPackage, "MessageTokenizer")
 
-    val flattenedCallback = generateFlattenedCallback(argument, clientCap, code, name)
+    val flattenedCallback = generateFlattenedCallback(argument, clientCap, code, name, error)
     JavaFile.builder(outputPackage, flattenedCallback).build().writeTo(output)
 
     val abstractCallback = generateAbstractCallback(flattenedCallback)
     JavaFile.builder(outputPackage, abstractCallback).build().writeTo(output)
 
-    val parser = generateParser(tokenizerName, tokenizer, argument, clientCap, code, name)
+    val forwardingCallback = generateForwardingCallback(flattenedCallback)
+    JavaFile.builder(outputPackage, forwardingCallback).build().writeTo(output)
+
+    val parser = generateParser(tokenizerName, argument, clientCap, code, name, error, tokenizer)
     JavaFile.builder(outputPackage, parser).build().writeTo(output)
+
+    val sharedParser = generateSharedParser(
+        tokenizerName, argument.klass, argument, clientCap, code, name, error, tokenizer)
+    JavaFile.builder(outputPackage, sharedParser).build().writeTo(output)
+
+    val fusedParser = generateFusedParser(tokenizerName, argument, code, clientCap, name)
+    JavaFile.builder(outputPackage, fusedParser).build().writeTo(output)
   }
 
   private fun generateAbstractCallback(flattenedCallback: TypeSpec): TypeSpec {
@@ -66,7 +82,51 @@ open class CallbackGenTask : SourceTask() {
         .addSuperinterface(parameterizedCallbackName)
         .addMethods(
             flattenedCallback.methodSpecs.map {
-              overriding(it).addStatement("return null").build()
+              // Errors are rethrown unless handled, as they were before the callback existed.
+              if (it.name == "onParseError") {
+                overriding(it).addStatement("throw error").build()
+              } else {
+                overriding(it).addStatement("return null").build()
+              }
+            })
+        .build()
+  }
+
+  private fun generateForwardingCallback(flattenedCallback: TypeSpec): TypeSpec {
+    val delegate = MethodSpec.methodBuilder("delegate")
+        .addModifiers(Modifier.PROTECTED, Modifier.ABSTRACT)
+        .addAnnotation(Nonnull::class.java)
+        .returns(parameterizedCallbackName)
+        .addJavadoc("Returns the callback to forward the next call to.\n")
+        .build()
+
+    val interest = MethodSpec.methodBuilder("interest")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Nonnull::class.java)
+        .returns(COMMAND_SET_CLASS)
+        .addJavadoc("Returns the commands handled by this callback, as used by\n" +
+            "{@link MessageParser#interestOf(MessageCallback)}. These are the commands handled " +
+            "by the\ncurrent delegate; subclasses which handle more or switch the delegate " +
+            "between lines should\noverride this.\n")
+        .addStatement("return \$T.interestOf(delegate())",
+            ClassName.get(outputPackage, "MessageParser"))
+        .build()
+
+    return TypeSpec.classBuilder(forwardingClassName)
+        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+        .addTypeVariable(canonicalCallbackTypeVariable)
+        .addSuperinterface(parameterizedCallbackName)
+        .addJavadoc("Callback which forwards every call to the callback returned by " +
+            "{@link #delegate()}. Subclasses\ncan override any method to decorate it or " +
+            "switch the delegate between lines.\n")
+        .addMethod(delegate)
+        .addMethod(interest)
+        .addMethods(
+            flattenedCallback.methodSpecs.map {
+              overriding(it)
+                  .addStatement("return delegate().\$N(\$L)",
+                      it.name, it.parameters.joinToString(", ") { it.name })
+                  .build()
             })
         .build()
   }
@@ -84,18 +144,440 @@ open class CallbackGenTask : SourceTask() {
   private fun generateParser(tokenizer: ClassName, vararg generators: Generator): TypeSpec {
     val innerClassName = ClassName.get(outputPackage, "MessageParser", "Inner")
     return outerParserClass(innerClassName, tokenizer)
+        .addMethod(interestMethod(*generators))
         .addType(innerParserClass(innerClassName, *generators).build())
+        .addType(deliveryClass())
+        .build()
+  }
+
+  private fun generateSharedParser(tokenizer: ClassName,
+                                   argumentCallback: Class<*>,
+                                   vararg generators: Generator): TypeSpec {
+    val parserName = ClassName.get(outputPackage, "SharedMessageParser")
+    val innerClassName = ClassName.get(outputPackage, "SharedMessageParser", "Inner")
+    val argumentParser = ClassName.get(argumentCallback.enclosingClass)
+
+    val inner = contextParserClass(
+        innerClassName, generators.toList(), generators.flatMap { it.sharedParserMethods() }, true)
+
+    val callbackConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addStatement("this(callback, \$T.interestOf(callback))",
+            ClassName.get(outputPackage, "MessageParser"))
+        .addJavadoc("Creates a parser which only fully parses the lines handled by the callback " +
+            "as described in\n{@link MessageParser#MessageParser(MessageCallback)}.\n")
+        .build()
+
+    val interestConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(COMMAND_SET_CLASS, "interest")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addStatement("this(callback, interest, null)")
+        .addJavadoc("Creates a parser which only fully parses lines whose command is in the " +
+            "interest set. Any other\nline is skipped as soon as its command has been read " +
+            "and null is returned for it.\n")
+        .build()
+
+    val poolConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(COMMAND_SET_CLASS, "interest")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(STRING_POOL_CLASS, "strings")
+            .addAnnotation(Nullable::class.java)
+            .build())
+        .beginControlFlow("if (strings != null && !strings.isShared())")
+        .addStatement("throw new \$T(\$S)", IllegalArgumentException::class.java,
+            "String pool must be created with StringPool.striped.")
+        .endControlFlow()
+        .addStatement("this.callback = callback")
+        .addStatement("this.interest = interest")
+        .addStatement("this.strings = strings")
+        .addStatement("this.cursors = new \$T()", CURSOR_POOL_CLASS)
+        .addJavadoc("Creates a parser which only fully parses lines whose command is in the " +
+            "interest set. If a\npool is given, commands, arguments and prefixes are " +
+            "deduplicated through it; as the\nparser is shared, the pool must be one created " +
+            "by {@link \$T#striped(int, int)}.\n", STRING_POOL_CLASS)
+        .build()
+
+    val dispatch = MethodSpec.methodBuilder("dispatch")
+        .addModifiers(Modifier.PRIVATE)
+        .addParameter(MESSAGE_TOKENS_CLASS, "tokens")
+        .addParameter(deliveryClassName, "delivery")
+        .returns(canonicalCallbackTypeVariable)
+        .addCode("// Everything is copied out of the cursor as it goes back to the pool after " +
+            "this line.\n")
+        .addStatement("\$T tags = tokens.hasTags() ? tokens.tags().copy() : null",
+            MESSAGE_TAGS_CLASS)
+        .addStatement("String prefix = strings == null " +
+            "? tokens.prefixString() : tokens.prefixString(strings)")
+        .addStatement("String command = strings == null " +
+            "? tokens.commandString() : tokens.commandString(strings)")
+        .addStatement("return \$T.parse(tokens.commandId(), command, " +
+            "tokens.copyArguments(strings), new Inner(delivery, tags, prefix, null))", argumentParser)
+        .build()
+
+    val parseMethod = sharedParseMethod(tokenizer, "line, tokens, interest")
+        .addParameter(ParameterSpec.builder(STRING_CLASS, "line")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .build()
+    val parseBytesMethod = sharedParseMethod(tokenizer, "line, offset, length, tokens, interest")
+        .addParameter(ParameterSpec.builder(BYTE_ARRAY_CLASS, "line")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(TypeName.INT, "offset")
+        .addParameter(TypeName.INT, "length")
+        .build()
+    val parseBufferMethod =
+        sharedParseMethod(tokenizer, "buffer, offset, length, tokens, interest")
+            .addParameter(ParameterSpec.builder(BYTE_BUFFER_CLASS, "buffer")
+                .addAnnotation(Nonnull::class.java)
+                .build())
+            .addParameter(TypeName.INT, "offset")
+            .addParameter(TypeName.INT, "length")
+            .build()
+
+    return TypeSpec.classBuilder(parserName)
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addJavadoc("Parser which, unlike {@link MessageParser}, holds no state between lines. A " +
+            "single instance\ncan be shared by any number of threads and lines can be parsed " +
+            "from inside the callback,\ne.g. to replay the lines of a batch. The context of each " +
+            "line is passed down to the\ncallback rather than stored in the parser.\n")
+        .addTypeVariable(canonicalCallbackTypeVariable)
+        .addField(parameterizedCallbackName, "callback", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(COMMAND_SET_CLASS, "interest", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(STRING_POOL_CLASS, "strings", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(CURSOR_POOL_CLASS, "cursors", Modifier.PRIVATE, Modifier.FINAL)
+        .addMethod(callbackConstructor)
+        .addMethod(interestConstructor)
+        .addMethod(poolConstructor)
+        .addMethod(parseMethod)
+        .addMethod(parseBytesMethod)
+        .addMethod(parseBufferMethod)
+        .addMethod(dispatch)
+        .addType(inner)
+        .addType(deliveryClass())
+        .build()
+  }
+
+  private fun generateFusedParser(tokenizer: ClassName,
+                                  argument: Generator,
+                                  code: Generator,
+                                  vararg delegates: Generator): TypeSpec {
+    val parserName = ClassName.get(outputPackage, "FusedMessageParser")
+    val innerClassName = ClassName.get(outputPackage, "FusedMessageParser", "Inner")
+
+    // Only the parsers whose arguments need more than counting are still called through a context.
+    val inner = contextParserClass(
+        innerClassName, delegates.toList(), delegates.flatMap { it.parserMethods() }, false)
+
+    val callbackConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addStatement("this(callback, \$T.interestOf(callback))",
+            ClassName.get(outputPackage, "MessageParser"))
+        .addJavadoc("Creates a parser which only fully parses the lines handled by the callback " +
+            "as described in\n{@link MessageParser#MessageParser(MessageCallback)}.\n")
+        .build()
+
+    val interestConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(COMMAND_SET_CLASS, "interest")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addStatement("this(callback, interest, null, null)")
+        .addJavadoc("Creates a parser which only fully parses lines whose command is in the " +
+            "interest set. Any other\nline is skipped as soon as its command has been read " +
+            "and null is returned for it.\n")
+        .build()
+
+    val cacheConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(COMMAND_SET_CLASS, "interest")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(PREFIX_CACHE_CLASS, "prefixes")
+            .addAnnotation(Nullable::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(STRING_POOL_CLASS, "strings")
+            .addAnnotation(Nullable::class.java)
+            .build())
+        .addStatement("this.callback = callback")
+        .addStatement("this.interest = interest")
+        .addStatement("this.prefixes = prefixes")
+        .addStatement("this.strings = strings")
+        .addStatement("this.delivery = new Delivery()")
+        .addStatement("this.own = new \$T()", MESSAGE_TOKENS_CLASS)
+        .addStatement("this.tokens = own")
+        .addJavadoc("Creates a parser which uses the cache and pool as described in\n" +
+            "{@link MessageParser#MessageParser(MessageCallback, CommandSet, PrefixCache, " +
+            "StringPool)}.\n")
+        .build()
+
+    // Lines tokenized elsewhere are dispatched by pointing the parser at their cursor.
+    val tokensParseMethod = MethodSpec.methodBuilder("parse")
+        .addModifiers(Modifier.PUBLIC)
+        .returns(canonicalCallbackTypeVariable)
+        .addParameter(ParameterSpec.builder(MESSAGE_TOKENS_CLASS, "line")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addJavadoc("Dispatches a line which has already been fully tokenized, such as one " +
+            "returned by\n{@link MessageReader#next()}, to the callback. Null is returned if " +
+            "its command is not in the\ninterest set.\n")
+        .beginControlFlow("if (!interest.contains(line.commandId()))")
+        .addStatement("return null")
+        .endControlFlow()
+        .addStatement("tokens = line")
+        .addStatement("delivery.delivered = false")
+        .beginControlFlow("try")
+        .addStatement("return dispatch()")
+        .addDeliveryCatch("delivery.delivered", "return callback.onParseError(line.line(), error)")
+        .nextControlFlow("finally")
+        .addStatement("tokens = own")
+        .endControlFlow()
+        .build()
+
+    val dispatch = MethodSpec.methodBuilder("dispatch")
+        .addModifiers(Modifier.PRIVATE)
+        .returns(canonicalCallbackTypeVariable)
+        .addStatement("\$T tags = tokens.hasTags() ? tokens.tags().copy() : null",
+            MESSAGE_TAGS_CLASS)
+        .addStatement("String prefix = prefixes != null ? tokens.prefixString(prefixes) " +
+            ": strings != null ? tokens.prefixString(strings) : tokens.prefixString()")
+        .addStatement("int commandId = tokens.commandId()")
+        .addStatement("int count = tokens.argumentCount()")
+        .beginControlFlow("switch (commandId)")
+        .addCode(argument.fusedCases())
+        .endControlFlow()
+        .build()
+
+    val reply = MethodSpec.methodBuilder("reply")
+        .addModifiers(Modifier.PRIVATE)
+        .returns(canonicalCallbackTypeVariable)
+        .addParameter(MESSAGE_TAGS_CLASS, "tags")
+        .addParameter(STRING_CLASS, "prefix")
+        .addParameter(TypeName.INT, "code")
+        .addParameter(STRING_CLASS, "target")
+        .addParameter(TypeName.INT, "count")
+        .beginControlFlow("switch (code)")
+        .addCode(code.fusedCases())
+        .endControlFlow()
+        .build()
+
+    val argumentMethod = MethodSpec.methodBuilder("argument")
+        .addModifiers(Modifier.PRIVATE)
+        .returns(STRING_CLASS)
+        .addParameter(TypeName.INT, "index")
+        .addStatement("return strings == null " +
+            "? tokens.argumentString(index) : tokens.argumentString(index, strings)")
+        .build()
+
+    val argumentOrNullMethod = MethodSpec.methodBuilder("argumentOrNull")
+        .addModifiers(Modifier.PRIVATE)
+        .returns(STRING_CLASS)
+        .addParameter(TypeName.INT, "index")
+        .addParameter(TypeName.INT, "count")
+        .addStatement("return index < count ? argument(index) : null")
+        .build()
+
+    val argumentsMethod = MethodSpec.methodBuilder("arguments")
+        .addModifiers(Modifier.PRIVATE)
+        .returns(STRING_LIST_CLASS)
+        .addParameter(TypeName.INT, "from")
+        .addParameter(TypeName.INT, "to")
+        .addStatement("return tokens.copyArguments(strings, from, to)")
+        .build()
+
+    return TypeSpec.classBuilder(parserName)
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addJavadoc("Parser which behaves exactly like {@link MessageParser} but checks the " +
+            "arguments of each line\nand dispatches it to the callback straight from its " +
+            "tokens, in a single switch per line,\nrather than going through {@link " +
+            "ArgumentParser} and {@link CodeParser} with a list of the\narguments. Only the " +
+            "strings handed to the callback are extracted from the line. Instances\nare not " +
+            "thread safe.\n")
+        .addTypeVariable(canonicalCallbackTypeVariable)
+        .addField(parameterizedCallbackName, "callback", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(COMMAND_SET_CLASS, "interest", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(PREFIX_CACHE_CLASS, "prefixes", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(STRING_POOL_CLASS, "strings", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(deliveryClassName, "delivery", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(MESSAGE_TOKENS_CLASS, "own", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(MESSAGE_TOKENS_CLASS, "tokens", Modifier.PRIVATE)
+        .addMethod(callbackConstructor)
+        .addMethod(interestConstructor)
+        .addMethod(cacheConstructor)
+        .addMethod(tokensParseMethod)
+        .addMethod(fusedParseMethod(tokenizer, "line, tokens, interest")
+            .addParameter(ParameterSpec.builder(STRING_CLASS, "line")
+                .addAnnotation(Nonnull::class.java)
+                .build())
+            .build())
+        .addMethod(fusedParseMethod(tokenizer, "line, offset, length, tokens, interest")
+            .addParameter(ParameterSpec.builder(BYTE_ARRAY_CLASS, "line")
+                .addAnnotation(Nonnull::class.java)
+                .build())
+            .addParameter(TypeName.INT, "offset")
+            .addParameter(TypeName.INT, "length")
+            .build())
+        .addMethod(fusedParseMethod(tokenizer, "buffer, offset, length, tokens, interest")
+            .addParameter(ParameterSpec.builder(BYTE_BUFFER_CLASS, "buffer")
+                .addAnnotation(Nonnull::class.java)
+                .build())
+            .addParameter(TypeName.INT, "offset")
+            .addParameter(TypeName.INT, "length")
+            .build())
+        .addMethod(dispatch)
+        .addMethod(reply)
+        .addMethod(argumentMethod)
+        .addMethod(argumentOrNullMethod)
+        .addMethod(argumentsMethod)
+        .addType(inner)
+        .addType(deliveryClass())
+        .build()
+  }
+
+  private fun fusedParseMethod(tokenizer: ClassName, arguments: String): MethodSpec.Builder {
+    return MethodSpec.methodBuilder("parse")
+        .addModifiers(Modifier.PUBLIC)
+        .returns(canonicalCallbackTypeVariable)
+        .addStatement("delivery.delivered = false")
+        .beginControlFlow("try")
+        .beginControlFlow("if (!\$T.tokenize($arguments))", tokenizer)
+        .addStatement("return null")
+        .endControlFlow()
+        .addStatement("return dispatch()")
+        .addDeliveryCatch("delivery.delivered", "return callback.onParseError(tokens.line(), error)")
+        .endControlFlow()
+  }
+
+  // Inner class holding the context of a single line in final fields. With a delivery of its own,
+  // the context hands the line to the callback through it rather than through the parser's.
+  private fun contextParserClass(inner: ClassName,
+                                 generators: List<Generator>,
+                                 methods: List<MethodSpec>,
+                                 ownDelivery: Boolean): TypeSpec {
+    val constructor = MethodSpec.constructorBuilder()
+    if (ownDelivery) {
+      constructor.addParameter(deliveryClassName, "delivery")
+          .addStatement("this.delivery = delivery")
+    }
+    constructor.addParameter(MESSAGE_TAGS_CLASS, "tags")
+        .addParameter(STRING_CLASS, "prefix")
+        .addParameter(STRING_CLASS, "target")
+        .addStatement("this.tags = tags")
+        .addStatement("this.prefix = prefix")
+        .addStatement("this.target = target")
+
+    val builder = TypeSpec.classBuilder(inner)
+        .addSuperinterfaces(
+            generators.filter { it.klass.isInterface }.map {
+              ParameterizedTypeName.get(ClassName.get(it.klass), canonicalCallbackTypeVariable)
+            })
+        .addModifiers(Modifier.PRIVATE)
+    if (ownDelivery) {
+      builder.addField(deliveryClassName, "delivery", Modifier.PRIVATE, Modifier.FINAL)
+    }
+    return builder
+        .addField(MESSAGE_TAGS_CLASS, "tags", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(STRING_CLASS, "prefix", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(STRING_CLASS, "target", Modifier.PRIVATE, Modifier.FINAL)
+        .addMethod(constructor.build())
+        .addMethods(methods.sortedBy { it.name })
+        .build()
+  }
+
+  private fun sharedParseMethod(tokenizer: ClassName, arguments: String): MethodSpec.Builder {
+    return MethodSpec.methodBuilder("parse")
+        .addModifiers(Modifier.PUBLIC)
+        .returns(canonicalCallbackTypeVariable)
+        .addStatement("\$T tokens = cursors.acquire()", MESSAGE_TOKENS_CLASS)
+        .addStatement("Delivery delivery = null")
+        .beginControlFlow("try")
+        .beginControlFlow("if (!\$T.tokenize($arguments))", tokenizer)
+        .addStatement("return null")
+        .endControlFlow()
+        .addCode("// Lines may be parsed from inside the callback so each has its own delivery.\n")
+        .addStatement("delivery = new Delivery()")
+        .addStatement("return dispatch(tokens, delivery)")
+        .addDeliveryCatch("delivery != null && delivery.delivered",
+            "return callback.onParseError(tokens.line(), error)")
+        .nextControlFlow("finally")
+        .addStatement("cursors.release(tokens)")
+        .endControlFlow()
+  }
+
+  private fun interestMethod(vararg generators: Generator): MethodSpec {
+    val wildcardCallbackName =
+        ParameterizedTypeName.get(callbackClassName, WildcardTypeName.subtypeOf(Object::class.java))
+
+    // Work out which methods are overridden from the names declared below AbstractMessageCallback.
+    val builder = MethodSpec.methodBuilder("interestOf")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addJavadoc("Returns the commands handled by the callback. If the callback extends\n" +
+            "{@link \$T}, these are the commands of the methods it\noverrides and if it " +
+            "extends {@link \$T}, those returned by\n{@link \$T#interest()}; otherwise " +
+            "every command is handled.\n",
+            abstractClassName, forwardingClassName, forwardingClassName)
+        .addParameter(ParameterSpec.builder(wildcardCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .returns(COMMAND_SET_CLASS)
+        .addAnnotation(Nonnull::class.java)
+        .beginControlFlow("if (callback instanceof \$T)", forwardingClassName)
+        .addStatement("return ((\$T<?>) callback).interest()", forwardingClassName)
+        .endControlFlow()
+        .addStatement("\$T interest = new \$T()", COMMAND_SET_CLASS, COMMAND_SET_CLASS)
+        .beginControlFlow("for (Class<?> type = callback.getClass(); type != \$T.class; " +
+            "type = type.getSuperclass())", abstractClassName)
+        .beginControlFlow("if (type == null)")
+        .addStatement("return \$T.all()", COMMAND_SET_CLASS)
+        .endControlFlow()
+        .beginControlFlow("for (\$T method : type.getDeclaredMethods())", Method::class.java)
+        .beginControlFlow("switch (method.getName())")
+
+    generators.flatMap { it.interests().entries }
+        .sortedBy { it.key }
+        .forEach {
+          builder.addCode("case \$S:\n\$>", it.key)
+              .addStatement("\$L", it.value)
+              .addStatement("break\$<")
+        }
+
+    return builder.endControlFlow()
+        .endControlFlow()
+        .endControlFlow()
+        .addStatement("return interest")
         .build()
   }
 
   private fun innerParserClass(inner: ClassName, vararg generators: Generator): TypeSpec.Builder {
     return TypeSpec.classBuilder(inner)
         .addSuperinterfaces(
-            generators.map {
+            generators.filter { it.klass.isInterface }.map {
               ParameterizedTypeName.get(ClassName.get(it.klass), canonicalCallbackTypeVariable)
             })
         .addModifiers(Modifier.PRIVATE)
-        .addField(STRING_LIST_CLASS, "tags", Modifier.PRIVATE)
+        .addField(MESSAGE_TAGS_CLASS, "tags", Modifier.PRIVATE)
         .addField(STRING_CLASS, "prefix", Modifier.PRIVATE)
         .addField(STRING_CLASS, "target", Modifier.PRIVATE)
         .addMethods(generators.flatMap { it.parserMethods() }.sortedBy { it.name })
@@ -107,8 +589,52 @@ open class CallbackGenTask : SourceTask() {
         .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
             .addAnnotation(Nonnull::class.java)
             .build())
+        .addStatement("this(callback, interestOf(callback))")
+        .addJavadoc("Creates a parser which only fully parses the lines handled by the callback, " +
+            "as returned by\n{@link #interestOf(MessageCallback)}.\n")
+        .build()
+
+    val interestConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(COMMAND_SET_CLASS, "interest")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addStatement("this(callback, interest, null, null)")
+        .addJavadoc("Creates a parser which only fully parses lines whose command is in the " +
+            "interest set. Any other\nline is skipped as soon as its command has been read " +
+            "and null is returned for it.\n")
+        .build()
+
+    val cacheConstructor = MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(parameterizedCallbackName, "callback")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(COMMAND_SET_CLASS, "interest")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(PREFIX_CACHE_CLASS, "prefixes")
+            .addAnnotation(Nullable::class.java)
+            .build())
+        .addParameter(ParameterSpec.builder(STRING_POOL_CLASS, "strings")
+            .addAnnotation(Nullable::class.java)
+            .build())
         .addStatement("this.callback = callback")
+        .addStatement("this.interest = interest")
+        .addStatement("this.prefixes = prefixes")
+        .addStatement("this.strings = strings")
         .addStatement("this.inner = new \$T()", innerClassName)
+        .addStatement("this.delivery = new Delivery()")
+        .addStatement("this.tokens = new \$T()", MESSAGE_TOKENS_CLASS)
+        .addJavadoc("Creates a parser which only fully parses lines whose command is in the " +
+            "interest set. If a\ncache is given, prefixes are passed to the callback as strings " +
+            "shared through it and\nthe split {@link \$T} of each can be looked up in the same " +
+            "cache without allocating. If\na pool is given, commands, arguments and, without a " +
+            "cache, prefixes are deduplicated\nthrough it.\n",
+            ClassName.get(outputPackage, "Prefix"))
         .build()
 
     val parseMethod = MethodSpec.methodBuilder("parse")
@@ -116,19 +642,103 @@ open class CallbackGenTask : SourceTask() {
         .addParameter(ParameterSpec.builder(STRING_CLASS, "line")
             .addAnnotation(Nonnull::class.java)
             .build())
-        .addStatement("return \$T.tokenize(line, inner)", tokenizer)
+        .addStatement("delivery.delivered = false")
+        .beginControlFlow("try")
+        .beginControlFlow("if (!\$T.tokenize(line, tokens, interest))", tokenizer)
+        .addStatement("return null")
+        .endControlFlow()
+        .addStatement("return inner.onLineTokenized(tokens)")
+        .addDeliveryCatch("delivery.delivered", "return inner.onParseError(tokens.line(), error)")
+        .endControlFlow()
+        .returns(canonicalCallbackTypeVariable)
+        .build()
+
+    val parseBytesMethod = MethodSpec.methodBuilder("parse")
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(BYTE_ARRAY_CLASS, "line")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(TypeName.INT, "offset")
+        .addParameter(TypeName.INT, "length")
+        .addStatement("delivery.delivered = false")
+        .beginControlFlow("try")
+        .beginControlFlow("if (!\$T.tokenize(line, offset, length, tokens, interest))", tokenizer)
+        .addStatement("return null")
+        .endControlFlow()
+        .addStatement("return inner.onLineTokenized(tokens)")
+        .addDeliveryCatch("delivery.delivered", "return inner.onParseError(tokens.line(), error)")
+        .endControlFlow()
+        .returns(canonicalCallbackTypeVariable)
+        .build()
+
+    val parseBufferMethod = MethodSpec.methodBuilder("parse")
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(ParameterSpec.builder(BYTE_BUFFER_CLASS, "buffer")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .addParameter(TypeName.INT, "offset")
+        .addParameter(TypeName.INT, "length")
+        .addStatement("delivery.delivered = false")
+        .beginControlFlow("try")
+        .beginControlFlow("if (!\$T.tokenize(buffer, offset, length, tokens, interest))", tokenizer)
+        .addStatement("return null")
+        .endControlFlow()
+        .addStatement("return inner.onLineTokenized(tokens)")
+        .addDeliveryCatch("delivery.delivered", "return inner.onParseError(tokens.line(), error)")
+        .endControlFlow()
         .returns(canonicalCallbackTypeVariable)
         .build()
 
     return TypeSpec.classBuilder(ClassName.get(outputPackage, "MessageParser"))
         .addModifiers(Modifier.PUBLIC)
         .addField(parameterizedCallbackName, "callback", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(COMMAND_SET_CLASS, "interest", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(PREFIX_CACHE_CLASS, "prefixes", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(STRING_POOL_CLASS, "strings", Modifier.PRIVATE, Modifier.FINAL)
         .addField(innerClassName, "inner", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(deliveryClassName, "delivery", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(MESSAGE_TOKENS_CLASS, "tokens", Modifier.PRIVATE, Modifier.FINAL)
         .addMethod(callbackConstructor)
+        .addMethod(interestConstructor)
+        .addMethod(cacheConstructor)
         .addMethod(parseMethod)
+        .addMethod(parseBytesMethod)
+        .addMethod(parseBufferMethod)
         .addTypeVariable(canonicalCallbackTypeVariable)
   }
 
+  // Callback every line is handed to the real callback through, noting when it is. A parse error
+  // caught after that was thrown by the callback, e.g. from a nested parse, and is not the line's.
+  private fun deliveryClass(): TypeSpec {
+    val delegate = MethodSpec.methodBuilder("delegate")
+        .addModifiers(Modifier.PROTECTED)
+        .addAnnotation(Override::class.java)
+        .addAnnotation(Nonnull::class.java)
+        .returns(parameterizedCallbackName)
+        .addStatement("delivered = true")
+        .addStatement("return callback")
+        .build()
+
+    return TypeSpec.classBuilder(deliveryClassName)
+        .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+        .superclass(ParameterizedTypeName.get(forwardingClassName, canonicalCallbackTypeVariable))
+        .addJavadoc("Hands lines to the callback, noting when it has so that a parse error thrown " +
+            "by the\ncallback itself, e.g. by a nested parse, is not reported as one of the " +
+            "line.\n")
+        .addField(TypeName.BOOLEAN, "delivered", Modifier.PRIVATE)
+        .addMethod(delegate)
+        .build()
+  }
+
+  private fun MethodSpec.Builder.addDeliveryCatch(delivered: String,
+                                                  report: String): MethodSpec.Builder {
+    return nextControlFlow("catch (\$T error)", PARSE_ERROR_CLASS)
+        .beginControlFlow("if ($delivered)")
+        .addStatement("throw error")
+        .endControlFlow()
+        .addStatement(report)
+  }
+
   private fun callbackClass(outer: String): String {
     return "$outputPackage.$outer\$Callback"
   }
@@ -14,24 +14,54 @@ abstract class Generator(val klass: Class<*>) {
 
   abstract fun callbackMethods(): Iterable<MethodSpec>
   abstract fun parserMethods(): Iterable<MethodSpec>
+
+  // Methods of the shared parser's inner class, whose context is held in final fields.
+  open fun sharedParserMethods(): Iterable<MethodSpec> {
+    return parserMethods()
+  }
+
+  // Switch cases of the fused parser, which dispatch straight from the tokens of a line.
+  open fun fusedCases(): CodeBlock? {
+    return null
+  }
+
+  // Maps each callback method to the statement adding the commands it handles to an interest set.
+  open fun interests(): Map<String, CodeBlock> {
+    return emptyMap()
+  }
 }
 
-class TokenizerGenerator(callbackClass: Class<*>,
-                         private val argumentParser: ClassName) : Generator(callbackClass) {
+class TokenizerGenerator(tokensClass: Class<*>,
+                         private val argumentParser: ClassName) : Generator(tokensClass) {
   override fun callbackMethods(): Iterable<MethodSpec> {
     return emptyList()
   }
 
   override fun parserMethods(): Iterable<MethodSpec> {
-    return callbackMethods.map {
-      overriding(it)
-          .addTokenizerAssignment()
-          .addStatement("T temp = \$T.parse(command, arguments, this)", argumentParser)
-          .addStatement("this.tags = null")
-          .addStatement("this.prefix = null")
-          .addStatement("return temp")
-          .build()
-    }
+    // Everything is copied out of the cursor before dispatching as it is reused for the next line.
+    val dispatch = MethodSpec.methodBuilder("onLineTokenized")
+        .addModifiers(Modifier.PRIVATE)
+        .addParameter(ParameterSpec.builder(ClassName.get(klass), "tokens")
+            .addAnnotation(Nonnull::class.java)
+            .build())
+        .returns(TypeVariableName.get("T"))
+        .addStatement("this.tags = tokens.hasTags() ? tokens.tags().copy() : null")
+        .addStatement("this.prefix = prefixes != null ? tokens.prefixString(prefixes) " +
+            ": strings != null ? tokens.prefixString(strings) : tokens.prefixString()")
+        .addStatement("String command = strings == null " +
+            "? tokens.commandString() : tokens.commandString(strings)")
+        .addStatement("T temp = \$T.parse(tokens.commandId(), command, " +
+            "tokens.copyArguments(strings), this)", argumentParser)
+        .addStatement("this.tags = null")
+        .addStatement("this.prefix = null")
+        .addStatement("return temp")
+        .build()
+    return listOf(dispatch)
+  }
+
+  override fun sharedParserMethods(): Iterable<MethodSpec> {
+    // The shared parser dispatches from its outer class with a new inner instance per line.
+    return emptyList()
   }
 }
 
@@ -53,6 +83,67 @@ class ArgumentGenerator(callbackClass: Class<*>,
         .toList()
   }
 
+  override fun interests(): Map<String, CodeBlock> {
+    return callbackMethods.asSequence()
+        .filter { it.name != "onReply" && it.name != "onCap" }
+        .associate {
+          val command = if (it.name == "onUnknownCommand") {
+            "UNKNOWN"
+          } else {
+            it.name.removePrefix("on").toUpperCase()
+          }
+          it.name to CodeBlock.of("interest.add(\$T.$command)", COMMANDS_CLASS)
+        }
+  }
+
+  override fun fusedCases(): CodeBlock {
+    val builder = CodeBlock.builder()
+    callbackMethods.asSequence()
+        .filter { it.name != "onReply" && it.name != "onUnknownCommand" }
+        .sortedBy { it.name }
+        .forEach {
+          val command = "\$T.${it.name.removePrefix("on").toUpperCase()}"
+          builder.add("case $command:\n\$>", COMMANDS_CLASS)
+          addCountCheck(builder, it, CodeBlock.of(command, COMMANDS_CLASS), "count")
+          if (it.name == "onCap") {
+            builder.addStatement(
+                "return \$T.parse(arguments(0, count), new Inner(tags, prefix, null))", capParser)
+          } else {
+            builder.addStatement(
+                "return delivery.${it.name}(tags, prefix, ${fusedArguments(it, 0)})")
+          }
+          builder.add("\$<")
+        }
+
+    // Everything else is either an unknown command or a reply, which is dispatched on its code.
+    val reply = callbackMethods.single { it.name == "onReply" }
+    builder.add("default:\n\$>")
+        .beginControlFlow("if (!\$T.isNumeric(commandId))", COMMANDS_CLASS)
+        .addStatement("String command = strings == null " +
+            "? tokens.commandString() : tokens.commandString(strings)")
+        .addStatement("return delivery.onUnknownCommand(tags, prefix, command, arguments(0, count))")
+        .endControlFlow()
+    addCountCheck(builder, reply, CodeBlock.of("commandId"), "count")
+    return builder.addStatement("return reply(tags, prefix, commandId, argument(0), count)")
+        .add("\$<")
+        .build()
+  }
+
+  override fun sharedParserMethods(): Iterable<MethodSpec> {
+    return parserMethods().map {
+      if (it.name == "onReply") {
+        // Pass the target down in a new context rather than storing it in this one.
+        overriding(it)
+            .addStatement(
+                "return \$T.parse(code, arguments, new Inner(delivery, tags, prefix, target))",
+                codeParser)
+            .build()
+      } else {
+        it
+      }
+    }
+  }
+
   override fun parserMethods(): Iterable<MethodSpec> {
     return callbackMethods.map {
       if (it.name == "onReply") {
@@ -68,7 +159,7 @@ class ArgumentGenerator(callbackClass: Class<*>,
             .build()
       } else {
         overriding(it)
-            .addStatement("return callback.${it.name}(tags, prefix, ${joinParams(it.parameters)})")
+            .addStatement("return delivery.${it.name}(tags, prefix, ${joinParams(it.parameters)})")
             .build()
       }
     }
@@ -88,10 +179,35 @@ class ClientCapGenerator(callbackClass: Class<*>) : Generator(callbackClass) {
         }
   }
 
+  override fun interests(): Map<String, CodeBlock> {
+    return callbackMethods.associate {
+      it.name to CodeBlock.of("interest.add(\$T.CAP)", COMMANDS_CLASS)
+    }
+  }
+
   override fun parserMethods(): Iterable<MethodSpec> {
     return callbackMethods.map {
       overriding(it)
-          .addStatement("return callback.${it.name}(tags, prefix, ${joinParams(it.parameters)})")
+          .addStatement("return delivery.${it.name}(tags, prefix, ${joinParams(it.parameters)})")
+          .build()
+    }
+  }
+}
+
+class ErrorGenerator(callbackClass: Class<*>) : Generator(callbackClass) {
+  override fun callbackMethods(): Iterable<MethodSpec> {
+    return callbackMethods.map {
+      createCanonicalMethodBuilder(it)
+          .addParametersFromDeclaration(it)
+          .addJavadoc("Callback method for lines which could not be parsed.\n")
+          .build()
+    }
+  }
+
+  override fun parserMethods(): Iterable<MethodSpec> {
+    return callbackMethods.map {
+      overriding(it)
+          .addStatement("return callback.${it.name}(${joinParams(it.parameters)})")
           .build()
     }
   }
@@ -112,6 +228,47 @@ class CodeGenerator(callbackClass: Class<*>, val nameParser: ClassName) : Genera
         }
   }
 
+  override fun interests(): Map<String, CodeBlock> {
+    return callbackMethods.asSequence()
+        .filter { it.name != "onNamReply" }
+        .associate {
+          if (it.name == "onUnknownCode") {
+            it.name to CodeBlock.of("interest.addNumerics()")
+          } else {
+            val reply = "RPL_${it.name.removePrefix("on").toUpperCase()}"
+            it.name to CodeBlock.of("interest.add(\$T.$reply)", COMMANDS_CLASS)
+          }
+        }
+  }
+
+  override fun fusedCases(): CodeBlock {
+    // The arguments of a reply start after its target.
+    val builder = CodeBlock.builder()
+    callbackMethods.asSequence()
+        .filter { it.name != "onUnknownCode" }
+        .sortedBy { it.name }
+        .forEach {
+          val reply = "\$T.RPL_${it.name.removePrefix("on").toUpperCase()}"
+          builder.add("case $reply:\n\$>", COMMANDS_CLASS)
+          addCountCheck(builder, it, CodeBlock.of("code"), "count - 1")
+          when (it.name) {
+            "onNamReply" -> builder.addStatement(
+                "return \$T.parse(arguments(1, count), new Inner(tags, prefix, target))",
+                nameParser)
+            "onIsupport" -> builder.addStatement("return delivery.onIsupport(tags, prefix, " +
+                "target, argument(count - 1), arguments(1, count - 1))")
+            else -> builder.addStatement(
+                "return delivery.${it.name}(tags, prefix, target, ${fusedArguments(it, 1)})")
+          }
+          builder.add("\$<")
+        }
+    return builder.add("default:\n\$>")
+        .addStatement(
+            "return delivery.onUnknownCode(tags, prefix, target, code, arguments(1, count))")
+        .add("\$<")
+        .build()
+  }
+
   override fun parserMethods(): Iterable<MethodSpec> {
     return callbackMethods.map {
       if (it.name == "onNamReply") {
@@ -137,11 +294,17 @@ class NameGenerator(callbackClass: Class<*>) : Generator(callbackClass) {
     }
   }
 
+  override fun interests(): Map<String, CodeBlock> {
+    return callbackMethods.associate {
+      it.name to CodeBlock.of("interest.add(\$T.RPL_NAMREPLY)", COMMANDS_CLASS)
+    }
+  }
+
   override fun parserMethods(): Iterable<MethodSpec> {
     return callbackMethods.map {
       overriding(it)
           .addStatement(
-              "return callback.${it.name}(tags, prefix, target, ${joinParams(it.parameters)})")
+              "return delivery.${it.name}(tags, prefix, target, ${joinParams(it.parameters)})")
           .build()
     }
   }
@@ -153,6 +316,35 @@ private fun joinParams(params: Array<out Parameter>): String {
       .joinToString(", ")
 }
 
+// Reads each parameter of the callback method from the argument tokens, starting at the offset.
+private fun fusedArguments(method: Method, offset: Int): String {
+  val min = argumentCount(method)?.first ?: 0
+  return method.parameters.asSequence()
+      .mapIndexed { i, parameter ->
+        val index = offset + i
+        when {
+          parameter.type == List::class.java -> {
+            if (i != method.parameters.size - 1) {
+              throw IllegalArgumentException("cannot fuse list before last parameter: $method")
+            }
+            "arguments($index, count)"
+          }
+          parameter.type != String::class.java ->
+            throw IllegalArgumentException("cannot fuse parameter ${parameter.name}: $method")
+          // Arguments within the minimum count are always present.
+          i < min -> "argument($index)"
+          else -> "argumentOrNull($index, count)"
+        }
+      }
+      .joinToString(", ")
+}
+
+private fun addCountCheck(builder: CodeBlock.Builder, method: Method, id: CodeBlock, size: String) {
+  val count = argumentCount(method) ?: return
+  val max = if (count.second == Int.MAX_VALUE) "Integer.MAX_VALUE" else count.second.toString()
+  builder.addStatement("\$T.checkCount(\$L, $size, ${count.first}, $max)", UTILS_CLASS, id)
+}
+
 private fun createCanonicalMethodBuilder(it: Method): MethodSpec.Builder {
   return MethodSpec.methodBuilder(it.name)
       .addModifiers(Modifier.ABSTRACT, Modifier.PUBLIC)
@@ -162,7 +354,7 @@ private fun createCanonicalMethodBuilder(it: Method): MethodSpec.Builder {
 private fun generateCodeParserMethodFromCallbackMethod(it: Method): MethodSpec {
   return overriding(it)
       .addStatement(
-          "return callback.${it.name}(tags, prefix, target, ${joinParams(it.parameters)})")
+          "return delivery.${it.name}(tags, prefix, target, ${joinParams(it.parameters)})")
       .build()
 }
 
@@ -3,12 +3,39 @@ package com.tilal6991.irc.syntax
 import com.squareup.javapoet.*
 import java.lang.reflect.Method
 import java.lang.reflect.Modifier.*
+import java.nio.ByteBuffer
 import java.util.*
 import javax.lang.model.element.Modifier
 
 val LIST_CLASS = ClassName.get(List::class.java)!!
 val STRING_CLASS = ClassName.get(String::class.java)!!
 val STRING_LIST_CLASS = ParameterizedTypeName.get(LIST_CLASS, STRING_CLASS)!!
+val BYTE_ARRAY_CLASS = ArrayTypeName.of(TypeName.BYTE)!!
+val BYTE_BUFFER_CLASS = ClassName.get(ByteBuffer::class.java)!!
+val MESSAGE_TAGS_CLASS = ClassName.get(outputPackage, "MessageTags")!!
+val MESSAGE_TOKENS_CLASS = ClassName.get(outputPackage, "MessageTokens")!!
+val COMMANDS_CLASS = ClassName.get(outputPackage, "Commands")!!
+val COMMAND_SET_CLASS = ClassName.get(outputPackage, "CommandSet")!!
+val PREFIX_CACHE_CLASS = ClassName.get(outputPackage, "PrefixCache")!!
+val STRING_POOL_CLASS = ClassName.get(outputPackage, "StringPool")!!
+val CURSOR_POOL_CLASS = ClassName.get(outputPackage, "CursorPool")!!
+val PARSE_ERROR_CLASS = ClassName.get(outputPackage, "ParseError")!!
+val UTILS_CLASS = ClassName.get(outputPackage, "Utils")!!
+val ARGUMENT_COUNT_NAME = "$outputPackage.ArgumentCount"
+
+// Returns the smallest and largest argument counts of a parser callback method or null if any
+// number of arguments is accepted.
+fun argumentCount(method: Method): Pair<Int, Int>? {
+  val annotation = method.annotations.firstOrNull {
+    it.annotationClass.java.name == ARGUMENT_COUNT_NAME
+  } ?: return null
+
+  // The annotation is package private so its values are read reflectively.
+  val type = annotation.annotationClass.java
+  val min = type.getDeclaredMethod("min").apply { isAccessible = true }.invoke(annotation)
+  val max = type.getDeclaredMethod("max").apply { isAccessible = true }.invoke(annotation)
+  return Pair(min as Int, max as Int)
+}
 
 private val OVERRIDE = ClassName.get(Override::class.java)
 fun overriding(method: Method): MethodSpec.Builder {
@@ -22,6 +49,8 @@ fun overriding(method: Method): MethodSpec.Builder {
   val methodBuilder = MethodSpec.methodBuilder(method.name)
   methodBuilder.addAnnotation(OVERRIDE)
   for (annotation in method.annotations) {
+    // Argument counts are only read by the generator and need not be repeated in its output.
+    if (annotation.annotationClass.java.name == ARGUMENT_COUNT_NAME) continue
     val annotationSpec = AnnotationSpec.get(annotation)
     if (annotationSpec.type == OVERRIDE) continue
     methodBuilder.addAnnotation(annotationSpec)
@@ -0,0 +1,446 @@
+package com.tilal6991.irc.syntax.bulk;
+
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.LineFramer;
+import com.tilal6991.irc.syntax.MessageCallback;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import javax.annotation.Nonnull;
+
+/**
+ * Parses large files of IRC lines, such as months of raw logs, on every worker of a fork/join
+ * pool. The file is split into chunks which start and end on line boundaries; each chunk is memory
+ * mapped and framed by a {@link LineFramer} before its lines are handed to a
+ * {@link FusedMessageParser}.
+ *
+ * <p>Every worker thread gets its own parser and callback, created by the factory the first time
+ * the worker parses a chunk of a file, so callbacks need not be thread safe but each only sees
+ * part of the file. The lines of a chunk are seen in the order of the file, but workers steal
+ * chunks from each other so a callback may see a later chunk before an earlier one, and the
+ * callbacks run concurrently; {@link #parseOrdered(Path, Sink)} hands the results of every line to
+ * a single sink in the order of the file instead.
+ *
+ * <p>Lines longer than the maximum line length are skipped and counted in the {@link Summary}.
+ * An exception thrown by a callback, including the {@link com.tilal6991.irc.syntax.ParseError}
+ * rethrown by {@link com.tilal6991.irc.syntax.AbstractMessageCallback}, aborts the whole file:
+ * every other chunk stops at its next line and chunks which have not started are skipped.
+ */
+public final class BulkParser<T> {
+
+  /** Default number of bytes in each chunk of a file. */
+  public static final int DEFAULT_CHUNK_SIZE = 32 << 20;
+
+  // Mappings are limited to 2GB so chunks holding lines longer than that are mapped in parts.
+  private static final int MAX_MAPPING = 1 << 30;
+
+  // Chunks held per worker in ordered mode; more keeps workers busy, fewer holds fewer results.
+  private static final int ORDERED_CHUNKS_PER_WORKER = 2;
+
+  private final ForkJoinPool pool;
+  private final Factory<T> factory;
+  private final int chunkSize;
+  private final int maxLineLength;
+
+  /**
+   * Creates a parser which splits files into chunks of {@link #DEFAULT_CHUNK_SIZE} bytes and
+   * allows lines up to {@link LineFramer#DEFAULT_MAX_LINE_LENGTH} bytes.
+   *
+   * @param pool the pool to parse the chunks on.
+   * @param factory the factory of the callback of each worker.
+   */
+  public BulkParser(@Nonnull ForkJoinPool pool, @Nonnull Factory<T> factory) {
+    this(pool, factory, DEFAULT_CHUNK_SIZE, LineFramer.DEFAULT_MAX_LINE_LENGTH);
+  }
+
+  /**
+   * Creates a parser.
+   *
+   * @param pool the pool to parse the chunks on.
+   * @param factory the factory of the callback of each worker.
+   * @param chunkSize the number of bytes in each chunk, which is rounded up to the next line.
+   * @param maxLineLength the maximum length of a line not including its terminator.
+   */
+  public BulkParser(@Nonnull ForkJoinPool pool,
+      @Nonnull Factory<T> factory,
+      int chunkSize,
+      int maxLineLength) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    if (maxLineLength <= 0) {
+      throw new IllegalArgumentException("Maximum line length must be positive: " + maxLineLength);
+    }
+    this.pool = pool;
+    this.factory = factory;
+    this.chunkSize = chunkSize;
+    this.maxLineLength = maxLineLength;
+  }
+
+  /**
+   * Parses every line of the file with the callbacks of the workers, all chunks at once.
+   *
+   * @param file the file to parse.
+   * @return the totals over the whole file.
+   * @throws IOException if the file cannot be read.
+   */
+  @Nonnull
+  public Summary parse(@Nonnull Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      Run run = new Run(channel, false);
+      long[] bounds = chunkBounds(channel);
+      int chunks = bounds.length - 1;
+
+      List<Chunk> tasks = new ArrayList<>(chunks);
+      for (int i = 0; i < chunks; i++) {
+        tasks.add(run.submit(bounds[i], bounds[i + 1]));
+      }
+      try {
+        for (Chunk task : tasks) {
+          join(task);
+        }
+      } finally {
+        cancel(tasks);
+      }
+      return run.summary(chunks);
+    }
+  }
+
+  /**
+   * Parses every line of the file with the callbacks of the workers and hands the non-null result
+   * of each line to the sink, on the calling thread, in the order of the file. Only the results of
+   * a few chunks per worker are held at any time.
+   *
+   * @param file the file to parse.
+   * @param sink the sink of the results.
+   * @return the totals over the whole file.
+   * @throws IOException if the file cannot be read.
+   */
+  @Nonnull
+  public Summary parseOrdered(@Nonnull Path file, @Nonnull Sink<? super T> sink)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      Run run = new Run(channel, true);
+      long[] bounds = chunkBounds(channel);
+      int chunks = bounds.length - 1;
+      int window = pool.getParallelism() * ORDERED_CHUNKS_PER_WORKER;
+
+      // Chunks are submitted ahead of the one being drained up to the window.
+      List<Chunk> tasks = new ArrayList<>(chunks);
+      try {
+        for (int i = 0; i < chunks; i++) {
+          while (tasks.size() < chunks && tasks.size() <= i + window) {
+            int next = tasks.size();
+            tasks.add(run.submit(bounds[next], bounds[next + 1]));
+          }
+
+          List<T> results = join(tasks.get(i));
+          tasks.set(i, null);
+          for (int j = 0; j < results.size(); j++) {
+            sink.onResult(results.get(j));
+          }
+        }
+      } finally {
+        cancel(tasks);
+      }
+      return run.summary(chunks);
+    }
+  }
+
+  /** Returns the offsets of the lines which start each chunk, followed by the size of the file. */
+  private long[] chunkBounds(FileChannel channel) throws IOException {
+    long size = channel.size();
+    long[] bounds = new long[(int) Math.min((size + chunkSize - 1) / chunkSize + 1, 1 << 20)];
+    ByteBuffer scratch = ByteBuffer.allocate(8192);
+
+    int count = 1;
+    while (bounds[count - 1] < size) {
+      if (count == bounds.length) {
+        bounds = Arrays.copyOf(bounds, count * 2);
+      }
+      long next = bounds[count - 1] + chunkSize;
+      bounds[count++] = next >= size ? size : lineStart(channel, next, size, scratch);
+    }
+    return Arrays.copyOf(bounds, count);
+  }
+
+  /** Returns the offset of the first line which starts at or after the position. */
+  private static long lineStart(FileChannel channel, long position, long size, ByteBuffer scratch)
+      throws IOException {
+    // The byte before the position is included in case it ends the previous line.
+    long offset = position - 1;
+    while (offset < size) {
+      scratch.clear();
+      int read = channel.read(scratch, offset);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (scratch.get(i) == '\n') {
+          return offset + i + 1;
+        }
+      }
+      offset += read;
+    }
+    return size;
+  }
+
+  private List<T> join(Chunk chunk) throws IOException {
+    List<T> results;
+    try {
+      results = chunk.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing.");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+
+    // A skipped chunk fails with the chunk which caused it to be skipped.
+    if (chunk.skipped) {
+      chunk = chunk.run.failed;
+    }
+
+    // Failures are rethrown as they were thrown rather than as copies made by the pool.
+    if (chunk.readFailure != null) {
+      throw chunk.readFailure;
+    } else if (chunk.failure instanceof Error) {
+      throw (Error) chunk.failure;
+    } else if (chunk.failure != null) {
+      throw (RuntimeException) chunk.failure;
+    }
+    return results;
+  }
+
+  private static void cancel(List<? extends ForkJoinTask<?>> tasks) {
+    // Only does anything if a chunk failed and the remaining chunks are no longer wanted.
+    for (ForkJoinTask<?> task : tasks) {
+      if (task != null) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  /** State shared by the chunks of a single file. */
+  private final class Run {
+
+    private final FileChannel channel;
+    private final boolean ordered;
+    private final ConcurrentHashMap<Thread, Worker> workers = new ConcurrentHashMap<>();
+
+    // The first chunk to fail, after which every other chunk stops.
+    private volatile Chunk failed;
+
+    Run(FileChannel channel, boolean ordered) {
+      this.channel = channel;
+      this.ordered = ordered;
+    }
+
+    Chunk submit(long start, long end) {
+      Chunk chunk = new Chunk(this, start, end);
+      pool.execute(chunk);
+      return chunk;
+    }
+
+    Worker worker() {
+      Thread thread = Thread.currentThread();
+      Worker worker = workers.get(thread);
+      if (worker == null) {
+        worker = new Worker(this, factory.create());
+        workers.put(thread, worker);
+      }
+      return worker;
+    }
+
+    Summary summary(int chunks) {
+      long lines = 0;
+      long oversizedLines = 0;
+      for (Worker worker : workers.values()) {
+        lines += worker.lines;
+        oversizedLines += worker.oversizedLines;
+      }
+      return new Summary(chunks, workers.size(), lines, oversizedLines);
+    }
+  }
+
+  /** Parses the lines in [start, end) of the file, collecting the results in ordered mode. */
+  private final class Chunk extends RecursiveTask<List<T>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Run run;
+    private final long start;
+    private final long end;
+
+    private IOException readFailure;
+    private Throwable failure;
+    private boolean skipped;
+
+    Chunk(Run run, long start, long end) {
+      this.run = run;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected List<T> compute() {
+      if (run.failed != null) {
+        skipped = true;
+        return null;
+      }
+      Worker worker = run.worker();
+      List<T> results = run.ordered ? new ArrayList<T>() : null;
+      worker.results = results;
+      try {
+        for (long position = start; position < end; position += MAX_MAPPING) {
+          long length = Math.min(end - position, MAX_MAPPING);
+          worker.framer.feed(run.channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        }
+        // Only the last chunk can end without a terminator.
+        worker.framer.finish();
+      } catch (Skipped e) {
+        // The framer of the worker is left part way through a line but it is not used again.
+        skipped = true;
+      } catch (IOException e) {
+        readFailure = e;
+        fail();
+      } catch (RuntimeException | Error e) {
+        failure = e;
+        fail();
+      } finally {
+        worker.results = null;
+      }
+      return results;
+    }
+
+    private void fail() {
+      if (run.failed == null) {
+        run.failed = this;
+      }
+    }
+  }
+
+  /** Thrown from the framer of a chunk to stop it once another chunk has failed. */
+  private static final class Skipped extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+    private static final Skipped INSTANCE = new Skipped();
+
+    @Override
+    public Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  /** Parser and framer of a single worker thread. */
+  private final class Worker implements LineFramer.Callback {
+
+    private final Run run;
+    private final FusedMessageParser<T> parser;
+    private final LineFramer framer;
+
+    private List<T> results;
+    private long lines;
+    private long oversizedLines;
+
+    Worker(Run run, MessageCallback<T> callback) {
+      this.run = run;
+      this.parser = new FusedMessageParser<>(callback);
+      this.framer = new LineFramer(this, maxLineLength);
+    }
+
+    @Override
+    public void onLine(@Nonnull byte[] buffer, int offset, int length) {
+      if (run.failed != null) {
+        throw Skipped.INSTANCE;
+      }
+      lines++;
+      T result = parser.parse(buffer, offset, length);
+      if (results != null && result != null) {
+        results.add(result);
+      }
+    }
+
+    @Override
+    public void onOversizedLine(int length) {
+      oversizedLines++;
+    }
+  }
+
+  /** Totals over a whole file. */
+  public static final class Summary {
+
+    private final int chunks;
+    private final int workers;
+    private final long lines;
+    private final long oversizedLines;
+
+    Summary(int chunks, int workers, long lines, long oversizedLines) {
+      this.chunks = chunks;
+      this.workers = workers;
+      this.lines = lines;
+      this.oversizedLines = oversizedLines;
+    }
+
+    /** Returns the number of chunks the file was split into. */
+    public int chunks() {
+      return chunks;
+    }
+
+    /** Returns the number of workers, and so of callbacks, which parsed the chunks. */
+    public int workers() {
+      return workers;
+    }
+
+    /** Returns the number of lines handed to the parsers, including those they skipped. */
+    public long lines() {
+      return lines;
+    }
+
+    /** Returns the number of lines skipped for being longer than the maximum line length. */
+    public long oversizedLines() {
+      return oversizedLines;
+    }
+
+    @Override
+    public String toString() {
+      return "Summary{chunks=" + chunks + ", workers=" + workers + ", lines=" + lines
+          + ", oversizedLines=" + oversizedLines + '}';
+    }
+  }
+
+  /** Factory of the callback of each worker. */
+  public interface Factory<T> {
+
+    /**
+     * Creates the callback of a worker. May be called concurrently by several workers.
+     *
+     * @return a callback which will only be used by the calling worker.
+     */
+    @Nonnull
+    MessageCallback<T> create();
+  }
+
+  /** Sink of the results of {@link #parseOrdered(Path, Sink)}. */
+  public interface Sink<T> {
+
+    /**
+     * Called on the thread which called {@link #parseOrdered(Path, Sink)} with the result of each
+     * line for which the callback returned non-null, in the order of the file.
+     *
+     * @param result the value returned by the callback.
+     */
+    void onResult(@Nonnull T result);
+  }
+}
@@ -0,0 +1,170 @@
+package com.tilal6991.irc.syntax.bulk
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.MessageCallback
+import com.tilal6991.irc.syntax.MessageParser
+import com.tilal6991.irc.syntax.corpus.TrafficGenerator
+import com.tilal6991.irc.syntax.corpus.TrafficProfile
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Assert.fail
+import org.junit.Test
+import java.nio.file.Files
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+class BulkParserTest {
+
+  private val pool = ForkJoinPool(4)
+  private val file = Files.createTempFile("bulk", ".log")
+
+  @After fun tearDown() {
+    pool.shutdown()
+    Files.delete(file)
+  }
+
+  @Test fun testOrderedMatchesSequential() {
+    val lines = TrafficGenerator(TrafficProfile.defaults()).next(20000)
+    write(lines, lastTerminator = false)
+
+    val expected = mutableListOf<String>()
+    val sequential = MessageParser(ChatCallback())
+    lines.mapNotNullTo(expected) { sequential.parse(it) }
+
+    val results = mutableListOf<String>()
+    val parser = BulkParser(pool, factory { ChatCallback() }, 4096, 1024)
+    val summary = parser.parseOrdered(file, BulkParser.Sink<String> { results.add(it) })
+
+    assertThat(results).isEqualTo(expected)
+    assertThat(summary.lines()).isEqualTo(20000)
+    assertThat(summary.chunks()).isGreaterThan(1)
+    assertThat(summary.oversizedLines()).isZero()
+  }
+
+  @Test fun testUnorderedSeesEveryLine() {
+    val lines = TrafficGenerator(TrafficProfile.defaults()).next(20000)
+    write(lines, lastTerminator = true)
+
+    val created = AtomicInteger()
+    val privmsgs = AtomicInteger()
+    val parser = BulkParser(pool, factory {
+      created.incrementAndGet()
+      object : AbstractMessageCallback<Unit>() {
+        override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+            message: String) {
+          privmsgs.incrementAndGet()
+        }
+      }
+    }, 4096, 1024)
+    val summary = parser.parse(file)
+
+    assertThat(privmsgs.get()).isEqualTo(lines.count { it.contains(" PRIVMSG ") })
+    assertThat(summary.lines()).isEqualTo(20000)
+    assertThat(summary.workers()).isEqualTo(created.get()).isBetween(1, 4)
+  }
+
+  @Test fun testLinesAcrossChunks() {
+    val long = "PRIVMSG #a :" + "x".repeat(200)
+    write(listOf("PRIVMSG #a :1", long, "PRIVMSG #a :2", "", "PRIVMSG #a :3"), lastTerminator = true)
+
+    val results = mutableListOf<String>()
+    val parser = BulkParser(pool, factory { ChatCallback() }, 16, 64)
+    val summary = parser.parseOrdered(file, BulkParser.Sink<String> { results.add(it) })
+
+    assertThat(results).containsExactly("#a 1", "#a 2", "#a 3")
+    assertThat(summary.oversizedLines()).isEqualTo(1)
+  }
+
+  @Test fun testEmptyFile() {
+    val summary = BulkParser(pool, factory { ChatCallback() }).parse(file)
+    assertThat(summary.chunks()).isZero()
+    assertThat(summary.lines()).isZero()
+  }
+
+  @Test fun testCallbackFailureAborts() {
+    write(TrafficGenerator(TrafficProfile.defaults()).next(5000), lastTerminator = true)
+
+    val parser = BulkParser(pool, factory {
+      object : AbstractMessageCallback<Unit>() {
+        override fun onJoin(tags: List<String>?, prefix: String?, channel: String,
+            arguments: List<String>) {
+          throw IllegalStateException("Rejected join.")
+        }
+      }
+    }, 4096, 1024)
+    try {
+      parser.parse(file)
+      fail("Expected IllegalStateException.")
+    } catch (e: IllegalStateException) {
+      assertThat(e).hasMessage("Rejected join.")
+    }
+  }
+
+  @Test fun testFailureStopsOtherChunks() {
+    write((0 until 20000).map { "PRIVMSG #a :$it" }, lastTerminator = true)
+
+    val privmsgs = AtomicInteger()
+    val parser = BulkParser(pool, factory {
+      object : AbstractMessageCallback<Unit>() {
+        override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+            message: String) {
+          if (message == "10") {
+            throw IllegalStateException("Rejected.")
+          }
+          privmsgs.incrementAndGet()
+        }
+      }
+    }, 1024, 1024)
+    for (ordered in listOf(false, true)) {
+      privmsgs.set(0)
+      try {
+        if (ordered) {
+          parser.parseOrdered(file, BulkParser.Sink<Unit> { })
+        } else {
+          parser.parse(file)
+        }
+        fail("Expected IllegalStateException.")
+      } catch (e: IllegalStateException) {
+        assertThat(e).hasMessage("Rejected.")
+      }
+      assertThat(privmsgs.get()).isLessThan(19999)
+    }
+  }
+
+  @Test fun testInvalidChunkSize() {
+    try {
+      BulkParser(pool, factory { ChatCallback() }, 0, 1024)
+      fail("Expected IllegalArgumentException.")
+    } catch (e: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  private fun write(lines: List<String>, lastTerminator: Boolean) {
+    // Alternate between both terminators so chunks end on either.
+    val text = StringBuilder()
+    lines.forEachIndexed { i, line ->
+      text.append(line)
+      if (i != lines.size - 1 || lastTerminator) {
+        text.append(if (i % 2 == 0) "\r\n" else "\n")
+      }
+    }
+    Files.write(file, text.toString().toByteArray())
+  }
+
+  private fun <T> factory(create: () -> MessageCallback<T>): BulkParser.Factory<T> {
+    return BulkParser.Factory<T> { create() }
+  }
+
+  private class ChatCallback : AbstractMessageCallback<String>() {
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String): String {
+      return "$target $message"
+    }
+
+    override fun onJoin(tags: List<String>?, prefix: String?, channel: String,
+        arguments: List<String>): String {
+      return "$prefix joined $channel"
+    }
+  }
+}
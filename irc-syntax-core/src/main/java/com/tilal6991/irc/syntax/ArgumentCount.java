@@ -0,0 +1,24 @@
+package com.tilal6991.irc.syntax;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Number of arguments accepted by the command of a parser callback method. The parsers check the
+ * count themselves; the annotation exists so the generated fused parser can check the same count
+ * straight from the tokens of a line. Methods without it accept any number of arguments.
+ *
+ * <p>Counts of reply methods do not include the target of the reply.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface ArgumentCount {
+
+  /** Returns the smallest accepted number of arguments. */
+  int min();
+
+  /** Returns the largest accepted number of arguments. */
+  int max() default Integer.MAX_VALUE;
+}
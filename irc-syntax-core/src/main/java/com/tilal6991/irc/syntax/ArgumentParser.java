@@ -1,7 +1,8 @@
 package com.tilal6991.irc.syntax;
 
+import static com.tilal6991.irc.syntax.Utils.checkCountBetween;
+import static com.tilal6991.irc.syntax.Utils.checkCountIs;
 import static com.tilal6991.irc.syntax.Utils.checkCountIsGeq;
-import static com.tilal6991.irc.syntax.Utils.checkCountOneOf;
 
 import java.util.List;
 import javax.annotation.Nonnull;
@@ -26,139 +27,155 @@ public class ArgumentParser {
    */
   public static <T> T parse(
       @Nonnull String command, @Nonnull List<String> arguments, @Nonnull Callback<T> callback) {
-    switch (command) {
-      case "NICK":
-        checkCountOneOf(command, arguments, 1);
+    return parse(Commands.lookup(command), command, arguments, callback);
+  }
+
+  /**
+   * Parses IRC message arguments for a command which has already been identified. Checks that the
+   * correct number of arguments are present for the given command and invokes the given callback
+   * synchronously with the parsed arguments if parsing was successful.
+   *
+   * @param commandId the identifier of the command as given by {@link Commands}.
+   * @param command IRC command to parse the arguments in the context of.
+   * @param arguments the arguments to parse.
+   * @param callback the callback to invoke with the parsed arguments.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static <T> T parse(int commandId,
+      @Nonnull String command,
+      @Nonnull List<String> arguments,
+      @Nonnull Callback<T> callback) {
+    switch (commandId) {
+      case Commands.NICK:
+        checkCountIs(commandId, arguments, 1);
         return callback.onNick(arguments.get(0));
-      case "QUIT":
-        checkCountOneOf(command, arguments, 0, 1);
+      case Commands.QUIT:
+        checkCountBetween(commandId, arguments, 0, 1);
         return callback.onQuit(Utils.getOrNull(arguments, 0));
-      case "JOIN":
-        checkCountIsGeq(command, arguments, 1);
+      case Commands.JOIN:
+        checkCountIsGeq(commandId, arguments, 1);
         return callback.onJoin(arguments.get(0), arguments.subList(1, arguments.size()));
-      case "PART":
-        checkCountOneOf(command, arguments, 1, 2);
+      case Commands.PART:
+        checkCountBetween(commandId, arguments, 1, 2);
         return callback.onPart(arguments.get(0), Utils.getOrNull(arguments, 1));
-      case "MODE":
-        checkCountIsGeq(command, arguments, 2);
+      case Commands.MODE:
+        checkCountIsGeq(commandId, arguments, 2);
         return callback.onMode(arguments.get(0), arguments.subList(1, arguments.size()));
-      case "INVITE":
-        checkCountOneOf(command, arguments, 2);
+      case Commands.INVITE:
+        checkCountIs(commandId, arguments, 2);
         return callback.onInvite(arguments.get(0), arguments.get(1));
-      case "KICK":
-        checkCountOneOf(command, arguments, 2, 3);
+      case Commands.KICK:
+        checkCountBetween(commandId, arguments, 2, 3);
         return callback.onKick(arguments.get(0), arguments.get(1), Utils.getOrNull(arguments, 2));
-      case "AUTHENTICATE":
-        checkCountOneOf(command, arguments, 1);
+      case Commands.AUTHENTICATE:
+        checkCountIs(commandId, arguments, 1);
         return callback.onAuthenticate(arguments.get(0));
-      case "ACCOUNT":
-        checkCountOneOf(command, arguments, 1);
+      case Commands.ACCOUNT:
+        checkCountIs(commandId, arguments, 1);
         return callback.onAccount(arguments.get(0));
-      case "CHGHOST":
-        checkCountOneOf(command, arguments, 2);
+      case Commands.CHGHOST:
+        checkCountIs(commandId, arguments, 2);
         return callback.onChghost(arguments.get(0), arguments.get(1));
-      case "PRIVMSG":
-        checkCountOneOf(command, arguments, 2);
+      case Commands.PRIVMSG:
+        checkCountIs(commandId, arguments, 2);
         return callback.onPrivmsg(arguments.get(0), arguments.get(1));
-      case "NOTICE":
-        checkCountOneOf(command, arguments, 2);
+      case Commands.NOTICE:
+        checkCountIs(commandId, arguments, 2);
         return callback.onNotice(arguments.get(0), arguments.get(1));
-      case "AWAY":
-        checkCountOneOf(command, arguments, 0, 1);
+      case Commands.AWAY:
+        checkCountBetween(commandId, arguments, 0, 1);
         return callback.onAway(Utils.getOrNull(arguments, 0));
-      case "PING":
-        checkCountOneOf(command, arguments, 0, 1);
+      case Commands.PING:
+        checkCountBetween(commandId, arguments, 0, 1);
         return callback.onPing(Utils.getOrNull(arguments, 0));
-      case "BATCH":
-        checkCountIsGeq(command, arguments, 2);
+      case Commands.BATCH:
+        checkCountIsGeq(commandId, arguments, 2);
         return callback.onBatch(
             arguments.get(0), arguments.get(1), arguments.subList(2, arguments.size()));
-      case "CAP":
-        checkCountIsGeq(command, arguments, 1);
+      case Commands.CAP:
+        checkCountIsGeq(commandId, arguments, 1);
         return callback.onCap(arguments);
       default:
-        int code = parseCode(command);
-        if (code == -1) {
+        if (!Commands.isNumeric(commandId)) {
           return callback.onUnknownCommand(command, arguments);
         } else {
-          checkCountIsGeq(command, arguments, 1);
-          return callback.onReply(code, arguments.get(0), arguments.subList(1, arguments.size()));
+          checkCountIsGeq(commandId, arguments, 1);
+          return callback.onReply(
+              commandId, arguments.get(0), arguments.subList(1, arguments.size()));
         }
     }
   }
 
-  private static int parseCode(String input) {
-    int length = input.length();
-    if (length != 3) {
-      return -1;
-    }
-
-    int result = 0;
-    int base = 100;
-    for (int i = 0; i < length; i++) {
-      char c = input.charAt(i);
-      if (c < '0' || c > '9') {
-        return -1;
-      }
-      result += (c - '0') * base;
-      base /= 10;
-    }
-    return result;
-  }
-
   /** Callback class which will be invoked when parsing is successful */
   public interface Callback<T> {
 
     /** Callback method for PING command. */
+    @ArgumentCount(min = 0, max = 1)
     T onPing(@Nullable String hostname);
 
     /** Callback method for QUIT command. */
+    @ArgumentCount(min = 0, max = 1)
     T onQuit(@Nullable String reason);
 
     /** Callback method for JOIN command. */
+    @ArgumentCount(min = 1)
     T onJoin(@Nonnull String channel, @Nonnull List<String> arguments);
 
     /** Callback method for a MODE message */
+    @ArgumentCount(min = 2)
     T onMode(@Nonnull String target, @Nonnull List<String> arguments);
 
     /** Callback method for KICK command. */
+    @ArgumentCount(min = 2, max = 3)
     T onKick(@Nonnull String channel, @Nonnull String user, @Nullable String reason);
 
     /** Callback method for NICK command. */
+    @ArgumentCount(min = 1, max = 1)
     T onNick(@Nonnull String nick);
 
     /** Callback method for PART command. */
+    @ArgumentCount(min = 1, max = 2)
     T onPart(@Nonnull String channel, @Nullable String reason);
 
     /** Callback method for AUTHENTICATE command. */
+    @ArgumentCount(min = 1, max = 1)
     T onAuthenticate(@Nonnull String data);
 
     /** Callback method for ACCOUNT command. */
+    @ArgumentCount(min = 1, max = 1)
     T onAccount(@Nullable String account);
 
     /** Callback method for CHGHOST command. */
+    @ArgumentCount(min = 2, max = 2)
     T onChghost(@Nonnull String newUser, @Nonnull String newHost);
 
     /** Callback method for PRIVMSG command. */
+    @ArgumentCount(min = 2, max = 2)
     T onPrivmsg(@Nonnull String target, @Nonnull String message);
 
     /** Callback method for NOTICE command. */
+    @ArgumentCount(min = 2, max = 2)
     T onNotice(@Nonnull String target, @Nonnull String message);
 
     /** Callback method for INVITE command. */
+    @ArgumentCount(min = 2, max = 2)
     T onInvite(@Nonnull String target, @Nonnull String channel);
 
     /** Callback method for AWAY command. */
+    @ArgumentCount(min = 0, max = 1)
     T onAway(@Nullable String message);
 
     /** Callback method for BATCH command. */
+    @ArgumentCount(min = 2)
     T onBatch(
         @Nonnull String modifiedReferenceTag, @Nonnull String type, @Nonnull List<String> arguments);
 
     /** Callback method for CAP command. */
+    @ArgumentCount(min = 1)
     T onCap(@Nonnull List<String> arguments);
 
     /** Callback method for a reply message. */
+    @ArgumentCount(min = 1)
     T onReply(int code, @Nonnull String target, @Nonnull List<String> arguments);
 
     /** Callback method for unknown command */
@@ -0,0 +1,91 @@
+package com.tilal6991.irc.syntax;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.annotation.Nonnull;
+
+/**
+ * Finds delimiters in a byte array eight bytes at a time. Each step reads a little-endian word and
+ * uses the SWAR "has zero byte" trick to test all eight bytes against the delimiters at once; only
+ * the lowest match of a word is used, which is always exact.
+ *
+ * <p>Words are read through a {@link ByteBuffer} view of the array which is cached for as long as
+ * the same array is scanned.
+ */
+final class ByteScanner {
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGHS = 0x8080808080808080L;
+
+  private byte[] array;
+  private ByteBuffer words;
+
+  void reset(@Nonnull byte[] array) {
+    if (this.array != array) {
+      this.array = array;
+      this.words = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /** Drops the array so it is not kept alive by the scanner. */
+  void clear() {
+    array = null;
+    words = null;
+  }
+
+  /** Returns the index of the first occurrence of value in [from, to) or -1 if there is none. */
+  int indexOf(int from, int to, byte value) {
+    long pattern = pattern(value);
+
+    int i = from;
+    for (int last = to - 8; i <= last; i += 8) {
+      long match = matches(words.getLong(i), pattern);
+      if (match != 0) {
+        return i + (Long.numberOfTrailingZeros(match) >>> 3);
+      }
+    }
+    for (; i < to; i++) {
+      if (array[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the first occurrence of any of the three values in [from, to) or -1 if
+   * there is none.
+   */
+  int indexOfAny(int from, int to, byte first, byte second, byte third) {
+    long firstPattern = pattern(first);
+    long secondPattern = pattern(second);
+    long thirdPattern = pattern(third);
+
+    int i = from;
+    for (int last = to - 8; i <= last; i += 8) {
+      long word = words.getLong(i);
+      long match = matches(word, firstPattern)
+          | matches(word, secondPattern)
+          | matches(word, thirdPattern);
+      if (match != 0) {
+        return i + (Long.numberOfTrailingZeros(match) >>> 3);
+      }
+    }
+    for (; i < to; i++) {
+      byte b = array[i];
+      if (b == first || b == second || b == third) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static long pattern(byte value) {
+    return (value & 0xFFL) * ONES;
+  }
+
+  private static long matches(long word, long pattern) {
+    long x = word ^ pattern;
+    return (x - ONES) & ~x & HIGHS;
+  }
+}
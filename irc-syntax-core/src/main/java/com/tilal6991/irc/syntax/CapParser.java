@@ -1,5 +1,6 @@
 package com.tilal6991.irc.syntax;
 
+import static com.tilal6991.irc.syntax.Utils.checkCountBetween;
 import static com.tilal6991.irc.syntax.Utils.getOrNull;
 
 import java.util.List;
@@ -23,10 +24,7 @@ public class CapParser {
    * @throws IllegalArgumentException if an error occurs in the parsing.
    */
   public static <T> T parse(@Nonnull List<String> arguments, @Nonnull Callback<T> callback) {
-    if (arguments.size() < 2 || arguments.size() > 4) {
-      throw new IllegalArgumentException(
-          String.format("Client CAP on has wrong number of arguments: %d", arguments.size()));
-    }
+    checkCountBetween(Commands.CAP, arguments, 2, 4);
 
     String clientId = arguments.get(0);
     String subcommand = arguments.get(1);
@@ -34,9 +32,11 @@ public class CapParser {
     if (subcommand.equals("LS") || subcommand.equals("LIST")) {
       boolean finalLine = thirdArg == null || thirdArg.length() != 1 || thirdArg.charAt(0) != '*';
       String fourthArg = getOrNull(arguments, 3);
-      if (finalLine && fourthArg != null || !finalLine && fourthArg == null) {
-        throw new IllegalArgumentException(
-            String.format("Client CAP on has wrong number of arguments: %d", arguments.size()));
+      // Only lines which are continued with * have a fourth argument.
+      if (finalLine) {
+        checkCountBetween(Commands.CAP, arguments, 2, 3);
+      } else {
+        checkCountBetween(Commands.CAP, arguments, 4, 4);
       }
 
       List<String> modCapsAndValues;
@@ -52,9 +52,7 @@ public class CapParser {
         return callback.onCapLs(clientId, finalLine, modCapsAndValues);
       }
     } else {
-      if (arguments.size() == 4) {
-        throw new IllegalArgumentException("Client CAP on has wrong number of arguments: 4");
-      }
+      checkCountBetween(Commands.CAP, arguments, 2, 3);
 
       List<String> modCapsAndValues = thirdArg == null ? null : Utils.tokenizeOnSpace(thirdArg);
       switch (subcommand) {
@@ -0,0 +1,67 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Rules a server uses to decide whether two nicks or channel names are equal, as advertised by the
+ * CASEMAPPING token of RPL_ISUPPORT. Only ASCII characters are ever folded, so names held as UTF-8
+ * bytes can be compared and hashed without decoding them.
+ */
+public enum CaseMapping {
+
+  /** Only the letters A to Z are folded to a to z. */
+  ASCII('Z'),
+
+  /** As {@link #ASCII}, with the characters []\^ also folded to {}|~. */
+  RFC1459('^'),
+
+  /** As {@link #RFC1459} except that ^ and ~ are distinct. */
+  STRICT_RFC1459(']');
+
+  // Every character from A up to and including this one is folded by adding 32.
+  private final int last;
+
+  CaseMapping(int last) {
+    this.last = last;
+  }
+
+  /**
+   * Returns the case mapping with the given name, as given as the value of the CASEMAPPING token.
+   * Servers which do not advertise the token, or advertise one unknown here, are taken to use
+   * {@link #RFC1459}, the default of the protocol.
+   *
+   * @param name the value of the token or null if it was not advertised.
+   */
+  @Nonnull
+  public static CaseMapping fromName(@Nullable String name) {
+    if ("ascii".equals(name)) {
+      return ASCII;
+    } else if ("strict-rfc1459".equals(name)) {
+      return STRICT_RFC1459;
+    }
+    return RFC1459;
+  }
+
+  /** Returns the lower case form of the character under this mapping. */
+  public char toLowerCase(char c) {
+    return c >= 'A' && c <= last ? (char) (c + 32) : c;
+  }
+
+  /**
+   * Returns a hash of a name held as bytes which is the same for every name equal to it under this
+   * mapping.
+   *
+   * @param bytes the array containing the name.
+   * @param start the index of the first byte of the name.
+   * @param end the index after the last byte of the name.
+   */
+  public int hash(@Nonnull byte[] bytes, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      int b = bytes[i];
+      hash = 31 * hash + (b >= 'A' && b <= last ? b + 32 : b);
+    }
+    return hash;
+  }
+}
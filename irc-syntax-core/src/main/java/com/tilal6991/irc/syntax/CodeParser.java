@@ -9,14 +9,6 @@ import javax.annotation.Nonnull;
 /** Parser which considers a list of IRC code arguments and interprets them. */
 public class CodeParser {
 
-  private static final int RPL_WELCOME = 1;
-  private static final int RPL_ISUPPORT = 5;
-  private static final int RPL_NAMREPLY = 353;
-  private static final int RPL_ENDOFNAMES = 366;
-  private static final int RPL_MOTD = 372;
-  private static final int RPL_MOTDSTART = 375;
-  private static final int RPL_ENDOFMOTD = 376;
-
   // No instances of parser.
   private CodeParser() {
   }
@@ -34,25 +26,25 @@ public class CodeParser {
   public static <T> T parse(
       int code, @Nonnull List<String> arguments, @Nonnull Callback<T> callback) {
     switch (code) {
-      case RPL_WELCOME:
+      case Commands.RPL_WELCOME:
         checkCountIs(code, arguments, 1);
         return callback.onWelcome(arguments.get(0));
-      case RPL_ISUPPORT:
+      case Commands.RPL_ISUPPORT:
         checkCountIsGeq(code, arguments, 2);
         return callback.onIsupport(
             arguments.get(arguments.size() - 1), arguments.subList(0, arguments.size() - 1));
-      case RPL_NAMREPLY:
+      case Commands.RPL_NAMREPLY:
         return callback.onNamReply(arguments);
-      case RPL_ENDOFNAMES:
+      case Commands.RPL_ENDOFNAMES:
         checkCountIs(code, arguments, 2);
         return callback.onEndOfNames(arguments.get(0), arguments.get(1));
-      case RPL_MOTD:
+      case Commands.RPL_MOTD:
         checkCountIs(code, arguments, 1);
         return callback.onMotd(arguments.get(0));
-      case RPL_MOTDSTART:
+      case Commands.RPL_MOTDSTART:
         checkCountIs(code, arguments, 1);
         return callback.onMotdStart(arguments.get(0));
-      case RPL_ENDOFMOTD:
+      case Commands.RPL_ENDOFMOTD:
         checkCountIs(code, arguments, 1);
         return callback.onEndOfMotd(arguments.get(0));
       default:
@@ -64,24 +56,30 @@ public class CodeParser {
   public interface Callback<T> {
 
     /** Callback method for RPL_WELCOME code. */
+    @ArgumentCount(min = 1, max = 1)
     T onWelcome(@Nonnull String message);
 
     /** Callback method for RPL_ISUPPORT code. */
+    @ArgumentCount(min = 2)
     T onIsupport(@Nonnull String message, @Nonnull List<String> tokens);
 
     /** Callback method for RPL_NAMREPLY code. */
     T onNamReply(@Nonnull List<String> arguments);
 
     /** Callback method for RPL_ENDOFNAMES code. */
+    @ArgumentCount(min = 2, max = 2)
     T onEndOfNames(@Nonnull String channel, @Nonnull String message);
 
     /** Callback method for RPL_MOTD code. */
+    @ArgumentCount(min = 1, max = 1)
     T onMotd(@Nonnull String message);
 
     /** Callback method for RPL_MOTDSTART code. */
+    @ArgumentCount(min = 1, max = 1)
     T onMotdStart(@Nonnull String message);
 
     /** Callback method for RPL_ENDOFMOTD code. */
+    @ArgumentCount(min = 1, max = 1)
     T onEndOfMotd(@Nonnull String message);
 
     /** Callback method for any unknown codes */
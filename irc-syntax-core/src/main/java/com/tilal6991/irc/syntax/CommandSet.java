@@ -0,0 +1,98 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Set of command identifiers, as given by {@link Commands}, which a consumer is interested in.
+ * Lines whose command is not in the set can be skipped as soon as their command has been read; see
+ * {@link MessageTokenizer#tokenize(CharSequence, MessageTokens, CommandSet)}.
+ *
+ * <p>{@link Commands#UNKNOWN} may be added to the set to stand for every command which has no
+ * identifier of its own.
+ */
+public final class CommandSet {
+
+  private static final CommandSet ALL = new CommandSet();
+
+  static {
+    ALL.addAll();
+  }
+
+  private final long[] words = new long[(Commands.LIMIT + 63) >>> 6];
+  private boolean unknown;
+
+  CommandSet() {
+  }
+
+  /** Returns the set of every command. */
+  @Nonnull
+  public static CommandSet all() {
+    return ALL;
+  }
+
+  /**
+   * Creates a set of the given commands.
+   *
+   * @param ids the identifiers of the commands as given by {@link Commands}.
+   * @throws IllegalArgumentException if any of the identifiers is not valid.
+   */
+  @Nonnull
+  public static CommandSet of(@Nonnull int... ids) {
+    CommandSet set = new CommandSet();
+    for (int id : ids) {
+      set.add(id);
+    }
+    return set;
+  }
+
+  /**
+   * Creates a set of every command which is in any of the given sets, such as the interest of a
+   * stream of lines shared by several consumers.
+   *
+   * @param sets the sets to combine.
+   */
+  @Nonnull
+  public static CommandSet union(@Nonnull CommandSet... sets) {
+    CommandSet union = new CommandSet();
+    for (CommandSet set : sets) {
+      if (set == ALL) {
+        return ALL;
+      }
+      for (int i = 0; i < union.words.length; i++) {
+        union.words[i] |= set.words[i];
+      }
+      union.unknown |= set.unknown;
+    }
+    return union;
+  }
+
+  /** Returns whether the command with the given identifier is in this set. */
+  public boolean contains(int id) {
+    if (id == Commands.UNKNOWN) {
+      return unknown;
+    }
+    return (words[id >>> 6] & 1L << id) != 0;
+  }
+
+  void add(int id) {
+    if (id == Commands.UNKNOWN) {
+      unknown = true;
+    } else if (id >= 0 && id < Commands.LIMIT) {
+      words[id >>> 6] |= 1L << id;
+    } else {
+      throw new IllegalArgumentException("Invalid command identifier: " + id);
+    }
+  }
+
+  void addNumerics() {
+    for (int id = 0; Commands.isNumeric(id); id++) {
+      add(id);
+    }
+  }
+
+  void addAll() {
+    for (int id = Commands.UNKNOWN; id < Commands.LIMIT; id++) {
+      add(id);
+    }
+  }
+}
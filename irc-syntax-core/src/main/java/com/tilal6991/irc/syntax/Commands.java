@@ -0,0 +1,184 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Small integer identifiers for IRC commands. Numeric replies are identified by their code (0 to
+ * 999) and the verbs understood by {@link ArgumentParser} have identifiers from 1000 upwards. Any
+ * other command is {@link #UNKNOWN}. The replies understood by {@link CodeParser} are also given
+ * names here.
+ *
+ * <p>Verbs are resolved with a perfect hash over their first two characters and length followed by
+ * a single comparison, so the command of a line never has to become a string to be identified.
+ */
+public class Commands {
+
+  /** Identifier of any command which is neither a known verb nor a numeric reply. */
+  public static final int UNKNOWN = -1;
+
+  public static final int NICK = 1000;
+  public static final int QUIT = 1001;
+  public static final int JOIN = 1002;
+  public static final int PART = 1003;
+  public static final int MODE = 1004;
+  public static final int INVITE = 1005;
+  public static final int KICK = 1006;
+  public static final int AUTHENTICATE = 1007;
+  public static final int ACCOUNT = 1008;
+  public static final int CHGHOST = 1009;
+  public static final int PRIVMSG = 1010;
+  public static final int NOTICE = 1011;
+  public static final int AWAY = 1012;
+  public static final int PING = 1013;
+  public static final int BATCH = 1014;
+  public static final int CAP = 1015;
+
+  public static final int RPL_WELCOME = 1;
+  public static final int RPL_ISUPPORT = 5;
+  public static final int RPL_NAMREPLY = 353;
+  public static final int RPL_ENDOFNAMES = 366;
+  public static final int RPL_MOTD = 372;
+  public static final int RPL_MOTDSTART = 375;
+  public static final int RPL_ENDOFMOTD = 376;
+
+  private static final int FIRST_VERB = NICK;
+  private static final String[] VERBS = {
+      "NICK", "QUIT", "JOIN", "PART", "MODE", "INVITE", "KICK", "AUTHENTICATE", "ACCOUNT",
+      "CHGHOST", "PRIVMSG", "NOTICE", "AWAY", "PING", "BATCH", "CAP"
+  };
+
+  /** One more than the largest identifier of any command. */
+  public static final int LIMIT = FIRST_VERB + VERBS.length;
+
+  private static final int HASH_MASK = 31;
+  private static final int[] HASH_TABLE = new int[HASH_MASK + 1];
+
+  // Lazily created names of numeric replies; races only ever store equal strings.
+  private static final String[] NUMERICS = new String[1000];
+
+  static {
+    for (int i = 0; i < HASH_TABLE.length; i++) {
+      HASH_TABLE[i] = UNKNOWN;
+    }
+    for (int i = 0; i < VERBS.length; i++) {
+      String verb = VERBS[i];
+      int slot = hash(verb.charAt(0), verb.charAt(1), verb.length());
+      if (HASH_TABLE[slot] != UNKNOWN) {
+        throw new AssertionError("Command hash is no longer perfect: " + verb);
+      }
+      HASH_TABLE[slot] = FIRST_VERB + i;
+    }
+  }
+
+  // No instances of commands.
+  private Commands() {
+  }
+
+  /** Returns the identifier of the given command. */
+  public static int lookup(@Nonnull CharSequence command) {
+    return lookup(command, 0, command.length());
+  }
+
+  /** Returns the identifier of the command in the range [start, end) of the sequence. */
+  public static int lookup(@Nonnull CharSequence line, int start, int end) {
+    int length = end - start;
+    if (length == 3) {
+      int code = numeric(line.charAt(start), line.charAt(start + 1), line.charAt(start + 2));
+      if (code != UNKNOWN) {
+        return code;
+      }
+    } else if (length < 3) {
+      return UNKNOWN;
+    }
+
+    int id = HASH_TABLE[hash(line.charAt(start), line.charAt(start + 1), length)];
+    if (id == UNKNOWN) {
+      return UNKNOWN;
+    }
+
+    String verb = VERBS[id - FIRST_VERB];
+    if (verb.length() != length) {
+      return UNKNOWN;
+    }
+    for (int i = 0; i < length; i++) {
+      if (line.charAt(start + i) != verb.charAt(i)) {
+        return UNKNOWN;
+      }
+    }
+    return id;
+  }
+
+  /** Returns the identifier of the UTF-8 command in the range [start, end) of the array. */
+  public static int lookup(@Nonnull byte[] line, int start, int end) {
+    int length = end - start;
+    if (length == 3) {
+      int code = numeric(line[start], line[start + 1], line[start + 2]);
+      if (code != UNKNOWN) {
+        return code;
+      }
+    } else if (length < 3) {
+      return UNKNOWN;
+    }
+
+    // Non-ASCII bytes are masked into the table but can never pass the comparison below.
+    int id = HASH_TABLE[hash(line[start] & 0xFF, line[start + 1] & 0xFF, length)];
+    if (id == UNKNOWN) {
+      return UNKNOWN;
+    }
+
+    String verb = VERBS[id - FIRST_VERB];
+    if (verb.length() != length) {
+      return UNKNOWN;
+    }
+    for (int i = 0; i < length; i++) {
+      if (line[start + i] != verb.charAt(i)) {
+        return UNKNOWN;
+      }
+    }
+    return id;
+  }
+
+  /** Returns whether the identifier is that of a numeric reply. */
+  public static boolean isNumeric(int id) {
+    return id >= 0 && id < FIRST_VERB;
+  }
+
+  /**
+   * Returns the name of the command with the given identifier. The same instance is returned for
+   * every call with the same identifier.
+   *
+   * @return the name or null if the identifier is {@link #UNKNOWN}.
+   */
+  @Nullable
+  public static String name(int id) {
+    if (isNumeric(id)) {
+      String name = NUMERICS[id];
+      if (name == null) {
+        char[] digits = {
+            (char) ('0' + id / 100), (char) ('0' + id / 10 % 10), (char) ('0' + id % 10)
+        };
+        name = NUMERICS[id] = new String(digits);
+      }
+      return name;
+    } else if (id >= FIRST_VERB && id < LIMIT) {
+      return VERBS[id - FIRST_VERB];
+    }
+    return null;
+  }
+
+  private static int numeric(int first, int second, int third) {
+    if (!isDigit(first) || !isDigit(second) || !isDigit(third)) {
+      return UNKNOWN;
+    }
+    return (first - '0') * 100 + (second - '0') * 10 + (third - '0');
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int hash(int first, int second, int length) {
+    return (first + 2 * second + length) & HASH_MASK;
+  }
+}
@@ -0,0 +1,64 @@
+package com.tilal6991.irc.syntax;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nonnull;
+
+/**
+ * Small lock-free pool of {@link MessageTokens} for parsers which are shared between threads. A
+ * cursor is taken out of the pool for the duration of a single line so it is never used by two
+ * threads, or by a line parsed from inside the callback of another, at the same time.
+ *
+ * <p>The pool holds a few cursors per processor; a new cursor is created whenever the pool is
+ * empty and cursors returned to a full pool are dropped, so no thread ever waits for another.
+ */
+final class CursorPool {
+
+  private final AtomicReferenceArray<MessageTokens> slots;
+  private final int mask;
+
+  CursorPool() {
+    this(Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  CursorPool(int size) {
+    int slotCount = Integer.highestOneBit(Math.max(size, 1) * 2 - 1);
+    slots = new AtomicReferenceArray<>(slotCount);
+    mask = slotCount - 1;
+  }
+
+  /** Takes a cursor out of the pool or creates one if the pool is empty. */
+  @Nonnull
+  MessageTokens acquire() {
+    int start = probe();
+    for (int i = 0; i <= mask; i++) {
+      int slot = (start + i) & mask;
+      MessageTokens tokens = slots.get(slot);
+      if (tokens != null && slots.compareAndSet(slot, tokens, null)) {
+        return tokens;
+      }
+    }
+    return new MessageTokens();
+  }
+
+  /** Returns a cursor taken out with {@link #acquire()} to the pool. */
+  void release(@Nonnull MessageTokens tokens) {
+    // Don't keep the line alive while the cursor sits in the pool.
+    tokens.detach();
+    int start = probe();
+    for (int i = 0; i <= mask; i++) {
+      int slot = (start + i) & mask;
+      if (slots.get(slot) == null && slots.compareAndSet(slot, null, tokens)) {
+        return;
+      }
+    }
+  }
+
+  int size() {
+    return mask + 1;
+  }
+
+  private int probe() {
+    // Threads start looking at different slots so they rarely contend for the same one.
+    return (int) Thread.currentThread().getId() & mask;
+  }
+}
@@ -0,0 +1,14 @@
+package com.tilal6991.irc.syntax;
+
+/** Kinds of failure which can be reported by a {@link ParseError}. */
+public enum ErrorKind {
+
+  /** The line was empty or only contained whitespace. */
+  EMPTY_LINE,
+
+  /** The line ended before its command. */
+  MISSING_COMMAND,
+
+  /** The command was given a number of arguments it does not accept. */
+  ARGUMENT_COUNT
+}
@@ -0,0 +1,339 @@
+package com.tilal6991.irc.syntax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import javax.annotation.Nonnull;
+
+/**
+ * Splits a stream of bytes into IRC lines without decoding them. Bytes are read into a single
+ * reusable buffer and every complete line is handed to the callback as a range of that buffer,
+ * ready to be passed to {@link MessageTokenizer} or the byte based {@code parse} methods of the
+ * message parser.
+ *
+ * <p>Lines may be terminated by CRLF or a lone LF; the terminator is not included in the range
+ * given to the callback and empty lines are skipped. Lines longer than the maximum line length are
+ * discarded and reported to the callback instead.
+ *
+ * <p>A typical blocking read loop looks like {@code while (framer.read(channel) != -1) {}}.
+ * Instances are not thread safe.
+ */
+public final class LineFramer {
+
+  /** Maximum length of the tags section of a line, including the leading @ and trailing space. */
+  public static final int MAX_TAGS_LENGTH = 8191;
+
+  /** Maximum length of the rest of a line as specified by RFC1459, including the CRLF. */
+  public static final int MAX_MESSAGE_LENGTH = 512;
+
+  /** Default maximum length of a line, not including the CRLF. */
+  public static final int DEFAULT_MAX_LINE_LENGTH = MAX_TAGS_LENGTH + MAX_MESSAGE_LENGTH - 2;
+
+  // Only used by framers created with pulling() which never dispatch.
+  private static final Callback PULLING = new Callback() {
+    @Override
+    public void onLine(@Nonnull byte[] buffer, int offset, int length) {
+      throw new IllegalStateException("Lines of this framer are pulled.");
+    }
+
+    @Override
+    public void onOversizedLine(int length) {
+      throw new IllegalStateException("Lines of this framer are pulled.");
+    }
+  };
+
+  private final Callback callback;
+  private final int maxLineLength;
+  private final byte[] buffer;
+  private final ByteBuffer byteBuffer;
+  private final ByteScanner scanner = new ByteScanner();
+
+  // Bytes in [start, end) are yet to be dispatched and [start, scanned) contains no line feed.
+  private int start;
+  private int scanned;
+  private int end;
+
+  private boolean discarding;
+  private int discarded;
+
+  // The line found by the last call to nextLine. Only the length of oversized lines is kept.
+  private int lineOffset;
+  private int lineLength;
+  private boolean lineOversized;
+
+  /**
+   * Creates a framer which allows lines up to {@link #DEFAULT_MAX_LINE_LENGTH} bytes.
+   *
+   * @param callback the callback to invoke with every complete line.
+   */
+  public LineFramer(@Nonnull Callback callback) {
+    this(callback, DEFAULT_MAX_LINE_LENGTH);
+  }
+
+  /**
+   * Creates a framer.
+   *
+   * @param callback the callback to invoke with every complete line.
+   * @param maxLineLength the maximum length of a line not including its terminator.
+   */
+  public LineFramer(@Nonnull Callback callback, int maxLineLength) {
+    if (maxLineLength <= 0) {
+      throw new IllegalArgumentException("Maximum line length must be positive: " + maxLineLength);
+    }
+    this.callback = callback;
+    this.maxLineLength = maxLineLength;
+
+    // Leave room for the terminator and for reading more than one line per read call.
+    this.buffer = new byte[Math.max(2 * (maxLineLength + 2), 4096)];
+    this.byteBuffer = ByteBuffer.wrap(buffer);
+    this.scanner.reset(buffer);
+  }
+
+  /**
+   * Performs a single read from the channel and dispatches every line which was completed by it.
+   * If the end of the stream is reached, any unterminated final line is dispatched as well.
+   *
+   * @param channel the channel to read from; may be non-blocking.
+   * @return the number of bytes read, possibly zero, or -1 if the end of the stream was reached.
+   * @throws IOException if the channel throws.
+   */
+  public int read(@Nonnull ReadableByteChannel channel) throws IOException {
+    return onRead(fill(channel));
+  }
+
+  /**
+   * Performs a single read from the stream and dispatches every line which was completed by it.
+   * If the end of the stream is reached, any unterminated final line is dispatched as well.
+   *
+   * @param stream the stream to read from.
+   * @return the number of bytes read or -1 if the end of the stream was reached.
+   * @throws IOException if the stream throws.
+   */
+  public int read(@Nonnull InputStream stream) throws IOException {
+    return onRead(fill(stream));
+  }
+
+  /**
+   * Copies bytes which have been obtained elsewhere into the framer and dispatches every line which
+   * was completed by them.
+   *
+   * @param bytes the array containing the bytes.
+   * @param offset the index of the first byte.
+   * @param length the number of bytes.
+   */
+  public void feed(@Nonnull byte[] bytes, int offset, int length) {
+    while (length > 0) {
+      compact();
+
+      int count = Math.min(length, buffer.length - end);
+      System.arraycopy(bytes, offset, buffer, end, count);
+      end += count;
+      offset += count;
+      length -= count;
+      while (nextLine(false)) {
+        dispatch();
+      }
+    }
+  }
+
+  /**
+   * Copies the remaining bytes of the buffer into the framer and dispatches every line which was
+   * completed by them. The bytes are copied straight from the buffer so direct and memory mapped
+   * buffers need no intermediate array. The position of the buffer is advanced to its limit.
+   *
+   * @param bytes the buffer containing the bytes.
+   */
+  public void feed(@Nonnull ByteBuffer bytes) {
+    while (bytes.hasRemaining()) {
+      compact();
+
+      int count = Math.min(bytes.remaining(), buffer.length - end);
+      bytes.get(buffer, end, count);
+      end += count;
+      while (nextLine(false)) {
+        dispatch();
+      }
+    }
+  }
+
+  /**
+   * Dispatches any buffered bytes which are not followed by a line terminator as a final line. This
+   * is done automatically by the read methods when they reach the end of the stream.
+   */
+  public void finish() {
+    while (nextLine(true)) {
+      dispatch();
+    }
+  }
+
+  /** Creates a framer without a callback whose lines are pulled with {@link #nextLine(boolean)}. */
+  static LineFramer pulling(int maxLineLength) {
+    return new LineFramer(PULLING, maxLineLength);
+  }
+
+  /** Reads once from the channel into the buffer without framing. */
+  int fill(@Nonnull ReadableByteChannel channel) throws IOException {
+    compact();
+    byteBuffer.limit(buffer.length).position(end);
+
+    int read = channel.read(byteBuffer);
+    if (read > 0) {
+      end += read;
+    }
+    return read;
+  }
+
+  /** Reads once from the stream into the buffer without framing. */
+  int fill(@Nonnull InputStream stream) throws IOException {
+    compact();
+
+    int read = stream.read(buffer, end, buffer.length - end);
+    if (read > 0) {
+      end += read;
+    }
+    return read;
+  }
+
+  /**
+   * Finds the next line in the buffered bytes and records it for {@link #lineOffset()}, {@link
+   * #lineLength()} and {@link #lineOversized()}. The line is only valid until the buffer is next
+   * filled.
+   *
+   * @param endOfStream whether no more bytes will be read, in which case any bytes after the last
+   *     terminator are a final line.
+   * @return whether a line was found; if not, more bytes need to be read.
+   */
+  boolean nextLine(boolean endOfStream) {
+    while (true) {
+      int lineFeed = scanner.indexOf(scanned, end, (byte) '\n');
+      if (lineFeed == -1) {
+        scanned = end;
+        if (endOfStream) {
+          return finalLine();
+        }
+        // Allow for a carriage return whose line feed has not been read yet.
+        if (end - start > maxLineLength + 1) {
+          // The line can no longer fit: drop what we have and skip the rest of it. The last byte
+          // is kept in case it is the carriage return of the terminator.
+          discarding = true;
+          discarded += end - start - 1;
+          start = end - 1;
+        }
+        return false;
+      }
+
+      int lineStart = start;
+      start = scanned = lineFeed + 1;
+
+      int lineEnd = lineFeed;
+      if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+        lineEnd--;
+      }
+
+      int length = lineEnd - lineStart;
+      if (discarding) {
+        discarding = false;
+        length += discarded;
+        discarded = 0;
+        return setLine(lineStart, length, true);
+      } else if (length > maxLineLength) {
+        return setLine(lineStart, length, true);
+      } else if (length != 0) {
+        return setLine(lineStart, length, false);
+      }
+    }
+  }
+
+  @Nonnull
+  byte[] buffer() {
+    return buffer;
+  }
+
+  int lineOffset() {
+    return lineOffset;
+  }
+
+  int lineLength() {
+    return lineLength;
+  }
+
+  boolean lineOversized() {
+    return lineOversized;
+  }
+
+  private boolean finalLine() {
+    int lineStart = start;
+    start = scanned = end;
+    if (discarding) {
+      discarding = false;
+      int length = discarded + end - lineStart;
+      discarded = 0;
+      return setLine(lineStart, length, true);
+    } else if (lineStart != end) {
+      return setLine(lineStart, end - lineStart, false);
+    }
+    return false;
+  }
+
+  private boolean setLine(int offset, int length, boolean oversized) {
+    lineOffset = offset;
+    lineLength = length;
+    lineOversized = oversized;
+    return true;
+  }
+
+  private int onRead(int read) {
+    if (read > 0) {
+      while (nextLine(false)) {
+        dispatch();
+      }
+    } else if (read == -1) {
+      finish();
+    }
+    return read;
+  }
+
+  private void dispatch() {
+    if (lineOversized) {
+      callback.onOversizedLine(lineLength);
+    } else {
+      callback.onLine(buffer, lineOffset, lineLength);
+    }
+  }
+
+  private void compact() {
+    if (start == 0) {
+      return;
+    }
+
+    int remaining = end - start;
+    if (remaining != 0) {
+      System.arraycopy(buffer, start, buffer, 0, remaining);
+    }
+    scanned -= start;
+    end = remaining;
+    start = 0;
+  }
+
+  /** Callback class which will be invoked as lines are framed. */
+  public interface Callback {
+
+    /**
+     * Callback method for a complete line. The range is only valid for the duration of the call as
+     * the buffer is reused for subsequent lines.
+     *
+     * @param buffer the buffer containing the line.
+     * @param offset the index of the first byte of the line.
+     * @param length the length of the line, not including the terminator.
+     */
+    void onLine(@Nonnull byte[] buffer, int offset, int length);
+
+    /**
+     * Callback method for a line which was discarded because it was longer than the maximum.
+     *
+     * @param length the length of the discarded line, not including the terminator.
+     */
+    void onOversizedLine(int length);
+  }
+}
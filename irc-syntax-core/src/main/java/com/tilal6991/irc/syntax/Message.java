@@ -0,0 +1,120 @@
+package com.tilal6991.irc.syntax;
+
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable snapshot of a tokenized line, as returned by {@link MessageTokens#copy()}. The line is
+ * copied once, as bytes for byte lines, along with the offsets of its tokens; strings are only
+ * extracted from it when they are first requested.
+ *
+ * <p>Snapshots may be kept for as long as needed and shared between threads. The {@link
+ * CharSequence} views of the {@link #tags()} are the exception and must only be used by one thread
+ * at a time.
+ */
+public final class Message {
+
+  private final String chars;
+  private final byte[] bytes;
+
+  private final MessageTags tags;
+  private final int prefixStart;
+  private final int prefixEnd;
+  private final int commandStart;
+  private final int commandEnd;
+  private final int commandId;
+  private final List<String> arguments;
+
+  private String prefix;
+  private String command;
+
+  Message(String chars,
+      byte[] bytes,
+      MessageTags tags,
+      int prefixStart,
+      int prefixEnd,
+      int commandStart,
+      int commandEnd,
+      int commandId,
+      List<String> arguments) {
+    this.chars = chars;
+    this.bytes = bytes;
+    this.tags = tags;
+    this.prefixStart = prefixStart;
+    this.prefixEnd = prefixEnd;
+    this.commandStart = commandStart;
+    this.commandEnd = commandEnd;
+    this.commandId = commandId;
+    this.arguments = arguments;
+  }
+
+  /**
+   * Tokenizes a line into a snapshot.
+   *
+   * @param line an IRC line to tokenize.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  @Nonnull
+  public static Message parse(@Nonnull String line) {
+    MessageTokens tokens = new MessageTokens();
+    MessageTokenizer.tokenize(line, tokens);
+    return tokens.copy();
+  }
+
+  /** Returns the tags of the line; the view is empty if the line had no tags. */
+  @Nonnull
+  public MessageTags tags() {
+    return tags;
+  }
+
+  /** Returns the prefix of the line without the leading colon or null if there was none. */
+  @Nullable
+  public String prefix() {
+    if (prefix == null && prefixStart != -1) {
+      prefix = MessageTokens.substring(chars, bytes, prefixStart, prefixEnd);
+    }
+    return prefix;
+  }
+
+  /** Returns the identifier of the command as given by {@link Commands}. */
+  public int commandId() {
+    return commandId;
+  }
+
+  /** Returns the command of the line. */
+  @Nonnull
+  public String command() {
+    if (command == null) {
+      String name = Commands.name(commandId);
+      command = name == null
+          ? MessageTokens.substring(chars, bytes, commandStart, commandEnd)
+          : name;
+    }
+    return command;
+  }
+
+  /** Returns the number of arguments in the line. */
+  public int argumentCount() {
+    return arguments.size();
+  }
+
+  /** Returns the argument at the given index without any leading colon. */
+  @Nonnull
+  public String argument(int index) {
+    return arguments.get(index);
+  }
+
+  /** Returns the arguments of the line. */
+  @Nonnull
+  public List<String> arguments() {
+    return arguments;
+  }
+
+  /** Returns the line as it was given to the tokenizer. */
+  @Nonnull
+  @Override
+  public String toString() {
+    return chars != null ? chars : MessageTokens.decode(bytes, 0, bytes.length);
+  }
+}
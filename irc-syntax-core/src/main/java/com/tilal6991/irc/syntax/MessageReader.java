@@ -0,0 +1,138 @@
+package com.tilal6991.irc.syntax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Pull based reader of the IRC lines in a stream of bytes. Each call to {@link #next()} returns the
+ * same {@link MessageTokens} cursor filled with the next line, so inspecting a line and dropping
+ * it costs nothing beyond tokenizing it; {@link MessageTokens#copy()} turns the lines which need
+ * to be kept into immutable {@link Message}s.
+ *
+ * <p>A typical read loop looks like:
+ *
+ * <pre>{@code
+ * MessageTokens line;
+ * while ((line = reader.next()) != null) {
+ *   if (line.commandId() == Commands.PRIVMSG) {
+ *     kept.add(line.copy());
+ *   }
+ * }
+ * }</pre>
+ *
+ * <p>Lines are framed as by {@link LineFramer}; lines which are too long are skipped and counted
+ * by {@link #oversizedLines()}. Instances are not thread safe.
+ */
+public final class MessageReader {
+
+  private final InputStream stream;
+  private final ReadableByteChannel channel;
+  private final CommandSet interest;
+  private final LineFramer framer = LineFramer.pulling(LineFramer.DEFAULT_MAX_LINE_LENGTH);
+  private final MessageTokens tokens = new MessageTokens();
+
+  private boolean endOfStream;
+  private long oversizedLines;
+
+  /**
+   * Creates a reader of every line in the stream.
+   *
+   * @param stream the stream to read from.
+   */
+  public MessageReader(@Nonnull InputStream stream) {
+    this(stream, CommandSet.all());
+  }
+
+  /**
+   * Creates a reader which skips lines whose command is not in the interest set as soon as their
+   * command has been read.
+   *
+   * @param stream the stream to read from.
+   * @param interest the commands of the lines to return.
+   */
+  public MessageReader(@Nonnull InputStream stream, @Nonnull CommandSet interest) {
+    this.stream = stream;
+    this.channel = null;
+    this.interest = interest;
+  }
+
+  /**
+   * Creates a reader of every line in the channel.
+   *
+   * @param channel the channel to read from; may be non-blocking.
+   */
+  public MessageReader(@Nonnull ReadableByteChannel channel) {
+    this(channel, CommandSet.all());
+  }
+
+  /**
+   * Creates a reader which skips lines whose command is not in the interest set as soon as their
+   * command has been read.
+   *
+   * @param channel the channel to read from; may be non-blocking.
+   * @param interest the commands of the lines to return.
+   */
+  public MessageReader(@Nonnull ReadableByteChannel channel, @Nonnull CommandSet interest) {
+    this.stream = null;
+    this.channel = channel;
+    this.interest = interest;
+  }
+
+  /**
+   * Returns the next line, reading from the stream as needed. The cursor returned is the same for
+   * every line and is only valid until the next call.
+   *
+   * <p>A line which cannot be tokenized is consumed before its error is thrown so reading can
+   * carry on with the following line.
+   *
+   * @return the next line or null if the end of the stream has been reached or, for non-blocking
+   *     channels, no complete line is available yet; {@link #isAtEnd()} tells the two apart.
+   * @throws IOException if the stream throws.
+   * @throws ParseError if the line cannot be tokenized.
+   */
+  @Nullable
+  public MessageTokens next() throws IOException {
+    while (true) {
+      while (framer.nextLine(endOfStream)) {
+        if (framer.lineOversized()) {
+          oversizedLines++;
+        } else if (MessageTokenizer.tokenize(
+            framer.buffer(), framer.lineOffset(), framer.lineLength(), tokens, interest)) {
+          return tokens;
+        }
+      }
+      if (endOfStream) {
+        return null;
+      }
+
+      int read = stream == null ? framer.fill(channel) : framer.fill(stream);
+      if (read == -1) {
+        endOfStream = true;
+      } else if (read == 0) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Returns the cursor filled by {@link #next()}. After a {@link ParseError} has been thrown it
+   * still holds the line which failed, so {@link MessageTokens#line()} can be reported with it.
+   */
+  @Nonnull
+  public MessageTokens tokens() {
+    return tokens;
+  }
+
+  /** Returns whether the end of the stream has been reached. */
+  public boolean isAtEnd() {
+    return endOfStream;
+  }
+
+  /** Returns the number of lines skipped so far for being longer than the maximum line length. */
+  public long oversizedLines() {
+    return oversizedLines;
+  }
+}
@@ -0,0 +1,271 @@
+package com.tilal6991.irc.syntax;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * Splits long text into pieces which each fit in a single PRIVMSG or NOTICE line. Pieces are
+ * measured by the length of their UTF-8 encoding, computed in a single pass over the chars without
+ * encoding them, and are handed out as ranges of the text so no intermediate strings are created.
+ *
+ * <p>A piece never ends inside a surrogate pair, a grapheme (a character followed by combining
+ * marks, emoji modifiers or joined by a zero width joiner, or a pair of regional indicators) or an
+ * mIRC colour code, unless the grapheme or code alone is longer than a piece. Where possible,
+ * pieces end after the last space which fits. Line breaks in the text always end a piece and are
+ * dropped along with any empty pieces.
+ */
+public final class MessageSplitter {
+
+  private static final char ZERO_WIDTH_JOINER = '\u200D';
+  private static final char COLOR = '\u0003';
+  private static final char HEX_COLOR = '\u0004';
+
+  private MessageSplitter() {
+    // No instances of MessageSplitter.
+  }
+
+  /**
+   * Returns the number of bytes available for the text of a line once the server has added the
+   * prefix of the sender to it, i.e. the room left in
+   * {@code :<prefix> <command> <target> :<text>\r\n}.
+   *
+   * @param prefixLength the length in bytes of the prefix the server will relay the line with,
+   *     usually {@code nick!user@host}, or 0 if it will not add one.
+   * @param command the command of the line.
+   * @param target the target of the line.
+   * @return the maximum length of the text in bytes.
+   * @throws IllegalArgumentException if there is no room for any text.
+   */
+  public static int maxTextLength(
+      int prefixLength, @Nonnull CharSequence command, @Nonnull CharSequence target) {
+    int used = command.length() + 1 + utf8Length(target, 0, target.length()) + 2 + 2;
+    if (prefixLength != 0) {
+      used += prefixLength + 2;
+    }
+    int length = LineFramer.MAX_MESSAGE_LENGTH - used;
+    if (length < 4) {
+      throw new IllegalArgumentException("No room left for text: " + length);
+    }
+    return length;
+  }
+
+  /**
+   * Splits the text into pieces of at most the given number of bytes.
+   *
+   * @param text the text to split.
+   * @param maxLength the maximum length of each piece in bytes, at least 4 so that any character
+   *     fits.
+   * @param callback the callback to pass each piece to.
+   * @return the number of pieces.
+   */
+  public static int split(@Nonnull CharSequence text, int maxLength, @Nonnull Callback callback) {
+    checkMaxLength(maxLength);
+
+    int count = 0;
+    int length = text.length();
+    for (int start = skipLineBreaks(text, 0); start < length; ) {
+      int end = pieceEnd(text, start, maxLength);
+      callback.onPiece(text, start, end);
+      count++;
+      start = skipLineBreaks(text, end);
+    }
+    return count;
+  }
+
+  /**
+   * Writes the text into the buffer as consecutive lines with the given command and target, each
+   * small enough to be relayed by the server with a prefix of the given length.
+   *
+   * @param writer the writer to encode the lines with.
+   * @param buffer the buffer to write the lines to.
+   * @param prefixLength the length in bytes of the prefix the server will relay each line with.
+   * @param commandId the identifier of the command, usually {@link Commands#PRIVMSG} or
+   *     {@link Commands#NOTICE}.
+   * @param target the target of each line.
+   * @param text the text to split.
+   * @return the number of lines written.
+   * @throws java.nio.BufferOverflowException if the buffer is too small for the lines; any lines
+   *     already written are kept.
+   */
+  public static int write(@Nonnull MessageWriter writer,
+      @Nonnull ByteBuffer buffer,
+      int prefixLength,
+      int commandId,
+      @Nonnull CharSequence target,
+      @Nonnull CharSequence text) {
+    String command = Commands.name(commandId);
+    if (command == null) {
+      throw new IllegalArgumentException("Command has no name: " + commandId);
+    }
+    int maxLength = maxTextLength(prefixLength, command, target);
+
+    int count = 0;
+    int length = text.length();
+    for (int start = skipLineBreaks(text, 0); start < length; ) {
+      int end = pieceEnd(text, start, maxLength);
+      writer.start(buffer).command(command).argument(target).trailing(text, start, end).end();
+      count++;
+      start = skipLineBreaks(text, end);
+    }
+    return count;
+  }
+
+  /** Returns the index after the last char of the piece starting at the given index. */
+  static int pieceEnd(CharSequence text, int start, int maxLength) {
+    int length = text.length();
+    int bytes = 0;
+    // The latest ends allowed by each rule, from most to least preferred.
+    int afterSpace = -1;
+    int grapheme = -1;
+    int codePoint = -1;
+
+    int previous = -1;
+    int regionalIndicators = 0;
+    int i = start;
+    while (i < length) {
+      char c = text.charAt(i);
+      if (c == '\r' || c == '\n') {
+        return i;
+      }
+
+      int unitEnd;
+      int unitBytes;
+      int current;
+      if (c == COLOR || c == HEX_COLOR) {
+        // Formatting codes are written as one unit so their digits are never separated.
+        unitEnd = colorEnd(text, i, c == HEX_COLOR);
+        unitBytes = unitEnd - i;
+        current = c;
+      } else {
+        current = Character.codePointAt(text, i);
+        unitEnd = i + Character.charCount(current);
+        unitBytes = utf8Length(current);
+      }
+
+      if (i != start) {
+        codePoint = i;
+        if (isGraphemeBoundary(previous, current, regionalIndicators)) {
+          grapheme = i;
+          if (previous == ' ') {
+            afterSpace = i;
+          }
+        }
+      }
+      if (bytes + unitBytes > maxLength) {
+        if (i == start) {
+          // Only a colour code can be longer than a piece and it is ASCII so is cut at the limit.
+          return start + maxLength;
+        }
+        return afterSpace != -1 ? afterSpace : grapheme != -1 ? grapheme : codePoint;
+      }
+
+      bytes += unitBytes;
+      regionalIndicators = isRegionalIndicator(current) ? regionalIndicators + 1 : 0;
+      previous = current;
+      i = unitEnd;
+    }
+    return length;
+  }
+
+  private static boolean isGraphemeBoundary(int previous, int current, int regionalIndicators) {
+    if (previous == ZERO_WIDTH_JOINER || isExtension(current)) {
+      return false;
+    }
+    // Regional indicators pair up into flags.
+    return !isRegionalIndicator(current) || regionalIndicators % 2 == 0;
+  }
+
+  private static boolean isExtension(int codePoint) {
+    if (codePoint == ZERO_WIDTH_JOINER
+        || codePoint >= 0x1F3FB && codePoint <= 0x1F3FF
+        || codePoint >= 0xE0020 && codePoint <= 0xE007F) {
+      // Emoji modifiers and tag characters.
+      return true;
+    }
+    int type = Character.getType(codePoint);
+    // Variation selectors are non spacing marks.
+    return type == Character.NON_SPACING_MARK
+        || type == Character.ENCLOSING_MARK
+        || type == Character.COMBINING_SPACING_MARK;
+  }
+
+  private static boolean isRegionalIndicator(int codePoint) {
+    return codePoint >= 0x1F1E6 && codePoint <= 0x1F1FF;
+  }
+
+  /** Returns the index after a colour code of the form ^C[fg[,bg]] or ^D[rrggbb[,rrggbb]]. */
+  private static int colorEnd(CharSequence text, int start, boolean hex) {
+    int maxDigits = hex ? 6 : 2;
+    int end = digitsEnd(text, start + 1, maxDigits, hex);
+    if (end != start + 1 && end < text.length() && text.charAt(end) == ',') {
+      // The comma is only part of the code if a background follows it.
+      int background = digitsEnd(text, end + 1, maxDigits, hex);
+      if (background != end + 1) {
+        end = background;
+      }
+    }
+    return end;
+  }
+
+  private static int digitsEnd(CharSequence text, int start, int maxDigits, boolean hex) {
+    int end = start;
+    while (end < text.length() && end - start < maxDigits && isDigit(text.charAt(end), hex)) {
+      end++;
+    }
+    // Hex colours are only recognised with all six digits.
+    return hex && end - start != maxDigits ? start : end;
+  }
+
+  private static boolean isDigit(char c, boolean hex) {
+    return c >= '0' && c <= '9' || hex && (c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F');
+  }
+
+  private static int skipLineBreaks(CharSequence text, int index) {
+    while (index < text.length() && (text.charAt(index) == '\r' || text.charAt(index) == '\n')) {
+      index++;
+    }
+    return index;
+  }
+
+  private static void checkMaxLength(int maxLength) {
+    if (maxLength < 4) {
+      throw new IllegalArgumentException("Max length must be at least 4: " + maxLength);
+    }
+  }
+
+  /** Returns the length of the range once encoded as UTF-8 by {@link MessageWriter}. */
+  static int utf8Length(CharSequence chars, int start, int end) {
+    int bytes = 0;
+    for (int i = start; i < end; ) {
+      int codePoint = Character.codePointAt(chars, i);
+      bytes += utf8Length(codePoint);
+      i += Character.charCount(codePoint);
+    }
+    return bytes;
+  }
+
+  private static int utf8Length(int codePoint) {
+    if (codePoint < 0x80) {
+      return 1;
+    } else if (codePoint < 0x800) {
+      return 2;
+    } else if (codePoint >= 0x10000) {
+      return 4;
+    }
+    // Unpaired surrogates are written as '?'.
+    return Character.isSurrogate((char) codePoint) ? 1 : 3;
+  }
+
+  /** Callback class which will be invoked with each piece of the text. */
+  public interface Callback {
+
+    /**
+     * Callback method for a piece of the text.
+     *
+     * @param text the text being split.
+     * @param start the index of the first char of the piece.
+     * @param end the index after the last char of the piece.
+     */
+    void onPiece(@Nonnull CharSequence text, int start, int end);
+  }
+}
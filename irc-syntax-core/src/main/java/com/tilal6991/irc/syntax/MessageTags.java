@@ -0,0 +1,360 @@
+package com.tilal6991.irc.syntax;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * View over the IRCv3 tags of a line. Only the boundaries of each tag and the position of the
+ * {@code =} separating its key and value are recorded when the line is tokenized; looking up a key
+ * compares against the line in place and values are only unescaped when they are read.
+ *
+ * <p>For compatibility, this is also a list of the raw {@code key[=value]} tags in the order they
+ * appeared in the line. Callbacks declare their tags as such a list; {@link #of(List)} gives
+ * access to the lookups without copying the tags handed out by this library.
+ *
+ * <p>Views obtained from {@link MessageTokens#tags()} are reused for every line tokenized into that
+ * cursor and must not be kept beyond the current line.
+ */
+public final class MessageTags extends AbstractList<String> implements RandomAccess {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  // Kinds of views handed out for each tag.
+  private static final int RAW = 0;
+  private static final int KEY = 1;
+  private static final int VALUE = 2;
+  private static final int KINDS = 3;
+
+  private CharSequence chars;
+  private byte[] bytes;
+  private int shift;
+
+  private int count;
+  private int[] starts;
+  private int[] keyEnds;
+  private int[] ends;
+
+  // Created on first use as views are not needed for plain lookups.
+  private TokenSlice[] slices;
+
+  MessageTags() {
+    this(INITIAL_CAPACITY);
+  }
+
+  private MessageTags(int capacity) {
+    starts = new int[capacity];
+    keyEnds = new int[capacity];
+    ends = new int[capacity];
+  }
+
+  /**
+   * Creates tags from the raw tags section of a line, i.e. {@code key[=value][;key[=value]]*}
+   * without the leading {@code @}.
+   *
+   * @param rawTags the tags to parse.
+   */
+  @Nonnull
+  public static MessageTags parse(@Nonnull String rawTags) {
+    MessageTags tags = new MessageTags();
+    tags.reset(rawTags, null, 0);
+
+    int pos = 0;
+    int end = rawTags.indexOf(';');
+    while (end != -1) {
+      tags.add(pos, end);
+      pos = end + 1;
+      end = rawTags.indexOf(';', pos);
+    }
+    tags.add(pos, rawTags.length());
+    return tags;
+  }
+
+  /**
+   * Returns the given raw {@code key[=value]} tags as tags. The list itself is returned if it
+   * already is one, as are the tags handed to every callback in this library; any other list is
+   * copied.
+   *
+   * @param rawTags the tags to view.
+   */
+  @Nonnull
+  public static MessageTags of(@Nonnull List<String> rawTags) {
+    if (rawTags instanceof MessageTags) {
+      return (MessageTags) rawTags;
+    }
+
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0, size = rawTags.size(); i < size; i++) {
+      if (i != 0) {
+        builder.append(';');
+      }
+      builder.append(rawTags.get(i));
+    }
+
+    MessageTags tags = new MessageTags(Math.max(rawTags.size(), 1));
+    tags.reset(builder.toString(), null, 0);
+    int start = 0;
+    for (int i = 0, size = rawTags.size(); i < size; i++) {
+      int end = start + rawTags.get(i).length();
+      tags.add(start, end);
+      start = end + 1;
+    }
+    return tags;
+  }
+
+  /** Returns the raw {@code key[=value]} tag at the given index. */
+  @Override
+  public String get(int index) {
+    checkIndex(index);
+    return MessageTokens.substring(chars, bytes, starts[index], ends[index]);
+  }
+
+  @Override
+  public int size() {
+    return count;
+  }
+
+  /** Returns whether a tag with the given key is present. */
+  public boolean has(@Nonnull String key) {
+    return indexOfKey(key) != -1;
+  }
+
+  /**
+   * Returns the unescaped value of the tag with the given key. Tags which are present without a
+   * value have an empty value. If the key is present more than once, the last one is used.
+   *
+   * @param key the key of the tag, including any vendor prefix or client-only {@code +} marker.
+   * @return the unescaped value or null if the tag is not present.
+   */
+  @Nullable
+  public String get(@Nonnull String key) {
+    int index = indexOfKey(key);
+    return index == -1 ? null : value(index);
+  }
+
+  /**
+   * Returns the index of the tag with the given key or -1 if it is not present. If the key is
+   * present more than once, the index of the last one is returned.
+   */
+  public int indexOfKey(@Nonnull String key) {
+    int length = key.length();
+    for (int i = count - 1; i >= 0; i--) {
+      int start = starts[i];
+      if (keyEnds[i] - start == length && regionMatches(start, key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the key of the tag at the given index. */
+  @Nonnull
+  public CharSequence key(int index) {
+    checkIndex(index);
+    return slice(index, KEY).set(chars, bytes, starts[index], keyEnds[index]);
+  }
+
+  /** Returns the value of the tag at the given index as it appears in the line, i.e. escaped. */
+  @Nonnull
+  public CharSequence rawValue(int index) {
+    checkIndex(index);
+    int valueStart = Math.min(keyEnds[index] + 1, ends[index]);
+    return slice(index, VALUE).set(chars, bytes, valueStart, ends[index]);
+  }
+
+  /** Returns the unescaped value of the tag at the given index. */
+  @Nonnull
+  public String value(int index) {
+    checkIndex(index);
+    int valueStart = Math.min(keyEnds[index] + 1, ends[index]);
+    String raw = MessageTokens.substring(chars, bytes, valueStart, ends[index]);
+    if (raw.indexOf('\\') == -1) {
+      return raw;
+    }
+    return appendUnescaped(raw, new StringBuilder(raw.length())).toString();
+  }
+
+  /**
+   * Appends the unescaped value of the tag at the given index to the builder. Unlike {@link
+   * #value(int)} this does not allocate for tags in lines which are pure ASCII.
+   */
+  @Nonnull
+  public StringBuilder appendValue(int index, @Nonnull StringBuilder builder) {
+    return appendUnescaped(rawValue(index), builder);
+  }
+
+  /**
+   * Returns a copy of these tags which stays valid after the line they came from is reused. Only
+   * the offsets and, for byte lines, the bytes of the tags section are copied. Offsets reported by
+   * the copy are relative to the start of the tags section.
+   */
+  @Nonnull
+  public MessageTags copy() {
+    MessageTags copy = new MessageTags(Math.max(count, 1));
+    if (count == 0) {
+      return copy;
+    }
+
+    int from = starts[0];
+    int to = ends[count - 1];
+    if (bytes == null) {
+      copy.reset(chars.subSequence(from, to).toString(), null, 0);
+    } else {
+      copy.reset(null, Arrays.copyOfRange(bytes, from, to), 0);
+    }
+    for (int i = 0; i < count; i++) {
+      copy.add(starts[i] - from, keyEnds[i] - from, ends[i] - from);
+    }
+    return copy;
+  }
+
+  /**
+   * Returns a copy of these tags over a copy of the line which starts at the given offset of the
+   * original, without copying the tags section again.
+   */
+  @Nonnull
+  MessageTags copy(CharSequence chars, byte[] bytes, int from) {
+    MessageTags copy = new MessageTags(Math.max(count, 1));
+    copy.reset(chars, bytes, 0);
+    for (int i = 0; i < count; i++) {
+      copy.add(starts[i] - from, keyEnds[i] - from, ends[i] - from);
+    }
+    return copy;
+  }
+
+  /** Returns the offset in the line of the first character of the tag at the given index. */
+  public int start(int index) {
+    checkIndex(index);
+    return starts[index] - shift;
+  }
+
+  /** Returns the offset in the line just after the last character of the tag at the index. */
+  public int end(int index) {
+    checkIndex(index);
+    return ends[index] - shift;
+  }
+
+  void reset(CharSequence chars, byte[] bytes, int shift) {
+    this.chars = chars;
+    this.bytes = bytes;
+    this.shift = shift;
+    this.count = 0;
+  }
+
+  /** Drops every reference to the line, including those held by the views handed out. */
+  void detach() {
+    reset(null, null, 0);
+    if (slices != null) {
+      for (TokenSlice slice : slices) {
+        if (slice != null) {
+          slice.set(null, null, 0, 0);
+        }
+      }
+    }
+  }
+
+  void add(int start, int end) {
+    int keyEnd = end;
+    for (int i = start; i < end; i++) {
+      if (at(i) == '=') {
+        keyEnd = i;
+        break;
+      }
+    }
+    add(start, keyEnd, end);
+  }
+
+  void add(int start, int keyEnd, int end) {
+    if (count == starts.length) {
+      int capacity = count * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      keyEnds = Arrays.copyOf(keyEnds, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+    }
+    starts[count] = start;
+    keyEnds[count] = keyEnd;
+    ends[count] = end;
+    count++;
+  }
+
+  @Nonnull
+  TokenSlice raw(int index) {
+    checkIndex(index);
+    return slice(index, RAW).set(chars, bytes, starts[index], ends[index]);
+  }
+
+  private TokenSlice slice(int index, int kind) {
+    int slot = index * KINDS + kind;
+    if (slices == null) {
+      slices = new TokenSlice[starts.length * KINDS];
+    } else if (slot >= slices.length) {
+      slices = Arrays.copyOf(slices, starts.length * KINDS);
+    }
+
+    TokenSlice slice = slices[slot];
+    if (slice == null) {
+      slice = slices[slot] = new TokenSlice();
+    }
+    return slice;
+  }
+
+  private int at(int index) {
+    return bytes == null ? chars.charAt(index) : bytes[index] & 0xFF;
+  }
+
+  private boolean regionMatches(int start, String key) {
+    for (int i = 0, length = key.length(); i < length; i++) {
+      char c = key.charAt(i);
+      // Keys are ASCII so any other character can never match a byte in the line.
+      if (at(start + i) != c || bytes != null && c > 0x7F) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Count: " + count);
+    }
+  }
+
+  private static StringBuilder appendUnescaped(CharSequence raw, StringBuilder builder) {
+    for (int i = 0, length = raw.length(); i < length; i++) {
+      char c = raw.charAt(i);
+      if (c != '\\') {
+        builder.append(c);
+        continue;
+      }
+
+      // A trailing backslash is dropped.
+      if (++i == length) {
+        break;
+      }
+
+      char escaped = raw.charAt(i);
+      switch (escaped) {
+        case ':':
+          builder.append(';');
+          break;
+        case 's':
+          builder.append(' ');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        default:
+          // Covers \\ as well as any invalid escapes which are unescaped to the character itself.
+          builder.append(escaped);
+          break;
+      }
+    }
+    return builder;
+  }
+}
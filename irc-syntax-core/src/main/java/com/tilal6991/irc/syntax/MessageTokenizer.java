@@ -1,7 +1,6 @@
 package com.tilal6991.irc.syntax;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.ByteBuffer;
 import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -9,6 +8,14 @@ import javax.annotation.Nullable;
 /** Tokenizer which is able to break an IRC line into its constituent parts. */
 public class MessageTokenizer {
 
+  // Cursor reused by the callback methods of each thread; it is detached after every line.
+  private static final ThreadLocal<MessageTokens> CURSORS = new ThreadLocal<MessageTokens>() {
+    @Override
+    protected MessageTokens initialValue() {
+      return new MessageTokens();
+    }
+  };
+
   // No instances of tokenizer.
   private MessageTokenizer() {
   }
@@ -21,94 +28,260 @@ public class MessageTokenizer {
    * @throws IllegalArgumentException if an error occurs in the parsing.
    */
   public static <T> T tokenize(@Nonnull String line, @Nonnull Callback<T> callback) {
-    if (line.isEmpty()) {
-      throw new IllegalArgumentException("Empty line cannot be parsed.");
+    MessageTokens tokens = CURSORS.get();
+    try {
+      tokenize(line, tokens);
+      return dispatch(tokens, callback);
+    } finally {
+      tokens.detach();
     }
+  }
 
-    String trimmed = line.trim();
-    int pos = 0;
-    int end;
+  /**
+   * Tokenizes an IRC line held in a byte buffer as UTF-8. Behaves exactly like {@link
+   * #tokenize(byte[], int, int, Callback)}; buffers without a backing array are copied first.
+   *
+   * @param buffer the buffer containing the IRC line.
+   * @param offset the absolute index of the first byte of the line in the buffer.
+   * @param length the number of bytes in the line.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static <T> T tokenize(
+      @Nonnull ByteBuffer buffer, int offset, int length, @Nonnull Callback<T> callback) {
+    MessageTokens tokens = CURSORS.get();
+    try {
+      tokenize(buffer, offset, length, tokens);
+      return dispatch(tokens, callback);
+    } finally {
+      tokens.detach();
+    }
+  }
 
-    List<String> tags;
-    if (trimmed.charAt(pos) != '@') {
-      tags = null;
-    } else {
-      tags = new ArrayList<>();
+  /**
+   * Tokenizes an IRC line encoded as UTF-8. The line is never decoded as a whole: delimiters are
+   * found by scanning the raw bytes and the tags and arguments are only decoded when the callback
+   * asks for them. The callback will be invoked synchronously.
+   *
+   * @param line the array containing the IRC line.
+   * @param offset the index of the first byte of the line.
+   * @param length the number of bytes in the line.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static <T> T tokenize(
+      @Nonnull byte[] line, int offset, int length, @Nonnull Callback<T> callback) {
+    MessageTokens tokens = CURSORS.get();
+    try {
+      tokenize(line, offset, length, tokens);
+      return dispatch(tokens, callback);
+    } finally {
+      tokens.detach();
+    }
+  }
 
-      // Consume the @ character.
-      pos += 1;
+  /**
+   * Tokenizes an IRC line into the given cursor, replacing whatever it previously held. No objects
+   * are allocated once the cursor has grown to fit the line.
+   *
+   * @param line an IRC line to tokenize.
+   * @param tokens the cursor to fill with the offsets of the tokens.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static void tokenize(@Nonnull CharSequence line, @Nonnull MessageTokens tokens) {
+    tokenize(line, tokens, CommandSet.all());
+  }
 
-      // Find out where all the tags end.
-      int allTagsEnd = trimmed.indexOf(' ', pos);
-      if (allTagsEnd == -1) {
-        throw new IllegalArgumentException("Unable to tokenize message without command.");
-      }
+  /**
+   * Tokenizes an IRC line into the given cursor unless its command is not in the interest set. In
+   * that case tokenizing stops once the command has been read: the cursor holds the prefix and
+   * command of the line but no tags or arguments.
+   *
+   * @param line an IRC line to tokenize.
+   * @param tokens the cursor to fill with the offsets of the tokens.
+   * @param interest the commands to fully tokenize.
+   * @return whether the line was fully tokenized.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static boolean tokenize(
+      @Nonnull CharSequence line, @Nonnull MessageTokens tokens, @Nonnull CommandSet interest) {
+    tokens.reset(line, null, 0);
+    return scan(tokens, 0, line.length(), interest);
+  }
 
-      // Extract all non-final tags.
-      end = trimmed.indexOf(';', pos);
-      while (end != -1 && end < allTagsEnd) {
-        tags.add(trimmed.substring(pos, end));
-        pos = end + 1;
-        end = trimmed.indexOf(';', pos);
-      }
+  /**
+   * Tokenizes an IRC line encoded as UTF-8 into the given cursor, replacing whatever it previously
+   * held. No objects are allocated once the cursor has grown to fit the line.
+   *
+   * @param line the array containing the IRC line.
+   * @param offset the index of the first byte of the line.
+   * @param length the number of bytes in the line.
+   * @param tokens the cursor to fill with the offsets of the tokens.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static void tokenize(
+      @Nonnull byte[] line, int offset, int length, @Nonnull MessageTokens tokens) {
+    tokenize(line, offset, length, tokens, CommandSet.all());
+  }
 
-      // Add the last tag.
-      end = allTagsEnd;
-      tags.add(trimmed.substring(pos, end));
+  /**
+   * Tokenizes an IRC line encoded as UTF-8 into the given cursor unless its command is not in the
+   * interest set, in which case tokenizing stops once the command has been read.
+   *
+   * @param line the array containing the IRC line.
+   * @param offset the index of the first byte of the line.
+   * @param length the number of bytes in the line.
+   * @param tokens the cursor to fill with the offsets of the tokens.
+   * @param interest the commands to fully tokenize.
+   * @return whether the line was fully tokenized.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static boolean tokenize(@Nonnull byte[] line,
+      int offset,
+      int length,
+      @Nonnull MessageTokens tokens,
+      @Nonnull CommandSet interest) {
+    tokens.reset(null, line, 0);
+    return scan(tokens, offset, offset + length, interest);
+  }
+
+  /**
+   * Tokenizes an IRC line held in a byte buffer as UTF-8 into the given cursor. Offsets reported by
+   * the cursor are absolute indices into the buffer. Buffers without a backing array are copied
+   * into a scratch array owned by the cursor.
+   *
+   * @param buffer the buffer containing the IRC line.
+   * @param offset the absolute index of the first byte of the line in the buffer.
+   * @param length the number of bytes in the line.
+   * @param tokens the cursor to fill with the offsets of the tokens.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static void tokenize(
+      @Nonnull ByteBuffer buffer, int offset, int length, @Nonnull MessageTokens tokens) {
+    tokenize(buffer, offset, length, tokens, CommandSet.all());
+  }
+
+  /**
+   * Tokenizes an IRC line held in a byte buffer as UTF-8 into the given cursor unless its command
+   * is not in the interest set, in which case tokenizing stops once the command has been read.
+   *
+   * @param buffer the buffer containing the IRC line.
+   * @param offset the absolute index of the first byte of the line in the buffer.
+   * @param length the number of bytes in the line.
+   * @param tokens the cursor to fill with the offsets of the tokens.
+   * @param interest the commands to fully tokenize.
+   * @return whether the line was fully tokenized.
+   * @throws IllegalArgumentException if an error occurs in the parsing.
+   */
+  public static boolean tokenize(@Nonnull ByteBuffer buffer,
+      int offset,
+      int length,
+      @Nonnull MessageTokens tokens,
+      @Nonnull CommandSet interest) {
+    if (buffer.hasArray()) {
+      int arrayOffset = buffer.arrayOffset();
+      tokens.reset(null, buffer.array(), arrayOffset);
+      return scan(tokens, arrayOffset + offset, arrayOffset + offset + length, interest);
+    }
+
+    byte[] line = tokens.scratch(length);
+    for (int i = 0; i < length; i++) {
+      line[i] = buffer.get(offset + i);
+    }
+    tokens.reset(null, line, -offset);
+    return scan(tokens, 0, length, interest);
+  }
+
+  private static boolean scan(
+      MessageTokens tokens, int pos, int lineEnd, CommandSet interest) {
+    tokens.setLine(pos, lineEnd);
+
+    // Equivalent of String.trim() without copying the line.
+    while (pos < lineEnd && tokens.at(pos) <= ' ') {
+      pos++;
+    }
+    while (lineEnd > pos && tokens.at(lineEnd - 1) <= ' ') {
+      lineEnd--;
+    }
+    if (pos == lineEnd) {
+      throw ParseError.emptyLine();
+    }
+
+    int end;
+    int tagsStart = -1;
+    if (tokens.at(pos) == '@') {
+      // Consume the @ character. Unless every command is wanted, the tags are only recorded once
+      // the command is known to be of interest.
+      tagsStart = pos + 1;
+      int allTagsEnd = interest == CommandSet.all()
+          ? tokens.scanTags(tagsStart, lineEnd)
+          : tokens.indexOf(' ', tagsStart, lineEnd);
+      if (allTagsEnd == -1) {
+        throw ParseError.missingCommand();
+      }
 
       // Consume the last space.
-      pos = end + 1;
+      pos = allTagsEnd + 1;
     }
 
-    String prefix;
-    if (trimmed.charAt(pos) != ':') {
-      prefix = null;
-    } else {
+    if (tokens.at(pos) == ':') {
       // Consume the : character.
       pos += 1;
-      end = trimmed.indexOf(' ', pos);
+      end = tokens.indexOf(' ', pos, lineEnd);
 
       if (end == -1) {
-        throw new IllegalArgumentException("Unable to tokenize message without command.");
+        throw ParseError.missingCommand();
       }
-      prefix = trimmed.substring(pos, end);
+      tokens.setPrefix(pos, end);
       pos = end + 1;
     }
 
     // Parse the command.
-    end = indexOfSpaceOrLength(trimmed, pos);
-    String command = trimmed.substring(pos, end);
+    end = tokens.indexOf(' ', pos, lineEnd);
+    if (end == -1) {
+      end = lineEnd;
+    }
+    tokens.setCommand(pos, end);
     pos = end + 1;
 
+    if (interest != CommandSet.all()) {
+      if (!interest.contains(tokens.commandId())) {
+        return false;
+      } else if (tagsStart != -1) {
+        tokens.scanTags(tagsStart, lineEnd);
+      }
+    }
+
     // Parse the arguments.
-    List<String> arguments;
-    if (pos >= trimmed.length()) {
-      arguments = Collections.emptyList();
-    } else if (trimmed.charAt(pos) == ':') {
-      pos += 1;
-      arguments = Collections.singletonList(trimmed.substring(pos, trimmed.length()));
-    } else {
-      arguments = new ArrayList<>();
-      end = trimmed.indexOf(' ', pos);
-      while (end != -1) {
-        arguments.add(trimmed.substring(pos, end));
-        pos = end + 1;
-        // We're OK looking end + 1 because this string is trimmed.
-        if (trimmed.charAt(end + 1) == ':') {
-          // Consume the colon.
-          pos += 1;
-          break;
-        }
-        end = trimmed.indexOf(' ', pos);
+    if (pos >= lineEnd) {
+      return true;
+    } else if (tokens.at(pos) == ':') {
+      tokens.addArgument(pos + 1, lineEnd);
+      return true;
+    }
+
+    end = tokens.indexOf(' ', pos, lineEnd);
+    while (end != -1) {
+      tokens.addArgument(pos, end);
+      pos = end + 1;
+      // We're OK looking end + 1 because the line is trimmed.
+      if (tokens.at(end + 1) == ':') {
+        // Consume the colon.
+        pos += 1;
+        break;
       }
-      arguments.add(trimmed.substring(pos, trimmed.length()));
+      end = tokens.indexOf(' ', pos, lineEnd);
     }
-    return callback.onLineTokenized(tags, prefix, command, arguments);
+    tokens.addArgument(pos, lineEnd);
+    return true;
   }
 
-  private static int indexOfSpaceOrLength(String input, int pos) {
-    int end = input.indexOf(' ', pos);
-    return end == -1 ? input.length() : end;
+  private static <T> T dispatch(MessageTokens tokens, Callback<T> callback) {
+    // Everything handed out is copied as the cursor is reused, including by a nested call made
+    // from the callback itself.
+    MessageTags tags = tokens.hasTags() ? tokens.tags().copy() : null;
+    String prefix = tokens.prefixString();
+    String command = tokens.commandString();
+    List<String> arguments = tokens.copyArguments();
+    return callback.onLineTokenized(tags, prefix, command, arguments);
   }
 
   /** Callback class which will be used when parsing is successful */
@@ -117,7 +290,8 @@ public class MessageTokenizer {
     /**
      * Callback method which will invoked when tokenization is successful.
      *
-     * @param tags tag as defined by IRCv3.2 message tags spec.
+     * @param tags tags as defined by IRCv3.2 message tags spec. Keys can be looked up through
+     *     {@link MessageTags#of(List)}.
      * @param command command as specified by RFC1459.
      * @param prefix prefix as specified by RFC1459.
      * @param arguments the arguments as specified by RFC1459.
@@ -127,4 +301,4 @@ public class MessageTokenizer {
         @Nonnull String command,
         @Nonnull List<String> arguments);
   }
-}
\ No newline at end of file
+}
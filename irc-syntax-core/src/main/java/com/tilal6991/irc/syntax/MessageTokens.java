@@ -0,0 +1,513 @@
+package com.tilal6991.irc.syntax;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reusable cursor over the tokens of a single IRC line. It is filled by the {@code tokenize}
+ * methods of {@link MessageTokenizer} which only record the start and end offsets of each token;
+ * the tokens are exposed as {@link CharSequence} views over the original line.
+ *
+ * <p>Once the internal arrays have grown to fit the largest line seen, tokenizing further lines
+ * into the same instance does not allocate. As a consequence, the views returned by this class are
+ * only valid until the next line is tokenized and must be copied (e.g. using {@code toString()})
+ * if they need to be kept. Instances are not thread safe.
+ */
+public final class MessageTokens {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int INITIAL_CAPACITY = 8;
+
+  private final ByteScanner scanner = new ByteScanner();
+
+  private CharSequence chars;
+  private byte[] bytes;
+  private byte[] scratch;
+  private int shift;
+
+  private int lineStart;
+  private int lineEnd;
+  private final TokenSlice lineSlice = new TokenSlice();
+
+  private final MessageTags tags = new MessageTags();
+
+  private int prefixStart;
+  private int prefixEnd;
+  private final TokenSlice prefixSlice = new TokenSlice();
+
+  // Offsets of the ! and @ in the prefix, only found once one of its parts is requested.
+  private boolean prefixSplit;
+  private int prefixBang;
+  private int prefixAt;
+  private final TokenSlice nickSlice = new TokenSlice();
+  private final TokenSlice userSlice = new TokenSlice();
+  private final TokenSlice hostSlice = new TokenSlice();
+
+  private int commandStart;
+  private int commandEnd;
+  private int commandId;
+  private final TokenSlice commandSlice = new TokenSlice();
+
+  private int argumentCount;
+  private int[] argumentStarts = new int[INITIAL_CAPACITY];
+  private int[] argumentEnds = new int[INITIAL_CAPACITY];
+  private TokenSlice[] argumentSlices = new TokenSlice[INITIAL_CAPACITY];
+
+  /** Returns the whole line given to the tokenizer, including any surrounding whitespace. */
+  @Nonnull
+  public CharSequence line() {
+    return lineSlice.set(chars, bytes, lineStart, lineEnd);
+  }
+
+  /** Returns whether the line contained IRCv3 tags. */
+  public boolean hasTags() {
+    return tags.size() != 0;
+  }
+
+  /** Returns the tags of the line; the view is empty if the line had no tags. */
+  @Nonnull
+  public MessageTags tags() {
+    return tags;
+  }
+
+  /** Returns the number of tags in the line. */
+  public int tagCount() {
+    return tags.size();
+  }
+
+  /** Returns the raw {@code key[=value]} tag at the given index. */
+  @Nonnull
+  public CharSequence tag(int index) {
+    return tags.raw(index);
+  }
+
+  /** Returns the offset in the line of the first character of the tag at the given index. */
+  public int tagStart(int index) {
+    return tags.start(index);
+  }
+
+  /** Returns the offset in the line just after the last character of the tag at the index. */
+  public int tagEnd(int index) {
+    return tags.end(index);
+  }
+
+  /** Returns whether the line contained a prefix. */
+  public boolean hasPrefix() {
+    return prefixStart != -1;
+  }
+
+  /** Returns the prefix of the line without the leading colon or null if there was none. */
+  @Nullable
+  public CharSequence prefix() {
+    return prefixStart == -1 ? null : prefixSlice.set(chars, bytes, prefixStart, prefixEnd);
+  }
+
+  /**
+   * Returns the nick of the prefix, or the whole prefix if it has no user or host, or null if there
+   * was no prefix.
+   */
+  @Nullable
+  public CharSequence prefixNick() {
+    if (prefixStart == -1) {
+      return null;
+    }
+    splitPrefix();
+    int end = Prefix.nickEnd(prefixBang, prefixAt, prefixEnd);
+    return nickSlice.set(chars, bytes, prefixStart, end);
+  }
+
+  /** Returns the user of the prefix or null if there was no prefix or it has no user. */
+  @Nullable
+  public CharSequence prefixUser() {
+    if (prefixStart == -1) {
+      return null;
+    }
+    splitPrefix();
+    if (prefixBang == -1) {
+      return null;
+    }
+    int end = prefixAt == -1 ? prefixEnd : prefixAt;
+    return userSlice.set(chars, bytes, prefixBang + 1, end);
+  }
+
+  /** Returns the host of the prefix or null if there was no prefix or it has no host. */
+  @Nullable
+  public CharSequence prefixHost() {
+    if (prefixStart == -1) {
+      return null;
+    }
+    splitPrefix();
+    return prefixAt == -1 ? null : hostSlice.set(chars, bytes, prefixAt + 1, prefixEnd);
+  }
+
+  /**
+   * Returns the prefix of the line from the given cache or null if there was no prefix. Prefixes
+   * already in the cache are returned without allocating.
+   */
+  @Nullable
+  public Prefix prefix(@Nonnull PrefixCache cache) {
+    return prefixStart == -1 ? null : cache.get(chars, bytes, prefixStart, prefixEnd);
+  }
+
+  /** Returns the offset of the first character of the prefix or -1 if there was no prefix. */
+  public int prefixStart() {
+    return prefixStart == -1 ? -1 : prefixStart - shift;
+  }
+
+  /** Returns the offset just after the prefix or -1 if there was no prefix. */
+  public int prefixEnd() {
+    return prefixStart == -1 ? -1 : prefixEnd - shift;
+  }
+
+  /** Returns the command of the line. */
+  @Nonnull
+  public CharSequence command() {
+    return commandSlice.set(chars, bytes, commandStart, commandEnd);
+  }
+
+  /** Returns the identifier of the command as given by {@link Commands}. */
+  public int commandId() {
+    return commandId;
+  }
+
+  /**
+   * Returns the command as a string. Known commands and numeric replies return a shared instance
+   * without allocating.
+   */
+  @Nonnull
+  public String commandString() {
+    String name = Commands.name(commandId);
+    return name == null ? substring(chars, bytes, commandStart, commandEnd) : name;
+  }
+
+  /**
+   * Returns the command as a string. Known commands and numeric replies return a shared instance
+   * and any other command is deduplicated through the given pool.
+   */
+  @Nonnull
+  public String commandString(@Nonnull StringPool pool) {
+    String name = Commands.name(commandId);
+    return name == null ? pool.intern(chars, bytes, commandStart, commandEnd) : name;
+  }
+
+  /** Returns the offset of the first character of the command. */
+  public int commandStart() {
+    return commandStart - shift;
+  }
+
+  /** Returns the offset just after the last character of the command. */
+  public int commandEnd() {
+    return commandEnd - shift;
+  }
+
+  /** Returns the number of arguments in the line. */
+  public int argumentCount() {
+    return argumentCount;
+  }
+
+  /** Returns the argument at the given index without any leading colon. */
+  @Nonnull
+  public CharSequence argument(int index) {
+    checkIndex(index, argumentCount);
+    TokenSlice slice = argumentSlices[index];
+    if (slice == null) {
+      slice = argumentSlices[index] = new TokenSlice();
+    }
+    return slice.set(chars, bytes, argumentStarts[index], argumentEnds[index]);
+  }
+
+  /** Returns the argument at the given index as a string. */
+  @Nonnull
+  public String argumentString(int index) {
+    checkIndex(index, argumentCount);
+    return substring(chars, bytes, argumentStarts[index], argumentEnds[index]);
+  }
+
+  /** Returns the argument at the given index as a string deduplicated through the given pool. */
+  @Nonnull
+  public String argumentString(int index, @Nonnull StringPool pool) {
+    checkIndex(index, argumentCount);
+    return pool.intern(chars, bytes, argumentStarts[index], argumentEnds[index]);
+  }
+
+  /** Returns the offset of the first character of the argument at the given index. */
+  public int argumentStart(int index) {
+    checkIndex(index, argumentCount);
+    return argumentStarts[index] - shift;
+  }
+
+  /** Returns the offset just after the last character of the argument at the given index. */
+  public int argumentEnd(int index) {
+    checkIndex(index, argumentCount);
+    return argumentEnds[index] - shift;
+  }
+
+  void reset(CharSequence chars, byte[] bytes, int shift) {
+    this.chars = chars;
+    this.bytes = bytes;
+    this.shift = shift;
+    this.tags.reset(chars, bytes, shift);
+    this.prefixStart = -1;
+    this.prefixSplit = false;
+    this.argumentCount = 0;
+    if (bytes != null) {
+      scanner.reset(bytes);
+    }
+  }
+
+  /**
+   * Drops every reference to the last line, including those held by the scanner and the views
+   * handed out, so a cursor kept for later does not keep a large line or read buffer alive. The
+   * scratch array belongs to the cursor and is kept.
+   */
+  void detach() {
+    reset(null, null, 0);
+    tags.detach();
+    scanner.clear();
+    lineSlice.set(null, null, 0, 0);
+    prefixSlice.set(null, null, 0, 0);
+    nickSlice.set(null, null, 0, 0);
+    userSlice.set(null, null, 0, 0);
+    hostSlice.set(null, null, 0, 0);
+    commandSlice.set(null, null, 0, 0);
+    for (TokenSlice slice : argumentSlices) {
+      if (slice != null) {
+        slice.set(null, null, 0, 0);
+      }
+    }
+  }
+
+  /** Returns a scratch array of at least the given size which is reused across lines. */
+  byte[] scratch(int length) {
+    if (scratch == null || scratch.length < length) {
+      scratch = new byte[Math.max(length, 512)];
+    }
+    return scratch;
+  }
+
+  int at(int index) {
+    return bytes == null ? chars.charAt(index) : bytes[index] & 0xFF;
+  }
+
+  int indexOf(char c, int pos, int end) {
+    if (bytes != null) {
+      return scanner.indexOf(pos, end, (byte) c);
+    }
+    for (int i = pos; i < end; i++) {
+      if (chars.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Records every tag in a single pass from pos until the space which ends the tags section.
+   *
+   * @return the index of the space ending the tags or -1 if the line has nothing after its tags.
+   */
+  int scanTags(int pos, int end) {
+    int tagStart = pos;
+    int keyEnd = -1;
+    while (true) {
+      int delimiter;
+      if (bytes != null) {
+        delimiter = scanner.indexOfAny(pos, end, (byte) ' ', (byte) ';', (byte) '=');
+      } else {
+        delimiter = indexOfTagDelimiter(pos, end);
+      }
+
+      if (delimiter == -1) {
+        return -1;
+      }
+
+      int c = at(delimiter);
+      if (c == '=') {
+        // Only the first = separates the key from the value.
+        if (keyEnd == -1) {
+          keyEnd = delimiter;
+        }
+      } else {
+        tags.add(tagStart, keyEnd == -1 ? delimiter : keyEnd, delimiter);
+        if (c == ' ') {
+          return delimiter;
+        }
+        tagStart = delimiter + 1;
+        keyEnd = -1;
+      }
+      pos = delimiter + 1;
+    }
+  }
+
+  private void splitPrefix() {
+    if (!prefixSplit) {
+      prefixBang = indexOf('!', prefixStart, prefixEnd);
+      prefixAt = indexOf('@', prefixBang == -1 ? prefixStart : prefixBang + 1, prefixEnd);
+      prefixSplit = true;
+    }
+  }
+
+  private int indexOfTagDelimiter(int pos, int end) {
+    for (int i = pos; i < end; i++) {
+      char c = chars.charAt(i);
+      if (c == ' ' || c == ';' || c == '=') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  void setLine(int start, int end) {
+    lineStart = start;
+    lineEnd = end;
+  }
+
+  void setPrefix(int start, int end) {
+    prefixStart = start;
+    prefixEnd = end;
+  }
+
+  void setCommand(int start, int end) {
+    commandStart = start;
+    commandEnd = end;
+    commandId = bytes == null
+        ? Commands.lookup(chars, start, end)
+        : Commands.lookup(bytes, start, end);
+  }
+
+  void addArgument(int start, int end) {
+    if (argumentCount == argumentStarts.length) {
+      int capacity = argumentCount * 2;
+      argumentStarts = Arrays.copyOf(argumentStarts, capacity);
+      argumentEnds = Arrays.copyOf(argumentEnds, capacity);
+      argumentSlices = Arrays.copyOf(argumentSlices, capacity);
+    }
+    argumentStarts[argumentCount] = start;
+    argumentEnds[argumentCount] = end;
+    argumentCount++;
+  }
+
+  /** Returns the prefix of the line as a string or null if there was none. */
+  @Nullable
+  public String prefixString() {
+    return prefixStart == -1 ? null : substring(chars, bytes, prefixStart, prefixEnd);
+  }
+
+  /**
+   * Returns the prefix of the line as a string shared through the given cache or null if there was
+   * none.
+   */
+  @Nullable
+  public String prefixString(@Nonnull PrefixCache cache) {
+    return prefixStart == -1 ? null : cache.get(chars, bytes, prefixStart, prefixEnd).toString();
+  }
+
+  /**
+   * Returns the prefix of the line as a string deduplicated through the given pool or null if there
+   * was none.
+   */
+  @Nullable
+  public String prefixString(@Nonnull StringPool pool) {
+    return prefixStart == -1 ? null : pool.intern(chars, bytes, prefixStart, prefixEnd);
+  }
+
+  /**
+   * Returns the arguments as a list which stays valid after this cursor is reused. Only the
+   * offsets and, for byte lines, the bytes of the arguments are copied; each argument is extracted
+   * when it is first requested.
+   */
+  @Nonnull
+  public List<String> copyArguments() {
+    return copyArguments(null);
+  }
+
+  /**
+   * Returns the arguments as a list like {@link #copyArguments()} does, except that each argument
+   * is deduplicated through the given pool when it is extracted.
+   */
+  @Nonnull
+  public List<String> copyArguments(@Nullable StringPool pool) {
+    return copyArguments(pool, 0, argumentCount);
+  }
+
+  /** Copies the arguments in the index range [from, to) as {@link #copyArguments(StringPool)}. */
+  @Nonnull
+  List<String> copyArguments(@Nullable StringPool pool, int from, int to) {
+    int size = to - from;
+    if (size <= 0) {
+      return Collections.emptyList();
+    }
+
+    int[] starts = Arrays.copyOfRange(argumentStarts, from, to);
+    int[] ends = Arrays.copyOfRange(argumentEnds, from, to);
+    int start = starts[0];
+    int end = ends[size - 1];
+    for (int i = 0; i < size; i++) {
+      starts[i] -= start;
+      ends[i] -= start;
+    }
+
+    if (bytes == null) {
+      String line = chars.subSequence(start, end).toString();
+      return new TokenList(line, null, starts, ends, size, pool);
+    }
+    byte[] copy = Arrays.copyOfRange(bytes, start, end);
+    return new TokenList(null, copy, starts, ends, size, pool);
+  }
+
+  /**
+   * Returns an immutable snapshot of the line which stays valid after this cursor is reused. Only
+   * the line itself and the offsets of its tokens are copied, so lines which are inspected through
+   * this cursor and then dropped never pay for a copy.
+   */
+  @Nonnull
+  public Message copy() {
+    String lineChars = null;
+    byte[] lineBytes = null;
+    if (bytes == null) {
+      lineChars = chars.subSequence(lineStart, lineEnd).toString();
+    } else {
+      lineBytes = Arrays.copyOfRange(bytes, lineStart, lineEnd);
+    }
+
+    int from = lineStart;
+    List<String> arguments = Collections.emptyList();
+    if (argumentCount != 0) {
+      int[] starts = new int[argumentCount];
+      int[] ends = new int[argumentCount];
+      for (int i = 0; i < argumentCount; i++) {
+        starts[i] = argumentStarts[i] - from;
+        ends[i] = argumentEnds[i] - from;
+      }
+      arguments = new TokenList(lineChars, lineBytes, starts, ends, argumentCount);
+    }
+
+    return new Message(lineChars,
+        lineBytes,
+        tags.copy(lineChars, lineBytes, from),
+        prefixStart == -1 ? -1 : prefixStart - from,
+        prefixEnd - from,
+        commandStart - from,
+        commandEnd - from,
+        commandId,
+        arguments);
+  }
+
+  static String substring(CharSequence chars, byte[] bytes, int start, int end) {
+    return bytes == null ? chars.subSequence(start, end).toString() : decode(bytes, start, end);
+  }
+
+  static String decode(@Nonnull byte[] bytes, int start, int end) {
+    return new String(bytes, start, end - start, UTF_8);
+  }
+
+  private static void checkIndex(int index, int count) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Count: " + count);
+    }
+  }
+}
@@ -0,0 +1,478 @@
+package com.tilal6991.irc.syntax;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Encoder of IRC lines, the counterpart of {@link MessageTokenizer}. A line is written as UTF-8
+ * straight into a caller supplied array or buffer, one part at a time:
+ *
+ * <pre>{@code
+ * int length = writer.start(buffer)
+ *     .tag("msgid", id)
+ *     .command(Commands.PRIVMSG)
+ *     .argument("#channel")
+ *     .argument(text)
+ *     .end();
+ * }</pre>
+ *
+ * <p>Tag values are escaped as specified by IRCv3 and the last argument is automatically written
+ * as a trailing argument, with a leading colon, if it is empty, contains a space or starts with a
+ * colon. The tags section may not be longer than {@link LineFramer#MAX_TAGS_LENGTH} bytes and the
+ * rest of the line, including the CRLF, not longer than {@link LineFramer#MAX_MESSAGE_LENGTH}
+ * bytes. Every line written can be tokenized back into the same tags, prefix, command and
+ * arguments, except that whitespace at the end of the last argument is lost as
+ * {@link MessageTokenizer} trims lines.
+ *
+ * <p>Writing does not allocate. Instances may be reused for any number of lines but are not
+ * thread safe.
+ */
+public final class MessageWriter {
+
+  private static final int MAX_LINE_LENGTH =
+      LineFramer.MAX_TAGS_LENGTH + LineFramer.MAX_MESSAGE_LENGTH;
+
+  private static final int IDLE = 0;
+  private static final int TAGS = 1;
+  private static final int PREFIX = 2;
+  private static final int ARGUMENTS = 3;
+  private static final int TRAILING = 4;
+
+  // Only allocated for the first line written to a direct buffer.
+  private byte[] scratch;
+
+  private byte[] out;
+  private ByteBuffer buffer;
+  private int start;
+  private int pos;
+  private int limit;
+  private int sectionLimit;
+  // The lower of both limits so that writing a byte needs a single check.
+  private int end;
+  private int state = IDLE;
+  private boolean hasTags;
+  private boolean hasCommand;
+
+  /**
+   * Starts a line at the given offset of the array. Bytes after the offset may have been
+   * overwritten even if the line is not ended successfully.
+   *
+   * @param buffer the array to write the line into.
+   * @param offset the index of the first byte of the line.
+   * @return this writer.
+   */
+  @Nonnull
+  public MessageWriter start(@Nonnull byte[] buffer, int offset) {
+    if (offset < 0 || offset > buffer.length) {
+      throw new IndexOutOfBoundsException("Offset: " + offset + ", Length: " + buffer.length);
+    }
+    begin(buffer, null, offset, buffer.length);
+    return this;
+  }
+
+  /**
+   * Starts a line at the position of the buffer. The position is only advanced by {@link #end()};
+   * bytes after it may have been overwritten even if the line is not ended successfully.
+   *
+   * @param buffer the buffer to write the line into.
+   * @return this writer.
+   */
+  @Nonnull
+  public MessageWriter start(@Nonnull ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      int offset = buffer.arrayOffset();
+      begin(buffer.array(), buffer, offset + buffer.position(), offset + buffer.limit());
+    } else {
+      // Direct buffers are written to in one go once the line is complete.
+      if (scratch == null) {
+        scratch = new byte[MAX_LINE_LENGTH];
+      }
+      begin(scratch, buffer, 0, Math.min(scratch.length, buffer.remaining()));
+    }
+    return this;
+  }
+
+  /**
+   * Writes a tag without a value.
+   *
+   * @param key the key of the tag, including any client prefix or vendor.
+   * @return this writer.
+   * @throws IllegalArgumentException if the key is not valid or the tags are too long.
+   */
+  @Nonnull
+  public MessageWriter tag(@Nonnull CharSequence key) {
+    return tag(key, null);
+  }
+
+  /**
+   * Writes a tag, escaping its value. An empty value is written as a tag without a value.
+   *
+   * @param key the key of the tag, including any client prefix or vendor.
+   * @param value the unescaped value of the tag or null if it has none.
+   * @return this writer.
+   * @throws IllegalArgumentException if the key or value is not valid or the tags are too long.
+   */
+  @Nonnull
+  public MessageWriter tag(@Nonnull CharSequence key, @Nullable CharSequence value) {
+    checkState(state == TAGS, "Tags must be written before the prefix and command.");
+    checkKey(key);
+
+    put(hasTags ? ';' : '@');
+    hasTags = true;
+    putAscii(key);
+    if (value != null && value.length() != 0) {
+      put('=');
+      putEscaped(value);
+    }
+    return this;
+  }
+
+  /**
+   * Writes the prefix of the line.
+   *
+   * @param prefix the prefix without the leading colon.
+   * @return this writer.
+   * @throws IllegalArgumentException if the prefix is empty or contains a space or line break.
+   */
+  @Nonnull
+  public MessageWriter prefix(@Nonnull CharSequence prefix) {
+    checkState(state == TAGS, "Prefix must be written once, before the command.");
+    if (prefix.length() == 0 || indexOfInvalid(prefix, 0, prefix.length(), true) != -1) {
+      throw new IllegalArgumentException("Invalid prefix: " + prefix);
+    }
+
+    endTags();
+    put(':');
+    putUtf8(prefix, 0, prefix.length());
+    put(' ');
+    state = PREFIX;
+    return this;
+  }
+
+  /**
+   * Writes the command of the line.
+   *
+   * @param command the command, made up of letters or three digits.
+   * @return this writer.
+   * @throws IllegalArgumentException if the command is not valid.
+   */
+  @Nonnull
+  public MessageWriter command(@Nonnull CharSequence command) {
+    checkState(state == TAGS || state == PREFIX, "Command must be written once.");
+    checkCommand(command);
+
+    endTags();
+    putAscii(command);
+    state = ARGUMENTS;
+    hasCommand = true;
+    return this;
+  }
+
+  /**
+   * Writes the command with the given identifier.
+   *
+   * @param commandId the identifier of the command as given by {@link Commands}.
+   * @return this writer.
+   * @throws IllegalArgumentException if the identifier has no name.
+   */
+  @Nonnull
+  public MessageWriter command(int commandId) {
+    String name = Commands.name(commandId);
+    if (name == null) {
+      throw new IllegalArgumentException("Command has no name: " + commandId);
+    }
+    return command(name);
+  }
+
+  /**
+   * Writes an argument, as a trailing argument if it needs to be. Any argument written after one
+   * which needed to be trailing is rejected.
+   *
+   * @param argument the argument without any leading colon.
+   * @return this writer.
+   * @throws IllegalArgumentException if the argument contains a line break or NUL, follows a
+   *     trailing argument or makes the line too long.
+   */
+  @Nonnull
+  public MessageWriter argument(@Nonnull CharSequence argument) {
+    int length = argument.length();
+    boolean trailing = length == 0 || argument.charAt(0) == ':' || indexOfSpace(argument) != -1;
+    return writeArgument(argument, 0, length, trailing);
+  }
+
+  /**
+   * Writes the last argument of the line with a leading colon even if it does not need one.
+   *
+   * @param argument the argument without the leading colon.
+   * @return this writer.
+   * @throws IllegalArgumentException if the argument contains a line break or NUL, follows a
+   *     trailing argument or makes the line too long.
+   */
+  @Nonnull
+  public MessageWriter trailing(@Nonnull CharSequence argument) {
+    return writeArgument(argument, 0, argument.length(), true);
+  }
+
+  /**
+   * Writes a range of the chars as the last argument of the line with a leading colon.
+   *
+   * @param chars the chars containing the argument.
+   * @param start the index of the first char of the argument.
+   * @param end the index after the last char of the argument.
+   * @return this writer.
+   * @throws IllegalArgumentException if the argument contains a line break or NUL, follows a
+   *     trailing argument or makes the line too long.
+   */
+  @Nonnull
+  public MessageWriter trailing(@Nonnull CharSequence chars, int start, int end) {
+    if (start < 0 || start > end || end > chars.length()) {
+      throw new IndexOutOfBoundsException(
+          "Start: " + start + ", End: " + end + ", Length: " + chars.length());
+    }
+    return writeArgument(chars, start, end, true);
+  }
+
+  /**
+   * Ends the line with CRLF.
+   *
+   * @return the number of bytes in the line, including the CRLF.
+   * @throws BufferOverflowException if the array or buffer is too small for the line.
+   */
+  public int end() {
+    checkState(hasCommand, "Command must be written before the line is ended.");
+
+    // The CRLF was reserved by the section limit of the arguments.
+    limitSection(limit);
+    put('\r');
+    put('\n');
+
+    int length = pos - start;
+    if (buffer != null) {
+      if (out == scratch) {
+        buffer.put(scratch, 0, length);
+      } else {
+        buffer.position(buffer.position() + length);
+      }
+    }
+    reset();
+    return length;
+  }
+
+  private MessageWriter writeArgument(
+      CharSequence argument, int start, int end, boolean trailing) {
+    checkState(state == ARGUMENTS, state == TRAILING
+        ? "No argument can follow a trailing argument."
+        : "Command must be written before the arguments.");
+    int invalid = indexOfInvalid(argument, start, end, false);
+    if (invalid != -1) {
+      throw new IllegalArgumentException("Invalid character at " + invalid + " of argument.");
+    }
+
+    put(' ');
+    if (trailing) {
+      put(':');
+      state = TRAILING;
+    }
+    putUtf8(argument, start, end);
+    return this;
+  }
+
+  private void begin(byte[] out, ByteBuffer buffer, int start, int limit) {
+    this.out = out;
+    this.buffer = buffer;
+    this.start = start;
+    this.pos = start;
+    this.limit = limit;
+    // The space which ends the tags must fit within their limit.
+    limitSection(start + LineFramer.MAX_TAGS_LENGTH - 1);
+    this.state = TAGS;
+    this.hasTags = false;
+    this.hasCommand = false;
+  }
+
+  private void reset() {
+    out = null;
+    buffer = null;
+    state = IDLE;
+  }
+
+  private void endTags() {
+    if (state != TAGS) {
+      return;
+    }
+    if (hasTags) {
+      limitSection(sectionLimit + 1);
+      put(' ');
+    }
+    // The CRLF must fit within the limit of the rest of the line.
+    limitSection(pos + LineFramer.MAX_MESSAGE_LENGTH - 2);
+  }
+
+  private void limitSection(int sectionLimit) {
+    this.sectionLimit = sectionLimit;
+    this.end = Math.min(sectionLimit, limit);
+  }
+
+  private void put(char c) {
+    put((byte) c);
+  }
+
+  private void put(byte b) {
+    if (pos == end) {
+      overflow();
+    }
+    out[pos++] = b;
+  }
+
+  private void overflow() {
+    // The buffer is checked first as it may end exactly where the line reaches its limit.
+    boolean bufferFull = pos == limit;
+    reset();
+    if (bufferFull) {
+      throw new BufferOverflowException();
+    }
+    throw new IllegalArgumentException("Line is longer than the maximum length.");
+  }
+
+  private void putAscii(CharSequence chars) {
+    for (int i = 0; i < chars.length(); i++) {
+      put(chars.charAt(i));
+    }
+  }
+
+  private void putEscaped(CharSequence value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case ';':
+          put('\\');
+          put(':');
+          break;
+        case ' ':
+          put('\\');
+          put('s');
+          break;
+        case '\\':
+          put('\\');
+          put('\\');
+          break;
+        case '\r':
+          put('\\');
+          put('r');
+          break;
+        case '\n':
+          put('\\');
+          put('n');
+          break;
+        case '\0':
+          reset();
+          throw new IllegalArgumentException("Tag value cannot contain NUL.");
+        default:
+          i = putChar(value, i, value.length());
+          break;
+      }
+    }
+  }
+
+  private void putUtf8(CharSequence chars, int start, int end) {
+    for (int i = start; i < end; i++) {
+      i = putChar(chars, i, end);
+    }
+  }
+
+  /** Writes the character at the index and returns the index of its last char. */
+  private int putChar(CharSequence chars, int index, int end) {
+    char c = chars.charAt(index);
+    if (c < 0x80) {
+      put((byte) c);
+    } else if (c < 0x800) {
+      put((byte) (0xC0 | c >> 6));
+      put((byte) (0x80 | c & 0x3F));
+    } else if (Character.isHighSurrogate(c)
+        && index + 1 < end
+        && Character.isLowSurrogate(chars.charAt(index + 1))) {
+      int codePoint = Character.toCodePoint(c, chars.charAt(index + 1));
+      put((byte) (0xF0 | codePoint >> 18));
+      put((byte) (0x80 | codePoint >> 12 & 0x3F));
+      put((byte) (0x80 | codePoint >> 6 & 0x3F));
+      put((byte) (0x80 | codePoint & 0x3F));
+      return index + 1;
+    } else if (Character.isSurrogate(c)) {
+      // Unpaired surrogates are replaced as String.getBytes does.
+      put('?');
+    } else {
+      put((byte) (0xE0 | c >> 12));
+      put((byte) (0x80 | c >> 6 & 0x3F));
+      put((byte) (0x80 | c & 0x3F));
+    }
+    return index;
+  }
+
+  private void checkState(boolean valid, String message) {
+    if (!valid) {
+      IllegalStateException exception = new IllegalStateException(
+          state == IDLE ? "Line must be started before it is written." : message);
+      reset();
+      throw exception;
+    }
+  }
+
+  private void checkKey(CharSequence key) {
+    int length = key.length();
+    int i = length != 0 && key.charAt(0) == '+' ? 1 : 0;
+    if (i == length) {
+      reset();
+      throw new IllegalArgumentException("Invalid tag key: " + key);
+    }
+    for (; i < length; i++) {
+      char c = key.charAt(i);
+      if (!isAsciiLetterOrDigit(c) && c != '-' && c != '.' && c != '/') {
+        reset();
+        throw new IllegalArgumentException("Invalid tag key: " + key);
+      }
+    }
+  }
+
+  private void checkCommand(CharSequence command) {
+    int length = command.length();
+    boolean valid = length != 0;
+    if (valid && command.charAt(0) >= '0' && command.charAt(0) <= '9') {
+      valid = length == 3 && Commands.lookup(command) != Commands.UNKNOWN;
+    } else {
+      for (int i = 0; i < length && valid; i++) {
+        char c = command.charAt(i);
+        valid = c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z';
+      }
+    }
+    if (!valid) {
+      reset();
+      throw new IllegalArgumentException("Invalid command: " + command);
+    }
+  }
+
+  private static boolean isAsciiLetterOrDigit(char c) {
+    return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9';
+  }
+
+  private static int indexOfSpace(CharSequence chars) {
+    for (int i = 0; i < chars.length(); i++) {
+      if (chars.charAt(i) == ' ') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the index of the first NUL, CR or LF, and of the first space if it is not allowed. */
+  private static int indexOfInvalid(CharSequence chars, int start, int end, boolean rejectSpace) {
+    for (int i = start; i < end; i++) {
+      char c = chars.charAt(i);
+      if (c == '\0' || c == '\r' || c == '\n' || rejectSpace && c == ' ') {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -1,7 +1,9 @@
 package com.tilal6991.irc.syntax;
 
+import static com.tilal6991.irc.syntax.Utils.checkCountIs;
+import static com.tilal6991.irc.syntax.Utils.checkCountIsGeq;
+
 import java.util.List;
-import java.util.Locale;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -23,9 +25,7 @@ public class NamesParser {
    */
   public static <T> T parse(List<String> arguments, Callback<T> callback) {
     // RFC1459 and RFC2812 differ here - account for both cases intelligently.
-    if (arguments.size() < 2) {
-      throw new IllegalArgumentException(createExceptionString(2, arguments.size()));
-    }
+    checkCountIsGeq(Commands.RPL_NAMREPLY, arguments, 2);
 
     // RFC2812 specifies that there should be a one character channel descriptor here.
     String first = arguments.get(0);
@@ -35,16 +35,12 @@ public class NamesParser {
       descriptor = first.charAt(0);
       offset = 1;
 
-      if (arguments.size() != 3) {
-        throw new IllegalArgumentException(createExceptionString(3, arguments.size()));
-      }
+      checkCountIs(Commands.RPL_NAMREPLY, arguments, 3);
     } else {
       descriptor = null;
       offset = 0;
 
-      if (arguments.size() != 2) {
-        throw new IllegalArgumentException(createExceptionString(3, arguments.size()));
-      }
+      checkCountIs(Commands.RPL_NAMREPLY, arguments, 2);
     }
 
     String channel = arguments.get(offset);
@@ -54,14 +50,6 @@ public class NamesParser {
     return callback.onNames(descriptor, channel, names);
   }
 
-  private static String createExceptionString(int expected, int actual) {
-    return String.format(
-        Locale.getDefault(),
-        "Expected argument count: %s. Actual argument count: %d.",
-        expected,
-        actual);
-  }
-
   /** Callback class which will be invoked when parsing is successful */
   public interface Callback<T> {
 
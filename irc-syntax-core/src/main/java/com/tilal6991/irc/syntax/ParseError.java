@@ -0,0 +1,116 @@
+package com.tilal6991.irc.syntax;
+
+import java.util.Locale;
+import javax.annotation.Nonnull;
+
+/**
+ * Error thrown when a line cannot be tokenized or parsed. The details of the failure are kept as
+ * primitives and the message is only formatted if it is asked for; no stack trace is captured, so
+ * a flood of malformed lines costs little more than the lines themselves.
+ */
+public final class ParseError extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ErrorKind kind;
+  private final int commandId;
+  private final int minArguments;
+  private final int maxArguments;
+  private final int actualArguments;
+
+  private ParseError(
+      ErrorKind kind, int commandId, int minArguments, int maxArguments, int actualArguments) {
+    this.kind = kind;
+    this.commandId = commandId;
+    this.minArguments = minArguments;
+    this.maxArguments = maxArguments;
+    this.actualArguments = actualArguments;
+  }
+
+  static ParseError emptyLine() {
+    return new ParseError(ErrorKind.EMPTY_LINE, Commands.UNKNOWN, -1, -1, -1);
+  }
+
+  static ParseError missingCommand() {
+    return new ParseError(ErrorKind.MISSING_COMMAND, Commands.UNKNOWN, -1, -1, -1);
+  }
+
+  static ParseError argumentCount(int commandId, int min, int max, int actual) {
+    return new ParseError(ErrorKind.ARGUMENT_COUNT, commandId, min, max, actual);
+  }
+
+  /** Returns the kind of failure. */
+  @Nonnull
+  public ErrorKind kind() {
+    return kind;
+  }
+
+  /**
+   * Returns the identifier of the command, as given by {@link Commands}, which failed to parse or
+   * {@link Commands#UNKNOWN} if the line failed before its command was known.
+   */
+  public int commandId() {
+    return commandId;
+  }
+
+  /** Returns the smallest accepted number of arguments or -1 if the count was not at fault. */
+  public int minArguments() {
+    return minArguments;
+  }
+
+  /**
+   * Returns the largest accepted number of arguments, {@link Integer#MAX_VALUE} if there is no
+   * limit, or -1 if the count was not at fault.
+   */
+  public int maxArguments() {
+    return maxArguments;
+  }
+
+  /** Returns the number of arguments given or -1 if the count was not at fault. */
+  public int actualArguments() {
+    return actualArguments;
+  }
+
+  @Override
+  public String getMessage() {
+    switch (kind) {
+      case EMPTY_LINE:
+        return "Empty line cannot be parsed.";
+      case MISSING_COMMAND:
+        return "Unable to tokenize message without command.";
+      default:
+        String expected;
+        if (minArguments == maxArguments) {
+          expected = Integer.toString(minArguments);
+        } else if (maxArguments == Integer.MAX_VALUE) {
+          expected = "geq: " + minArguments;
+        } else {
+          expected = minArguments + " to " + maxArguments;
+        }
+        return String.format(
+            Locale.getDefault(),
+            "Command: %s. Expected argument count: %s. Actual argument count: %d.",
+            Commands.name(commandId),
+            expected,
+            actualArguments);
+    }
+  }
+
+  @Override
+  public Throwable fillInStackTrace() {
+    // The kind and counts locate the failure; a stack trace would only describe the parser.
+    return this;
+  }
+
+  /** Callback class which will be invoked when a line could not be parsed. */
+  public interface Callback<T> {
+
+    /**
+     * Callback method for a line which could not be parsed.
+     *
+     * @param line the line, only valid for the duration of the call.
+     * @param error the reason the line could not be parsed.
+     */
+    T onParseError(@Nonnull CharSequence line, @Nonnull ParseError error);
+  }
+}
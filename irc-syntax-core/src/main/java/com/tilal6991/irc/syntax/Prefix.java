@@ -0,0 +1,97 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Prefix of a line split into its {@code nick[!user][@host]} parts. The positions of the {@code !}
+ * and {@code @} are found once when the prefix is created; each part is only extracted the first
+ * time it is requested and is then kept, so prefixes shared through a {@link PrefixCache} are
+ * split at most once.
+ *
+ * <p>Prefixes sent by servers have neither a user nor a host and are returned whole by {@link
+ * #nick()}.
+ */
+public final class Prefix {
+
+  private final String raw;
+  private final int bang;
+  private final int at;
+
+  private String nick;
+  private String user;
+  private String host;
+
+  private Prefix(String raw, int bang, int at) {
+    this.raw = raw;
+    this.bang = bang;
+    this.at = at;
+  }
+
+  /**
+   * Creates a prefix from its raw form as it appears in a line without the leading colon.
+   *
+   * @param raw the prefix to split.
+   */
+  @Nonnull
+  public static Prefix parse(@Nonnull String raw) {
+    int bang = raw.indexOf('!');
+    int at = raw.indexOf('@', bang + 1);
+    return new Prefix(raw, bang, at);
+  }
+
+  /** Returns the nick of the user or the whole prefix if it has no user or host. */
+  @Nonnull
+  public String nick() {
+    if (nick == null) {
+      nick = raw.substring(0, nickEnd(bang, at, raw.length()));
+    }
+    return nick;
+  }
+
+  /** Returns the user or null if the prefix has no {@code !user} part. */
+  @Nullable
+  public String user() {
+    if (user == null && bang != -1) {
+      user = raw.substring(bang + 1, at == -1 ? raw.length() : at);
+    }
+    return user;
+  }
+
+  /** Returns the host or null if the prefix has no {@code @host} part. */
+  @Nullable
+  public String host() {
+    if (host == null && at != -1) {
+      host = raw.substring(at + 1);
+    }
+    return host;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Prefix && raw.equals(((Prefix) o).raw);
+  }
+
+  @Override
+  public int hashCode() {
+    return raw.hashCode();
+  }
+
+  /** Returns the prefix as it appeared in the line. */
+  @Nonnull
+  @Override
+  public String toString() {
+    return raw;
+  }
+
+  /**
+   * Returns the offset just after the nick given the offsets of the {@code !} and {@code @}, which
+   * are -1 if absent, and the offset just after the prefix.
+   */
+  static int nickEnd(int bang, int at, int end) {
+    if (bang != -1) {
+      return bang;
+    }
+    return at == -1 ? end : at;
+  }
+}
@@ -0,0 +1,55 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Bounded cache of recently seen {@link Prefix}es. In busy channels the same few hundred senders
+ * make up almost all the traffic; looking their prefixes up here, e.g. through {@link
+ * MessageTokens#prefix(PrefixCache)}, returns a shared instance which has already been split
+ * instead of allocating new strings for every line.
+ *
+ * <p>Lookups compare against the line in place so a hit does not allocate. The cache is split
+ * into small sets of entries selected by hash; when a set is full, the entry to replace is chosen
+ * using the CLOCK algorithm so prefixes which keep appearing stay cached.
+ *
+ * <p>Instances are not thread safe.
+ */
+public final class PrefixCache {
+
+  private final SliceCache<Prefix> entries;
+
+  /**
+   * Creates a cache holding up to the given number of prefixes, rounded up to a power of two of at
+   * least four.
+   *
+   * @param capacity the number of prefixes to keep.
+   */
+  public PrefixCache(int capacity) {
+    entries = new SliceCache<Prefix>(capacity) {
+      @Nonnull
+      @Override
+      Prefix create(@Nonnull String key) {
+        return Prefix.parse(key);
+      }
+    };
+  }
+
+  /** Returns the largest number of prefixes kept by this cache. */
+  public int capacity() {
+    return entries.capacity();
+  }
+
+  /**
+   * Returns the shared prefix equal to the given raw prefix, creating and caching it if it is not
+   * present.
+   */
+  @Nonnull
+  public Prefix get(@Nonnull String raw) {
+    return entries.get(raw, null, 0, raw.length());
+  }
+
+  @Nonnull
+  Prefix get(CharSequence chars, byte[] bytes, int start, int end) {
+    return entries.get(chars, bytes, start, end);
+  }
+}
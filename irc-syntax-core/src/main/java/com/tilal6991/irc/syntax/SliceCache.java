@@ -0,0 +1,135 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Bounded cache of values keyed by ranges of a line which looks them up without creating a string
+ * for the range. The cache is split into small sets of entries selected by hash; when a set is
+ * full, the entry to replace is chosen using the CLOCK algorithm so that keys which keep appearing
+ * stay cached while keys seen only once are replaced first.
+ *
+ * <p>Keys are hashed as {@link String#hashCode()} does so that string and byte lines share
+ * entries. Instances are not thread safe.
+ */
+abstract class SliceCache<T> {
+
+  private static final int WAYS = 4;
+
+  private final int mask;
+  private final int[] hashes;
+  private final String[] keys;
+  private final Object[] values;
+  private final boolean[] referenced;
+  // The next entry of each set to consider for replacement.
+  private final byte[] hands;
+
+  SliceCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    int sets = Math.max(1, Integer.highestOneBit(Math.max(capacity, WAYS) * 2 - 1) / WAYS);
+    mask = sets - 1;
+    hashes = new int[sets * WAYS];
+    keys = new String[sets * WAYS];
+    values = new Object[sets * WAYS];
+    referenced = new boolean[sets * WAYS];
+    hands = new byte[sets];
+  }
+
+  /** Creates the value cached for the given key. */
+  @Nonnull
+  abstract T create(@Nonnull String key);
+
+  final int capacity() {
+    return keys.length;
+  }
+
+  /** Returns the value for the given range of a line, creating and caching it if not present. */
+  @Nonnull
+  final T get(CharSequence chars, byte[] bytes, int start, int end) {
+    if (bytes != null && !isAscii(bytes, start, end)) {
+      String key = MessageTokens.decode(bytes, start, end);
+      return get(hash(key, null, 0, key.length()), key, null, 0, key.length());
+    }
+    return get(hash(chars, bytes, start, end), chars, bytes, start, end);
+  }
+
+  /**
+   * Returns the value for the given range of a line whose hash, as given by {@link
+   * #hash(CharSequence, byte[], int, int)}, is already known. Byte ranges must be ASCII.
+   */
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  final T get(int hash, CharSequence chars, byte[] bytes, int start, int end) {
+    int first = (spread(hash) & mask) * WAYS;
+    for (int i = first; i < first + WAYS; i++) {
+      String key = keys[i];
+      if (key != null && hashes[i] == hash && matches(key, chars, bytes, start, end)) {
+        referenced[i] = true;
+        return (T) values[i];
+      }
+    }
+
+    String key = chars instanceof String && start == 0 && end == chars.length()
+        ? (String) chars
+        : MessageTokens.substring(chars, bytes, start, end);
+    T value = create(key);
+    int slot = evict(first);
+    hashes[slot] = hash;
+    keys[slot] = key;
+    values[slot] = value;
+    referenced[slot] = false;
+    return value;
+  }
+
+  private int evict(int first) {
+    int set = first / WAYS;
+    int hand = hands[set];
+    while (true) {
+      int slot = first + hand;
+      hand = (hand + 1) % WAYS;
+      if (keys[slot] == null || !referenced[slot]) {
+        hands[set] = (byte) hand;
+        return slot;
+      }
+      // Give recently used entries a second chance before they are replaced.
+      referenced[slot] = false;
+    }
+  }
+
+  /** Returns the hash of the range of a line, which must be ASCII for byte lines. */
+  static int hash(CharSequence chars, byte[] bytes, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + (bytes == null ? chars.charAt(i) : bytes[i]);
+    }
+    return hash;
+  }
+
+  static int spread(int hash) {
+    return hash ^ hash >>> 16;
+  }
+
+  static boolean isAscii(byte[] bytes, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (bytes[i] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(String key, CharSequence chars, byte[] bytes, int start,
+      int end) {
+    if (key.length() != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      int c = bytes == null ? chars.charAt(i) : bytes[i];
+      if (key.charAt(i - start) != c) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,138 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Bounded pool of strings used to deduplicate the commands, channel names and nicks of lines. A
+ * connection only ever sees a few thousand distinct values of these so returning a shared instance
+ * for each, rather than a new string per line, greatly reduces the memory retained by consumers
+ * which keep parsed lines around.
+ *
+ * <p>Values are looked up by comparing against the line in place so a hit does not allocate. When
+ * the pool is full, values which have not been seen recently are evicted first. Values longer than
+ * {@value #MAX_LENGTH} characters, or bytes for byte lines, are never pooled as message texts
+ * rarely repeat.
+ *
+ * <p>Pools from {@link #create(int)} are not thread safe; use {@link #striped(int, int)} for a pool
+ * shared between connections.
+ */
+public abstract class StringPool {
+
+  /** Length above which values are not pooled. */
+  public static final int MAX_LENGTH = 64;
+
+  // Only implemented in this package.
+  StringPool() {
+  }
+
+  /**
+   * Creates a pool for use by a single thread.
+   *
+   * @param capacity the number of strings to keep, rounded up to a power of two of at least four.
+   */
+  @Nonnull
+  public static StringPool create(int capacity) {
+    return new Local(capacity);
+  }
+
+  /**
+   * Creates a pool which can be shared between threads. The pool is split into independently
+   * locked stripes so that threads rarely wait for each other.
+   *
+   * @param capacity the number of strings to keep across all stripes.
+   * @param stripes the number of stripes, rounded up to a power of two.
+   */
+  @Nonnull
+  public static StringPool striped(int capacity, int stripes) {
+    return new Striped(capacity, stripes);
+  }
+
+  /** Returns the pooled string equal to the given one, adding it to the pool if not present. */
+  @Nonnull
+  public String intern(@Nonnull String value) {
+    return intern(value, null, 0, value.length());
+  }
+
+  @Nonnull
+  abstract String intern(CharSequence chars, byte[] bytes, int start, int end);
+
+  /** Returns whether this pool can be used by several threads at once. */
+  abstract boolean isShared();
+
+  private static SliceCache<String> newCache(int capacity) {
+    return new SliceCache<String>(capacity) {
+      @Nonnull
+      @Override
+      String create(@Nonnull String key) {
+        return key;
+      }
+    };
+  }
+
+  private static final class Local extends StringPool {
+
+    private final SliceCache<String> cache;
+
+    Local(int capacity) {
+      cache = newCache(capacity);
+    }
+
+    @Nonnull
+    @Override
+    String intern(CharSequence chars, byte[] bytes, int start, int end) {
+      if (end - start > MAX_LENGTH) {
+        return MessageTokens.substring(chars, bytes, start, end);
+      }
+      return cache.get(chars, bytes, start, end);
+    }
+
+    @Override
+    boolean isShared() {
+      return false;
+    }
+  }
+
+  private static final class Striped extends StringPool {
+
+    private final int mask;
+    private final SliceCache<String>[] stripes;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Striped(int capacity, int stripes) {
+      if (capacity <= 0 || stripes <= 0) {
+        throw new IllegalArgumentException(
+            "Capacity and stripes must be positive: " + capacity + ", " + stripes);
+      }
+      int count = Integer.highestOneBit(stripes * 2 - 1);
+      this.mask = count - 1;
+      this.stripes = new SliceCache[count];
+      for (int i = 0; i < count; i++) {
+        this.stripes[i] = newCache(Math.max(1, capacity / count));
+      }
+    }
+
+    @Nonnull
+    @Override
+    String intern(CharSequence chars, byte[] bytes, int start, int end) {
+      if (end - start > MAX_LENGTH) {
+        return MessageTokens.substring(chars, bytes, start, end);
+      }
+      if (bytes != null && !SliceCache.isAscii(bytes, start, end)) {
+        String value = MessageTokens.decode(bytes, start, end);
+        return intern(value, null, 0, value.length());
+      }
+
+      int hash = SliceCache.hash(chars, bytes, start, end);
+      // Sets within a stripe are picked by the low bits of the hash so use the high ones here.
+      SliceCache<String> stripe = stripes[hash >>> 16 & mask];
+      synchronized (stripe) {
+        return stripe.get(hash, chars, bytes, start, end);
+      }
+    }
+
+    @Override
+    boolean isShared() {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.tilal6991.irc.syntax;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of strings backed by token offsets of a tokenized line. Each element is only
+ * extracted from the line when it is first requested, through the pool if one is given.
+ */
+class TokenList extends AbstractList<String> implements RandomAccess {
+
+  private final CharSequence chars;
+  private final byte[] bytes;
+  private final int[] starts;
+  private final int[] ends;
+  private final int size;
+  private final StringPool pool;
+
+  private String[] cache;
+
+  TokenList(CharSequence chars, byte[] bytes, int[] starts, int[] ends, int size) {
+    this(chars, bytes, starts, ends, size, null);
+  }
+
+  TokenList(CharSequence chars, byte[] bytes, int[] starts, int[] ends, int size,
+      StringPool pool) {
+    this.chars = chars;
+    this.bytes = bytes;
+    this.starts = starts;
+    this.ends = ends;
+    this.size = size;
+    this.pool = pool;
+  }
+
+  @Override
+  public String get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    if (cache == null) {
+      cache = new String[size];
+    } else if (cache[index] != null) {
+      return cache[index];
+    }
+
+    String value = pool == null
+        ? MessageTokens.substring(chars, bytes, starts[index], ends[index])
+        : pool.intern(chars, bytes, starts[index], ends[index]);
+    cache[index] = value;
+    return value;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+}
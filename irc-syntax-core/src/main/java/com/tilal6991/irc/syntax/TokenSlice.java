@@ -0,0 +1,82 @@
+package com.tilal6991.irc.syntax;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Mutable {@link CharSequence} view over a range of an IRC line. Byte lines are treated as UTF-8
+ * and are only decoded if they contain non-ASCII characters and their contents are accessed.
+ */
+final class TokenSlice implements CharSequence {
+
+  private CharSequence chars;
+  private byte[] bytes;
+  private int start;
+  private int end;
+
+  // Only used for byte lines: whether the range is plain ASCII and the decoded form otherwise.
+  private boolean checked;
+  private boolean ascii;
+  private String decoded;
+
+  @Nonnull
+  TokenSlice set(CharSequence chars, byte[] bytes, int start, int end) {
+    this.chars = chars;
+    this.bytes = bytes;
+    this.start = start;
+    this.end = end;
+    this.checked = false;
+    this.decoded = null;
+    return this;
+  }
+
+  @Override
+  public int length() {
+    if (bytes == null || isAscii()) {
+      return end - start;
+    }
+    return toString().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length());
+    }
+    if (bytes == null) {
+      return chars.charAt(start + index);
+    } else if (isAscii()) {
+      return (char) bytes[start + index];
+    }
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().substring(start, end);
+  }
+
+  @Nonnull
+  @Override
+  public String toString() {
+    if (bytes == null) {
+      return chars.subSequence(start, end).toString();
+    } else if (decoded == null) {
+      decoded = MessageTokens.decode(bytes, start, end);
+    }
+    return decoded;
+  }
+
+  private boolean isAscii() {
+    if (!checked) {
+      ascii = true;
+      for (int i = start; i < end; i++) {
+        if (bytes[i] < 0) {
+          ascii = false;
+          break;
+        }
+      }
+      checked = true;
+    }
+    return ascii;
+  }
+}
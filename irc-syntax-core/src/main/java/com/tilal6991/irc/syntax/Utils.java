@@ -1,9 +1,7 @@
 package com.tilal6991.irc.syntax;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 
 import javax.annotation.Nonnull;
 
@@ -34,52 +32,21 @@ class Utils {
     return tokens;
   }
 
-  static void checkCountOneOf(String command, List<String> arguments, int... counts) {
-    int index = Arrays.binarySearch(counts, arguments.size());
-    if (index < 0) {
-      throw new IllegalArgumentException(
-              String.format(
-                      Locale.getDefault(),
-                      "Command: %s. Expected argument count: %s. Actual argument count: %d.",
-                      command,
-                      Arrays.toString(counts),
-                      arguments.size()));
-    }
+  static void checkCountIs(int commandId, List<String> arguments, int count) {
+    checkCountBetween(commandId, arguments, count, count);
   }
 
-  static void checkCountIs(int code, List<String> arguments, int count) {
-    if (arguments.size() != count) {
-      throw new IllegalArgumentException(
-              String.format(
-                      Locale.getDefault(),
-                      "Code: %d. Expected argument count: %s. Actual argument count: %d.",
-                      code,
-                      count,
-                      arguments.size()));
-    }
+  static void checkCountIsGeq(int commandId, List<String> arguments, int count) {
+    checkCountBetween(commandId, arguments, count, Integer.MAX_VALUE);
   }
 
-  static void checkCountIsGeq(String command, List<String> arguments, int count) {
-        if (arguments.size() < count) {
-            throw new IllegalArgumentException(
-                    String.format(
-                            Locale.getDefault(),
-                            "Command: %s. Expected argument count geq: %d. Actual argument count: %d.",
-                            command,
-                            count,
-                            arguments.size()));
-        }
-    }
+  static void checkCountBetween(int commandId, List<String> arguments, int min, int max) {
+    checkCount(commandId, arguments.size(), min, max);
+  }
 
-  static void checkCountIsGeq(int code, List<String> arguments, int count) {
-    if (arguments.size() < count) {
-      throw new IllegalArgumentException(
-              String.format(
-                      Locale.getDefault(),
-                      "Code: %d. Expected argument count geq: %s. Actual argument count: %d.",
-                      code,
-                      count,
-                      arguments.size()));
+  static void checkCount(int commandId, int size, int min, int max) {
+    if (size < min || size > max) {
+      throw ParseError.argumentCount(commandId, min, max, size);
     }
   }
 }
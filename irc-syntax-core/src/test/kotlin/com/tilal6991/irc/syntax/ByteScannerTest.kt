@@ -0,0 +1,57 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.Random
+
+class ByteScannerTest {
+
+  private val scanner = ByteScanner()
+
+  @Test fun testIndexOf() {
+    val bytes = "PRIVMSG #channel :hello world".toByteArray()
+    scanner.reset(bytes)
+
+    assertThat(scanner.indexOf(0, bytes.size, ' '.toByte())).isEqualTo(7)
+    assertThat(scanner.indexOf(8, bytes.size, ' '.toByte())).isEqualTo(16)
+    assertThat(scanner.indexOf(0, bytes.size, ':'.toByte())).isEqualTo(17)
+    assertThat(scanner.indexOf(0, 7, ' '.toByte())).isEqualTo(-1)
+    assertThat(scanner.indexOf(0, bytes.size, '\n'.toByte())).isEqualTo(-1)
+  }
+
+  @Test fun testIndexOfAny() {
+    val bytes = "@aaaaaaaaaa=b;c d".toByteArray()
+    scanner.reset(bytes)
+
+    assertThat(scanner.indexOfAny(1, bytes.size, ' '.toByte(), ';'.toByte(), '='.toByte()))
+        .isEqualTo(11)
+    assertThat(scanner.indexOfAny(12, bytes.size, ' '.toByte(), ';'.toByte(), '='.toByte()))
+        .isEqualTo(13)
+    assertThat(scanner.indexOfAny(14, bytes.size, ' '.toByte(), ';'.toByte(), '='.toByte()))
+        .isEqualTo(15)
+    assertThat(scanner.indexOfAny(16, bytes.size, ' '.toByte(), ';'.toByte(), '='.toByte()))
+        .isEqualTo(-1)
+  }
+
+  @Test fun testMatchesNaiveSearch() {
+    // Include bytes either side of the delimiters and with the high bit set to catch false matches.
+    val alphabet = byteArrayOf(' '.toByte(), ';'.toByte(), '!'.toByte(), 0x1F, 0xA0.toByte(),
+        0xBB.toByte(), 0xFF.toByte(), 0x00, 'a'.toByte(), '\n'.toByte())
+    val random = Random(42)
+    repeat(200) {
+      val bytes = ByteArray(random.nextInt(40)) { alphabet[random.nextInt(alphabet.size)] }
+      scanner.reset(bytes)
+      for (from in 0..bytes.size) {
+        val to = from + random.nextInt(bytes.size - from + 1)
+        assertThat(scanner.indexOf(from, to, ' '.toByte())).isEqualTo(naive(bytes, from, to, ' '))
+        assertThat(scanner.indexOf(from, to, '\n'.toByte())).isEqualTo(naive(bytes, from, to, '\n'))
+        assertThat(scanner.indexOfAny(from, to, ' '.toByte(), ';'.toByte(), '='.toByte()))
+            .isEqualTo(naive(bytes, from, to, ' ', ';', '='))
+      }
+    }
+  }
+
+  private fun naive(bytes: ByteArray, from: Int, to: Int, vararg values: Char): Int {
+    return (from until to).firstOrNull { i -> values.any { bytes[i] == it.toByte() } } ?: -1
+  }
+}
@@ -0,0 +1,44 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class CaseMappingTest {
+
+  @Test fun testFromName() {
+    assertThat(CaseMapping.fromName("ascii")).isEqualTo(CaseMapping.ASCII)
+    assertThat(CaseMapping.fromName("rfc1459")).isEqualTo(CaseMapping.RFC1459)
+    assertThat(CaseMapping.fromName("strict-rfc1459")).isEqualTo(CaseMapping.STRICT_RFC1459)
+    assertThat(CaseMapping.fromName("rfc7613")).isEqualTo(CaseMapping.RFC1459)
+    assertThat(CaseMapping.fromName(null)).isEqualTo(CaseMapping.RFC1459)
+  }
+
+  @Test fun testToLowerCase() {
+    assertThat(lower(CaseMapping.ASCII, "Nick[]\\^~é")).isEqualTo("nick[]\\^~é")
+    assertThat(lower(CaseMapping.RFC1459, "Nick[]\\^~é")).isEqualTo("nick{}|~~é")
+    assertThat(lower(CaseMapping.STRICT_RFC1459, "Nick[]\\^~é")).isEqualTo("nick{}|^~é")
+  }
+
+  @Test fun testHash() {
+    assertThat(hash(CaseMapping.RFC1459, "#Chan[1]"))
+        .isEqualTo(hash(CaseMapping.RFC1459, "#chan{1}"))
+    assertThat(hash(CaseMapping.ASCII, "#Chan[1]"))
+        .isNotEqualTo(hash(CaseMapping.ASCII, "#chan{1}"))
+    assertThat(hash(CaseMapping.ASCII, "#Chan[1]")).isEqualTo(hash(CaseMapping.ASCII, "#CHAN[1]"))
+    assertThat(hash(CaseMapping.STRICT_RFC1459, "a^")).isNotEqualTo(
+        hash(CaseMapping.STRICT_RFC1459, "a~"))
+
+    val bytes = "x#Aé ".toByteArray()
+    assertThat(CaseMapping.ASCII.hash(bytes, 1, bytes.size - 1))
+        .isEqualTo(hash(CaseMapping.ASCII, "#aé"))
+  }
+
+  private fun lower(mapping: CaseMapping, text: String): String {
+    return text.map { mapping.toLowerCase(it) }.joinToString("")
+  }
+
+  private fun hash(mapping: CaseMapping, text: String): Int {
+    val bytes = text.toByteArray()
+    return mapping.hash(bytes, 0, bytes.size)
+  }
+}
@@ -0,0 +1,63 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+
+class CommandSetTest {
+
+  @Test fun testOf() {
+    val set = CommandSet.of(Commands.PRIVMSG, Commands.RPL_WELCOME, Commands.UNKNOWN)
+    assertThat(set.contains(Commands.PRIVMSG)).isTrue()
+    assertThat(set.contains(Commands.RPL_WELCOME)).isTrue()
+    assertThat(set.contains(Commands.UNKNOWN)).isTrue()
+    assertThat(set.contains(Commands.NOTICE)).isFalse()
+    assertThat(set.contains(Commands.RPL_ISUPPORT)).isFalse()
+  }
+
+  @Test fun testEmpty() {
+    val set = CommandSet.of()
+    assertThat(set.contains(Commands.UNKNOWN)).isFalse()
+    assertThat(set.contains(Commands.CAP)).isFalse()
+    assertThat(set.contains(0)).isFalse()
+  }
+
+  @Test fun testAll() {
+    val set = CommandSet.all()
+    assertThat(set.contains(Commands.UNKNOWN)).isTrue()
+    assertThat(set.contains(0)).isTrue()
+    assertThat(set.contains(999)).isTrue()
+    assertThat(set.contains(Commands.NICK)).isTrue()
+    assertThat(set.contains(Commands.CAP)).isTrue()
+  }
+
+  @Test fun testUnion() {
+    val set = CommandSet.union(
+        CommandSet.of(Commands.PRIVMSG), CommandSet.of(Commands.RPL_WELCOME, Commands.UNKNOWN))
+    assertThat(set.contains(Commands.PRIVMSG)).isTrue()
+    assertThat(set.contains(Commands.RPL_WELCOME)).isTrue()
+    assertThat(set.contains(Commands.UNKNOWN)).isTrue()
+    assertThat(set.contains(Commands.NOTICE)).isFalse()
+
+    assertThat(CommandSet.union(set, CommandSet.all())).isSameAs(CommandSet.all())
+    assertThat(CommandSet.union().contains(Commands.PRIVMSG)).isFalse()
+  }
+
+  @Test fun testNumerics() {
+    val set = CommandSet()
+    set.addNumerics()
+    assertThat(set.contains(0)).isTrue()
+    assertThat(set.contains(999)).isTrue()
+    assertThat(set.contains(Commands.NICK)).isFalse()
+    assertThat(set.contains(Commands.UNKNOWN)).isFalse()
+  }
+
+  @Test fun testInvalidIdentifier() {
+    try {
+      CommandSet.of(Commands.CAP + 1)
+      fail("Expected invalid identifier to throw IllegalArgumentException.")
+    } catch (ex: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+}
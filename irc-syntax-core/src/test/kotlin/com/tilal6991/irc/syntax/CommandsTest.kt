@@ -0,0 +1,58 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.lang.reflect.Modifier
+
+class CommandsTest {
+
+  private val verbs = mapOf(
+      "NICK" to Commands.NICK, "QUIT" to Commands.QUIT, "JOIN" to Commands.JOIN,
+      "PART" to Commands.PART, "MODE" to Commands.MODE, "INVITE" to Commands.INVITE,
+      "KICK" to Commands.KICK, "AUTHENTICATE" to Commands.AUTHENTICATE,
+      "ACCOUNT" to Commands.ACCOUNT, "CHGHOST" to Commands.CHGHOST, "PRIVMSG" to Commands.PRIVMSG,
+      "NOTICE" to Commands.NOTICE, "AWAY" to Commands.AWAY, "PING" to Commands.PING,
+      "BATCH" to Commands.BATCH, "CAP" to Commands.CAP)
+
+  @Test fun testVerbs() {
+    for ((verb, id) in verbs) {
+      assertThat(Commands.lookup(verb)).isEqualTo(id)
+      assertThat(Commands.lookup(verb.toByteArray(), 0, verb.length)).isEqualTo(id)
+      assertThat(Commands.name(id)).isSameAs(verb)
+      assertThat(Commands.isNumeric(id)).isFalse()
+    }
+  }
+
+  @Test fun testNumerics() {
+    assertThat(Commands.lookup("001")).isEqualTo(1)
+    assertThat(Commands.lookup("353")).isEqualTo(353)
+    assertThat(Commands.lookup("999".toByteArray(), 0, 3)).isEqualTo(999)
+    assertThat(Commands.isNumeric(353)).isTrue()
+    assertThat(Commands.name(42)).isEqualTo("042")
+    assertThat(Commands.name(42)).isSameAs(Commands.name(42))
+  }
+
+  @Test fun testUnknown() {
+    for (command in listOf("", "P", "PO", "PONG", "12m", "12#", "0042", "privmsg", "PRIVMSGS",
+        "PRIVMSF", "NICKS", "CAPS", "ÉTÉ")) {
+      assertThat(Commands.lookup(command)).isEqualTo(Commands.UNKNOWN)
+      val bytes = command.toByteArray()
+      assertThat(Commands.lookup(bytes, 0, bytes.size)).isEqualTo(Commands.UNKNOWN)
+    }
+    assertThat(Commands.name(Commands.UNKNOWN)).isNull()
+    assertThat(Commands.isNumeric(Commands.UNKNOWN)).isFalse()
+  }
+
+  @Test fun testRange() {
+    val line = ":nick PRIVMSG #a :b"
+    assertThat(Commands.lookup(line, 6, 13)).isEqualTo(Commands.PRIVMSG)
+    assertThat(Commands.lookup(line.toByteArray(), 6, 13)).isEqualTo(Commands.PRIVMSG)
+  }
+
+  @Test fun testConstructorIsPrivate() {
+    val constructor = Commands::class.java.getDeclaredConstructor()
+    assertThat(Modifier.isPrivate(constructor.modifiers)).isTrue()
+    constructor.isAccessible = true
+    constructor.newInstance()
+  }
+}
@@ -0,0 +1,85 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.lang.ref.WeakReference
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class CursorPoolTest {
+
+  @Test fun testReuse() {
+    val pool = CursorPool(4)
+    val tokens = pool.acquire()
+    pool.release(tokens)
+    assertThat(pool.acquire()).isSameAs(tokens)
+  }
+
+  @Test fun testNestedAcquire() {
+    val pool = CursorPool(4)
+    val outer = pool.acquire()
+    val inner = pool.acquire()
+    assertThat(inner).isNotSameAs(outer)
+    pool.release(inner)
+    pool.release(outer)
+  }
+
+  @Test fun testEmptyPoolCreates() {
+    val pool = CursorPool(1)
+    val acquired = (0 until pool.size() + 2).map { pool.acquire() }
+    assertThat(acquired.toSet()).hasSize(pool.size() + 2)
+    acquired.forEach { pool.release(it) }
+  }
+
+  @Test fun testReleaseClearsLine() {
+    val pool = CursorPool(2)
+    val tokens = pool.acquire()
+    MessageTokenizer.tokenize(":nick PRIVMSG #channel :hi", tokens)
+    pool.release(tokens)
+    assertThat(tokens.hasPrefix()).isFalse()
+    assertThat(tokens.argumentCount()).isEqualTo(0)
+  }
+
+  @Test fun testReleaseDropsBytes() {
+    val pool = CursorPool(2)
+    val tokens = pool.acquire()
+    var bytes: ByteArray? = ":nick PRIVMSG #channel :hi".toByteArray()
+    MessageTokenizer.tokenize(bytes!!, 0, bytes.size, tokens)
+    tokens.argument(1).toString()
+    val line = WeakReference(bytes)
+    bytes = null
+    pool.release(tokens)
+
+    for (i in 0 until 10) {
+      if (line.get() == null) {
+        break
+      }
+      System.gc()
+    }
+    assertThat(line.get()).isNull()
+  }
+
+  @Test fun testConcurrentUse() {
+    val pool = CursorPool(2)
+    val executor = Executors.newFixedThreadPool(8)
+    try {
+      val results = executor.invokeAll((0 until 8).map { thread ->
+        Callable {
+          (0 until 1000).count {
+            val tokens = pool.acquire()
+            val line = "PRIVMSG #channel$thread :$it"
+            MessageTokenizer.tokenize(line, tokens)
+            Thread.yield()
+            val ok = tokens.argument(0).toString() == "#channel$thread" &&
+                tokens.argument(1).toString() == it.toString()
+            pool.release(tokens)
+            ok
+          }
+        }
+      }).map { it.get() }
+      assertThat(results).containsOnly(1000)
+    } finally {
+      executor.shutdown()
+    }
+  }
+}
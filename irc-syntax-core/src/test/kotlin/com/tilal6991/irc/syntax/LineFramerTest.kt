@@ -0,0 +1,155 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.ReadableByteChannel
+
+class LineFramerTest {
+
+  private val lines = mutableListOf<String>()
+  private val oversized = mutableListOf<Int>()
+  private val callback = object : LineFramer.Callback {
+    override fun onLine(buffer: ByteArray, offset: Int, length: Int) {
+      lines.add(String(buffer, offset, length, Charsets.UTF_8))
+    }
+
+    override fun onOversizedLine(length: Int) {
+      oversized.add(length)
+    }
+  }
+
+  @Test fun testCrLfAndLoneLf() {
+    val framer = LineFramer(callback)
+    readAll(framer, "PING :a\r\nPING :b\nPING :c\r\n")
+
+    assertThat(lines).containsExactly("PING :a", "PING :b", "PING :c")
+  }
+
+  @Test fun testEmptyLinesSkipped() {
+    val framer = LineFramer(callback)
+    readAll(framer, "\r\n\nPING\r\n\r\n")
+
+    assertThat(lines).containsExactly("PING")
+  }
+
+  @Test fun testPartialReads() {
+    val framer = LineFramer(callback)
+    val channel = trickleChannel("PING :é\r\nPRIVMSG #a :hello\r\n".toByteArray())
+    while (framer.read(channel) != -1) {
+      // Keep reading.
+    }
+
+    assertThat(lines).containsExactly("PING :é", "PRIVMSG #a :hello")
+  }
+
+  @Test fun testUnterminatedFinalLine() {
+    val framer = LineFramer(callback)
+    readAll(framer, "PING :a\r\nPING :b")
+
+    assertThat(lines).containsExactly("PING :a", "PING :b")
+  }
+
+  @Test fun testOversizedLine() {
+    val framer = LineFramer(callback, 10)
+    val long = "x".repeat(10_000)
+    readAll(framer, "PING :a\r\n$long\r\n0123456789\r\nPING :b\r\n")
+
+    assertThat(lines).containsExactly("PING :a", "0123456789", "PING :b")
+    assertThat(oversized).containsExactly(10_000)
+  }
+
+  @Test fun testOversizedLineInSingleBuffer() {
+    val framer = LineFramer(callback, 10)
+    framer.feed("0123456789A\r\nPING\r\n".toByteArray(), 0, 19)
+
+    assertThat(lines).containsExactly("PING")
+    assertThat(oversized).containsExactly(11)
+  }
+
+  @Test fun testDefaultLimits() {
+    val framer = LineFramer(callback)
+    val tags = "@" + "a".repeat(LineFramer.MAX_TAGS_LENGTH - 2) + " "
+    val message = "PRIVMSG #a :" + "b".repeat(LineFramer.MAX_MESSAGE_LENGTH - 14)
+    readAll(framer, "$tags$message\r\n$tags${message}c\r\n")
+
+    assertThat(lines).containsExactly(tags + message)
+    assertThat(oversized).containsExactly(LineFramer.DEFAULT_MAX_LINE_LENGTH + 1)
+  }
+
+  @Test fun testFeed() {
+    val framer = LineFramer(callback)
+    val bytes = "PING :a\r\nPI".toByteArray()
+    framer.feed(bytes, 0, bytes.size)
+    framer.feed("NG :b\r\n".toByteArray(), 0, 7)
+
+    assertThat(lines).containsExactly("PING :a", "PING :b")
+  }
+
+  @Test fun testFeedBuffer() {
+    val framer = LineFramer(callback, 10)
+    val bytes = "PING :a\r\nPING :b\nPI".toByteArray()
+    val buffer = ByteBuffer.allocateDirect(bytes.size)
+    buffer.put(bytes).flip()
+    framer.feed(buffer)
+    framer.feed(ByteBuffer.wrap("NG :c\r\n".toByteArray()))
+
+    assertThat(buffer.hasRemaining()).isFalse()
+    assertThat(lines).containsExactly("PING :a", "PING :b", "PING :c")
+  }
+
+  @Test fun testInputStream() {
+    val framer = LineFramer(callback)
+    val stream = ByteArrayInputStream("PING :a\r\nPING :b\r\n".toByteArray())
+    while (framer.read(stream) != -1) {
+      // Keep reading.
+    }
+
+    assertThat(lines).containsExactly("PING :a", "PING :b")
+  }
+
+  @Test fun testParsesFramedLines() {
+    val tokens = MessageTokens()
+    val commands = mutableListOf<String>()
+    val framer = LineFramer(object : LineFramer.Callback {
+      override fun onLine(buffer: ByteArray, offset: Int, length: Int) {
+        MessageTokenizer.tokenize(buffer, offset, length, tokens)
+        commands.add(tokens.command().toString())
+      }
+
+      override fun onOversizedLine(length: Int) {
+      }
+    })
+    readAll(framer, ":a PRIVMSG #b :c\r\n:a JOIN #b\r\n")
+
+    assertThat(commands).containsExactly("PRIVMSG", "JOIN")
+  }
+
+  private fun readAll(framer: LineFramer, input: String) {
+    val channel = Channels.newChannel(ByteArrayInputStream(input.toByteArray()))
+    while (framer.read(channel) != -1) {
+      // Keep reading.
+    }
+  }
+
+  private fun trickleChannel(bytes: ByteArray): ReadableByteChannel {
+    return object : ReadableByteChannel {
+      private var position = 0
+
+      override fun read(dst: ByteBuffer): Int {
+        if (position == bytes.size) {
+          return -1
+        }
+        dst.put(bytes[position++])
+        return 1
+      }
+
+      override fun isOpen() = true
+
+      override fun close() {
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.ReadableByteChannel
+import java.util.ArrayDeque
+
+class MessageReaderTest {
+
+  @Test fun testReadsEveryLine() {
+    val reader = MessageReader(stream("PING :a\r\n:nick PRIVMSG #c :hi\n\r\nPING :b"))
+
+    val first = reader.next()!!
+    assertThat(first.commandId()).isEqualTo(Commands.PING)
+    assertThat(first.argument(0).toString()).isEqualTo("a")
+
+    val second = reader.next()!!
+    assertThat(second).isSameAs(first)
+    assertThat(second.prefix().toString()).isEqualTo("nick")
+    assertThat(second.argument(1).toString()).isEqualTo("hi")
+
+    assertThat(reader.next()!!.argument(0).toString()).isEqualTo("b")
+    assertThat(reader.next()).isNull()
+    assertThat(reader.isAtEnd()).isTrue()
+    assertThat(reader.next()).isNull()
+  }
+
+  @Test fun testInterest() {
+    val reader = MessageReader(
+        stream("PING :a\r\nPRIVMSG #c :hi\r\nNOTICE #c :x\r\n"), CommandSet.of(Commands.PRIVMSG))
+    assertThat(reader.next()!!.commandId()).isEqualTo(Commands.PRIVMSG)
+    assertThat(reader.next()).isNull()
+  }
+
+  @Test fun testCopySurvivesNext() {
+    val reader = MessageReader(stream("@a=b :n!u@h PRIVMSG #c :héllo\r\nPING :x\r\n"))
+    val message = reader.next()!!.copy()
+    reader.next()
+
+    assertThat(message.commandId()).isEqualTo(Commands.PRIVMSG)
+    assertThat(message.tags().get("a")).isEqualTo("b")
+    assertThat(message.prefix()).isEqualTo("n!u@h")
+    assertThat(message.arguments()).containsExactly("#c", "héllo")
+  }
+
+  @Test fun testSmallReads() {
+    val lines = (0 until 500).map { "PRIVMSG #c :message $it" }
+    val bytes = lines.joinToString("\r\n").toByteArray()
+    val reader = MessageReader(object : InputStream() {
+      private var position = 0
+
+      override fun read(): Int = if (position == bytes.size) -1 else bytes[position++].toInt()
+
+      override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (position == bytes.size) return -1
+        val count = minOf(len, 7, bytes.size - position)
+        System.arraycopy(bytes, position, b, off, count)
+        position += count
+        return count
+      }
+    })
+
+    val read = generateSequence { reader.next()?.argument(1)?.toString() }.toList()
+    assertThat(read).isEqualTo(lines.map { it.substringAfter(':') })
+  }
+
+  @Test fun testNonBlockingChannel() {
+    val chunks = ArrayDeque(listOf("PING :a\r\nPI", "", "NG :b\r\n"))
+    val reader = MessageReader(object : ReadableByteChannel {
+      override fun read(dst: ByteBuffer): Int {
+        val chunk = chunks.pollFirst() ?: return -1
+        dst.put(chunk.toByteArray())
+        return chunk.length
+      }
+
+      override fun isOpen() = true
+
+      override fun close() {}
+    })
+
+    assertThat(reader.next()!!.argument(0).toString()).isEqualTo("a")
+    assertThat(reader.next()).isNull()
+    assertThat(reader.isAtEnd()).isFalse()
+    assertThat(reader.next()!!.argument(0).toString()).isEqualTo("b")
+    assertThat(reader.next()).isNull()
+    assertThat(reader.isAtEnd()).isTrue()
+  }
+
+  @Test fun testOversizedLine() {
+    val long = "PRIVMSG #c :" + "x".repeat(LineFramer.DEFAULT_MAX_LINE_LENGTH)
+    val reader = MessageReader(Channels.newChannel(stream("$long\r\nPING :a\r\n")))
+    assertThat(reader.next()!!.commandId()).isEqualTo(Commands.PING)
+    assertThat(reader.oversizedLines()).isEqualTo(1)
+  }
+
+  @Test fun testErrorConsumesLine() {
+    val reader = MessageReader(stream("@a=b\r\nPING :a\r\n"))
+    try {
+      reader.next()
+      fail("Expected ParseError.")
+    } catch (error: ParseError) {
+      assertThat(error.kind()).isEqualTo(ErrorKind.MISSING_COMMAND)
+      assertThat(reader.tokens().line().toString()).isEqualTo("@a=b")
+    }
+    assertThat(reader.next()!!.commandId()).isEqualTo(Commands.PING)
+  }
+
+  private fun stream(text: String) = ByteArrayInputStream(text.toByteArray())
+}
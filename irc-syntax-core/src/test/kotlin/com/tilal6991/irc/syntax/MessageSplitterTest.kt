@@ -0,0 +1,129 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.util.Random
+
+class MessageSplitterTest {
+
+  @Test fun testShortText() {
+    assertThat(split("hello world", 100)).containsExactly("hello world")
+    assertThat(split("", 100)).isEmpty()
+  }
+
+  @Test fun testPrefersSpaces() {
+    assertThat(split("hello there world", 12)).containsExactly("hello there ", "world")
+    assertThat(split("abcdefghij", 4)).containsExactly("abcd", "efgh", "ij")
+  }
+
+  @Test fun testLineBreaks() {
+    assertThat(split("a\r\nb\n\nc\n", 100)).containsExactly("a", "b", "c")
+  }
+
+  @Test fun testNeverSplitsSequences() {
+    // Each of these is two bytes.
+    assertThat(split("\u00e9\u00e9\u00e9", 5)).containsExactly("\u00e9\u00e9", "\u00e9")
+    // Surrogate pairs are four bytes.
+    assertThat(split("a\ud83d\ude00", 4)).containsExactly("a", "\ud83d\ude00")
+  }
+
+  @Test fun testNeverSplitsGraphemes() {
+    val accented = "e\u0301"
+    assertThat(split("ab$accented", 4)).containsExactly("ab", accented)
+
+    val flag = "\ud83c\uddec\ud83c\udde7"
+    assertThat(split("$flag$flag", 12)).containsExactly(flag, flag)
+
+    val family = "\ud83d\udc69\u200d\ud83d\udc67"
+    assertThat(split("a$family", 11)).containsExactly("a", family)
+
+    val thumbs = "\ud83d\udc4d\ud83c\udffd"
+    assertThat(split("ab$thumbs", 8)).containsExactly("ab", thumbs)
+  }
+
+  @Test fun testLongGraphemeFallsBackToCodePoints() {
+    val text = "e" + "\u0301".repeat(4)
+    assertThat(split(text, 4)).containsExactly("e\u0301", "\u0301\u0301", "\u0301")
+  }
+
+  @Test fun testNeverSplitsColors() {
+    assertThat(split("ab\u000312,34cd", 6)).containsExactly("ab", "\u000312,34", "cd")
+    assertThat(split("ab\u00034,cd", 4)).containsExactly("ab\u00034", ",cd")
+    assertThat(split("a\u0004FF00aa,000000b", 14))
+        .containsExactly("a", "\u0004FF00aa,000000", "b")
+    assertThat(split("a\u0004abcdef", 4)).containsExactly("a", "\u0004abc", "def")
+    assertThat(split("a\u0004abcde", 4)).containsExactly("a\u0004ab", "cde")
+  }
+
+  @Test fun testPiecesFit() {
+    val random = Random(3)
+    val alphabet = listOf("a", " ", "\u00e9", "\u20ac", "\ud83d\ude00", "e\u0301", "\u000304,12")
+    for (i in 0 until 500) {
+      val builder = StringBuilder()
+      for (j in 0 until random.nextInt(200)) {
+        builder.append(alphabet[random.nextInt(alphabet.size)])
+      }
+      val text = builder.toString()
+      val maxLength = 8 + random.nextInt(50)
+
+      val pieces = split(text, maxLength)
+      assertThat(pieces.joinToString("")).isEqualTo(text)
+      for (piece in pieces) {
+        assertThat(piece.toByteArray(Charsets.UTF_8).size).isLessThanOrEqualTo(maxLength)
+      }
+    }
+  }
+
+  @Test fun testMaxTextLength() {
+    val prefix = "nick!user@host"
+    val length = MessageSplitter.maxTextLength(prefix.length, "PRIVMSG", "#a")
+    val line = ":$prefix PRIVMSG #a :${"x".repeat(length)}\r\n"
+    assertThat(line.length).isEqualTo(LineFramer.MAX_MESSAGE_LENGTH)
+
+    assertThat(MessageSplitter.maxTextLength(0, "PRIVMSG", "#a"))
+        .isEqualTo(length + prefix.length + 2)
+  }
+
+  @Test fun testWrite() {
+    val prefix = "nick!user@host.example.com"
+    val text = "word ".repeat(300) + "\n" + "\u00e9".repeat(300)
+    val buffer = ByteBuffer.allocate(8192)
+
+    val count = MessageSplitter.write(
+        MessageWriter(), buffer, prefix.length, Commands.PRIVMSG, "#channel", text)
+
+    val lines = String(buffer.array(), 0, buffer.position(), Charsets.UTF_8).split("\r\n")
+        .filter { it.isNotEmpty() }
+    assertThat(lines).hasSize(count)
+    val tokens = MessageTokens()
+    val relayed = StringBuilder()
+    for (line in lines) {
+      val length = ":$prefix $line\r\n".toByteArray(Charsets.UTF_8).size
+      assertThat(length).isLessThanOrEqualTo(LineFramer.MAX_MESSAGE_LENGTH)
+      // The line is written with a trailing colon so its last space is kept.
+      MessageTokenizer.tokenize(line, tokens)
+      assertThat(tokens.argument(0).toString()).isEqualTo("#channel")
+      relayed.append(line.substring(line.indexOf(" :") + 2))
+    }
+    assertThat(relayed.toString()).isEqualTo(text.replace("\n", ""))
+  }
+
+  @Test fun testInvalidMaxLength() {
+    try {
+      MessageSplitter.split("abc", 3, MessageSplitter.Callback { _, _, _ -> })
+      fail("Expected IllegalArgumentException.")
+    } catch (e: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  private fun split(text: String, maxLength: Int): List<String> {
+    val pieces = mutableListOf<String>()
+    MessageSplitter.split(text, maxLength, MessageSplitter.Callback { chars, start, end ->
+      pieces.add(chars.subSequence(start, end).toString())
+    })
+    return pieces
+  }
+}
@@ -0,0 +1,117 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class MessageTagsTest {
+
+  private val tokens = MessageTokens()
+
+  @Test fun testLookup() {
+    val tags = tagsOf("@time=2016-02-04T12:00:00.000Z;msgid=abc;+typing PRIVMSG #a :b")
+
+    assertThat(tags.has("msgid")).isTrue()
+    assertThat(tags.has("msg")).isFalse()
+    assertThat(tags.has("account")).isFalse()
+    assertThat(tags["time"]).isEqualTo("2016-02-04T12:00:00.000Z")
+    assertThat(tags["msgid"]).isEqualTo("abc")
+    assertThat(tags["account"]).isNull()
+  }
+
+  @Test fun testMissingAndEmptyValues() {
+    val tags = tagsOf("@+typing;empty= CMD")
+
+    assertThat(tags["+typing"]).isEmpty()
+    assertThat(tags["empty"]).isEmpty()
+    assertThat(tags.rawValue(0).length).isEqualTo(0)
+  }
+
+  @Test fun testLastDuplicateWins() {
+    val tags = tagsOf("@a=first;b;a=second CMD")
+
+    assertThat(tags.indexOfKey("a")).isEqualTo(2)
+    assertThat(tags["a"]).isEqualTo("second")
+  }
+
+  @Test fun testListIndexOf() {
+    val tags = tagsOf("@a=first;b;a=second CMD")
+
+    assertThat(tags).contains("a=first")
+    assertThat(tags.indexOf("a=first")).isEqualTo(0)
+    assertThat(tags.lastIndexOf("a=second")).isEqualTo(2)
+    assertThat(tags.indexOf("a")).isEqualTo(-1)
+  }
+
+  @Test fun testUnescaping() {
+    val tags = tagsOf("@a=semi\\:space\\sslash\\\\cr\\rlf\\n;b=in\\valid;c=trailing\\ CMD")
+
+    assertThat(tags["a"]).isEqualTo("semi;space slash\\cr\rlf\n")
+    assertThat(tags["b"]).isEqualTo("invalid")
+    assertThat(tags["c"]).isEqualTo("trailing")
+    assertThat(tags.rawValue(0).toString()).isEqualTo("semi\\:space\\sslash\\\\cr\\rlf\\n")
+    assertThat(tags.appendValue(1, StringBuilder("x")).toString()).isEqualTo("xinvalid")
+  }
+
+  @Test fun testKeysAndRawList() {
+    val tags = tagsOf("@example.com/foo=bar;baz CMD")
+
+    assertThat(tags.key(0).toString()).isEqualTo("example.com/foo")
+    assertThat(tags.key(1).toString()).isEqualTo("baz")
+    assertThat(tags).containsExactly("example.com/foo=bar", "baz")
+    assertThat(tags["example.com/foo"]).isEqualTo("bar")
+  }
+
+  @Test fun testBytes() {
+    val bytes = "@label=ünï\\scode;msgid=1 CMD".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    val tags = tokens.tags()
+
+    assertThat(tags["label"]).isEqualTo("ünï code")
+    assertThat(tags["msgid"]).isEqualTo("1")
+    assertThat(tags.start(1)).isEqualTo("@label=ünï\\scode;".toByteArray().size)
+  }
+
+  @Test fun testNoTags() {
+    MessageTokenizer.tokenize("PING", tokens)
+
+    assertThat(tokens.tags()).isEmpty()
+    assertThat(tokens.tags()["time"]).isNull()
+  }
+
+  @Test fun testCopySurvivesReuse() {
+    val bytes = "@a=1;b=\\s;c CMD".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    val copy = tokens.tags().copy()
+
+    bytes.fill(' '.toByte())
+    MessageTokenizer.tokenize("@z=9 PING", tokens)
+    assertThat(copy).containsExactly("a=1", "b=\\s", "c")
+    assertThat(copy["b"]).isEqualTo(" ")
+    assertThat(copy.has("z")).isFalse()
+  }
+
+  @Test fun testParse() {
+    val tags = MessageTags.parse("a=b;c")
+
+    assertThat(tags).containsExactly("a=b", "c")
+    assertThat(tags["a"]).isEqualTo("b")
+    assertThat(tags.has("c")).isTrue()
+  }
+
+  @Test fun testOf() {
+    val tagged = MessageTags.parse("a=b")
+    assertThat(MessageTags.of(tagged)).isSameAs(tagged)
+
+    val tags = MessageTags.of(listOf("a=b\\s", "c", "a=d"))
+    assertThat(tags).containsExactly("a=b\\s", "c", "a=d")
+    assertThat(tags["a"]).isEqualTo("d")
+    assertThat(tags.value(0)).isEqualTo("b ")
+    assertThat(tags.has("c")).isTrue()
+    assertThat(MessageTags.of(emptyList())).isEmpty()
+  }
+
+  private fun tagsOf(line: String): MessageTags {
+    MessageTokenizer.tokenize(line, tokens)
+    return tokens.tags()
+  }
+}
@@ -0,0 +1,58 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class MessageTest {
+
+  private val tokens = MessageTokens()
+
+  @Test fun testParse() {
+    val message = Message.parse("@a=b;c :nick!user@host PRIVMSG #channel :hello world")
+    assertThat(message.tags()).containsExactly("a=b", "c")
+    assertThat(message.prefix()).isEqualTo("nick!user@host")
+    assertThat(message.commandId()).isEqualTo(Commands.PRIVMSG)
+    assertThat(message.command()).isSameAs(Commands.name(Commands.PRIVMSG))
+    assertThat(message.argumentCount()).isEqualTo(2)
+    assertThat(message.argument(0)).isEqualTo("#channel")
+    assertThat(message.arguments()).containsExactly("#channel", "hello world")
+    assertThat(message.toString()).isEqualTo("@a=b;c :nick!user@host PRIVMSG #channel :hello world")
+  }
+
+  @Test fun testMinimal() {
+    val message = Message.parse("FOO")
+    assertThat(message.tags()).isEmpty()
+    assertThat(message.prefix()).isNull()
+    assertThat(message.commandId()).isEqualTo(Commands.UNKNOWN)
+    assertThat(message.command()).isEqualTo("FOO")
+    assertThat(message.arguments()).isEmpty()
+  }
+
+  @Test fun testCopyOfBytesSurvivesReuse() {
+    val bytes = "xx@k=v\\sw :nïck PRIVMSG #c :héllo yy".toByteArray()
+    MessageTokenizer.tokenize(bytes, 2, bytes.size - 5, tokens)
+    val message = tokens.copy()
+
+    bytes.fill(' '.toByte())
+    MessageTokenizer.tokenize("PING :other", tokens)
+
+    assertThat(message.tags().get("k")).isEqualTo("v w")
+    assertThat(message.prefix()).isEqualTo("nïck")
+    assertThat(message.arguments()).containsExactly("#c", "héllo")
+    assertThat(message.toString()).isEqualTo("@k=v\\sw :nïck PRIVMSG #c :héllo")
+  }
+
+  @Test fun testCopyOfDirectBuffer() {
+    val bytes = ":nick PRIVMSG #c :hi".toByteArray()
+    val buffer = ByteBuffer.allocateDirect(bytes.size + 4)
+    buffer.position(4)
+    buffer.put(bytes)
+    MessageTokenizer.tokenize(buffer, 4, bytes.size, tokens)
+    val message = tokens.copy()
+
+    MessageTokenizer.tokenize("PING :other", tokens)
+    assertThat(message.prefix()).isEqualTo("nick")
+    assertThat(message.arguments()).containsExactly("#c", "hi")
+  }
+}
@@ -6,6 +6,7 @@ import org.junit.Test
 import org.mockito.Mockito.mock
 import org.mockito.Mockito.verify
 import java.lang.reflect.Modifier
+import java.nio.ByteBuffer
 
 class MessageTokenizerTest {
 
@@ -101,6 +102,105 @@ class MessageTokenizerTest {
     verify(callback).onLineTokenized(null, null, "COMMAND", listOf("test", "test2", "arg arg2"))
   }
 
+  @Test fun testBytesEmptyLine() {
+    try {
+      tokenizeBytes("\r\n")
+      fail("Expected whitespace line to throw IllegalArgumentException.")
+    } catch (ex: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testBytesOnlyTags() {
+    try {
+      tokenizeBytes("@a=b;connection=d")
+      fail("Expected only tags to throw IllegalArgumentException.")
+    } catch (ex: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testBytesFullCode() {
+    tokenizeBytes("@a=b;connection=d :test 042 #test arg\r\n")
+    verify(callback).onLineTokenized(
+        listOf("a=b", "connection=d"), "test", "042", listOf("#test", "arg"))
+  }
+
+  @Test fun testBytesMultipleArgumentsWithColon() {
+    tokenizeBytes("COMMAND test test2 :arg arg2")
+    verify(callback).onLineTokenized(null, null, "COMMAND", listOf("test", "test2", "arg arg2"))
+  }
+
+  @Test fun testBytesNoArgumentCommand() {
+    tokenizeBytes("COMMAND")
+    verify(callback).onLineTokenized(null, null, "COMMAND", emptyList())
+  }
+
+  @Test fun testBytesUtf8() {
+    tokenizeBytes(":nïck PRIVMSG #tëst :héllo wörld ☃")
+    verify(callback).onLineTokenized(null, "nïck", "PRIVMSG", listOf("#tëst", "héllo wörld ☃"))
+  }
+
+  @Test fun testBytesOffset() {
+    val bytes = "xxPING :server.comyy".toByteArray()
+    MessageTokenizer.tokenize(bytes, 2, bytes.size - 4, callback)
+    verify(callback).onLineTokenized(null, null, "PING", listOf("server.com"))
+  }
+
+  @Test fun testDirectByteBuffer() {
+    val bytes = "xx:test PRIVMSG #test :hello".toByteArray()
+    val buffer = ByteBuffer.allocateDirect(bytes.size)
+    buffer.put(bytes)
+    MessageTokenizer.tokenize(buffer, 2, bytes.size - 2, callback)
+    verify(callback).onLineTokenized(null, "test", "PRIVMSG", listOf("#test", "hello"))
+  }
+
+  @Test fun testCallbackValuesSurviveReuse() {
+    val bytes = "@a=b :test PRIVMSG #channel :hello world".toByteArray()
+    val result = MessageTokenizer.tokenize(bytes, 0, bytes.size,
+        MessageTokenizer.Callback<List<Any?>> { tags, prefix, command, arguments ->
+          val nested = MessageTokenizer.tokenize("PING :other",
+              MessageTokenizer.Callback<List<String>> { _, _, _, pingArguments -> pingArguments })
+          bytes.fill(' '.toByte())
+          listOf(tags, prefix, command, arguments, nested)
+        })
+
+    assertThat(result[0]).isEqualTo(listOf("a=b"))
+    assertThat(result[1]).isEqualTo("test")
+    assertThat(result[2]).isEqualTo("PRIVMSG")
+    assertThat(result[3]).isEqualTo(listOf("#channel", "hello world"))
+    assertThat(result[4]).isEqualTo(listOf("other"))
+  }
+
+  @Test fun testInterestSkipsOtherCommands() {
+    val tokens = MessageTokens()
+    val interest = CommandSet.of(Commands.PRIVMSG)
+    assertThat(MessageTokenizer.tokenize("@a=b :test MODE #test +o nick", tokens, interest))
+        .isFalse()
+    assertThat(tokens.commandId()).isEqualTo(Commands.MODE)
+    assertThat(tokens.prefix().toString()).isEqualTo("test")
+    assertThat(tokens.hasTags()).isFalse()
+    assertThat(tokens.argumentCount()).isEqualTo(0)
+  }
+
+  @Test fun testInterestTokenizesWantedCommands() {
+    val tokens = MessageTokens()
+    val interest = CommandSet.of(Commands.PRIVMSG)
+    val bytes = "@a=b;c :test PRIVMSG #test :hello".toByteArray()
+    assertThat(MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens, interest)).isTrue()
+    assertThat(tokens.tags()).containsExactly("a=b", "c")
+    assertThat(tokens.copyArguments()).containsExactly("#test", "hello")
+  }
+
+  @Test fun testInterestOnlyTagsThrows() {
+    try {
+      MessageTokenizer.tokenize("@a=b;connection=d", MessageTokens(), CommandSet.of())
+      fail("Expected only tags to throw IllegalArgumentException.")
+    } catch (ex: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
   @Test fun testConstructorIsPrivate() {
     val constructor = MessageTokenizer::class.java.getDeclaredConstructor()
     assertThat(Modifier.isPrivate(constructor.modifiers)).isTrue()
@@ -111,4 +211,9 @@ class MessageTokenizerTest {
   private fun tokenize(line: String) {
     MessageTokenizer.tokenize(line, callback)
   }
+
+  private fun tokenizeBytes(line: String) {
+    val bytes = line.toByteArray()
+    MessageTokenizer.tokenize(ByteBuffer.wrap(bytes), 0, bytes.size, callback)
+  }
 }
\ No newline at end of file
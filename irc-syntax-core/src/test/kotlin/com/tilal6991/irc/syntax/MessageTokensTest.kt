@@ -0,0 +1,235 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+
+class MessageTokensTest {
+
+  private val tokens = MessageTokens()
+
+  @Test fun testFullLine() {
+    MessageTokenizer.tokenize("@a=b;c :nick!user@host PRIVMSG #channel :hello world", tokens)
+
+    assertThat(tokens.hasTags()).isTrue()
+    assertThat(tokens.tagCount()).isEqualTo(2)
+    assertThat(tokens.tag(0).toString()).isEqualTo("a=b")
+    assertThat(tokens.tag(1).toString()).isEqualTo("c")
+    assertThat(tokens.prefix().toString()).isEqualTo("nick!user@host")
+    assertThat(tokens.command().toString()).isEqualTo("PRIVMSG")
+    assertThat(tokens.argumentCount()).isEqualTo(2)
+    assertThat(tokens.argument(0).toString()).isEqualTo("#channel")
+    assertThat(tokens.argument(1).toString()).isEqualTo("hello world")
+  }
+
+  @Test fun testOffsets() {
+    val line = "@a=b :test CMD x :y z"
+    MessageTokenizer.tokenize(line, tokens)
+
+    assertThat(line.substring(tokens.tagStart(0), tokens.tagEnd(0))).isEqualTo("a=b")
+    assertThat(line.substring(tokens.prefixStart(), tokens.prefixEnd())).isEqualTo("test")
+    assertThat(line.substring(tokens.commandStart(), tokens.commandEnd())).isEqualTo("CMD")
+    assertThat(line.substring(tokens.argumentStart(0), tokens.argumentEnd(0))).isEqualTo("x")
+    assertThat(line.substring(tokens.argumentStart(1), tokens.argumentEnd(1))).isEqualTo("y z")
+  }
+
+  @Test fun testReuseResetsState() {
+    MessageTokenizer.tokenize("@a=b :test CMD x y z", tokens)
+    MessageTokenizer.tokenize("PING", tokens)
+
+    assertThat(tokens.hasTags()).isFalse()
+    assertThat(tokens.tagCount()).isEqualTo(0)
+    assertThat(tokens.hasPrefix()).isFalse()
+    assertThat(tokens.prefix()).isNull()
+    assertThat(tokens.prefixStart()).isEqualTo(-1)
+    assertThat(tokens.command().toString()).isEqualTo("PING")
+    assertThat(tokens.argumentCount()).isEqualTo(0)
+  }
+
+  @Test fun testManyArguments() {
+    val arguments = (0 until 20).map { "arg$it" }
+    MessageTokenizer.tokenize("CMD " + arguments.joinToString(" "), tokens)
+
+    assertThat(tokens.argumentCount()).isEqualTo(20)
+    assertThat((0 until 20).map { tokens.argument(it).toString() }).isEqualTo(arguments)
+  }
+
+  @Test fun testSliceIsCharSequence() {
+    MessageTokenizer.tokenize("PRIVMSG #channel :hello", tokens)
+
+    val argument = tokens.argument(1)
+    assertThat(argument.length).isEqualTo(5)
+    assertThat(argument[1]).isEqualTo('e')
+    assertThat(argument.subSequence(1, 3).toString()).isEqualTo("el")
+  }
+
+  @Test fun testBytes() {
+    val bytes = "xx:nïck PRIVMSG #tëst :héllo ☃\r\n".toByteArray()
+    MessageTokenizer.tokenize(bytes, 2, bytes.size - 2, tokens)
+
+    assertThat(tokens.prefix().toString()).isEqualTo("nïck")
+    assertThat(tokens.command().toString()).isEqualTo("PRIVMSG")
+    assertThat(tokens.argument(0).length).isEqualTo(5)
+    assertThat(tokens.argument(0)[2]).isEqualTo('ë')
+    assertThat(tokens.argument(1).toString()).isEqualTo("héllo ☃")
+    assertThat(tokens.commandStart()).isEqualTo(2 + ":nïck ".toByteArray().size)
+  }
+
+  @Test fun testDirectBufferOffsets() {
+    val bytes = "xxPING :server".toByteArray()
+    val buffer = ByteBuffer.allocateDirect(bytes.size)
+    buffer.put(bytes)
+    MessageTokenizer.tokenize(buffer, 2, bytes.size - 2, tokens)
+
+    assertThat(tokens.command().toString()).isEqualTo("PING")
+    assertThat(tokens.commandStart()).isEqualTo(2)
+    assertThat(tokens.argumentStart(0)).isEqualTo(8)
+    assertThat(tokens.argument(0).toString()).isEqualTo("server")
+  }
+
+  @Test fun testCommandId() {
+    MessageTokenizer.tokenize(":a PRIVMSG #b :c", tokens)
+    assertThat(tokens.commandId()).isEqualTo(Commands.PRIVMSG)
+    assertThat(tokens.commandString()).isSameAs(Commands.name(Commands.PRIVMSG))
+
+    val bytes = ":server 353 me = #b :names".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    assertThat(tokens.commandId()).isEqualTo(353)
+
+    MessageTokenizer.tokenize("FOO bar", tokens)
+    assertThat(tokens.commandId()).isEqualTo(Commands.UNKNOWN)
+    assertThat(tokens.commandString()).isEqualTo("FOO")
+  }
+
+  @Test fun testCopyArgumentsSurvivesReuse() {
+    val bytes = "PRIVMSG #channel :héllo world".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    val arguments = tokens.copyArguments()
+
+    bytes.fill(' '.toByte())
+    MessageTokenizer.tokenize("PING :other", tokens)
+    assertThat(arguments).containsExactly("#channel", "héllo world")
+
+    MessageTokenizer.tokenize("PING", tokens)
+    assertThat(tokens.copyArguments()).isEmpty()
+  }
+
+  @Test fun testArgumentStrings() {
+    val pool = StringPool.create(16)
+    val bytes = "PRIVMSG #channel :héllo".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    assertThat(tokens.argumentString(1)).isEqualTo("héllo")
+    val target = tokens.argumentString(0, pool)
+
+    MessageTokenizer.tokenize("NOTICE #channel :bye", tokens)
+    assertThat(tokens.argumentString(0, pool)).isSameAs(target)
+  }
+
+  @Test fun testCopyArgumentRange() {
+    val bytes = "005 nick A=1 B :are supported".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    val middle = tokens.copyArguments(null, 1, 3)
+
+    MessageTokenizer.tokenize("PING :other", tokens)
+    assertThat(middle).containsExactly("A=1", "B")
+    assertThat(tokens.copyArguments(null, 1, 1)).isEmpty()
+  }
+
+  @Test fun testPrefixParts() {
+    MessageTokenizer.tokenize(":nick!~user@host.example.com PRIVMSG #channel :hi", tokens)
+    assertThat(tokens.prefixNick().toString()).isEqualTo("nick")
+    assertThat(tokens.prefixUser().toString()).isEqualTo("~user")
+    assertThat(tokens.prefixHost().toString()).isEqualTo("host.example.com")
+
+    val bytes = ":nick@höst PRIVMSG #channel :hi".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    assertThat(tokens.prefixNick().toString()).isEqualTo("nick")
+    assertThat(tokens.prefixUser()).isNull()
+    assertThat(tokens.prefixHost().toString()).isEqualTo("höst")
+
+    MessageTokenizer.tokenize(":irc.example.net PING :x", tokens)
+    assertThat(tokens.prefixNick().toString()).isEqualTo("irc.example.net")
+    assertThat(tokens.prefixUser()).isNull()
+    assertThat(tokens.prefixHost()).isNull()
+
+    MessageTokenizer.tokenize("PING :x", tokens)
+    assertThat(tokens.prefixNick()).isNull()
+    assertThat(tokens.prefixUser()).isNull()
+    assertThat(tokens.prefixHost()).isNull()
+  }
+
+  @Test fun testCachedPrefix() {
+    val cache = PrefixCache(16)
+    MessageTokenizer.tokenize(":nick!user@host PRIVMSG #channel :hi", tokens)
+    val first = tokens.prefix(cache)
+
+    val bytes = ":nick!user@host PRIVMSG #other :bye".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    assertThat(tokens.prefix(cache)).isSameAs(first)
+    assertThat(tokens.prefixString(cache)).isSameAs(first!!.toString())
+
+    MessageTokenizer.tokenize("PING", tokens)
+    assertThat(tokens.prefix(cache)).isNull()
+  }
+
+  @Test fun testPooledStrings() {
+    val pool = StringPool.create(16)
+    MessageTokenizer.tokenize(":nick!user@host FOO #channel :hi", tokens)
+    val prefix = tokens.prefixString(pool)
+    val command = tokens.commandString(pool)
+    val target = tokens.copyArguments(pool)[0]
+
+    val bytes = ":nick!user@host FOO #channel :bye".toByteArray()
+    MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+    assertThat(tokens.prefixString(pool)).isSameAs(prefix)
+    assertThat(tokens.commandString(pool)).isSameAs(command)
+    assertThat(tokens.copyArguments(pool)[0]).isSameAs(target)
+    assertThat(tokens.copyArguments(pool)[1]).isEqualTo("bye")
+
+    MessageTokenizer.tokenize("PRIVMSG #channel :hi", tokens)
+    assertThat(tokens.commandString(pool)).isSameAs(Commands.name(Commands.PRIVMSG))
+  }
+
+  @Test fun testNoAllocationOnceGrown() {
+    val threads = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported)
+    threads!!.isThreadAllocatedMemoryEnabled = true
+
+    val line = "@a=b;c :nick!user@host PRIVMSG #channel :hello world"
+    val bytes = line.toByteArray()
+    var length = tokenizeAll(line, bytes, 10000)
+
+    val id = Thread.currentThread().id
+    val before = threads.getThreadAllocatedBytes(id)
+    length += tokenizeAll(line, bytes, 100000)
+    val allocated = threads.getThreadAllocatedBytes(id) - before
+
+    assertThat(length).isPositive()
+    // Leave room for the measurement itself; a single allocation per line would be megabytes.
+    assertThat(allocated).isLessThan(4096)
+  }
+
+  private fun tokenizeAll(line: String, bytes: ByteArray, times: Int): Int {
+    var length = 0
+    for (i in 0 until times) {
+      MessageTokenizer.tokenize(line, tokens)
+      length += tokens.tag(0).length + tokens.argument(1).length
+      MessageTokenizer.tokenize(bytes, 0, bytes.size, tokens)
+      length += tokens.prefixNick()!!.length + tokens.argument(1).length
+    }
+    return length
+  }
+
+  @Test fun testOutOfRange() {
+    MessageTokenizer.tokenize("PING", tokens)
+    try {
+      tokens.argument(0)
+      fail("Expected IndexOutOfBoundsException.")
+    } catch (ex: IndexOutOfBoundsException) {
+      // Don't bother checking exact message.
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.util.Random
+
+class MessageWriterTest {
+
+  private val writer = MessageWriter()
+  private val buffer = ByteArray(LineFramer.MAX_TAGS_LENGTH + LineFramer.MAX_MESSAGE_LENGTH)
+  private val tokens = MessageTokens()
+
+  @Test fun testFullLine() {
+    val length = writer.start(buffer, 0)
+        .tag("a", "b")
+        .tag("+c")
+        .prefix("nick!user@host")
+        .command("PRIVMSG")
+        .argument("#channel")
+        .argument("hello world")
+        .end()
+
+    assertThat(String(buffer, 0, length))
+        .isEqualTo("@a=b;+c :nick!user@host PRIVMSG #channel :hello world\r\n")
+  }
+
+  @Test fun testMinimalLine() {
+    val length = writer.start(buffer, 3).command(Commands.PING).end()
+
+    assertThat(length).isEqualTo(6)
+    assertThat(String(buffer, 3, length)).isEqualTo("PING\r\n")
+  }
+
+  @Test fun testTrailingOnlyWhenNeeded() {
+    assertThat(write { it.command("MODE").argument("#a").argument("+o") }).isEqualTo("MODE #a +o")
+    assertThat(write { it.command("AWAY").argument("") }).isEqualTo("AWAY :")
+    assertThat(write { it.command("PRIVMSG").argument("#a").argument(":)") })
+        .isEqualTo("PRIVMSG #a ::)")
+    assertThat(write { it.command("QUIT").trailing("bye") }).isEqualTo("QUIT :bye")
+  }
+
+  @Test fun testTrailingRange() {
+    assertThat(write { it.command("PRIVMSG").argument("#a").trailing("xhello\ud83d\ude00x", 1, 8) })
+        .isEqualTo("PRIVMSG #a :hello\ud83d\ude00")
+  }
+
+  @Test fun testNoArgumentAfterTrailing() {
+    writer.start(buffer, 0).command("PRIVMSG").argument("a b")
+    try {
+      writer.argument("c")
+      fail("Expected IllegalStateException.")
+    } catch (e: IllegalStateException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testTagEscaping() {
+    val value = "a;b c\\d\re\nf"
+    val line = write { it.tag("k", value).tag("empty", "").command("TAGMSG") }
+
+    assertThat(line).isEqualTo("@k=a\\:b\\sc\\\\d\\re\\nf;empty TAGMSG")
+    MessageTokenizer.tokenize(line, tokens)
+    assertThat(tokens.tags().get("k")).isEqualTo(value)
+    assertThat(tokens.tags().get("empty")).isEmpty()
+  }
+
+  @Test fun testUtf8() {
+    val text = "café € 😀"
+    val length = writer.start(buffer, 0).command("PRIVMSG").argument("#a").argument(text).end()
+
+    assertThat(buffer.copyOf(length))
+        .isEqualTo("PRIVMSG #a :$text\r\n".toByteArray(Charsets.UTF_8))
+    assertThat(write { it.command("PRIVMSG").argument("#a").argument("\ud83d") })
+        .isEqualTo("PRIVMSG #a ?")
+  }
+
+  @Test fun testRoundTrip() {
+    val random = Random(17)
+    for (i in 0 until 2000) {
+      val tags = (0 until random.nextInt(3)).map { "k$it" to text(random, 10) }
+      val prefix = if (random.nextBoolean()) "nick!user@host" else null
+      // Lines are trimmed when tokenized so trailing whitespace cannot round trip.
+      val arguments = (0 until random.nextInt(5)).map { text(random, 20).trimEnd() }
+
+      writer.start(buffer, 0)
+      tags.forEach { writer.tag(it.first, it.second) }
+      prefix?.let { writer.prefix(it) }
+      writer.command("PRIVMSG")
+      val written = mutableListOf<String>()
+      for (argument in arguments) {
+        written.add(argument)
+        writer.argument(argument)
+        if (argument.isEmpty() || argument.startsWith(":") || argument.contains(' ')) {
+          break
+        }
+      }
+      val length = writer.end()
+
+      MessageTokenizer.tokenize(buffer, 0, length - 2, tokens)
+      tags.forEach { assertThat(tokens.tags().get(it.first)).isEqualTo(it.second) }
+      assertThat(tokens.prefix()?.toString()).isEqualTo(prefix)
+      assertThat(tokens.command().toString()).isEqualTo("PRIVMSG")
+      assertThat(tokens.copyArguments()).isEqualTo(written)
+    }
+  }
+
+  @Test fun testMessageLimit() {
+    val text = "x".repeat(LineFramer.MAX_MESSAGE_LENGTH - "PRIVMSG #a :\r\n".length)
+    val length = writer.start(buffer, 0).command("PRIVMSG").argument("#a").trailing(text).end()
+    assertThat(length).isEqualTo(LineFramer.MAX_MESSAGE_LENGTH)
+
+    writer.start(buffer, 0).command("PRIVMSG").argument("#a")
+    try {
+      writer.trailing(text + "x")
+      fail("Expected IllegalArgumentException.")
+    } catch (e: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testTagsLimit() {
+    val value = "x".repeat(LineFramer.MAX_TAGS_LENGTH - "@k= ".length)
+    val length = writer.start(buffer, 0).tag("k", value).command("TAGMSG").end()
+    assertThat(length).isEqualTo(LineFramer.MAX_TAGS_LENGTH + "TAGMSG\r\n".length)
+
+    try {
+      writer.start(buffer, 0).tag("k", value + "x")
+      fail("Expected IllegalArgumentException.")
+    } catch (e: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testBufferOverflow() {
+    try {
+      writer.start(ByteArray(8), 0).command("PRIVMSG").argument("#a")
+      fail("Expected BufferOverflowException.")
+    } catch (e: BufferOverflowException) {
+      // Expected.
+    }
+  }
+
+  @Test fun testBufferEndsAtMessageLimit() {
+    val text = "x".repeat(LineFramer.MAX_MESSAGE_LENGTH - "PRIVMSG #a :\r\n".length)
+    val exact = ByteArray(LineFramer.MAX_MESSAGE_LENGTH - "\r\n".length)
+    writer.start(exact, 0).command("PRIVMSG").argument("#a")
+    try {
+      writer.trailing(text + "x")
+      fail("Expected BufferOverflowException.")
+    } catch (e: BufferOverflowException) {
+      // Expected.
+    }
+  }
+
+  @Test fun testByteBuffers() {
+    for (target in listOf(ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64))) {
+      target.position(2)
+      writer.start(target).command("NICK").argument("a").end()
+      writer.start(target).command("NICK").argument("b").end()
+
+      assertThat(target.position()).isEqualTo(2 + 2 * "NICK a\r\n".length)
+      target.flip().position(2)
+      val bytes = ByteArray(target.remaining())
+      target.get(bytes)
+      assertThat(String(bytes)).isEqualTo("NICK a\r\nNICK b\r\n")
+    }
+  }
+
+  @Test fun testInvalidParts() {
+    val invalid = listOf<(MessageWriter) -> Unit>(
+        { it.tag("a b") },
+        { it.tag("+") },
+        { it.tag("a", "b\u0000") },
+        { it.prefix("a b") },
+        { it.prefix("") },
+        { it.command("PRIV MSG") },
+        { it.command("12") },
+        { it.command(Commands.UNKNOWN) },
+        { it.command("PRIVMSG").argument("a\r\nQUIT") })
+    for (write in invalid) {
+      try {
+        write(writer.start(buffer, 0))
+        fail("Expected IllegalArgumentException.")
+      } catch (e: IllegalArgumentException) {
+        // Don't bother checking exact message.
+      }
+    }
+  }
+
+  @Test fun testOutOfOrder() {
+    val invalid = listOf<(MessageWriter) -> Unit>(
+        { it.command("PING").tag("a") },
+        { it.command("PING").prefix("a") },
+        { it.argument("a") },
+        { it.end() })
+    for (write in invalid) {
+      try {
+        write(writer.start(buffer, 0))
+        fail("Expected IllegalStateException.")
+      } catch (e: IllegalStateException) {
+        // Don't bother checking exact message.
+      }
+    }
+    try {
+      MessageWriter().command("PING")
+      fail("Expected IllegalStateException.")
+    } catch (e: IllegalStateException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  private fun write(write: (MessageWriter) -> Unit): String {
+    write(writer.start(buffer, 0))
+    val length = writer.end()
+    return String(buffer, 0, length - 2, Charsets.UTF_8)
+  }
+
+  private fun text(random: Random, maxLength: Int): String {
+    val alphabet = "ab :;\\é€"
+    val builder = StringBuilder()
+    for (i in 0 until random.nextInt(maxLength)) {
+      builder.append(alphabet[random.nextInt(alphabet.length)])
+    }
+    return builder.toString()
+  }
+}
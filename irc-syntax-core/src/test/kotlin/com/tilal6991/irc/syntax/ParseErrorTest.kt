@@ -0,0 +1,64 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import org.mockito.Mockito.mock
+
+class ParseErrorTest {
+
+  @Test fun testEmptyLine() {
+    val tokens = MessageTokens()
+    val error = tokenizeError("  \r\n", tokens)
+    assertThat(error.kind()).isEqualTo(ErrorKind.EMPTY_LINE)
+    assertThat(error.commandId()).isEqualTo(Commands.UNKNOWN)
+    assertThat(error.message).isEqualTo("Empty line cannot be parsed.")
+    assertThat(tokens.line().toString()).isEqualTo("  \r\n")
+  }
+
+  @Test fun testMissingCommand() {
+    val error = tokenizeError(":prefix", MessageTokens())
+    assertThat(error.kind()).isEqualTo(ErrorKind.MISSING_COMMAND)
+    assertThat(error.actualArguments()).isEqualTo(-1)
+  }
+
+  @Test fun testArgumentCount() {
+    try {
+      ArgumentParser.parse("PRIVMSG", listOf("#channel"), mock(ArgumentParser.Callback::class.java))
+      fail("Expected wrong argument count to throw ParseError.")
+    } catch (error: ParseError) {
+      assertThat(error.kind()).isEqualTo(ErrorKind.ARGUMENT_COUNT)
+      assertThat(error.commandId()).isEqualTo(Commands.PRIVMSG)
+      assertThat(error.minArguments()).isEqualTo(2)
+      assertThat(error.maxArguments()).isEqualTo(2)
+      assertThat(error.actualArguments()).isEqualTo(1)
+      assertThat(error.message).isEqualTo(
+          "Command: PRIVMSG. Expected argument count: 2. Actual argument count: 1.")
+    }
+  }
+
+  @Test fun testArgumentCountWithoutLimit() {
+    try {
+      CodeParser.parse(Commands.RPL_ISUPPORT, listOf("a"), mock(CodeParser.Callback::class.java))
+      fail("Expected wrong argument count to throw ParseError.")
+    } catch (error: ParseError) {
+      assertThat(error.commandId()).isEqualTo(Commands.RPL_ISUPPORT)
+      assertThat(error.maxArguments()).isEqualTo(Int.MAX_VALUE)
+      assertThat(error.message).isEqualTo(
+          "Command: 005. Expected argument count: geq: 2. Actual argument count: 1.")
+    }
+  }
+
+  @Test fun testNoStackTrace() {
+    assertThat(tokenizeError("", MessageTokens()).stackTrace).isEmpty()
+  }
+
+  private fun tokenizeError(line: String, tokens: MessageTokens): ParseError {
+    try {
+      MessageTokenizer.tokenize(line, tokens)
+    } catch (error: ParseError) {
+      return error
+    }
+    throw AssertionError("Expected line to throw ParseError.")
+  }
+}
@@ -0,0 +1,68 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+
+class PrefixCacheTest {
+
+  @Test fun testSharedInstance() {
+    val cache = PrefixCache(8)
+    val prefix = cache.get("nick!user@host")
+    assertThat(cache.get(String("nick!user@host".toCharArray()))).isSameAs(prefix)
+    assertThat(cache.get("nick!user@other")).isNotSameAs(prefix)
+  }
+
+  @Test fun testSlices() {
+    val cache = PrefixCache(8)
+    val line = ":nick!user@host PRIVMSG"
+    val fromChars = cache.get(line, null, 1, 15)
+    assertThat(fromChars.toString()).isEqualTo("nick!user@host")
+
+    val bytes = line.toByteArray()
+    assertThat(cache.get(null, bytes, 1, 15)).isSameAs(fromChars)
+    assertThat(cache.get("nick!user@host")).isSameAs(fromChars)
+  }
+
+  @Test fun testNonAsciiBytes() {
+    val cache = PrefixCache(8)
+    val bytes = "nïck!user@host".toByteArray()
+    val prefix = cache.get(null, bytes, 0, bytes.size)
+    assertThat(prefix.nick()).isEqualTo("nïck")
+    assertThat(cache.get(null, bytes, 0, bytes.size)).isSameAs(prefix)
+    assertThat(cache.get("nïck!user@host")).isSameAs(prefix)
+  }
+
+  @Test fun testCapacity() {
+    assertThat(PrefixCache(1).capacity()).isEqualTo(4)
+    assertThat(PrefixCache(500).capacity()).isEqualTo(512)
+    assertThat(PrefixCache(512).capacity()).isEqualTo(512)
+  }
+
+  @Test fun testBounded() {
+    val cache = PrefixCache(4)
+    val first = cache.get("nick0")
+    for (i in 1..4) {
+      cache.get("nick$i")
+    }
+    assertThat(cache.get("nick0")).isNotSameAs(first)
+  }
+
+  @Test fun testReferencedEntriesSurvive() {
+    val cache = PrefixCache(4)
+    val kept = cache.get("kept")
+    for (i in 0 until 100) {
+      assertThat(cache.get("kept")).isSameAs(kept)
+      cache.get("nick$i")
+    }
+  }
+
+  @Test fun testInvalidCapacity() {
+    try {
+      PrefixCache(0)
+      fail("Expected invalid capacity to throw IllegalArgumentException.")
+    } catch (ex: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class PrefixTest {
+
+  @Test fun testFull() {
+    val prefix = Prefix.parse("nick!~user@host.example.com")
+    assertThat(prefix.nick()).isEqualTo("nick")
+    assertThat(prefix.user()).isEqualTo("~user")
+    assertThat(prefix.host()).isEqualTo("host.example.com")
+    assertThat(prefix.toString()).isEqualTo("nick!~user@host.example.com")
+  }
+
+  @Test fun testNoUser() {
+    val prefix = Prefix.parse("nick@host")
+    assertThat(prefix.nick()).isEqualTo("nick")
+    assertThat(prefix.user()).isNull()
+    assertThat(prefix.host()).isEqualTo("host")
+  }
+
+  @Test fun testNoHost() {
+    val prefix = Prefix.parse("nick!user")
+    assertThat(prefix.nick()).isEqualTo("nick")
+    assertThat(prefix.user()).isEqualTo("user")
+    assertThat(prefix.host()).isNull()
+  }
+
+  @Test fun testServer() {
+    val prefix = Prefix.parse("irc.example.net")
+    assertThat(prefix.nick()).isEqualTo("irc.example.net")
+    assertThat(prefix.user()).isNull()
+    assertThat(prefix.host()).isNull()
+  }
+
+  @Test fun testAtInUser() {
+    // Only an @ after the ! separates the host.
+    val prefix = Prefix.parse("nick!us@er@host")
+    assertThat(prefix.user()).isEqualTo("us")
+    assertThat(prefix.host()).isEqualTo("er@host")
+  }
+
+  @Test fun testPartsAreKept() {
+    val prefix = Prefix.parse("nick!user@host")
+    assertThat(prefix.nick()).isSameAs(prefix.nick())
+    assertThat(prefix.user()).isSameAs(prefix.user())
+    assertThat(prefix.host()).isSameAs(prefix.host())
+  }
+
+  @Test fun testEquality() {
+    assertThat(Prefix.parse("nick!user@host")).isEqualTo(Prefix.parse("nick!user@host"))
+    assertThat(Prefix.parse("nick!user@host")).isNotEqualTo(Prefix.parse("nick!user@other"))
+    assertThat(Prefix.parse("a").hashCode()).isEqualTo("a".hashCode())
+  }
+}
@@ -0,0 +1,74 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class StringPoolTest {
+
+  @Test fun testIntern() {
+    val pool = StringPool.create(16)
+    val channel = pool.intern("#channel")
+    assertThat(pool.intern(String("#channel".toCharArray()))).isSameAs(channel)
+    assertThat(pool.intern("#other")).isNotSameAs(channel)
+  }
+
+  @Test fun testSlices() {
+    val pool = StringPool.create(16)
+    val line = "PRIVMSG #channel :hi"
+    val fromChars = pool.intern(line, null, 8, 16)
+    assertThat(fromChars).isEqualTo("#channel")
+    assertThat(pool.intern(null, line.toByteArray(), 8, 16)).isSameAs(fromChars)
+
+    val bytes = "#chânnel".toByteArray()
+    val decoded = pool.intern(null, bytes, 0, bytes.size)
+    assertThat(decoded).isEqualTo("#chânnel")
+    assertThat(pool.intern("#chânnel")).isSameAs(decoded)
+  }
+
+  @Test fun testLongValuesAreNotPooled() {
+    val pool = StringPool.create(16)
+    val long = "x".repeat(StringPool.MAX_LENGTH + 1)
+    assertThat(pool.intern(long)).isSameAs(long)
+    assertThat(pool.intern(String(long.toCharArray()))).isNotSameAs(long)
+  }
+
+  @Test fun testBounded() {
+    val pool = StringPool.create(4)
+    val first = pool.intern("nick0")
+    for (i in 1..4) {
+      pool.intern("nick$i")
+    }
+    assertThat(pool.intern(String("nick0".toCharArray()))).isNotSameAs(first)
+  }
+
+  @Test fun testStriped() {
+    val pool = StringPool.striped(1024, 8)
+    val executor = Executors.newFixedThreadPool(4)
+    try {
+      val results = executor.invokeAll((0 until 4).map {
+        Callable { (0 until 1000).map { pool.intern(String("#channel${it % 100}".toCharArray())) } }
+      }).map { it.get() }
+
+      for (result in results) {
+        for (i in 0 until 1000) {
+          assertThat(result[i]).isEqualTo("#channel${i % 100}")
+        }
+      }
+      assertThat(pool.intern("#channel7")).isSameAs(pool.intern(String("#channel7".toCharArray())))
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  @Test fun testInvalidStripes() {
+    try {
+      StringPool.striped(16, 0)
+      fail("Expected invalid stripes to throw IllegalArgumentException.")
+    } catch (ex: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+}
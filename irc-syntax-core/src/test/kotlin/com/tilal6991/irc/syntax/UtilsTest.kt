@@ -1,6 +1,7 @@
 package com.tilal6991.irc.syntax
 
 import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
 import org.junit.Test
 import java.lang.reflect.Modifier
 
@@ -12,6 +13,17 @@ class UtilsTest {
     assertThat(Utils.getOrNull(oneItemList(), 1)).isNull()
   }
 
+  @Test fun checkCountTest() {
+    Utils.checkCount(Commands.NICK, 1, 1, 1)
+    try {
+      Utils.checkCount(Commands.NICK, 2, 1, 1)
+      fail("Expected ParseError.")
+    } catch (error: ParseError) {
+      assertThat(error.commandId()).isEqualTo(Commands.NICK)
+      assertThat(error.actualArguments()).isEqualTo(2)
+    }
+  }
+
   @Test fun testConstructorIsPrivate() {
     val constructor = Utils::class.java.getDeclaredConstructor()
     assertThat(Modifier.isPrivate(constructor.modifiers)).isTrue()
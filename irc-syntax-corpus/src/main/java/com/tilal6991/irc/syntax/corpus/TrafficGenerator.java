@@ -0,0 +1,458 @@
+package com.tilal6991.irc.syntax.corpus;
+
+import com.tilal6991.irc.syntax.MessageParser;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nonnull;
+
+/**
+ * Deterministic generator of synthetic IRC traffic, as received by a client, whose shape is given
+ * by a {@link TrafficProfile}. The same profile always produces the same sequence of lines so that
+ * benchmarks and soak tests can be replayed exactly.
+ *
+ * <p>Lines can be taken one at a time, written to a stream as CRLF terminated UTF-8 or parsed
+ * directly. Running {@link #main(String[])} writes a corpus to a file. Instances are not thread
+ * safe.
+ */
+public final class TrafficGenerator {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  private static final String SERVER = "irc.example.net";
+  private static final String NICK = "soak";
+
+  private static final int PRIVMSG = 0;
+  private static final int NOTICE = 1;
+  private static final int JOIN = 2;
+  private static final int PART = 3;
+  private static final int QUIT = 4;
+  private static final int MODE = 5;
+  private static final int NICK_CHANGE = 6;
+  private static final int NUMERIC = 7;
+
+  private static final String[] WORDS = {
+      "the", "a", "is", "it", "to", "and", "of", "that", "you", "i", "for", "on", "with", "this",
+      "was", "but", "have", "not", "are", "just", "like", "what", "so", "can", "lol", "yeah", "ok",
+      "thanks", "anyone", "know", "why", "build", "fails", "works", "for", "me", "here", "now",
+      "parser", "server", "channel", "client", "message", "patch", "release", "bug", "fixed",
+      "https://example.org/some/fairly/long/path?with=query", "\u00e9t\u00e9",
+      "gr\u00fc\u00dfe", "\u043f\u0440\u0438\u0432\u0435\u0442",
+      "\u3053\u3093\u306b\u3061\u306f", "\u2603", ":)"
+  };
+
+  private static final String[] CAPABILITIES = {
+      "account-notify", "account-tag", "away-notify", "batch", "cap-notify", "chghost",
+      "echo-message", "extended-join", "invite-notify", "labeled-response", "message-tags",
+      "multi-prefix", "server-time", "setname", "userhost-in-names", "draft/chathistory",
+      "draft/multiline=max-bytes=4096,max-lines=100", "sasl=PLAIN,EXTERNAL",
+      "sts=port=6697,duration=2592000"
+  };
+
+  private final TrafficProfile profile;
+  private final Random random;
+  private final int[] cumulativeWeights;
+
+  private final ArrayDeque<String> pending = new ArrayDeque<>();
+  private final StringBuilder builder = new StringBuilder(1024);
+
+  private long lineCount;
+  private long messageCount;
+
+  // Users lost in the last netsplit which have yet to return.
+  private int splitStart;
+  private int splitSize;
+  private long rejoinAt = -1;
+
+  /**
+   * Creates a generator.
+   *
+   * @param profile the shape of the traffic to produce.
+   */
+  public TrafficGenerator(@Nonnull TrafficProfile profile) {
+    this.profile = profile;
+    this.random = new Random(profile.seed);
+    this.cumulativeWeights = new int[] {
+        profile.privmsgWeight, profile.noticeWeight, profile.joinWeight, profile.partWeight,
+        profile.quitWeight, profile.modeWeight, profile.nickWeight, profile.numericWeight
+    };
+    for (int i = 1; i < cumulativeWeights.length; i++) {
+      cumulativeWeights[i] += cumulativeWeights[i - 1];
+    }
+
+    if (profile.connectBurst) {
+      queueConnectBurst();
+    }
+  }
+
+  /**
+   * Writes a corpus to a file.
+   *
+   * <p>Usage: {@code TrafficGenerator <file> <megabytes> [seed]}
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: TrafficGenerator <file> <megabytes> [seed]");
+      System.exit(1);
+      return;
+    }
+
+    TrafficProfile.Builder builder = TrafficProfile.builder();
+    if (args.length == 3) {
+      builder.seed(Long.parseLong(args[2]));
+    }
+
+    TrafficGenerator generator = new TrafficGenerator(builder.build());
+    try (OutputStream out = new FileOutputStream(args[0])) {
+      long lines = generator.write(out, Long.parseLong(args[1]) * 1024 * 1024);
+      System.out.println("Wrote " + lines + " lines to " + args[0]);
+    }
+  }
+
+  /** Returns the next line without its terminator. */
+  @Nonnull
+  public String next() {
+    lineCount++;
+    if (pending.isEmpty()) {
+      if (rejoinAt != -1 && lineCount >= rejoinAt) {
+        queueRejoin();
+      } else if (splitSize == 0 && random.nextInt(1000000) < profile.netsplitPerMillion) {
+        queueNetsplit();
+      } else {
+        return nextLine();
+      }
+    }
+    return pending.poll();
+  }
+
+  /** Returns the next given number of lines. */
+  @Nonnull
+  public List<String> next(int count) {
+    List<String> lines = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      lines.add(next());
+    }
+    return lines;
+  }
+
+  /**
+   * Writes lines to the stream as CRLF terminated UTF-8 until at least the given number of bytes
+   * has been written. The stream is buffered internally and flushed but not closed.
+   *
+   * @return the number of lines written.
+   * @throws IOException if the stream throws.
+   */
+  public long write(@Nonnull OutputStream out, long bytes) throws IOException {
+    BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+    long written = 0;
+    long lines = 0;
+    while (written < bytes) {
+      byte[] line = next().getBytes(UTF_8);
+      buffered.write(line);
+      buffered.write(CRLF);
+      written += line.length + CRLF.length;
+      lines++;
+    }
+    buffered.flush();
+    return lines;
+  }
+
+  /**
+   * Feeds the given number of lines straight into a parser.
+   *
+   * @return the result of parsing the last line.
+   */
+  public <T> T parse(@Nonnull MessageParser<T> parser, long count) {
+    T result = null;
+    for (long i = 0; i < count; i++) {
+      result = parser.parse(next());
+    }
+    return result;
+  }
+
+  private String nextLine() {
+    int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    int kind = 0;
+    while (pick >= cumulativeWeights[kind]) {
+      kind++;
+    }
+
+    builder.setLength(0);
+    appendTags();
+    int user = random.nextInt(profile.users);
+    switch (kind) {
+      case PRIVMSG:
+        appendPrefix(user).append("PRIVMSG ");
+        appendTarget().append(" :");
+        appendMessage();
+        break;
+      case NOTICE:
+        if (random.nextInt(4) == 0) {
+          builder.append(':').append(SERVER).append(" NOTICE ").append(NICK).append(" :*** ");
+        } else {
+          appendPrefix(user).append("NOTICE ");
+          appendTarget().append(" :");
+        }
+        appendMessage();
+        break;
+      case JOIN:
+        appendJoin(user);
+        break;
+      case PART:
+        appendPrefix(user).append("PART ");
+        appendChannel(random.nextInt(profile.channels));
+        if (random.nextBoolean()) {
+          builder.append(" :");
+          appendMessage();
+        }
+        break;
+      case QUIT:
+        appendPrefix(user).append("QUIT :");
+        if (random.nextInt(3) == 0) {
+          builder.append("Ping timeout: 240 seconds");
+        } else {
+          builder.append("Quit: ");
+          appendMessage();
+        }
+        break;
+      case MODE:
+        appendMode(user);
+        break;
+      case NICK_CHANGE:
+        appendPrefix(user).append("NICK ").append("nick").append(user).append('_');
+        break;
+      case NUMERIC:
+        appendNumeric();
+        break;
+    }
+    return builder.toString();
+  }
+
+  private void appendTags() {
+    if (profile.taggedPercent == 0 || random.nextInt(100) >= profile.taggedPercent) {
+      return;
+    }
+
+    int count = 1 + random.nextInt(profile.maxTags);
+    builder.append("@time=2017-02-")
+        .append(10 + random.nextInt(18))
+        .append('T')
+        .append(10 + random.nextInt(14))
+        .append(':')
+        .append(10 + random.nextInt(50))
+        .append(':')
+        .append(10 + random.nextInt(50))
+        .append('.')
+        .append(100 + random.nextInt(900))
+        .append('Z');
+    for (int i = 1; i < count; i++) {
+      switch (i) {
+        case 1:
+          builder.append(";msgid=").append(Long.toHexString(profile.seed ^ messageCount++));
+          break;
+        case 2:
+          builder.append(";account=account").append(random.nextInt(profile.users));
+          break;
+        case 3:
+          builder.append(";+draft/reply=").append(Long.toHexString(random.nextLong()));
+          break;
+        case 4:
+          builder.append(";+typing=done");
+          break;
+        case 5:
+          builder.append(";+example.org/escaped=a\\sspaced\\:value\\\\");
+          break;
+        default:
+          builder.append(";vendor.example/tag").append(i).append('=').append(random.nextInt());
+          break;
+      }
+    }
+    builder.append(' ');
+  }
+
+  private StringBuilder appendPrefix(int user) {
+    builder.append(":nick").append(user).append("!~user").append(user).append('@');
+    if (user % 5 == 0) {
+      builder.append("user/nick").append(user);
+    } else {
+      // Spread the hosts so that users do not share them.
+      builder.append("host-").append(Integer.toHexString(user * 0x9E3779B1)).append(".example.com");
+    }
+    return builder.append(' ');
+  }
+
+  private StringBuilder appendTarget() {
+    if (random.nextInt(10) == 0) {
+      return builder.append(NICK);
+    }
+    return appendChannel(random.nextInt(profile.channels));
+  }
+
+  private StringBuilder appendChannel(int channel) {
+    return builder.append("#channel").append(channel);
+  }
+
+  private void appendMessage() {
+    // Exponentially distributed so that most messages are short with a long tail.
+    double length = -profile.meanMessageLength * Math.log(1 - random.nextDouble());
+    int target = (int) Math.min(Math.max(length, 1), profile.maxMessageLength);
+
+    int start = builder.length();
+    while (builder.length() - start < target) {
+      if (builder.length() != start) {
+        builder.append(' ');
+      }
+      builder.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    builder.setLength(start + target);
+  }
+
+  private void appendJoin(int user) {
+    // Servers with extended-join send the account and real name along with the channel.
+    appendPrefix(user).append("JOIN ");
+    appendChannel(random.nextInt(profile.channels));
+    if (user % 2 == 0) {
+      builder.append(" account").append(user);
+    } else {
+      builder.append(" *");
+    }
+    builder.append(" :Real Name ").append(user);
+  }
+
+  private void appendMode(int user) {
+    appendPrefix(user).append("MODE ");
+    appendChannel(random.nextInt(profile.channels));
+    switch (random.nextInt(4)) {
+      case 0:
+        builder.append(" +o nick").append(random.nextInt(profile.users));
+        break;
+      case 1:
+        builder.append(" +v nick").append(random.nextInt(profile.users));
+        break;
+      case 2:
+        builder.append(" +b *!*@host-").append(Integer.toHexString(random.nextInt()))
+            .append(".example.com");
+        break;
+      default:
+        builder.append(" +ov-v nick").append(random.nextInt(profile.users))
+            .append(" nick").append(random.nextInt(profile.users))
+            .append(" nick").append(random.nextInt(profile.users));
+        break;
+    }
+  }
+
+  private void appendNumeric() {
+    builder.append(':').append(SERVER).append(' ');
+    int channel = random.nextInt(profile.channels);
+    int user = random.nextInt(profile.users);
+    switch (random.nextInt(6)) {
+      case 0:
+        builder.append("353 ").append(NICK).append(" = ");
+        appendChannel(channel).append(" :");
+        for (int i = 0, count = 1 + random.nextInt(40); i < count; i++) {
+          if (i != 0) {
+            builder.append(' ');
+          }
+          int mode = random.nextInt(20);
+          builder.append(mode == 0 ? "@" : mode == 1 ? "+" : "")
+              .append("nick").append(random.nextInt(profile.users));
+        }
+        break;
+      case 1:
+        builder.append("366 ").append(NICK).append(' ');
+        appendChannel(channel).append(" :End of /NAMES list.");
+        break;
+      case 2:
+        builder.append("332 ").append(NICK).append(' ');
+        appendChannel(channel).append(" :");
+        appendMessage();
+        break;
+      case 3:
+        builder.append("333 ").append(NICK).append(' ');
+        appendChannel(channel).append(" nick").append(user).append(' ')
+            .append(1480000000 + random.nextInt(10000000));
+        break;
+      case 4:
+        builder.append("352 ").append(NICK).append(' ');
+        appendChannel(channel).append(" ~user").append(user).append(" host-").append(user)
+            .append(".example.com ").append(SERVER).append(" nick").append(user)
+            .append(" H :0 Real Name ").append(user);
+        break;
+      default:
+        builder.append("322 ").append(NICK).append(' ');
+        appendChannel(channel).append(' ').append(random.nextInt(2000)).append(" :");
+        appendMessage();
+        break;
+    }
+  }
+
+  private void queueConnectBurst() {
+    // CAP LS 302 replies are split into lines of at most 512 bytes, all but the last marked *.
+    String capStart = ":" + SERVER + " CAP * LS ";
+    StringBuilder capabilities = new StringBuilder(512);
+    for (int i = 0; i < profile.capabilities; i++) {
+      String name = CAPABILITIES[i % CAPABILITIES.length];
+      if (i >= CAPABILITIES.length) {
+        name = "vendor" + i / CAPABILITIES.length + ".example/" + name;
+      }
+      if (capStart.length() + capabilities.length() + name.length() + 6 > 512) {
+        pending.add(capStart + "* :" + capabilities);
+        capabilities.setLength(0);
+      }
+      if (capabilities.length() != 0) {
+        capabilities.append(' ');
+      }
+      capabilities.append(name);
+    }
+    pending.add(capStart + ":" + capabilities);
+    pending.add(":" + SERVER + " CAP " + NICK + " ACK :multi-prefix server-time message-tags");
+
+    String prefix = ":" + SERVER + " ";
+    pending.add(prefix + "001 " + NICK + " :Welcome to the Example IRC Network " + NICK);
+    pending.add(prefix + "002 " + NICK + " :Your host is " + SERVER + ", running version 2.0");
+    pending.add(prefix + "003 " + NICK + " :This server was created Thu Feb 2 2017");
+    pending.add(prefix + "004 " + NICK + " " + SERVER + " 2.0 DOQRSZaghilopsuwz CFILMPQSbceg");
+    pending.add(prefix + "005 " + NICK + " CASEMAPPING=rfc1459 CHANMODES=IXZbegw,k,FHJLdfjl,"
+        + "BCDKMNOPRScimnprstuz CHANTYPES=# NETWORK=Example PREFIX=(ov)@+"
+        + " :are supported by this server");
+    pending.add(prefix + "251 " + NICK + " :There are " + profile.users
+        + " users and 0 invisible on 2 servers");
+    pending.add(prefix + "254 " + NICK + " " + profile.channels + " :channels formed");
+    pending.add(prefix + "375 " + NICK + " :- " + SERVER + " Message of the Day -");
+    for (int i = 0; i < 20; i++) {
+      builder.setLength(0);
+      builder.append(prefix).append("372 ").append(NICK).append(" :- ");
+      appendMessage();
+      pending.add(builder.toString());
+    }
+    pending.add(prefix + "376 " + NICK + " :End of /MOTD command.");
+  }
+
+  private void queueNetsplit() {
+    splitStart = random.nextInt(profile.users);
+    splitSize = Math.min(profile.netsplitSize, profile.users);
+    for (int i = 0; i < splitSize; i++) {
+      builder.setLength(0);
+      appendPrefix((splitStart + i) % profile.users).append("QUIT :*.net *.split");
+      pending.add(builder.toString());
+    }
+    rejoinAt = lineCount + splitSize + 1000 + random.nextInt(10000);
+  }
+
+  private void queueRejoin() {
+    for (int i = 0; i < splitSize; i++) {
+      builder.setLength(0);
+      appendJoin((splitStart + i) % profile.users);
+      pending.add(builder.toString());
+    }
+    splitSize = 0;
+    rejoinAt = -1;
+  }
+}
@@ -0,0 +1,295 @@
+package com.tilal6991.irc.syntax.corpus;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Shape of the traffic produced by a {@link TrafficGenerator}. Two generators created from equal
+ * profiles produce exactly the same lines.
+ *
+ * <p>The weights of the different kinds of line are relative to each other; a weight of zero
+ * means that kind of line is never produced.
+ */
+public final class TrafficProfile {
+
+  final long seed;
+
+  final int privmsgWeight;
+  final int noticeWeight;
+  final int joinWeight;
+  final int partWeight;
+  final int quitWeight;
+  final int modeWeight;
+  final int nickWeight;
+  final int numericWeight;
+
+  final int taggedPercent;
+  final int maxTags;
+
+  final int users;
+  final int channels;
+
+  final int meanMessageLength;
+  final int maxMessageLength;
+
+  final int netsplitPerMillion;
+  final int netsplitSize;
+
+  final boolean connectBurst;
+  final int capabilities;
+
+  private TrafficProfile(Builder builder) {
+    this.seed = builder.seed;
+    this.privmsgWeight = builder.privmsgWeight;
+    this.noticeWeight = builder.noticeWeight;
+    this.joinWeight = builder.joinWeight;
+    this.partWeight = builder.partWeight;
+    this.quitWeight = builder.quitWeight;
+    this.modeWeight = builder.modeWeight;
+    this.nickWeight = builder.nickWeight;
+    this.numericWeight = builder.numericWeight;
+    this.taggedPercent = builder.taggedPercent;
+    this.maxTags = builder.maxTags;
+    this.users = builder.users;
+    this.channels = builder.channels;
+    this.meanMessageLength = builder.meanMessageLength;
+    this.maxMessageLength = builder.maxMessageLength;
+    this.netsplitPerMillion = builder.netsplitPerMillion;
+    this.netsplitSize = builder.netsplitSize;
+    this.connectBurst = builder.connectBurst;
+    this.capabilities = builder.capabilities;
+  }
+
+  /** Returns a profile of a busy chat network as seen by a client joined to many channels. */
+  @Nonnull
+  public static TrafficProfile defaults() {
+    return builder().build();
+  }
+
+  /** Returns a builder starting from the values of {@link #defaults()}. */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns a builder starting from the values of this profile. */
+  @Nonnull
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  /** Builder of {@link TrafficProfile}s. */
+  public static final class Builder {
+
+    private long seed = 6991;
+
+    private int privmsgWeight = 70;
+    private int noticeWeight = 3;
+    private int joinWeight = 8;
+    private int partWeight = 5;
+    private int quitWeight = 5;
+    private int modeWeight = 3;
+    private int nickWeight = 2;
+    private int numericWeight = 4;
+
+    private int taggedPercent = 80;
+    private int maxTags = 6;
+
+    private int users = 5000;
+    private int channels = 50;
+
+    private int meanMessageLength = 60;
+    private int maxMessageLength = 400;
+
+    private int netsplitPerMillion = 20;
+    private int netsplitSize = 300;
+
+    private boolean connectBurst = true;
+    private int capabilities = 60;
+
+    private Builder() {
+    }
+
+    private Builder(TrafficProfile profile) {
+      seed = profile.seed;
+      privmsgWeight = profile.privmsgWeight;
+      noticeWeight = profile.noticeWeight;
+      joinWeight = profile.joinWeight;
+      partWeight = profile.partWeight;
+      quitWeight = profile.quitWeight;
+      modeWeight = profile.modeWeight;
+      nickWeight = profile.nickWeight;
+      numericWeight = profile.numericWeight;
+      taggedPercent = profile.taggedPercent;
+      maxTags = profile.maxTags;
+      users = profile.users;
+      channels = profile.channels;
+      meanMessageLength = profile.meanMessageLength;
+      maxMessageLength = profile.maxMessageLength;
+      netsplitPerMillion = profile.netsplitPerMillion;
+      netsplitSize = profile.netsplitSize;
+      connectBurst = profile.connectBurst;
+      capabilities = profile.capabilities;
+    }
+
+    /** Sets the seed of the random numbers behind every choice of the generator. */
+    @Nonnull
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /** Sets the relative weight of PRIVMSG lines. */
+    @Nonnull
+    public Builder privmsgWeight(int weight) {
+      this.privmsgWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /** Sets the relative weight of NOTICE lines. */
+    @Nonnull
+    public Builder noticeWeight(int weight) {
+      this.noticeWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /** Sets the relative weight of JOIN lines. */
+    @Nonnull
+    public Builder joinWeight(int weight) {
+      this.joinWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /** Sets the relative weight of PART lines. */
+    @Nonnull
+    public Builder partWeight(int weight) {
+      this.partWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /** Sets the relative weight of QUIT lines, not counting those of netsplits. */
+    @Nonnull
+    public Builder quitWeight(int weight) {
+      this.quitWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /** Sets the relative weight of channel MODE lines. */
+    @Nonnull
+    public Builder modeWeight(int weight) {
+      this.modeWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /** Sets the relative weight of NICK lines. */
+    @Nonnull
+    public Builder nickWeight(int weight) {
+      this.nickWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /** Sets the relative weight of numeric replies, not counting the connect burst. */
+    @Nonnull
+    public Builder numericWeight(int weight) {
+      this.numericWeight = checkNotNegative(weight);
+      return this;
+    }
+
+    /**
+     * Sets the share of lines which carry IRCv3 tags and the largest number of tags on a line.
+     *
+     * @param percent the percentage of lines with tags, from 0 to 100.
+     * @param maxTags the largest number of tags on a line; each tagged line has between one and
+     *     this many tags.
+     */
+    @Nonnull
+    public Builder tags(int percent, int maxTags) {
+      if (percent < 0 || percent > 100) {
+        throw new IllegalArgumentException("Percentage must be between 0 and 100: " + percent);
+      }
+      this.taggedPercent = percent;
+      this.maxTags = checkPositive(maxTags);
+      return this;
+    }
+
+    /** Sets the number of distinct users, and so of distinct prefixes, on the network. */
+    @Nonnull
+    public Builder users(int users) {
+      this.users = checkPositive(users);
+      return this;
+    }
+
+    /** Sets the number of distinct channels messages are sent to. */
+    @Nonnull
+    public Builder channels(int channels) {
+      this.channels = checkPositive(channels);
+      return this;
+    }
+
+    /**
+     * Sets the lengths of PRIVMSG and NOTICE texts. Lengths are exponentially distributed as in
+     * real chat: most messages are short with a long tail of long ones.
+     *
+     * @param mean the mean length in characters.
+     * @param max the length at which messages are cut off.
+     */
+    @Nonnull
+    public Builder messageLength(int mean, int max) {
+      this.meanMessageLength = checkPositive(mean);
+      this.maxMessageLength = checkPositive(max);
+      return this;
+    }
+
+    /**
+     * Sets how often netsplits happen. Each netsplit is a burst of QUIT lines which is followed a
+     * while later by a burst of JOIN lines as the users return.
+     *
+     * @param perMillion the chance, per million lines, of a netsplit starting.
+     * @param size the number of users lost in each netsplit.
+     */
+    @Nonnull
+    public Builder netsplits(int perMillion, int size) {
+      this.netsplitPerMillion = checkNotNegative(perMillion);
+      this.netsplitSize = checkPositive(size);
+      return this;
+    }
+
+    /**
+     * Sets whether the traffic starts with the lines sent while connecting: a multi-line CAP LS
+     * reply followed by the welcome, ISUPPORT and MOTD numerics.
+     *
+     * @param enabled whether the connect burst is produced.
+     * @param capabilities the number of capabilities in the CAP LS reply.
+     */
+    @Nonnull
+    public Builder connectBurst(boolean enabled, int capabilities) {
+      this.connectBurst = enabled;
+      this.capabilities = checkNotNegative(capabilities);
+      return this;
+    }
+
+    /** Creates the profile. */
+    @Nonnull
+    public TrafficProfile build() {
+      int total = privmsgWeight + noticeWeight + joinWeight + partWeight + quitWeight + modeWeight
+          + nickWeight + numericWeight;
+      if (total == 0) {
+        throw new IllegalArgumentException("At least one kind of line must have a weight.");
+      }
+      return new TrafficProfile(this);
+    }
+
+    private static int checkNotNegative(int value) {
+      if (value < 0) {
+        throw new IllegalArgumentException("Value must not be negative: " + value);
+      }
+      return value;
+    }
+
+    private static int checkPositive(int value) {
+      if (value <= 0) {
+        throw new IllegalArgumentException("Value must be positive: " + value);
+      }
+      return value;
+    }
+  }
+}
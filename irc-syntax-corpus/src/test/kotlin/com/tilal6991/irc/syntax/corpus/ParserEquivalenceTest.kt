@@ -0,0 +1,74 @@
+package com.tilal6991.irc.syntax.corpus
+
+import com.tilal6991.irc.syntax.CommandSet
+import com.tilal6991.irc.syntax.FusedMessageParser
+import com.tilal6991.irc.syntax.MessageCallback
+import com.tilal6991.irc.syntax.MessageParser
+import com.tilal6991.irc.syntax.ParseError
+import com.tilal6991.irc.syntax.PrefixCache
+import com.tilal6991.irc.syntax.StringPool
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.lang.reflect.Proxy
+
+/**
+ * Checks the fused parser against the layered parsers, which keep their own argument count checks,
+ * over the corpus and every truncation of its lines.
+ */
+class ParserEquivalenceTest {
+
+  private val lines = TrafficGenerator(TrafficProfile.defaults()).next(5000).flatMap { line ->
+    val words = line.split(' ')
+    (1..words.size).map { words.subList(0, it).joinToString(" ") }
+  }
+
+  @Test fun testSameCallbacks() {
+    val layered = Recorder()
+    val fused = Recorder()
+    compare(MessageParser(layered.callback, CommandSet.all()), layered,
+        FusedMessageParser(fused.callback, CommandSet.all()), fused)
+  }
+
+  @Test fun testSameCallbacksWithCaches() {
+    val layered = Recorder()
+    val fused = Recorder()
+    val all = CommandSet.all()
+    compare(MessageParser(layered.callback, all, PrefixCache(64), StringPool.create(64)), layered,
+        FusedMessageParser(fused.callback, all, PrefixCache(64), StringPool.create(64)), fused)
+  }
+
+  private fun compare(layeredParser: MessageParser<Unit>, layered: Recorder,
+      fusedParser: FusedMessageParser<Unit>, fused: Recorder) {
+    var errors = 0
+    for (line in lines) {
+      layered.last = null
+      fused.last = null
+      layeredParser.parse(line)
+      fusedParser.parse(line)
+      assertThat(fused.last).describedAs(line).isEqualTo(layered.last)
+      if (layered.last!!.startsWith("onParseError")) {
+        errors++
+      }
+    }
+    // Truncated lines must have exercised the count checks of most commands.
+    assertThat(errors).isGreaterThan(1000)
+  }
+
+  /** Records the last call made to its callback. */
+  private class Recorder {
+    var last: String? = null
+
+    @Suppress("UNCHECKED_CAST")
+    val callback = Proxy.newProxyInstance(javaClass.classLoader,
+        arrayOf(MessageCallback::class.java)) { _, method, args ->
+      last = if (method.name == "onParseError") {
+        val error = args[1] as ParseError
+        "onParseError ${args[0]} ${error.kind()} ${error.commandId()} ${error.minArguments()} " +
+            "${error.maxArguments()} ${error.actualArguments()}"
+      } else {
+        "${method.name} ${args.toList()}"
+      }
+      null
+    } as MessageCallback<Unit>
+  }
+}
@@ -0,0 +1,75 @@
+package com.tilal6991.irc.syntax.corpus
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.CommandSet
+import com.tilal6991.irc.syntax.MessageParser
+import com.tilal6991.irc.syntax.ParseError
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+
+class TrafficGeneratorTest {
+
+  @Test fun testDeterministic() {
+    val first = TrafficGenerator(TrafficProfile.defaults()).next(10000)
+    val second = TrafficGenerator(TrafficProfile.defaults()).next(10000)
+    assertThat(first).isEqualTo(second)
+
+    val other = TrafficGenerator(TrafficProfile.builder().seed(42).build()).next(10000)
+    assertThat(other).isNotEqualTo(first)
+  }
+
+  @Test fun testEveryLineParses() {
+    val parser = MessageParser(object : AbstractMessageCallback<Unit>() {
+      override fun onParseError(line: CharSequence, error: ParseError): Unit {
+        throw AssertionError("Unable to parse $line", error)
+      }
+    }, CommandSet.all())
+    TrafficGenerator(TrafficProfile.defaults()).parse(parser, 100000)
+  }
+
+  @Test fun testConnectBurst() {
+    val lines = TrafficGenerator(TrafficProfile.defaults()).next(10)
+    assertThat(lines[0]).startsWith(":irc.example.net CAP * LS * :")
+    assertThat(lines.filter { it.contains(" CAP * LS ") }.last()).doesNotContain(" LS * :")
+    assertThat(lines.filter { it.length > 512 }).isEmpty()
+
+    val noBurst = TrafficProfile.builder().connectBurst(false, 0).build()
+    assertThat(TrafficGenerator(noBurst).next()).doesNotContain(" CAP ")
+  }
+
+  @Test fun testWeights() {
+    val profile = TrafficProfile.builder()
+        .privmsgWeight(0)
+        .noticeWeight(0)
+        .joinWeight(1)
+        .partWeight(0)
+        .quitWeight(0)
+        .modeWeight(0)
+        .nickWeight(0)
+        .numericWeight(0)
+        .tags(0, 1)
+        .netsplits(0, 1)
+        .connectBurst(false, 0)
+        .build()
+    assertThat(TrafficGenerator(profile).next(1000).filterNot { it.contains(" JOIN #") }).isEmpty()
+  }
+
+  @Test fun testNetsplit() {
+    val profile = TrafficProfile.builder()
+        .netsplits(1000000, 50)
+        .connectBurst(false, 0)
+        .build()
+    val lines = TrafficGenerator(profile).next(50)
+    assertThat(lines.filterNot { it.endsWith(" QUIT :*.net *.split") }).isEmpty()
+  }
+
+  @Test fun testWrite() {
+    val out = ByteArrayOutputStream()
+    val lines = TrafficGenerator(TrafficProfile.defaults()).write(out, 100000)
+    val text = out.toString("UTF-8")
+    assertThat(out.size()).isGreaterThanOrEqualTo(100000)
+    assertThat(text).endsWith("\r\n")
+    assertThat(text.split("\r\n").dropLast(1)).hasSize(lines.toInt())
+  }
+}
@@ -0,0 +1,66 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.ArgumentParser;
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the dispatch of already tokenized lines by {@link ArgumentParser}, one line of the
+ * corpus per operation.
+ */
+@State(Scope.Thread)
+public class ArgumentParserBenchmark {
+
+  @Param({Corpora.PRIVMSG, Corpora.NAMES, Corpora.CAP_LS, Corpora.CONNECT, Corpora.MIXED})
+  public String corpus;
+
+  private int[] commandIds;
+  private String[] commands;
+  private List<String>[] arguments;
+  private int index;
+
+  private final Sink sink = new Sink();
+
+  @Setup
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void setUp() {
+    String[] lines = Corpora.lines(corpus);
+    commandIds = new int[lines.length];
+    commands = new String[lines.length];
+    arguments = new List[lines.length];
+
+    MessageTokens tokens = new MessageTokens();
+    for (int i = 0; i < lines.length; i++) {
+      MessageTokenizer.tokenize(lines[i], tokens);
+      commandIds[i] = tokens.commandId();
+      commands[i] = tokens.commandString();
+      arguments[i] = tokens.copyArguments();
+    }
+  }
+
+  /** Dispatches on the command identifier found by the tokenizer. */
+  @Benchmark
+  public Object commandId() {
+    int i = next();
+    return ArgumentParser.parse(commandIds[i], commands[i], arguments[i], sink);
+  }
+
+  /** Dispatches on the command string, looking up its identifier first. */
+  @Benchmark
+  public Object command() {
+    int i = next();
+    return ArgumentParser.parse(commands[i], arguments[i], sink);
+  }
+
+  private int next() {
+    int current = index;
+    index = current + 1 == commands.length ? 0 : current + 1;
+    return current;
+  }
+}
@@ -0,0 +1,40 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.CapParser;
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks {@link CapParser} over one line of a long CAP LS reply per operation. */
+@State(Scope.Thread)
+public class CapParserBenchmark {
+
+  private List<String>[] arguments;
+  private int index;
+
+  private final Sink sink = new Sink();
+
+  @Setup
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void setUp() {
+    String[] lines = Corpora.lines(Corpora.CAP_LS);
+    arguments = new List[lines.length];
+
+    MessageTokens tokens = new MessageTokens();
+    for (int i = 0; i < lines.length; i++) {
+      MessageTokenizer.tokenize(lines[i], tokens);
+      arguments[i] = tokens.copyArguments();
+    }
+  }
+
+  @Benchmark
+  public Object capLs() {
+    int current = index;
+    index = current + 1 == arguments.length ? 0 : current + 1;
+    return CapParser.parse(arguments[current], sink);
+  }
+}
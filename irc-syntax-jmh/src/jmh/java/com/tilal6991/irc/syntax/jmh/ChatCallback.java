@@ -0,0 +1,28 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback;
+import java.util.List;
+
+/** Callback of a typical chat client which only handles messages and channel membership. */
+final class ChatCallback extends AbstractMessageCallback<Object> {
+
+  @Override
+  public Object onPrivmsg(List<String> tags, String prefix, String target, String message) {
+    return message;
+  }
+
+  @Override
+  public Object onNotice(List<String> tags, String prefix, String target, String message) {
+    return message;
+  }
+
+  @Override
+  public Object onJoin(List<String> tags, String prefix, String channel, List<String> arguments) {
+    return channel;
+  }
+
+  @Override
+  public Object onPart(List<String> tags, String prefix, String channel, String reason) {
+    return channel;
+  }
+}
@@ -0,0 +1,219 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.corpus.TrafficGenerator;
+import com.tilal6991.irc.syntax.corpus.TrafficProfile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nonnull;
+
+/**
+ * Fixed corpora of IRC lines shaped like the traffic which dominates real connections. Every
+ * corpus is generated from a fixed seed so that runs are comparable with each other.
+ */
+final class Corpora {
+
+  /** Tag-heavy IRCv3 PRIVMSG lines as sent by servers with message-tags and server-time. */
+  static final String PRIVMSG = "privmsg";
+
+  /** RPL_NAMREPLY lines listing 400 names each. */
+  static final String NAMES = "names";
+
+  /** A long multi-line CAP LS 302 reply. */
+  static final String CAP_LS = "capls";
+
+  /** The burst of numerics sent by a server on connect. */
+  static final String CONNECT = "connect";
+
+  /** A mix of every kind of line as produced by the default {@link TrafficProfile}. */
+  static final String MIXED = "mixed";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final long SEED = 6991;
+
+  private static final String SERVER = "irc.example.net";
+  private static final String NICK = "bencher";
+
+  private static final String[] WORDS = {
+      "the", "parser", "is", "fast", "but", "could", "be", "faster", "with", "fewer",
+      "allocations", "on", "hot", "path", "irc", "channel", "message", "ok", "lol", "thanks",
+      "anyone", "know", "why", "build", "fails", "here", "https://example.org/a/very/long/link",
+      "h\u00e9llo", "w\u00f6rld", "\u2603"
+  };
+
+  private static final String[] CAPABILITIES = {
+      "account-notify", "account-tag", "away-notify", "batch", "cap-notify", "chghost",
+      "echo-message", "extended-join", "invite-notify", "labeled-response", "message-tags",
+      "multi-prefix", "server-time", "setname", "userhost-in-names", "draft/chathistory",
+      "draft/event-playback", "draft/multiline=max-bytes=4096,max-lines=100",
+      "draft/read-marker", "draft/relaymsg=/", "sasl=PLAIN,EXTERNAL,SCRAM-SHA-256",
+      "sts=port=6697,duration=2592000", "znc.in/playback", "znc.in/self-message",
+      "example.org/custom-capability=with-a-value", "draft/account-registration=before-connect"
+  };
+
+  // No instances of corpora.
+  private Corpora() {
+  }
+
+  /** Returns the lines of the corpus with the given name. */
+  @Nonnull
+  static String[] lines(@Nonnull String name) {
+    Random random = new Random(SEED);
+    List<String> lines = new ArrayList<>();
+    switch (name) {
+      case PRIVMSG:
+        for (int i = 0; i < 1024; i++) {
+          lines.add(privmsg(random, i));
+        }
+        break;
+      case NAMES:
+        for (int i = 0; i < 16; i++) {
+          lines.add(names(random, i));
+        }
+        break;
+      case CAP_LS:
+        capLs(lines);
+        break;
+      case CONNECT:
+        connect(random, lines);
+        break;
+      case MIXED:
+        lines.addAll(new TrafficGenerator(TrafficProfile.defaults()).next(4096));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown corpus: " + name);
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+  /** Returns the lines of the corpus with the given name encoded as UTF-8. */
+  @Nonnull
+  static byte[][] bytes(@Nonnull String name) {
+    String[] lines = lines(name);
+    byte[][] bytes = new byte[lines.length][];
+    for (int i = 0; i < lines.length; i++) {
+      bytes[i] = lines[i].getBytes(UTF_8);
+    }
+    return bytes;
+  }
+
+  private static String privmsg(Random random, int index) {
+    int user = random.nextInt(500);
+    StringBuilder builder = new StringBuilder(512);
+    builder.append("@time=2017-01-")
+        .append(10 + random.nextInt(20))
+        .append("T12:")
+        .append(10 + random.nextInt(50))
+        .append(':')
+        .append(10 + random.nextInt(50))
+        .append('.')
+        .append(100 + random.nextInt(900))
+        .append("Z;msgid=")
+        .append(Long.toHexString(random.nextLong()))
+        .append(";account=user")
+        .append(user);
+    if (random.nextBoolean()) {
+      builder.append(";+draft/reply=").append(Long.toHexString(random.nextLong()));
+    }
+    if (random.nextInt(4) == 0) {
+      builder.append(";batch=chathistory").append(index / 64);
+    }
+    if (random.nextInt(8) == 0) {
+      builder.append(";+example.org/escaped=a\\sspaced\\:value");
+    }
+    builder.append(" :user").append(user)
+        .append("!~user").append(user)
+        .append("@host-").append(user).append(".example.com PRIVMSG #channel")
+        .append(random.nextInt(8))
+        .append(" :");
+
+    int words = 1 + random.nextInt(random.nextInt(8) == 0 ? 60 : 15);
+    for (int i = 0; i < words; i++) {
+      if (i != 0) {
+        builder.append(' ');
+      }
+      builder.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return builder.toString();
+  }
+
+  private static String names(Random random, int index) {
+    StringBuilder builder = new StringBuilder(8192);
+    builder.append(':').append(SERVER).append(" 353 ").append(NICK).append(" = #channel")
+        .append(index).append(" :");
+    for (int i = 0; i < 400; i++) {
+      if (i != 0) {
+        builder.append(' ');
+      }
+      int mode = random.nextInt(20);
+      if (mode == 0) {
+        builder.append('@');
+      } else if (mode == 1) {
+        builder.append('+');
+      }
+      builder.append("nick").append(random.nextInt(100000));
+    }
+    return builder.toString();
+  }
+
+  private static void capLs(List<String> lines) {
+    // Servers split the reply into lines of at most 512 bytes, marking all but the last with *.
+    String start = ":" + SERVER + " CAP * LS ";
+    StringBuilder builder = new StringBuilder(512);
+    for (int repeat = 0; repeat < 4; repeat++) {
+      for (String capability : CAPABILITIES) {
+        String name = repeat == 0 ? capability : "vendor" + repeat + ".example/" + capability;
+        if (start.length() + builder.length() + name.length() + 4 > 510) {
+          lines.add(start + "* :" + builder);
+          builder.setLength(0);
+        }
+        if (builder.length() != 0) {
+          builder.append(' ');
+        }
+        builder.append(name);
+      }
+    }
+    lines.add(start + ":" + builder);
+  }
+
+  private static void connect(Random random, List<String> lines) {
+    String prefix = ":" + SERVER + " ";
+    lines.add(prefix + "001 " + NICK + " :Welcome to the Example IRC Network " + NICK);
+    lines.add(prefix + "002 " + NICK + " :Your host is " + SERVER + ", running version 2.0");
+    lines.add(prefix + "003 " + NICK + " :This server was created Mon Jan 2 2017");
+    lines.add(prefix + "004 " + NICK + " " + SERVER
+        + " 2.0 DOQRSZaghilopsuwz CFILMPQSbcefgijklmno");
+    lines.add(prefix + "005 " + NICK + " AWAYLEN=200 CALLERID=g CASEMAPPING=rfc1459"
+        + " CHANMODES=IXZbegw,k,FHJLdfjl,BCDKMNOPRScimnprstuz CHANNELLEN=64 CHANTYPES=#"
+        + " ELIST=CMNTU ETRACE :are supported by this server");
+    lines.add(prefix + "005 " + NICK + " EXCEPTS EXTBAN=$,ajrxz INVEX KICKLEN=255 KNOCK"
+        + " MAXLIST=bq:250,e:100,I:100 MODES=4 NETWORK=Example NICKLEN=31 PREFIX=(ov)@+"
+        + " SAFELIST :are supported by this server");
+    lines.add(prefix + "005 " + NICK + " STATUSMSG=@+ TARGMAX=NAMES:1,LIST:1,KICK:1,WHOIS:1,"
+        + "PRIVMSG:4,NOTICE:4,ACCEPT:,MONITOR: TOPICLEN=390 UTF8ONLY WHOX"
+        + " :are supported by this server");
+    lines.add(prefix + "251 " + NICK + " :There are 96 users and 49123 invisible on 26 servers");
+    lines.add(prefix + "252 " + NICK + " 38 :IRC Operators online");
+    lines.add(prefix + "253 " + NICK + " 1 :unknown connection(s)");
+    lines.add(prefix + "254 " + NICK + " 41620 :channels formed");
+    lines.add(prefix + "255 " + NICK + " :I have 3147 clients and 1 servers");
+    lines.add(prefix + "265 " + NICK + " 3147 4104 :Current local users 3147, max 4104");
+    lines.add(prefix + "266 " + NICK + " 49219 50863 :Current global users 49219, max 50863");
+    lines.add(prefix + "250 " + NICK + " :Highest connection count: 4105 (4104 clients)");
+    lines.add(prefix + "375 " + NICK + " :- " + SERVER + " Message of the Day -");
+    for (int i = 0; i < 48; i++) {
+      StringBuilder builder = new StringBuilder(prefix).append("372 ").append(NICK).append(" :- ");
+      int words = random.nextInt(12);
+      for (int j = 0; j < words; j++) {
+        builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      lines.add(builder.toString());
+    }
+    lines.add(prefix + "376 " + NICK + " :End of /MOTD command.");
+    lines.add(":" + NICK + " MODE " + NICK + " :+Ziw");
+    lines.add(prefix + "396 " + NICK + " user/" + NICK + " :is now your hidden host");
+    lines.add(prefix + "900 " + NICK + " " + NICK + "!~" + NICK + "@user/" + NICK + " " + NICK
+        + " :You are now logged in as " + NICK);
+  }
+}
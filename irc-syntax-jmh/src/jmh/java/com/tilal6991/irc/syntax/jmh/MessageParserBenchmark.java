@@ -0,0 +1,93 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.CommandSet;
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.MessageParser;
+import com.tilal6991.irc.syntax.PrefixCache;
+import com.tilal6991.irc.syntax.StringPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the generated {@link MessageParser} from line to callback, one line of the corpus
+ * per operation.
+ */
+@State(Scope.Thread)
+public class MessageParserBenchmark {
+
+  @Param({Corpora.PRIVMSG, Corpora.NAMES, Corpora.CAP_LS, Corpora.CONNECT, Corpora.MIXED})
+  public String corpus;
+
+  private String[] lines;
+  private byte[][] bytes;
+  private int index;
+
+  private MessageParser<Object> full;
+  private MessageParser<Object> interested;
+  private MessageParser<Object> cachedPrefixes;
+  private MessageParser<Object> pooledStrings;
+  private FusedMessageParser<Object> fused;
+
+  @Setup
+  public void setUp() {
+    lines = Corpora.lines(corpus);
+    bytes = Corpora.bytes(corpus);
+
+    full = new MessageParser<>(new ChatCallback(), CommandSet.all());
+    interested = new MessageParser<>(new ChatCallback());
+    cachedPrefixes =
+        new MessageParser<>(new ChatCallback(), CommandSet.all(), new PrefixCache(8192), null);
+    pooledStrings = new MessageParser<>(
+        new ChatCallback(), CommandSet.all(), new PrefixCache(8192), StringPool.create(8192));
+    fused = new FusedMessageParser<>(new ChatCallback(), CommandSet.all());
+  }
+
+  /** Fully parses every line. */
+  @Benchmark
+  public Object full() {
+    return full.parse(lines[next()]);
+  }
+
+  /** Fully parses every line from UTF-8 bytes. */
+  @Benchmark
+  public Object fullBytes() {
+    byte[] line = bytes[next()];
+    return full.parse(line, 0, line.length);
+  }
+
+  /** Only parses the lines handled by a chat client. */
+  @Benchmark
+  public Object interested() {
+    return interested.parse(lines[next()]);
+  }
+
+  /** Fully parses every line from UTF-8 bytes, sharing prefixes through a cache. */
+  @Benchmark
+  public Object cachedPrefixes() {
+    byte[] line = bytes[next()];
+    return cachedPrefixes.parse(line, 0, line.length);
+  }
+
+  /** As {@link #cachedPrefixes()} but also deduplicating commands and arguments. */
+  @Benchmark
+  public Object pooledStrings() {
+    byte[] line = bytes[next()];
+    return pooledStrings.parse(line, 0, line.length);
+  }
+
+  /** As {@link #fullBytes()} but through the generated {@link FusedMessageParser}. */
+  @Benchmark
+  public Object fusedBytes() {
+    byte[] line = bytes[next()];
+    return fused.parse(line, 0, line.length);
+  }
+
+  private int next() {
+    int current = index;
+    index = current + 1 == lines.length ? 0 : current + 1;
+    return current;
+  }
+}
@@ -0,0 +1,58 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.Message;
+import com.tilal6991.irc.syntax.MessageReader;
+import com.tilal6991.irc.syntax.MessageTokens;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks {@link MessageReader} over the whole corpus, as one stream, per operation. */
+@State(Scope.Thread)
+public class MessageReaderBenchmark {
+
+  @Param({Corpora.PRIVMSG, Corpora.MIXED})
+  public String corpus;
+
+  private byte[] stream;
+
+  @Setup
+  public void setUp() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (byte[] line : Corpora.bytes(corpus)) {
+      output.write(line, 0, line.length);
+      output.write('\r');
+      output.write('\n');
+    }
+    stream = output.toByteArray();
+  }
+
+  /** Pulls every line through the reused cursor, touching only its arguments. */
+  @Benchmark
+  public int cursor() throws IOException {
+    MessageReader reader = new MessageReader(new ByteArrayInputStream(stream));
+    int count = 0;
+    MessageTokens tokens;
+    while ((tokens = reader.next()) != null) {
+      count += tokens.argumentCount();
+    }
+    return count;
+  }
+
+  /** Pulls every line and keeps an immutable copy of it. */
+  @Benchmark
+  public Message copy() throws IOException {
+    MessageReader reader = new MessageReader(new ByteArrayInputStream(stream));
+    Message last = null;
+    MessageTokens tokens;
+    while ((tokens = reader.next()) != null) {
+      last = tokens.copy();
+    }
+    return last;
+  }
+}
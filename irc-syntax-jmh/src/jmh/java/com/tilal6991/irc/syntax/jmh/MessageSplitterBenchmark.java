@@ -0,0 +1,56 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.Commands;
+import com.tilal6991.irc.syntax.MessageSplitter;
+import com.tilal6991.irc.syntax.MessageWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks splitting a long relayed message into PRIVMSG lines. */
+@State(Scope.Thread)
+public class MessageSplitterBenchmark {
+
+  private static final int PREFIX_LENGTH = "somebody!~user@host.example.com".length();
+
+  private final MessageWriter writer = new MessageWriter();
+  private String text;
+  private ByteBuffer buffer;
+
+  @Setup
+  public void setUp() {
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < 4096) {
+      builder.append("caf\u00e9 na\u00efve r\u00e9sum\u00e9 \u000304red\u0003 words ");
+    }
+    text = builder.toString();
+    buffer = ByteBuffer.allocate(16384);
+  }
+
+  @Benchmark
+  public int splitter() {
+    buffer.clear();
+    return MessageSplitter.write(writer, buffer, PREFIX_LENGTH, Commands.PRIVMSG, "#channel", text);
+  }
+
+  /** Shrinks each piece a char at a time until its encoding fits, as callers would naively. */
+  @Benchmark
+  public int naive() {
+    buffer.clear();
+    int maxLength = MessageSplitter.maxTextLength(PREFIX_LENGTH, "PRIVMSG", "#channel");
+    int count = 0;
+    for (int start = 0; start < text.length(); count++) {
+      int end = Math.min(text.length(), start + maxLength);
+      while (text.substring(start, end).getBytes(StandardCharsets.UTF_8).length > maxLength) {
+        end--;
+      }
+      String line = "PRIVMSG #channel :" + text.substring(start, end) + "\r\n";
+      buffer.put(line.getBytes(StandardCharsets.UTF_8));
+      start = end;
+    }
+    return count;
+  }
+}
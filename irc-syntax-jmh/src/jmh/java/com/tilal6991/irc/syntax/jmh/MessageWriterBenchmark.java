@@ -0,0 +1,59 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.Commands;
+import com.tilal6991.irc.syntax.MessageWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks encoding a tagged PRIVMSG into a reused buffer. */
+@State(Scope.Thread)
+public class MessageWriterBenchmark {
+
+  private static final String TARGET = "#channel";
+  private static final String TEXT = "hello world, this is a reasonably sized message \u00e9\u00e8";
+  private static final String MSGID = "a1b2c3;d4";
+
+  private final MessageWriter writer = new MessageWriter();
+  private ByteBuffer heap;
+  private ByteBuffer direct;
+
+  @Setup
+  public void setUp() {
+    heap = ByteBuffer.allocate(1 << 16);
+    direct = ByteBuffer.allocateDirect(1 << 16);
+  }
+
+  @Benchmark
+  public int writerHeap() {
+    return write(heap);
+  }
+
+  @Benchmark
+  public int writerDirect() {
+    return write(direct);
+  }
+
+  /** Builds the same line as a string and encodes it, as callers would without the writer. */
+  @Benchmark
+  public int concat() {
+    String line = "@msgid=" + MSGID.replace(";", "\\:") + " PRIVMSG " + TARGET + " :" + TEXT
+        + "\r\n";
+    heap.clear();
+    heap.put(line.getBytes(StandardCharsets.UTF_8));
+    return heap.position();
+  }
+
+  private int write(ByteBuffer buffer) {
+    buffer.clear();
+    return writer.start(buffer)
+        .tag("msgid", MSGID)
+        .command(Commands.PRIVMSG)
+        .argument(TARGET)
+        .argument(TEXT)
+        .end();
+  }
+}
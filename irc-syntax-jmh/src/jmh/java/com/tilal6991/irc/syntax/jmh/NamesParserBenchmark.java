@@ -0,0 +1,42 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import com.tilal6991.irc.syntax.NamesParser;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks {@link NamesParser} over one 400-name RPL_NAMREPLY line per operation. */
+@State(Scope.Thread)
+public class NamesParserBenchmark {
+
+  private List<String>[] arguments;
+  private int index;
+
+  private final Sink sink = new Sink();
+
+  @Setup
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void setUp() {
+    String[] lines = Corpora.lines(Corpora.NAMES);
+    arguments = new List[lines.length];
+
+    // The names parser is given the arguments following the target of the reply.
+    MessageTokens tokens = new MessageTokens();
+    for (int i = 0; i < lines.length; i++) {
+      MessageTokenizer.tokenize(lines[i], tokens);
+      List<String> all = tokens.copyArguments();
+      arguments[i] = all.subList(1, all.size());
+    }
+  }
+
+  @Benchmark
+  public Object names() {
+    int current = index;
+    index = current + 1 == arguments.length ? 0 : current + 1;
+    return NamesParser.parse(arguments[current], sink);
+  }
+}
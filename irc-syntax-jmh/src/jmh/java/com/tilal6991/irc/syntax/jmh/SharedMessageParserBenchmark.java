@@ -0,0 +1,65 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.CommandSet;
+import com.tilal6991.irc.syntax.SharedMessageParser;
+import com.tilal6991.irc.syntax.StringPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks a single {@link SharedMessageParser} used by several threads at once, one line of the
+ * corpus per operation. Compare against {@link MessageParserBenchmark} which uses a parser per
+ * thread.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class SharedMessageParserBenchmark {
+
+  @Param({Corpora.PRIVMSG, Corpora.MIXED})
+  public String corpus;
+
+  private byte[][] bytes;
+
+  private SharedMessageParser<Object> shared;
+  private SharedMessageParser<Object> pooledStrings;
+
+  @Setup
+  public void setUp() {
+    bytes = Corpora.bytes(corpus);
+
+    shared = new SharedMessageParser<>(new ChatCallback(), CommandSet.all());
+    pooledStrings = new SharedMessageParser<>(
+        new ChatCallback(), CommandSet.all(), StringPool.striped(8192, 64));
+  }
+
+  /** Fully parses every line from UTF-8 bytes. */
+  @Benchmark
+  public Object shared(Cursor cursor) {
+    byte[] line = bytes[cursor.next(bytes.length)];
+    return shared.parse(line, 0, line.length);
+  }
+
+  /** Fully parses every line from UTF-8 bytes, deduplicating strings through a striped pool. */
+  @Benchmark
+  public Object pooledStrings(Cursor cursor) {
+    byte[] line = bytes[cursor.next(bytes.length)];
+    return pooledStrings.parse(line, 0, line.length);
+  }
+
+  /** Position of each thread in the corpus. */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private int index;
+
+    int next(int length) {
+      int current = index;
+      index = current + 1 == length ? 0 : current + 1;
+      return current;
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.ArgumentParser;
+import com.tilal6991.irc.syntax.CapParser;
+import com.tilal6991.irc.syntax.CodeParser;
+import com.tilal6991.irc.syntax.NamesParser;
+import java.util.List;
+
+/**
+ * Callback for the core parsers which returns its last argument so that the benchmarks can hand
+ * the results to a blackhole. Nested parsing (CAP subcommands, codes, names) is not followed.
+ */
+final class Sink implements ArgumentParser.Callback<Object>, CapParser.Callback<Object>,
+    CodeParser.Callback<Object>, NamesParser.Callback<Object> {
+
+  @Override
+  public Object onPing(String hostname) {
+    return hostname;
+  }
+
+  @Override
+  public Object onQuit(String reason) {
+    return reason;
+  }
+
+  @Override
+  public Object onJoin(String channel, List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onMode(String target, List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onKick(String channel, String user, String reason) {
+    return reason;
+  }
+
+  @Override
+  public Object onNick(String nick) {
+    return nick;
+  }
+
+  @Override
+  public Object onPart(String channel, String reason) {
+    return reason;
+  }
+
+  @Override
+  public Object onAuthenticate(String data) {
+    return data;
+  }
+
+  @Override
+  public Object onAccount(String account) {
+    return account;
+  }
+
+  @Override
+  public Object onChghost(String newUser, String newHost) {
+    return newHost;
+  }
+
+  @Override
+  public Object onPrivmsg(String target, String message) {
+    return message;
+  }
+
+  @Override
+  public Object onNotice(String target, String message) {
+    return message;
+  }
+
+  @Override
+  public Object onInvite(String target, String channel) {
+    return channel;
+  }
+
+  @Override
+  public Object onAway(String message) {
+    return message;
+  }
+
+  @Override
+  public Object onBatch(String modifiedReferenceTag, String type, List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onCap(List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onReply(int code, String target, List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onUnknownCommand(String command, List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onCapLs(String clientId, boolean finalLine, List<String> modCapabilityAndValues) {
+    return modCapabilityAndValues;
+  }
+
+  @Override
+  public Object onCapList(String clientId, boolean finalLine, List<String> modCapabilityAndValues) {
+    return modCapabilityAndValues;
+  }
+
+  @Override
+  public Object onCapAck(String clientId, List<String> modCapabilityAndValues) {
+    return modCapabilityAndValues;
+  }
+
+  @Override
+  public Object onCapNak(String clientId, List<String> modCapabilityAndValues) {
+    return modCapabilityAndValues;
+  }
+
+  @Override
+  public Object onCapNew(String clientId, List<String> modCapabilityAndValues) {
+    return modCapabilityAndValues;
+  }
+
+  @Override
+  public Object onCapDel(String clientId, List<String> modCapabilityAndValues) {
+    return modCapabilityAndValues;
+  }
+
+  @Override
+  public Object onUnknownCap(String clientId, String subcommand, List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onWelcome(String message) {
+    return message;
+  }
+
+  @Override
+  public Object onIsupport(String message, List<String> tokens) {
+    return tokens;
+  }
+
+  @Override
+  public Object onNamReply(List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onEndOfNames(String channel, String message) {
+    return message;
+  }
+
+  @Override
+  public Object onMotd(String message) {
+    return message;
+  }
+
+  @Override
+  public Object onMotdStart(String message) {
+    return message;
+  }
+
+  @Override
+  public Object onEndOfMotd(String message) {
+    return message;
+  }
+
+  @Override
+  public Object onUnknownCode(int code, List<String> arguments) {
+    return arguments;
+  }
+
+  @Override
+  public Object onNames(Character channelDescriptor, String channel, List<String> names) {
+    return names;
+  }
+}
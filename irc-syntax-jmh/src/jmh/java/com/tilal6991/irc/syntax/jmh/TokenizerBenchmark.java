@@ -0,0 +1,69 @@
+package com.tilal6991.irc.syntax.jmh;
+
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks {@link MessageTokenizer} over a single line of the corpus per operation. */
+@State(Scope.Thread)
+public class TokenizerBenchmark {
+
+  @Param({Corpora.PRIVMSG, Corpora.NAMES, Corpora.CAP_LS, Corpora.CONNECT, Corpora.MIXED})
+  public String corpus;
+
+  private String[] lines;
+  private byte[][] bytes;
+  private int index;
+
+  private final MessageTokens tokens = new MessageTokens();
+  private final MessageTokenizer.Callback<Object> callback =
+      new MessageTokenizer.Callback<Object>() {
+        @Override
+        public Object onLineTokenized(
+            List<String> tags, String prefix, String command, List<String> arguments) {
+          return arguments;
+        }
+      };
+
+  @Setup
+  public void setUp() {
+    lines = Corpora.lines(corpus);
+    bytes = Corpora.bytes(corpus);
+  }
+
+  /** Tokenizes into a fresh cursor and hands strings and lists to a callback. */
+  @Benchmark
+  public Object callback() {
+    return MessageTokenizer.tokenize(nextLine(), callback);
+  }
+
+  /** Tokenizes a string into a reused cursor. */
+  @Benchmark
+  public MessageTokens cursor() {
+    MessageTokenizer.tokenize(nextLine(), tokens);
+    return tokens;
+  }
+
+  /** Tokenizes UTF-8 bytes into a reused cursor without decoding them. */
+  @Benchmark
+  public MessageTokens cursorBytes() {
+    byte[] line = bytes[next()];
+    MessageTokenizer.tokenize(line, 0, line.length, tokens);
+    return tokens;
+  }
+
+  private String nextLine() {
+    return lines[next()];
+  }
+
+  private int next() {
+    int current = index;
+    index = current + 1 == lines.length ? 0 : current + 1;
+    return current;
+  }
+}
@@ -0,0 +1,127 @@
+package com.tilal6991.irc.syntax.metrics;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Histogram of durations in nanoseconds which can be recorded into by many threads at once
+ * without locking. Durations are counted in buckets whose width grows with their value, in the
+ * manner of an HDR histogram, so any recorded value is reported within about 3% of its true value.
+ * Values above about 18 minutes are counted as 18 minutes.
+ */
+public final class LatencyHistogram {
+
+  // Each power of two is split into 2^SUB_BITS buckets.
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int MAX_BITS = 40;
+  private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+  private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+  private final StripedCounters counts = new StripedCounters(BUCKETS);
+
+  /**
+   * Records a single duration. Negative durations, which a clock stepping backwards can produce,
+   * are counted as zero.
+   */
+  public void record(long nanos) {
+    counts.add(index(Math.min(Math.max(nanos, 0), MAX_VALUE)), 1);
+  }
+
+  /**
+   * Returns a copy of the counts recorded so far. Values recorded while the snapshot is being
+   * taken may or may not be included in it.
+   */
+  @Nonnull
+  public Snapshot snapshot() {
+    return new Snapshot(counts.getAll());
+  }
+
+  static int index(long value) {
+    if (value < SUB_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+  }
+
+  static long highestValue(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_COUNT - 1;
+    long sub = index % SUB_COUNT + SUB_COUNT;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  /** Counts of a {@link LatencyHistogram} at a point in time. */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+
+    Snapshot(long[] counts) {
+      long count = 0;
+      for (long c : counts) {
+        count += c;
+      }
+      this.counts = counts;
+      this.count = count;
+    }
+
+    /** Returns the number of durations recorded. */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * Returns the smallest duration which the given percentage of the recorded durations are at
+     * most, or zero if nothing was recorded.
+     *
+     * @param percentile a percentage between 0 and 100 inclusive.
+     * @throws IllegalArgumentException if the percentage is out of range.
+     */
+    public long valueAtPercentile(double percentile) {
+      if (!(percentile >= 0 && percentile <= 100)) {
+        throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+      }
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return highestValue(i);
+        }
+      }
+      return highestValue(counts.length - 1);
+    }
+
+    /** Returns the largest duration recorded, or zero if nothing was recorded. */
+    public long max() {
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] != 0) {
+          return highestValue(i);
+        }
+      }
+      return 0;
+    }
+
+    /** Returns the mean of the recorded durations, or zero if nothing was recorded. */
+    public double mean() {
+      if (count == 0) {
+        return 0;
+      }
+      double total = 0;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0) {
+          // Use the middle of each bucket rather than its top.
+          long low = i == 0 ? 0 : highestValue(i - 1) + 1;
+          total += counts[i] * ((low + highestValue(i)) / 2.0);
+        }
+      }
+      return total / count;
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package com.tilal6991.irc.syntax.metrics;
+
+import com.tilal6991.irc.syntax.CommandSet;
+import com.tilal6991.irc.syntax.Commands;
+import com.tilal6991.irc.syntax.ForwardingMessageCallback;
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.MessageCallback;
+import com.tilal6991.irc.syntax.MessageParser;
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import com.tilal6991.irc.syntax.ParseError;
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * Parser which behaves exactly like {@link FusedMessageParser} and records every line it parses
+ * into a {@link ParseMetrics}. The time taken to tokenize and check each line is measured apart
+ * from the time taken by the callback it is handed to. While the metrics are disabled lines go
+ * straight to a plain parser and no clock is read. Instances are not thread safe but any number of
+ * them may share the same metrics.
+ */
+public final class MeteredParser<T> {
+
+  private final MessageCallback<T> callback;
+  private final ParseMetrics metrics;
+  private final CommandSet interest;
+  private final FusedMessageParser<T> plain;
+  private final TimingCallback timing;
+  private final FusedMessageParser<T> timed;
+  private final MessageTokens tokens = new MessageTokens();
+
+  /**
+   * Creates a parser which only fully parses the lines handled by the callback as described in
+   * {@link MessageParser#MessageParser(MessageCallback)}.
+   */
+  public MeteredParser(@Nonnull MessageCallback<T> callback, @Nonnull ParseMetrics metrics) {
+    this(callback, MessageParser.interestOf(callback), metrics);
+  }
+
+  /**
+   * Creates a parser which only fully parses lines whose command is in the interest set. Lines
+   * which are skipped are still counted.
+   */
+  public MeteredParser(@Nonnull MessageCallback<T> callback,
+      @Nonnull CommandSet interest,
+      @Nonnull ParseMetrics metrics) {
+    this.callback = callback;
+    this.metrics = metrics;
+    this.interest = interest;
+    this.plain = new FusedMessageParser<>(callback, interest);
+    this.timing = new TimingCallback();
+    this.timed = new FusedMessageParser<>(timing, interest);
+  }
+
+  /** Returns the metrics this parser records into. */
+  @Nonnull
+  public ParseMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Parses an IRC line and dispatches it to the callback. The line is counted by its length once
+   * encoded as UTF-8, like lines given as bytes.
+   *
+   * @param line an IRC line to parse.
+   * @return the value returned by the callback or null if the line was skipped.
+   */
+  public T parse(@Nonnull String line) {
+    if (!metrics.isEnabled()) {
+      return plain.parse(line);
+    }
+    long start = System.nanoTime();
+    boolean tokenized;
+    try {
+      tokenized = MessageTokenizer.tokenize(line, tokens, interest);
+    } catch (ParseError error) {
+      return fail(start, utf8Length(line), error);
+    }
+    return dispatch(start, utf8Length(line), tokenized);
+  }
+
+  /**
+   * Parses an IRC line encoded as UTF-8 and dispatches it to the callback.
+   *
+   * @param line the array containing the IRC line.
+   * @param offset the index of the first byte of the line.
+   * @param length the number of bytes in the line.
+   * @return the value returned by the callback or null if the line was skipped.
+   */
+  public T parse(@Nonnull byte[] line, int offset, int length) {
+    if (!metrics.isEnabled()) {
+      return plain.parse(line, offset, length);
+    }
+    long start = System.nanoTime();
+    boolean tokenized;
+    try {
+      tokenized = MessageTokenizer.tokenize(line, offset, length, tokens, interest);
+    } catch (ParseError error) {
+      return fail(start, length, error);
+    }
+    return dispatch(start, length, tokenized);
+  }
+
+  /**
+   * Parses an IRC line held in a byte buffer as UTF-8 and dispatches it to the callback.
+   *
+   * @param buffer the buffer containing the IRC line.
+   * @param offset the absolute index of the first byte of the line in the buffer.
+   * @param length the number of bytes in the line.
+   * @return the value returned by the callback or null if the line was skipped.
+   */
+  public T parse(@Nonnull ByteBuffer buffer, int offset, int length) {
+    if (!metrics.isEnabled()) {
+      return plain.parse(buffer, offset, length);
+    }
+    long start = System.nanoTime();
+    boolean tokenized;
+    try {
+      tokenized = MessageTokenizer.tokenize(buffer, offset, length, tokens, interest);
+    } catch (ParseError error) {
+      return fail(start, length, error);
+    }
+    return dispatch(start, length, tokenized);
+  }
+
+  private T dispatch(long start, int length, boolean tokenized) {
+    metrics.recordLine(tokens.commandId(), length);
+    if (!tokenized) {
+      metrics.recordParse(System.nanoTime() - start);
+      return null;
+    }
+    timing.reset();
+    T result = timed.parse(tokens);
+    record(start);
+    return result;
+  }
+
+  private T fail(long start, int length, ParseError error) {
+    metrics.recordLine(Commands.UNKNOWN, length);
+    timing.reset();
+    T result = timing.onParseError(tokens.line(), error);
+    record(start);
+    return result;
+  }
+
+  private void record(long start) {
+    long end = System.nanoTime();
+    long callbackStart = timing.called ? timing.start : end;
+    metrics.recordParse(callbackStart - start);
+    if (timing.called) {
+      metrics.recordCallback(end - callbackStart);
+    }
+  }
+
+  private static int utf8Length(String line) {
+    int length = line.length();
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c >= 0x80) {
+        // Each half of a surrogate pair adds one to the four bytes of the pair.
+        length += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+      }
+    }
+    return length;
+  }
+
+  // Notes when the parser hands the line over to the callback. Arguments are extracted before
+  // delegate() is called, so that work is counted as parsing.
+  private final class TimingCallback extends ForwardingMessageCallback<T> {
+
+    boolean called;
+    long start;
+
+    void reset() {
+      called = false;
+    }
+
+    @Override
+    protected MessageCallback<T> delegate() {
+      called = true;
+      start = System.nanoTime();
+      return callback;
+    }
+
+    @Override
+    public T onParseError(@Nonnull CharSequence line, @Nonnull ParseError error) {
+      metrics.recordError(error.kind());
+      return super.onParseError(line, error);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package com.tilal6991.irc.syntax.metrics;
+
+import com.tilal6991.irc.syntax.Commands;
+import com.tilal6991.irc.syntax.ErrorKind;
+import javax.annotation.Nonnull;
+
+/**
+ * Counters and histograms filled in by any number of {@link MeteredParser} instances, which may be
+ * used from different threads. Lines and bytes are counted for each command as identified by
+ * {@link Commands}, parse errors for each {@link ErrorKind}, and the time spent tokenizing lines
+ * is kept apart from the time spent in the callback.
+ *
+ * <p>Metrics start disabled; while they are, metered parsers do no more work than a plain
+ * parser beyond reading a volatile flag.
+ */
+public final class ParseMetrics {
+
+  // Slot 0 holds lines with an unknown command; every other command is offset by one.
+  private static final int COMMAND_SLOTS = Commands.LIMIT + 1;
+
+  private final StripedCounters lines = new StripedCounters(COMMAND_SLOTS);
+  private final StripedCounters bytes = new StripedCounters(COMMAND_SLOTS);
+  private final StripedCounters errors = new StripedCounters(ErrorKind.values().length);
+  private final LatencyHistogram parseLatency = new LatencyHistogram();
+  private final LatencyHistogram callbackLatency = new LatencyHistogram();
+
+  private volatile boolean enabled;
+
+  /** Returns whether metered parsers currently record into these metrics. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Sets whether metered parsers record into these metrics. Counts recorded while enabled are
+   * kept when disabling.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Returns a copy of the metrics recorded so far. */
+  @Nonnull
+  public Snapshot snapshot() {
+    return new Snapshot(lines.getAll(), bytes.getAll(), errors.getAll(), parseLatency.snapshot(),
+        callbackLatency.snapshot());
+  }
+
+  void recordLine(int commandId, int length) {
+    lines.add(commandId + 1, 1);
+    bytes.add(commandId + 1, length);
+  }
+
+  void recordError(@Nonnull ErrorKind kind) {
+    errors.add(kind.ordinal(), 1);
+  }
+
+  void recordParse(long nanos) {
+    parseLatency.record(nanos);
+  }
+
+  void recordCallback(long nanos) {
+    callbackLatency.record(nanos);
+  }
+
+  /** Values of a {@link ParseMetrics} at a point in time. */
+  public static final class Snapshot {
+
+    private final long[] lines;
+    private final long[] bytes;
+    private final long[] errors;
+    private final LatencyHistogram.Snapshot parseLatency;
+    private final LatencyHistogram.Snapshot callbackLatency;
+
+    Snapshot(long[] lines, long[] bytes, long[] errors, LatencyHistogram.Snapshot parseLatency,
+        LatencyHistogram.Snapshot callbackLatency) {
+      this.lines = lines;
+      this.bytes = bytes;
+      this.errors = errors;
+      this.parseLatency = parseLatency;
+      this.callbackLatency = callbackLatency;
+    }
+
+    /** Returns the number of lines parsed, including those which failed to parse. */
+    public long lines() {
+      long total = 0;
+      for (long count : lines) {
+        total += count;
+      }
+      return total;
+    }
+
+    /**
+     * Returns the number of lines parsed with the given command.
+     *
+     * @param commandId an identifier from {@link Commands}, including {@link Commands#UNKNOWN}.
+     * @throws IllegalArgumentException if the identifier is not one of a command.
+     */
+    public long lines(int commandId) {
+      return lines[slot(commandId)];
+    }
+
+    /**
+     * Returns the total length in bytes of the lines parsed with the given command.
+     *
+     * @param commandId an identifier from {@link Commands}, including {@link Commands#UNKNOWN}.
+     * @throws IllegalArgumentException if the identifier is not one of a command.
+     */
+    public long bytes(int commandId) {
+      return bytes[slot(commandId)];
+    }
+
+    /** Returns the number of lines which failed to parse with the given kind of error. */
+    public long parseErrors(@Nonnull ErrorKind kind) {
+      return errors[kind.ordinal()];
+    }
+
+    /** Returns the time spent tokenizing and checking lines, excluding the callback. */
+    @Nonnull
+    public LatencyHistogram.Snapshot parseLatency() {
+      return parseLatency;
+    }
+
+    /** Returns the time spent in the callback for each line handed to it. */
+    @Nonnull
+    public LatencyHistogram.Snapshot callbackLatency() {
+      return callbackLatency;
+    }
+
+    private static int slot(int commandId) {
+      if (commandId < Commands.UNKNOWN || commandId >= Commands.LIMIT) {
+        throw new IllegalArgumentException("Unknown command identifier: " + commandId);
+      }
+      return commandId + 1;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.tilal6991.irc.syntax.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed number of counters which many threads can add to without contending. Every counter is
+ * kept once per stripe and a thread always adds to the stripe picked by its id, so threads only
+ * share a cache line when they share a stripe. Reading a counter sums it across the stripes.
+ */
+final class StripedCounters {
+
+  // Longs per cache line; stripes are padded by this much so they never share a line.
+  private static final int PADDING = 8;
+  private static final int MAX_STRIPES = 16;
+
+  private final AtomicLongArray counters;
+  private final int size;
+  private final int stride;
+  private final int mask;
+
+  StripedCounters(int size) {
+    int stripes = Integer.highestOneBit(
+        Math.min(Runtime.getRuntime().availableProcessors() * 2 - 1, MAX_STRIPES));
+    this.size = size;
+    this.stride = size + PADDING;
+    this.mask = stripes - 1;
+    this.counters = new AtomicLongArray(stripes * stride);
+  }
+
+  /** Returns the number of counters. */
+  int size() {
+    return size;
+  }
+
+  /** Adds the delta to the counter at the index. */
+  void add(int index, long delta) {
+    int stripe = (int) Thread.currentThread().getId() & mask;
+    counters.getAndAdd(stripe * stride + index, delta);
+  }
+
+  /** Returns the sum of the counter at the index across every stripe. */
+  long get(int index) {
+    long sum = 0;
+    for (int offset = index; offset < counters.length(); offset += stride) {
+      sum += counters.get(offset);
+    }
+    return sum;
+  }
+
+  /** Returns the sums of every counter. */
+  long[] getAll() {
+    long[] sums = new long[size];
+    for (int base = 0; base < counters.length(); base += stride) {
+      for (int i = 0; i < size; i++) {
+        sums[i] += counters.get(base + i);
+      }
+    }
+    return sums;
+  }
+}
@@ -0,0 +1,78 @@
+package com.tilal6991.irc.syntax.metrics
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.data.Offset
+import org.junit.Assert.fail
+import org.junit.Test
+
+class LatencyHistogramTest {
+
+  @Test fun testBuckets() {
+    for (value in listOf(0L, 1L, 31L, 32L, 33L, 64L, 1000L, 123456789L, (1L shl 40) - 1)) {
+      val index = LatencyHistogram.index(value)
+      assertThat(LatencyHistogram.highestValue(index)).isGreaterThanOrEqualTo(value)
+      if (index > 0) {
+        assertThat(LatencyHistogram.highestValue(index - 1)).isLessThan(value)
+      }
+      assertThat(LatencyHistogram.highestValue(index).toDouble())
+          .isLessThanOrEqualTo(value * 1.04 + 1)
+    }
+  }
+
+  @Test fun testPercentiles() {
+    val histogram = LatencyHistogram()
+    for (i in 1..1000) {
+      histogram.record(i * 1000L)
+    }
+
+    val snapshot = histogram.snapshot()
+    assertThat(snapshot.count()).isEqualTo(1000)
+    assertThat(snapshot.valueAtPercentile(50.0).toDouble())
+        .isCloseTo(500000.0, Offset.offset(16000.0))
+    assertThat(snapshot.valueAtPercentile(99.0).toDouble())
+        .isCloseTo(990000.0, Offset.offset(32000.0))
+    assertThat(snapshot.valueAtPercentile(100.0)).isEqualTo(snapshot.max())
+    assertThat(snapshot.max().toDouble()).isCloseTo(1000000.0, Offset.offset(32000.0))
+    assertThat(snapshot.mean()).isCloseTo(500500.0, Offset.offset(16000.0))
+  }
+
+  @Test fun testOutOfRange() {
+    val histogram = LatencyHistogram()
+    histogram.record(-5)
+    histogram.record(Long.MAX_VALUE)
+
+    val snapshot = histogram.snapshot()
+    assertThat(snapshot.valueAtPercentile(0.0)).isEqualTo(0)
+    assertThat(snapshot.max()).isEqualTo((1L shl 40) - 1)
+  }
+
+  @Test fun testEmpty() {
+    val snapshot = LatencyHistogram().snapshot()
+    assertThat(snapshot.count()).isEqualTo(0)
+    assertThat(snapshot.valueAtPercentile(99.0)).isEqualTo(0)
+    assertThat(snapshot.max()).isEqualTo(0)
+    assertThat(snapshot.mean()).isEqualTo(0.0)
+
+    try {
+      snapshot.valueAtPercentile(101.0)
+      fail("Expected IllegalArgumentException.")
+    } catch (e: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testConcurrentRecording() {
+    val histogram = LatencyHistogram()
+    val threads = (0 until 4).map {
+      Thread {
+        for (i in 0 until 10000) {
+          histogram.record(i.toLong())
+        }
+      }
+    }
+    threads.forEach { it.start() }
+    threads.forEach { it.join() }
+
+    assertThat(histogram.snapshot().count()).isEqualTo(40000)
+  }
+}
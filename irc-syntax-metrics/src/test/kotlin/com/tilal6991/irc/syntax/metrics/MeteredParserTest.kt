@@ -0,0 +1,126 @@
+package com.tilal6991.irc.syntax.metrics
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.Commands
+import com.tilal6991.irc.syntax.ErrorKind
+import com.tilal6991.irc.syntax.ParseError
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class MeteredParserTest {
+
+  private val metrics = ParseMetrics()
+  private val callback = RecordingCallback()
+  private val parser = MeteredParser(callback, metrics)
+
+  @Test fun testDisabled() {
+    assertThat(metrics.isEnabled()).isFalse()
+    parse(":n!u@h PRIVMSG #a :hello")
+
+    val snapshot = metrics.snapshot()
+    assertThat(callback.events).containsExactly("#a hello")
+    assertThat(snapshot.lines()).isEqualTo(0)
+    assertThat(snapshot.parseLatency().count()).isEqualTo(0)
+  }
+
+  @Test fun testCounts() {
+    metrics.setEnabled(true)
+    parse(":n!u@h PRIVMSG #a :hello")
+    parse(":n!u@h PRIVMSG #b :hi")
+    parse(":server 001 me :Welcome")
+    parse(":n!u@h TOPIC #a :skipped")
+
+    val snapshot = metrics.snapshot()
+    assertThat(callback.events).containsExactly("#a hello", "#b hi", "welcome me")
+    assertThat(snapshot.lines()).isEqualTo(4)
+    assertThat(snapshot.lines(Commands.PRIVMSG)).isEqualTo(2)
+    assertThat(snapshot.bytes(Commands.PRIVMSG)).isEqualTo(45)
+    assertThat(snapshot.lines(Commands.RPL_WELCOME)).isEqualTo(1)
+    assertThat(snapshot.lines(Commands.UNKNOWN)).isEqualTo(1)
+    assertThat(snapshot.bytes(Commands.UNKNOWN)).isEqualTo(24)
+    assertThat(snapshot.parseLatency().count()).isEqualTo(4)
+    assertThat(snapshot.callbackLatency().count()).isEqualTo(3)
+  }
+
+  @Test fun testErrors() {
+    metrics.setEnabled(true)
+    parse("   ")
+    parse(":prefix")
+    parse(":n!u@h PRIVMSG #a")
+
+    val snapshot = metrics.snapshot()
+    assertThat(callback.events).hasSize(3)
+    assertThat(snapshot.parseErrors(ErrorKind.EMPTY_LINE)).isEqualTo(1)
+    assertThat(snapshot.parseErrors(ErrorKind.MISSING_COMMAND)).isEqualTo(1)
+    assertThat(snapshot.parseErrors(ErrorKind.ARGUMENT_COUNT)).isEqualTo(1)
+    assertThat(snapshot.lines(Commands.UNKNOWN)).isEqualTo(2)
+    assertThat(snapshot.lines(Commands.PRIVMSG)).isEqualTo(1)
+    assertThat(snapshot.callbackLatency().count()).isEqualTo(3)
+  }
+
+  @Test fun testStringLines() {
+    parser.parse(":n!u@h PRIVMSG #a :hello")
+    assertThat(callback.events).containsExactly("#a hello")
+
+    metrics.setEnabled(true)
+    parser.parse(":n!u@h PRIVMSG #b :héllo €😀")
+    parser.parse(":prefix")
+
+    val snapshot = metrics.snapshot()
+    assertThat(callback.events).containsExactly("#a hello", "#b héllo €😀",
+        "error MISSING_COMMAND")
+    assertThat(snapshot.lines()).isEqualTo(2)
+    assertThat(snapshot.bytes(Commands.PRIVMSG))
+        .isEqualTo(":n!u@h PRIVMSG #b :héllo €😀".toByteArray().size.toLong())
+    assertThat(snapshot.bytes(Commands.UNKNOWN)).isEqualTo(7)
+    assertThat(snapshot.parseErrors(ErrorKind.MISSING_COMMAND)).isEqualTo(1)
+  }
+
+  @Test fun testCallbackTime() {
+    val slow = object : AbstractMessageCallback<Unit>() {
+      override fun onPing(tags: List<String>?, prefix: String?, hostname: String?) {
+        Thread.sleep(5)
+      }
+    }
+    val slowParser = MeteredParser(slow, metrics)
+    metrics.setEnabled(true)
+    val bytes = "PING :a".toByteArray()
+    slowParser.parse(ByteBuffer.wrap(bytes), 0, bytes.size)
+
+    val snapshot = metrics.snapshot()
+    assertThat(snapshot.callbackLatency().max()).isGreaterThanOrEqualTo(5000000)
+  }
+
+  @Test fun testUnknownIdentifier() {
+    try {
+      metrics.snapshot().lines(Commands.LIMIT)
+      fail("Expected IllegalArgumentException.")
+    } catch (e: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  private fun parse(line: String) {
+    val bytes = line.toByteArray()
+    parser.parse(bytes, 0, bytes.size)
+  }
+
+  private class RecordingCallback : AbstractMessageCallback<Unit>() {
+    val events = mutableListOf<String>()
+
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String) {
+      events.add("$target $message")
+    }
+
+    override fun onWelcome(tags: List<String>?, prefix: String?, target: String, message: String) {
+      events.add("welcome $target")
+    }
+
+    override fun onParseError(line: CharSequence, error: ParseError) {
+      events.add("error ${error.kind()}")
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.tilal6991.irc.syntax.netty;
+
+import com.tilal6991.irc.syntax.CommandSet;
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.LineFramer;
+import com.tilal6991.irc.syntax.MessageCallback;
+import com.tilal6991.irc.syntax.MessageParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ByteProcessor;
+import java.nio.ByteBuffer;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Decoder which frames IRC lines and parses them straight out of the received buffers, without
+ * converting them to strings first. Every non-null value returned by the callback is fired down
+ * the pipeline as a message.
+ *
+ * <p>Lines may be terminated by CRLF or a lone LF and empty lines are skipped. Lines longer than
+ * the maximum are discarded and reported with a {@link TooLongFrameException} through
+ * {@link ChannelHandlerContext#fireExceptionCaught(Throwable)}, after which decoding carries on
+ * with the next line.
+ *
+ * <p>Heap buffers and single direct buffers are parsed in place; only buffers made up of several
+ * components are copied, into a scratch array which is reused for every line. Buffers are released
+ * as usual by {@link ByteToMessageDecoder} once all their lines have been parsed, so callbacks must
+ * not hold on to anything but the values they are given. Instances are not sharable.
+ */
+public final class IrcDecoder<T> extends ByteToMessageDecoder {
+
+  private final FusedMessageParser<T> parser;
+  private final int maxLineLength;
+
+  private byte[] scratch;
+  private boolean discarding;
+  private int discarded;
+
+  /**
+   * Creates a decoder which only fully parses the lines handled by the callback as described in
+   * {@link MessageParser#MessageParser(MessageCallback)}.
+   */
+  public IrcDecoder(@Nonnull MessageCallback<T> callback) {
+    this(callback, MessageParser.interestOf(callback), LineFramer.DEFAULT_MAX_LINE_LENGTH);
+  }
+
+  /**
+   * Creates a decoder which only fully parses lines whose command is in the interest set.
+   *
+   * @param callback the callback to parse lines into.
+   * @param interest the commands to fully parse.
+   * @param maxLineLength the maximum length of a line, not including the terminator.
+   */
+  public IrcDecoder(
+      @Nonnull MessageCallback<T> callback, @Nonnull CommandSet interest, int maxLineLength) {
+    if (maxLineLength <= 0) {
+      throw new IllegalArgumentException("Max line length must be positive: " + maxLineLength);
+    }
+    this.parser = new FusedMessageParser<>(callback, interest);
+    this.maxLineLength = maxLineLength;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+    while (in.isReadable()) {
+      int start = in.readerIndex();
+      int lf = in.forEachByte(start, in.readableBytes(), ByteProcessor.FIND_LF);
+
+      if (discarding) {
+        if (lf == -1) {
+          discarded += in.readableBytes();
+          in.skipBytes(in.readableBytes());
+          return;
+        }
+        in.readerIndex(lf + 1);
+        discarding = false;
+        fail(ctx, discarded + lf - start);
+        continue;
+      }
+
+      if (lf == -1) {
+        // Leave room for a CR which has arrived before its LF.
+        if (in.readableBytes() > maxLineLength + 1) {
+          discarding = true;
+          discarded = in.readableBytes();
+          in.skipBytes(in.readableBytes());
+        }
+        return;
+      }
+
+      int end = lf > start && in.getByte(lf - 1) == '\r' ? lf - 1 : lf;
+      in.readerIndex(lf + 1);
+      int length = end - start;
+      if (length > maxLineLength) {
+        fail(ctx, length);
+      } else if (length != 0) {
+        T result = parse(in, start, length);
+        if (result != null) {
+          out.add(result);
+        }
+      }
+    }
+  }
+
+  private T parse(ByteBuf in, int index, int length) {
+    if (in.hasArray()) {
+      return parser.parse(in.array(), in.arrayOffset() + index, length);
+    } else if (in.nioBufferCount() == 1) {
+      ByteBuffer buffer = in.internalNioBuffer(index, length);
+      return parser.parse(buffer, buffer.position(), length);
+    }
+
+    if (scratch == null || scratch.length < length) {
+      scratch = new byte[Math.max(length, 512)];
+    }
+    in.getBytes(index, scratch, 0, length);
+    return parser.parse(scratch, 0, length);
+  }
+
+  private void fail(ChannelHandlerContext ctx, int length) {
+    ctx.fireExceptionCaught(new TooLongFrameException(
+        "Line length (" + length + ") exceeds the maximum (" + maxLineLength + ")."));
+  }
+}
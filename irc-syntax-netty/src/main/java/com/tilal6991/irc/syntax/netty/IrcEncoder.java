@@ -0,0 +1,93 @@
+package com.tilal6991.irc.syntax.netty;
+
+import com.tilal6991.irc.syntax.LineFramer;
+import com.tilal6991.irc.syntax.Message;
+import com.tilal6991.irc.syntax.MessageTags;
+import com.tilal6991.irc.syntax.MessageWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * Encoder which writes outbound {@link Line}s and {@link Message}s as IRC lines, using a
+ * {@link MessageWriter} straight into the buffer allocated for them. Lines which are invalid or
+ * break the protocol's length limits fail the write with an
+ * {@link io.netty.handler.codec.EncoderException}. Instances are not sharable.
+ */
+public final class IrcEncoder extends MessageToByteEncoder<Object> {
+
+  // Covers any line without tags so the common case is written in a single pass.
+  private static final int INITIAL_CAPACITY = LineFramer.MAX_MESSAGE_LENGTH;
+  private static final int MAX_CAPACITY =
+      LineFramer.MAX_TAGS_LENGTH + LineFramer.MAX_MESSAGE_LENGTH;
+
+  private final MessageWriter writer = new MessageWriter();
+
+  @Override
+  public boolean acceptOutboundMessage(Object msg) {
+    return msg instanceof Line || msg instanceof Message;
+  }
+
+  @Override
+  protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Object msg, boolean preferDirect) {
+    return preferDirect
+        ? ctx.alloc().ioBuffer(INITIAL_CAPACITY)
+        : ctx.alloc().heapBuffer(INITIAL_CAPACITY);
+  }
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) {
+    int capacity = INITIAL_CAPACITY;
+    while (true) {
+      out.ensureWritable(capacity);
+      int index = out.writerIndex();
+      ByteBuffer buffer = out.internalNioBuffer(index, out.writableBytes());
+      try {
+        write(msg, writer.start(buffer));
+        out.writerIndex(index + writer.end());
+        return;
+      } catch (BufferOverflowException e) {
+        if (capacity == MAX_CAPACITY) {
+          throw e;
+        }
+        // Only lines with tags can be longer than the initial capacity.
+        capacity = MAX_CAPACITY;
+      }
+    }
+  }
+
+  private static void write(Object msg, MessageWriter writer) {
+    if (msg instanceof Line) {
+      ((Line) msg).write(writer);
+      return;
+    }
+
+    Message message = (Message) msg;
+    MessageTags tags = message.tags();
+    for (int i = 0; i < tags.size(); i++) {
+      writer.tag(tags.key(i), tags.value(i));
+    }
+    if (message.prefix() != null) {
+      writer.prefix(message.prefix());
+    }
+    writer.command(message.command());
+    for (int i = 0; i < message.argumentCount(); i++) {
+      writer.argument(message.argument(i));
+    }
+  }
+
+  /** An outbound line which writes itself. */
+  public interface Line {
+
+    /**
+     * Writes the tags, prefix, command and arguments of the line. The writer has been started and
+     * is ended by the encoder.
+     *
+     * @param writer the writer to write the line with.
+     */
+    void write(@Nonnull MessageWriter writer);
+  }
+}
@@ -0,0 +1,93 @@
+package com.tilal6991.irc.syntax.netty
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.CommandSet
+import com.tilal6991.irc.syntax.MessageTags
+import com.tilal6991.irc.syntax.ParseError
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.PooledByteBufAllocator
+import io.netty.buffer.Unpooled
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.ByteToMessageDecoder
+import io.netty.handler.codec.TooLongFrameException
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+
+class IrcDecoderTest {
+
+  @Test fun testLines() {
+    val channel = EmbeddedChannel(IrcDecoder(ChatCallback()))
+    val buffer = direct(":a!b@c PRIVMSG #a :hello world\r\n@t=1 PRIVMSG #b :é\nPING :x\r\n")
+
+    channel.writeInbound(buffer)
+
+    assertThat(channel.readInbound<String>()).isEqualTo("a!b@c #a hello world")
+    assertThat(channel.readInbound<String>()).isEqualTo("null #b é 1")
+    assertThat(channel.readInbound<String>()).isNull()
+    assertThat(buffer.refCnt()).isZero()
+    assertThat(channel.finish()).isFalse()
+  }
+
+  @Test fun testLinesAcrossReads() {
+    val channel = EmbeddedChannel(IrcDecoder(ChatCallback()))
+    val line = "PRIVMSG #a :split é line\r\n".toByteArray()
+    val buffers = (0 until line.size).map { direct(line.copyOfRange(it, it + 1)) }
+
+    buffers.forEach { channel.writeInbound(it) }
+
+    assertThat(channel.readInbound<String>()).isEqualTo("null #a split é line")
+    assertThat(buffers.map { it.refCnt() }).containsOnly(0)
+  }
+
+  @Test fun testHeapAndCompositeBuffers() {
+    val decoder = IrcDecoder(ChatCallback())
+    decoder.setCumulator(ByteToMessageDecoder.COMPOSITE_CUMULATOR)
+    val channel = EmbeddedChannel(decoder)
+
+    channel.writeInbound(Unpooled.wrappedBuffer("PRIVMSG #a :one\r\nPRIVMSG #a :t".toByteArray()))
+    channel.writeInbound(direct("wo\r\n"))
+
+    assertThat(channel.readInbound<String>()).isEqualTo("null #a one")
+    assertThat(channel.readInbound<String>()).isEqualTo("null #a two")
+  }
+
+  @Test fun testOversizedLine() {
+    val channel = EmbeddedChannel(IrcDecoder(ChatCallback(), CommandSet.all(), 32))
+    channel.writeInbound(direct("PRIVMSG #a :" + "x".repeat(20)))
+    channel.writeInbound(direct("x".repeat(20)))
+    try {
+      channel.writeInbound(direct("xx\r\nPRIVMSG #a :ok\r\n"))
+      fail("Expected TooLongFrameException.")
+    } catch (e: TooLongFrameException) {
+      // Don't bother checking exact message.
+    }
+
+    assertThat(channel.readInbound<String>()).isEqualTo("null #a ok")
+    assertThat(channel.readInbound<String>()).isNull()
+  }
+
+  @Test fun testParseErrors() {
+    val channel = EmbeddedChannel(IrcDecoder(ChatCallback()))
+    channel.writeInbound(direct("PRIVMSG #a\r\n"))
+
+    assertThat(channel.readInbound<String>()).startsWith("error")
+  }
+
+  private fun direct(text: String): ByteBuf = direct(text.toByteArray())
+
+  private fun direct(bytes: ByteArray): ByteBuf {
+    return PooledByteBufAllocator.DEFAULT.directBuffer(bytes.size).writeBytes(bytes)
+  }
+
+  private class ChatCallback : AbstractMessageCallback<String>() {
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String): String {
+      return "$prefix $target $message" + if (tags != null) " " + MessageTags.of(tags).get("t") else ""
+    }
+
+    override fun onParseError(line: CharSequence, error: ParseError): String {
+      return "error $line"
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.tilal6991.irc.syntax.netty
+
+import com.tilal6991.irc.syntax.Commands
+import com.tilal6991.irc.syntax.Message
+import io.netty.buffer.ByteBuf
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.EncoderException
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+
+class IrcEncoderTest {
+
+  private val channel = EmbeddedChannel(IrcEncoder())
+
+  @Test fun testLine() {
+    channel.writeOutbound(IrcEncoder.Line {
+      it.command(Commands.PRIVMSG).argument("#a").argument("hello world")
+    })
+
+    assertThat(readLine()).isEqualTo("PRIVMSG #a :hello world\r\n")
+  }
+
+  @Test fun testMessage() {
+    channel.writeOutbound(Message.parse("@a=b\\sc;d :nick!user@host PRIVMSG #a :hi there"))
+
+    assertThat(readLine()).isEqualTo("@a=b\\sc;d :nick!user@host PRIVMSG #a :hi there\r\n")
+  }
+
+  @Test fun testLongTags() {
+    val value = "x".repeat(4000)
+    channel.writeOutbound(IrcEncoder.Line { it.tag("a", value).command("TAGMSG") })
+
+    assertThat(readLine()).isEqualTo("@a=$value TAGMSG\r\n")
+  }
+
+  @Test fun testOtherMessagesPassThrough() {
+    channel.writeOutbound("raw")
+
+    assertThat(channel.readOutbound<String>()).isEqualTo("raw")
+  }
+
+  @Test fun testInvalidLine() {
+    try {
+      channel.writeOutbound(IrcEncoder.Line { it.command("PRIVMSG").argument("a\r\nQUIT") })
+      fail("Expected EncoderException.")
+    } catch (e: EncoderException) {
+      assertThat(e.cause).isInstanceOf(IllegalArgumentException::class.java)
+    }
+  }
+
+  private fun readLine(): String {
+    val buffer = channel.readOutbound<ByteBuf>()
+    try {
+      return buffer.toString(Charsets.UTF_8)
+    } finally {
+      buffer.release()
+    }
+  }
+}
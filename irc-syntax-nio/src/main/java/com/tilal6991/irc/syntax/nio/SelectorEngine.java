@@ -0,0 +1,480 @@
+package com.tilal6991.irc.syntax.nio;
+
+import com.tilal6991.irc.syntax.CommandSet;
+import com.tilal6991.irc.syntax.ForwardingMessageCallback;
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.LineFramer;
+import com.tilal6991.irc.syntax.MessageCallback;
+import com.tilal6991.irc.syntax.MessageParser;
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import com.tilal6991.irc.syntax.ParseError;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads IRC lines from many non-blocking socket channels on a small, fixed number of selector
+ * threads. Each connection is owned by one thread, chosen round robin as it is registered, and
+ * every line read from it is parsed and passed to its own callback on that thread.
+ *
+ * <p>Each thread reads into a single buffer and parses lines in place with a single parser which
+ * is pointed at the callback of the connection being read. Only the lines whose commands are
+ * handled by a connection's callback, as described in
+ * {@link MessageParser#MessageParser(MessageCallback)}, are fully tokenized and parsed; the rest
+ * are skipped once their command has been read. A connection only holds on to the bytes of a line
+ * which has not been completely received yet, so idle connections cost little more than their
+ * socket. Values returned by callbacks are ignored.
+ *
+ * <p>Lines may be terminated by CRLF or a lone LF and empty lines are skipped. The engine only
+ * reads; writing to the channels is left to the caller.
+ */
+public final class SelectorEngine implements Closeable {
+
+  // Big enough for the longest partial line carried over from the last read plus a full read.
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final Loop[] loops;
+  private final int maxLineLength;
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * Creates an engine with the given number of selector threads which allows lines of up to
+   * {@link LineFramer#DEFAULT_MAX_LINE_LENGTH} bytes.
+   *
+   * @param threads the number of selector threads to start.
+   * @throws IOException if a selector cannot be opened.
+   */
+  public SelectorEngine(int threads) throws IOException {
+    this(threads, LineFramer.DEFAULT_MAX_LINE_LENGTH);
+  }
+
+  /**
+   * Creates an engine with the given number of selector threads.
+   *
+   * @param threads the number of selector threads to start.
+   * @param maxLineLength the maximum length of a line, not including the terminator.
+   * @throws IOException if a selector cannot be opened.
+   */
+  public SelectorEngine(int threads, int maxLineLength) throws IOException {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Threads must be positive: " + threads);
+    } else if (maxLineLength <= 0 || maxLineLength + 2 > READ_BUFFER_SIZE / 2) {
+      throw new IllegalArgumentException("Invalid max line length: " + maxLineLength);
+    }
+    this.maxLineLength = maxLineLength;
+
+    loops = new Loop[threads];
+    try {
+      for (int i = 0; i < threads; i++) {
+        loops[i] = new Loop(Selector.open());
+      }
+    } catch (IOException e) {
+      for (Loop loop : loops) {
+        if (loop != null) {
+          loop.selector.close();
+        }
+      }
+      throw e;
+    }
+    for (int i = 0; i < threads; i++) {
+      Thread thread = new Thread(loops[i], "irc-selector-" + i);
+      thread.setDaemon(true);
+      loops[i].thread = thread;
+      thread.start();
+    }
+  }
+
+  /**
+   * Registers a channel with the engine. The channel is switched to non-blocking mode and may
+   * still be connecting, in which case the connection is finished by the engine.
+   *
+   * @param channel the channel to read from.
+   * @param callback the callback to parse the lines of the channel into.
+   * @param listener the listener to notify of other events on the connection.
+   * @return the connection of the channel.
+   * @throws IOException if the channel cannot be switched to non-blocking mode.
+   * @throws IllegalStateException if the engine has been closed, in which case the channel is
+   *     left untouched.
+   */
+  @Nonnull
+  public Connection register(@Nonnull SocketChannel channel,
+      @Nonnull MessageCallback<?> callback,
+      @Nonnull Listener listener) throws IOException {
+    Loop loop = loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    Connection connection = new Connection(loop, channel, callback, listener);
+
+    // Checking and queueing under the lock guarantees the loop drains the queue after this
+    // connection is added, even if the engine is being closed at the same time.
+    synchronized (loop.registrations) {
+      if (loop.stopped) {
+        throw new IllegalStateException("Engine has been closed.");
+      }
+      channel.configureBlocking(false);
+      loop.registrations.add(connection);
+    }
+    loop.selector.wakeup();
+    return connection;
+  }
+
+  /**
+   * Stops every selector thread and closes all the connections, notifying their listeners, before
+   * returning. When called from a listener or callback, and so from one of the selector threads,
+   * the connections of that thread are only closed once the listener or callback returns.
+   */
+  @Override
+  public void close() throws IOException {
+    for (Loop loop : loops) {
+      loop.stop();
+      loop.selector.wakeup();
+    }
+
+    boolean interrupted = false;
+    for (Loop loop : loops) {
+      // A selector thread would otherwise wait for itself forever.
+      if (loop.thread == Thread.currentThread()) {
+        continue;
+      }
+      while (true) {
+        try {
+          loop.thread.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Handle of a channel registered with the engine. */
+  public static final class Connection {
+
+    private final Loop loop;
+    private final SocketChannel channel;
+    private final MessageCallback<?> callback;
+    private final CommandSet interest;
+    private final Listener listener;
+
+    // Only accessed by the thread of the loop.
+    private SelectionKey key;
+    private boolean closed;
+    private byte[] partial;
+    private int partialLength;
+    private boolean discarding;
+    private int discarded;
+    private boolean discardedCr;
+
+    Connection(Loop loop, SocketChannel channel, MessageCallback<?> callback, Listener listener) {
+      this.loop = loop;
+      this.channel = channel;
+      this.callback = callback;
+      this.interest = MessageParser.interestOf(callback);
+      this.listener = listener;
+    }
+
+    /** Returns the channel of the connection. */
+    @Nonnull
+    public SocketChannel channel() {
+      return channel;
+    }
+
+    /**
+     * Closes the channel of the connection from the thread which owns it, after which the listener
+     * is notified. May be called from any thread.
+     */
+    public void close() {
+      loop.closes.add(this);
+      loop.selector.wakeup();
+    }
+  }
+
+  /** Listener of events on a connection other than its lines. */
+  public interface Listener {
+
+    /**
+     * Callback method for a line which was discarded because it was longer than the maximum.
+     *
+     * @param connection the connection which sent the line.
+     * @param length the length of the discarded line, not including the terminator.
+     */
+    void onOversizedLine(@Nonnull Connection connection, int length);
+
+    /**
+     * Callback method for the connection being closed. Any unterminated final line received
+     * before the end of the stream has been parsed by the time this is called. Must not throw;
+     * anything thrown is ignored.
+     *
+     * @param connection the connection which was closed.
+     * @param cause the exception thrown by the channel or a callback, or null if the connection
+     *     reached the end of its stream or was closed by {@link Connection#close()} or the engine.
+     */
+    void onClosed(@Nonnull Connection connection, @Nullable Throwable cause);
+  }
+
+  private final class Loop implements Runnable {
+
+    private final Selector selector;
+    private final Queue<Connection> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> closes = new ConcurrentLinkedQueue<>();
+
+    private final byte[] bytes = new byte[READ_BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private final MessageTokens tokens = new MessageTokens();
+    private final Router router = new Router();
+    private final FusedMessageParser<Object> parser =
+        new FusedMessageParser<>(router, CommandSet.all());
+
+    private volatile boolean stopped;
+    private Thread thread;
+
+    Loop(Selector selector) {
+      this.selector = selector;
+    }
+
+    void stop() {
+      synchronized (registrations) {
+        stopped = true;
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!stopped) {
+          selector.select();
+          drainRegistrations();
+          drainCloses();
+
+          for (SelectionKey key : selector.selectedKeys()) {
+            Connection connection = (Connection) key.attachment();
+            if (!key.isValid()) {
+              continue;
+            } else if (key.isConnectable()) {
+              connect(connection);
+            } else if (key.isReadable()) {
+              read(connection);
+            }
+          }
+          selector.selectedKeys().clear();
+        }
+      } catch (IOException | ClosedSelectorException e) {
+        // The selector itself failed so there is nothing left to do but close every connection.
+      } finally {
+        shutDown();
+      }
+    }
+
+    private void drainRegistrations() {
+      Connection connection;
+      while ((connection = registrations.poll()) != null) {
+        try {
+          int ops = connection.channel.isConnectionPending()
+              ? SelectionKey.OP_CONNECT
+              : SelectionKey.OP_READ;
+          connection.key = connection.channel.register(selector, ops, connection);
+        } catch (IOException e) {
+          close(connection, e);
+        }
+      }
+    }
+
+    private void drainCloses() {
+      Connection connection;
+      while ((connection = closes.poll()) != null) {
+        close(connection, null);
+      }
+    }
+
+    private void connect(Connection connection) {
+      try {
+        if (connection.channel.finishConnect()) {
+          connection.key.interestOps(SelectionKey.OP_READ);
+        }
+      } catch (IOException e) {
+        close(connection, e);
+      }
+    }
+
+    private void read(Connection connection) {
+      // The partial line left by the last read is put back in front of the new bytes.
+      int carried = connection.partialLength;
+      if (carried != 0) {
+        System.arraycopy(connection.partial, 0, bytes, 0, carried);
+      }
+      buffer.clear().position(carried);
+
+      int read;
+      try {
+        read = connection.channel.read(buffer);
+      } catch (IOException e) {
+        close(connection, e);
+        return;
+      }
+
+      int end = buffer.position();
+      int start = frame(connection, carried, end);
+      if (connection.closed) {
+        return;
+      }
+
+      if (read == -1) {
+        if (!connection.discarding && start != end) {
+          line(connection, start, end);
+        }
+        close(connection, null);
+      } else {
+        keep(connection, start, end);
+      }
+    }
+
+    /** Dispatches every complete line in the range and returns the start of the remainder. */
+    private int frame(Connection connection, int from, int end) {
+      int start = 0;
+      for (int i = from; i < end && !connection.closed; i++) {
+        if (bytes[i] != '\n') {
+          continue;
+        }
+
+        if (connection.discarding) {
+          connection.discarding = false;
+          boolean cr = i > start ? bytes[i - 1] == '\r' : connection.discardedCr;
+          oversized(connection, connection.discarded + i - start - (cr ? 1 : 0));
+        } else {
+          int lineEnd = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+          if (lineEnd - start > maxLineLength) {
+            oversized(connection, lineEnd - start);
+          } else if (lineEnd != start) {
+            line(connection, start, lineEnd);
+          }
+        }
+        start = i + 1;
+      }
+      return start;
+    }
+
+    /** Keeps the unterminated remainder of a read for the next one. */
+    private void keep(Connection connection, int start, int end) {
+      int length = end - start;
+      connection.partialLength = 0;
+      if (connection.discarding || length > maxLineLength + 1) {
+        // Leave room for a CR which has arrived before its LF.
+        connection.discarded = connection.discarding ? connection.discarded + length : length;
+        connection.discarding = true;
+        if (length != 0) {
+          connection.discardedCr = bytes[end - 1] == '\r';
+        }
+        return;
+      }
+
+      if (length != 0) {
+        if (connection.partial == null || connection.partial.length < length) {
+          connection.partial = new byte[Math.min(Math.max(length, 64) * 2, maxLineLength + 1)];
+        }
+        System.arraycopy(bytes, start, connection.partial, 0, length);
+        connection.partialLength = length;
+      }
+    }
+
+    private void line(Connection connection, int start, int end) {
+      router.current = connection.callback;
+      try {
+        // The shared parser accepts everything so the connection's interest is applied here.
+        boolean tokenized;
+        try {
+          tokenized =
+              MessageTokenizer.tokenize(bytes, start, end - start, tokens, connection.interest);
+        } catch (ParseError e) {
+          // The parser reports its own errors so only those of the tokenizer are reported here.
+          router.onParseError(tokens.line(), e);
+          return;
+        }
+        if (tokenized) {
+          parser.parse(tokens);
+        }
+      } catch (RuntimeException e) {
+        close(connection, e);
+      } finally {
+        router.current = null;
+      }
+    }
+
+    private void oversized(Connection connection, int length) {
+      try {
+        connection.listener.onOversizedLine(connection, length);
+      } catch (RuntimeException e) {
+        close(connection, e);
+      }
+    }
+
+    private void close(Connection connection, Throwable cause) {
+      if (connection.closed) {
+        return;
+      }
+      connection.closed = true;
+      connection.partial = null;
+      connection.partialLength = 0;
+      if (connection.key != null) {
+        connection.key.cancel();
+      }
+      try {
+        connection.channel.close();
+      } catch (IOException e) {
+        if (cause == null) {
+          cause = e;
+        }
+      }
+      try {
+        connection.listener.onClosed(connection, cause);
+      } catch (RuntimeException ignored) {
+        // The connection is already closed and the other connections of the loop must not be.
+      }
+    }
+
+    private void shutDown() {
+      // No connection can be queued once this returns, so draining catches every registration.
+      stop();
+      drainRegistrations();
+      for (SelectionKey key : selector.keys()) {
+        close((Connection) key.attachment(), null);
+      }
+      drainCloses();
+      try {
+        selector.close();
+      } catch (IOException ignored) {
+        // Nothing more can be done with it.
+      }
+    }
+  }
+
+  /** Forwards the lines being parsed to the callback of the connection they came from. */
+  private static final class Router extends ForwardingMessageCallback<Object> {
+
+    private MessageCallback<?> current;
+
+    @Nonnull
+    @Override
+    public CommandSet interest() {
+      // Each connection applies the interest of its own callback.
+      return CommandSet.all();
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    protected MessageCallback<Object> delegate() {
+      return (MessageCallback<Object>) current;
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package com.tilal6991.irc.syntax.nio
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.ParseError
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Assert.fail
+import org.junit.Test
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SelectorEngineTest {
+
+  private val server = ServerSocketChannel.open().bind(InetSocketAddress("127.0.0.1", 0))
+  private val engine = SelectorEngine(2, 64)
+
+  @After fun tearDown() {
+    engine.close()
+    server.close()
+  }
+
+  @Test fun testManyConnections() {
+    val count = 100
+    val listener = RecordingListener(count)
+    val callbacks = (0 until count).map { ChatCallback() }
+    val remotes = callbacks.map { callback ->
+      val client = SocketChannel.open(server.localAddress)
+      engine.register(client, callback, listener)
+      server.accept()
+    }
+
+    // Interleave the connections and split lines across writes.
+    for (i in 0 until 20) {
+      remotes.forEachIndexed { index, remote ->
+        write(remote, "PRIVMSG #$index :line $i\r")
+        write(remote, "\nPING :x\n")
+      }
+    }
+    remotes.forEach { it.close() }
+
+    listener.await()
+    callbacks.forEachIndexed { index, callback ->
+      assertThat(callback.lines).isEqualTo((0 until 20).map { "#$index line $it" })
+    }
+    assertThat(listener.causes).containsOnly(null)
+  }
+
+  @Test fun testOversizedAndFinalLines() {
+    val listener = RecordingListener(1)
+    val callback = ChatCallback()
+    val remote = connect(callback, listener)
+
+    write(remote, "PRIVMSG #a :" + "x".repeat(60))
+    write(remote, "x".repeat(60) + "\r\n")
+    write(remote, "PRIVMSG #a :" + "y".repeat(60) + "\nPRIVMSG #a :ok\r\nPRIVMSG #a :last")
+    remote.close()
+
+    listener.await()
+    assertThat(callback.lines).containsExactly("#a ok", "#a last")
+    assertThat(listener.oversized).containsExactly(132, 72)
+  }
+
+  @Test fun testCallbackFailureClosesConnection() {
+    val listener = RecordingListener(1)
+    val remote = connect(object : AbstractMessageCallback<Unit>() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+        throw IllegalStateException("Rejected.")
+      }
+    }, listener)
+
+    write(remote, "PRIVMSG #a :hi\r\n")
+
+    listener.await()
+    assertThat(listener.causes.single()).isInstanceOf(IllegalStateException::class.java)
+    assertThat(remote.read(ByteBuffer.allocate(1))).isEqualTo(-1)
+  }
+
+  @Test fun testParseErrorReportedOnce() {
+    val listener = RecordingListener(1)
+    val errors = AtomicInteger()
+    val remote = connect(object : AbstractMessageCallback<Unit>() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+      }
+
+      override fun onParseError(line: CharSequence, error: ParseError): Unit? {
+        errors.incrementAndGet()
+        return super.onParseError(line, error)
+      }
+    }, listener)
+
+    write(remote, "PRIVMSG #a\r\n")
+
+    listener.await()
+    assertThat(errors.get()).isEqualTo(1)
+    assertThat(listener.causes.single()).isInstanceOf(ParseError::class.java)
+  }
+
+  @Test fun testThrowingListener() {
+    SelectorEngine(1).use { single ->
+      val thrower = object : SelectorEngine.Listener {
+        override fun onOversizedLine(connection: SelectorEngine.Connection, length: Int) {
+        }
+
+        override fun onClosed(connection: SelectorEngine.Connection, cause: Throwable?) {
+          throw IllegalStateException("Rejected close.")
+        }
+      }
+      single.register(SocketChannel.open(server.localAddress), ChatCallback(), thrower)
+      server.accept().close()
+
+      // The loop carries on with the connections registered after the failure.
+      val listener = RecordingListener(1)
+      val callback = ChatCallback()
+      single.register(SocketChannel.open(server.localAddress), callback, listener)
+      server.accept().use { write(it, "PRIVMSG #a :alive\r\n") }
+
+      listener.await()
+      assertThat(callback.lines).containsExactly("#a alive")
+      assertThat(listener.causes).containsExactly(null)
+    }
+  }
+
+  @Test fun testPendingConnect() {
+    val listener = RecordingListener(1)
+    val callback = ChatCallback()
+    val client = SocketChannel.open()
+    client.configureBlocking(false)
+    client.connect(server.localAddress)
+    engine.register(client, callback, listener)
+
+    server.accept().use { write(it, "PRIVMSG #a :connected\r\n") }
+
+    listener.await()
+    assertThat(callback.lines).containsExactly("#a connected")
+  }
+
+  @Test fun testClose() {
+    val listener = RecordingListener(2)
+    val connection = engine.register(
+        SocketChannel.open(server.localAddress), ChatCallback(), listener)
+    val remote = server.accept()
+    connect(ChatCallback(), listener)
+
+    connection.close()
+    assertThat(remote.read(ByteBuffer.allocate(1))).isEqualTo(-1)
+
+    engine.close()
+    listener.await()
+    assertThat(listener.causes).containsExactly(null, null)
+    try {
+      engine.register(SocketChannel.open(), ChatCallback(), listener)
+      fail("Expected IllegalStateException.")
+    } catch (e: IllegalStateException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testCloseFromCallback() {
+    val listener = RecordingListener(2)
+    val closer = object : AbstractMessageCallback<Unit>() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+        engine.close()
+      }
+    }
+    connect(closer, listener).use { remote ->
+      connect(ChatCallback(), listener)
+      write(remote, "PRIVMSG #a :close\r\n")
+
+      listener.await()
+      assertThat(listener.causes).containsExactly(null, null)
+    }
+  }
+
+  private fun connect(callback: AbstractMessageCallback<*>,
+      listener: SelectorEngine.Listener): SocketChannel {
+    engine.register(SocketChannel.open(server.localAddress), callback, listener)
+    return server.accept()
+  }
+
+  private fun write(channel: SocketChannel, text: String) {
+    val buffer = ByteBuffer.wrap(text.toByteArray())
+    while (buffer.hasRemaining()) {
+      channel.write(buffer)
+    }
+  }
+
+  private class ChatCallback : AbstractMessageCallback<Unit>() {
+    val lines: MutableList<String> = Collections.synchronizedList(mutableListOf())
+
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String) {
+      lines.add("$target $message")
+    }
+  }
+
+  private class RecordingListener(count: Int) : SelectorEngine.Listener {
+    private val closed = CountDownLatch(count)
+    val causes: MutableList<Throwable?> = Collections.synchronizedList(mutableListOf())
+    val oversized: MutableList<Int> = Collections.synchronizedList(mutableListOf())
+
+    override fun onOversizedLine(connection: SelectorEngine.Connection, length: Int) {
+      oversized.add(length)
+    }
+
+    override fun onClosed(connection: SelectorEngine.Connection, cause: Throwable?) {
+      causes.add(cause)
+      closed.countDown()
+    }
+
+    fun await() {
+      assertThat(closed.await(10, TimeUnit.SECONDS)).isTrue()
+    }
+  }
+}
@@ -0,0 +1,626 @@
+package com.tilal6991.irc.syntax.pipeline;
+
+import com.tilal6991.irc.syntax.CaseMapping;
+import com.tilal6991.irc.syntax.CommandSet;
+import com.tilal6991.irc.syntax.Commands;
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.LineFramer;
+import com.tilal6991.irc.syntax.MessageCallback;
+import com.tilal6991.irc.syntax.MessageParser;
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import com.tilal6991.irc.syntax.ParseError;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+
+/**
+ * Parses the IRC lines of one connection into a callback on several threads, called lanes, while
+ * keeping the lines of each channel or query in order. Every line is routed by its target to one
+ * lane, chosen by hashing the target under the connection's {@link CaseMapping}, and each lane
+ * handles its lines one at a time in the order they were read. Lines for different targets are
+ * handled in parallel, so a busy channel does not hold up every other one.
+ *
+ * <p>Lines are routed as follows:
+ *
+ * <ul>
+ *   <li>PRIVMSG and NOTICE by their target if it is a channel, ignoring any STATUSMSG prefix, and
+ *       by the nick of the sender otherwise so that a query stays in order.
+ *   <li>JOIN, PART, MODE, KICK and INVITE by their channel.
+ *   <li>Numeric replies by their second or third argument if it is a channel, such as the channel
+ *       of RPL_NAMREPLY or RPL_ENDOFNAMES.
+ * </ul>
+ *
+ * <p>Every other line is connection wide, such as QUIT, NICK, user MODEs, JOINs of several
+ * channels, numerics which are not about a channel and lines which fail to tokenize. These are
+ * barriers: a barrier is handled only once every line read before it has been handled by every
+ * lane, and no lane handles a line read after it until the barrier has been handled. A QUIT is
+ * thus seen after every message its user sent to any channel and before anything which follows.
+ * Barriers stop all the lanes, so they are best kept rare. The case mapping, channel types and
+ * STATUSMSG prefixes are updated from the CASEMAPPING, CHANTYPES and STATUSMSG tokens of
+ * RPL_ISUPPORT as it passes through, which is safe because the reply is itself a barrier. Until
+ * then, the channel types are {@code #&} and the STATUSMSG prefixes {@code @%+~}.
+ *
+ * <p>Each lane has its own parser and a ring of reusable slots like those of {@link LinePipeline}.
+ * The callback is called from every lane so it must be thread safe, but it is never called
+ * concurrently for lines with the same target. Values returned by the callback are ignored.
+ *
+ * <p>The feed, read and close methods must not be called concurrently.
+ */
+public final class LaneDispatcher implements Closeable {
+
+  /** Default number of slots in the ring of each lane. */
+  public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+  /** Default maximum number of lines handed over at once. */
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  private static final int BARRIER = -1;
+
+  private static final String DEFAULT_CHANNEL_TYPES = "#&";
+  private static final String DEFAULT_STATUS_PREFIXES = "@%+~";
+
+  private final Lane[] lanes;
+  private final int batchSize;
+  private final WaitStrategy waitStrategy;
+  private final Listener listener;
+  private final CommandSet interest;
+  private final LineFramer framer;
+  private final MessageTokens tokens = new MessageTokens();
+
+  // Number of lanes other than the first which have reached a barrier, and the last barrier which
+  // the first lane has handled.
+  private final AtomicLong arrivals = new AtomicLong();
+  private final Sequence released = new Sequence(0);
+  private volatile boolean stopping;
+
+  // Only accessed by the feeding thread.
+  private CaseMapping caseMapping;
+  private String channelTypes = DEFAULT_CHANNEL_TYPES;
+  private String statusPrefixes = DEFAULT_STATUS_PREFIXES;
+  private long barriers;
+  private boolean closed;
+
+  private LaneDispatcher(Builder builder) {
+    batchSize = Math.min(builder.batchSize, builder.bufferSize);
+    waitStrategy = builder.waitStrategy;
+    listener = builder.listener;
+    caseMapping = builder.caseMapping;
+    framer = new LineFramer(new Router(), builder.maxLineLength);
+
+    // RPL_ISUPPORT is always tokenized to find the case mapping and channel types.
+    interest = CommandSet.union(
+        MessageParser.interestOf(builder.callback), CommandSet.of(Commands.RPL_ISUPPORT));
+
+    lanes = new Lane[builder.lanes];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new Lane(i, builder.bufferSize, parserOf(builder.callback));
+    }
+    for (Lane lane : lanes) {
+      Thread thread = new Thread(lane, "irc-lane-" + lane.index);
+      thread.setDaemon(true);
+      lane.thread = thread;
+      thread.start();
+    }
+  }
+
+  /**
+   * Returns a builder of a dispatcher.
+   *
+   * @param callback the callback to parse the lines into from every lane.
+   * @param listener the listener to notify of lines which could not be handled.
+   */
+  @Nonnull
+  public static Builder builder(@Nonnull MessageCallback<?> callback,
+      @Nonnull Listener listener) {
+    return new Builder(callback, listener);
+  }
+
+  /**
+   * Copies bytes which have been obtained elsewhere into the dispatcher and routes every line which
+   * was completed by them.
+   *
+   * @param bytes the array containing the bytes.
+   * @param offset the index of the first byte.
+   * @param length the number of bytes.
+   * @throws IllegalStateException if the dispatcher has been closed.
+   */
+  public void feed(@Nonnull byte[] bytes, int offset, int length) {
+    checkOpen();
+    framer.feed(bytes, offset, length);
+    publishAll();
+  }
+
+  /**
+   * Copies the remaining bytes of the buffer into the dispatcher and routes every line which was
+   * completed by them. The position of the buffer is advanced to its limit.
+   *
+   * @param bytes the buffer containing the bytes.
+   * @throws IllegalStateException if the dispatcher has been closed.
+   */
+  public void feed(@Nonnull ByteBuffer bytes) {
+    checkOpen();
+    framer.feed(bytes);
+    publishAll();
+  }
+
+  /**
+   * Performs a single read from the channel and routes every line which was completed by it,
+   * including any unterminated final line if the end of the stream was reached.
+   *
+   * @param channel the channel to read from; may be non-blocking.
+   * @return the number of bytes read, possibly zero, or -1 if the end of the stream was reached.
+   * @throws IOException if the channel throws.
+   * @throws IllegalStateException if the dispatcher has been closed.
+   */
+  public int read(@Nonnull ReadableByteChannel channel) throws IOException {
+    checkOpen();
+    try {
+      return framer.read(channel);
+    } finally {
+      publishAll();
+    }
+  }
+
+  /**
+   * Performs a single read from the stream and routes every line which was completed by it,
+   * including any unterminated final line if the end of the stream was reached.
+   *
+   * @param stream the stream to read from.
+   * @return the number of bytes read or -1 if the end of the stream was reached.
+   * @throws IOException if the stream throws.
+   * @throws IllegalStateException if the dispatcher has been closed.
+   */
+  public int read(@Nonnull InputStream stream) throws IOException {
+    checkOpen();
+    try {
+      return framer.read(stream);
+    } finally {
+      publishAll();
+    }
+  }
+
+  /** Returns the case mapping lines are currently routed with. */
+  @Nonnull
+  public CaseMapping caseMapping() {
+    return caseMapping;
+  }
+
+  /**
+   * Routes any unterminated final line which was fed to the dispatcher and waits for every lane
+   * to finish with the lines routed so far before stopping their threads.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    framer.finish();
+    publishAll();
+    closed = true;
+    stopping = true;
+
+    boolean interrupted = false;
+    for (Lane lane : lanes) {
+      while (true) {
+        try {
+          lane.thread.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Dispatcher has been closed.");
+    }
+  }
+
+  private void publishAll() {
+    for (Lane lane : lanes) {
+      lane.publish();
+    }
+  }
+
+  /** Returns the lane of the tokenized line or {@link #BARRIER} if it is connection wide. */
+  private int route(byte[] bytes) {
+    int count = tokens.argumentCount();
+    switch (tokens.commandId()) {
+      case Commands.PRIVMSG:
+      case Commands.NOTICE:
+        if (count == 0) {
+          return BARRIER;
+        }
+        int start = tokens.argumentStart(0);
+        int end = tokens.argumentEnd(0);
+        int channel = start;
+        while (channel < end && isStatusPrefix(bytes[channel])) {
+          channel++;
+        }
+        // A prefix which is also a channel type only counts as STATUSMSG if a channel follows it.
+        if (channel < end && isChannelPrefix(bytes[channel])) {
+          return laneOf(bytes, channel, end);
+        } else if (start < end && isChannelPrefix(bytes[start])) {
+          return laneOf(bytes, start, end);
+        } else if (!tokens.hasPrefix()) {
+          return BARRIER;
+        }
+        // A query is routed by whoever is on the other end of it.
+        int nickEnd = tokens.prefixStart();
+        while (nickEnd < tokens.prefixEnd() && bytes[nickEnd] != '!' && bytes[nickEnd] != '@') {
+          nickEnd++;
+        }
+        return laneOf(bytes, tokens.prefixStart(), nickEnd);
+      case Commands.JOIN:
+      case Commands.PART:
+      case Commands.MODE:
+      case Commands.KICK:
+        return count > 0 ? channelLane(bytes, 0) : BARRIER;
+      case Commands.INVITE:
+        return count > 1 ? channelLane(bytes, 1) : BARRIER;
+      default:
+        if (!Commands.isNumeric(tokens.commandId())) {
+          return BARRIER;
+        }
+        // The first argument of a numeric is always the nick of the client.
+        for (int i = 1; i < count && i <= 2; i++) {
+          int lane = channelLane(bytes, i);
+          if (lane != BARRIER) {
+            return lane;
+          }
+        }
+        return BARRIER;
+    }
+  }
+
+  /** Returns the lane of the argument if it is a single channel or {@link #BARRIER} otherwise. */
+  private int channelLane(byte[] bytes, int index) {
+    int start = tokens.argumentStart(index);
+    int end = tokens.argumentEnd(index);
+    if (start == end || !isChannelPrefix(bytes[start])) {
+      return BARRIER;
+    }
+    for (int i = start; i < end; i++) {
+      if (bytes[i] == ',') {
+        return BARRIER;
+      }
+    }
+    return laneOf(bytes, start, end);
+  }
+
+  private int laneOf(byte[] bytes, int start, int end) {
+    int hash = caseMapping.hash(bytes, start, end);
+    hash ^= hash >>> 16;
+    return (hash & Integer.MAX_VALUE) % lanes.length;
+  }
+
+  private boolean isChannelPrefix(byte b) {
+    return b >= 0 && channelTypes.indexOf(b) >= 0;
+  }
+
+  private boolean isStatusPrefix(byte b) {
+    return b >= 0 && statusPrefixes.indexOf(b) >= 0;
+  }
+
+  /**
+   * Updates the case mapping, channel types and STATUSMSG prefixes from the CASEMAPPING, CHANTYPES
+   * and STATUSMSG tokens of an RPL_ISUPPORT reply.
+   */
+  private void updateIsupport() {
+    // The first argument is the nick of the client and the last the human readable text.
+    for (int i = 1; i < tokens.argumentCount() - 1; i++) {
+      String token = tokens.argumentString(i);
+      if (token.startsWith("CASEMAPPING=")) {
+        caseMapping = CaseMapping.fromName(token.substring("CASEMAPPING=".length()));
+      } else if (token.startsWith("CHANTYPES=")) {
+        channelTypes = token.substring("CHANTYPES=".length());
+      } else if (token.startsWith("STATUSMSG=")) {
+        statusPrefixes = token.substring("STATUSMSG=".length());
+      }
+    }
+  }
+
+  private static <T> FusedMessageParser<T> parserOf(MessageCallback<T> callback) {
+    return new FusedMessageParser<>(callback);
+  }
+
+  /** Builder of {@link LaneDispatcher}s. */
+  public static final class Builder {
+
+    private final MessageCallback<?> callback;
+    private final Listener listener;
+    private int lanes = Runtime.getRuntime().availableProcessors();
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxLineLength = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+    private CaseMapping caseMapping = CaseMapping.RFC1459;
+
+    private Builder(MessageCallback<?> callback, Listener listener) {
+      this.callback = callback;
+      this.listener = listener;
+    }
+
+    /** Sets the number of lanes; the number of available processors by default. */
+    @Nonnull
+    public Builder lanes(int lanes) {
+      if (lanes <= 0) {
+        throw new IllegalArgumentException("Lanes must be positive: " + lanes);
+      }
+      this.lanes = lanes;
+      return this;
+    }
+
+    /**
+     * Sets the number of slots in the ring of each lane.
+     *
+     * @param size the number of slots, which must be a power of two.
+     */
+    @Nonnull
+    public Builder bufferSize(int size) {
+      if (size <= 0 || Integer.bitCount(size) != 1) {
+        throw new IllegalArgumentException("Buffer size must be a power of two: " + size);
+      }
+      this.bufferSize = size;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of lines handed over at once, as described by
+     * {@link LinePipeline.Builder#batchSize(int)}.
+     */
+    @Nonnull
+    public Builder batchSize(int size) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("Batch size must be positive: " + size);
+      }
+      this.batchSize = size;
+      return this;
+    }
+
+    /** Sets the maximum length of a line, not including the terminator. */
+    @Nonnull
+    public Builder maxLineLength(int length) {
+      if (length <= 0) {
+        throw new IllegalArgumentException("Maximum line length must be positive: " + length);
+      }
+      this.maxLineLength = length;
+      return this;
+    }
+
+    /**
+     * Sets how the threads of the dispatcher wait for each other; {@link WaitStrategy#PARK} by
+     * default.
+     */
+    @Nonnull
+    public Builder waitStrategy(@Nonnull WaitStrategy strategy) {
+      this.waitStrategy = strategy;
+      return this;
+    }
+
+    /**
+     * Sets the case mapping to route with until the server advertises one;
+     * {@link CaseMapping#RFC1459} by default.
+     */
+    @Nonnull
+    public Builder caseMapping(@Nonnull CaseMapping caseMapping) {
+      this.caseMapping = caseMapping;
+      return this;
+    }
+
+    /** Creates the dispatcher and starts the thread of every lane. */
+    @Nonnull
+    public LaneDispatcher build() {
+      return new LaneDispatcher(this);
+    }
+  }
+
+  /** Listener of lines which could not be handled by the dispatcher. */
+  public interface Listener {
+
+    /**
+     * Callback method for a line which was discarded because it was longer than the maximum. Called
+     * on the feeding thread.
+     *
+     * @param length the length of the discarded line, not including the terminator.
+     */
+    void onOversizedLine(int length);
+
+    /**
+     * Callback method for an exception thrown by the callback, after which the lane carries on
+     * with the next line. Called on the thread of the lane and must not throw.
+     *
+     * @param lane the index of the lane.
+     * @param error the exception thrown by the callback.
+     */
+    void onLaneError(int lane, @Nonnull RuntimeException error);
+  }
+
+  /** Bytes of one line, or the marker of a barrier handled by another lane. */
+  private static final class Slot {
+
+    private byte[] bytes = new byte[LineFramer.MAX_MESSAGE_LENGTH];
+    private int length;
+    private long barrier;
+  }
+
+  /** Tokenizes every framed line just enough to route it and hands it to its lane. */
+  private final class Router implements LineFramer.Callback {
+
+    @Override
+    public void onLine(@Nonnull byte[] buffer, int offset, int length) {
+      int lane;
+      boolean isupport = false;
+      try {
+        if (!MessageTokenizer.tokenize(buffer, offset, length, tokens, interest)) {
+          return;
+        }
+        lane = route(buffer);
+        isupport = tokens.commandId() == Commands.RPL_ISUPPORT;
+      } catch (ParseError error) {
+        // The lane tokenizes the line again and passes the error to the callback.
+        lane = BARRIER;
+      }
+
+      if (lane != BARRIER) {
+        lanes[lane].add(buffer, offset, length, 0);
+        return;
+      }
+
+      // The first lane handles the barrier once every other lane has reached its marker.
+      long barrier = ++barriers;
+      lanes[0].add(buffer, offset, length, barrier);
+      for (int i = 1; i < lanes.length; i++) {
+        lanes[i].add(buffer, offset, 0, barrier);
+      }
+      if (isupport) {
+        updateIsupport();
+      }
+    }
+
+    @Override
+    public void onOversizedLine(int length) {
+      listener.onOversizedLine(length);
+    }
+  }
+
+  private final class Lane implements Runnable {
+
+    private final int index;
+    private final Slot[] slots;
+    private final int mask;
+    private final FusedMessageParser<?> parser;
+
+    // Sequence of the last line published to the lane and of the last one it has handled.
+    private final Sequence cursor = new Sequence(-1);
+    private final Sequence sequence = new Sequence(-1);
+    private Thread thread;
+
+    // Only accessed by the feeding thread.
+    private long claimed = -1;
+    private long published = -1;
+    private long freed = -1;
+
+    Lane(int index, int bufferSize, FusedMessageParser<?> parser) {
+      this.index = index;
+      this.slots = new Slot[bufferSize];
+      for (int i = 0; i < bufferSize; i++) {
+        slots[i] = new Slot();
+      }
+      this.mask = bufferSize - 1;
+      this.parser = parser;
+    }
+
+    /** Copies a line into the next slot, waiting for the lane to free one if needed. */
+    void add(byte[] buffer, int offset, int length, long barrier) {
+      long next = claimed + 1;
+      if (next - slots.length > freed) {
+        // Every lane may be waiting on lines or barriers which have not been published yet.
+        publishAll();
+        int attempts = 0;
+        while ((freed = sequence.get()) < next - slots.length) {
+          waitStrategy.idle(++attempts);
+        }
+      }
+
+      Slot slot = slots[(int) next & mask];
+      if (slot.bytes.length < length) {
+        slot.bytes = new byte[Math.max(length, slot.bytes.length * 2)];
+      }
+      System.arraycopy(buffer, offset, slot.bytes, 0, length);
+      slot.length = length;
+      slot.barrier = barrier;
+
+      claimed = next;
+      if (claimed - published >= batchSize) {
+        publish();
+      }
+    }
+
+    void publish() {
+      if (claimed != published) {
+        published = claimed;
+        cursor.lazySet(published);
+      }
+    }
+
+    @Override
+    public void run() {
+      long next = 0;
+      while (true) {
+        long available = waitFor(next);
+        if (available < next) {
+          return;
+        }
+
+        long end = Math.min(available, next + batchSize - 1);
+        for (long i = next; i <= end; i++) {
+          Slot slot = slots[(int) i & mask];
+          if (slot.barrier == 0) {
+            handle(slot);
+          } else {
+            // Free the slots before this one while the other lanes catch up.
+            sequence.lazySet(i - 1);
+            barrier(slot);
+          }
+        }
+        sequence.lazySet(end);
+        next = end + 1;
+      }
+    }
+
+    private long waitFor(long next) {
+      int attempts = 0;
+      while (true) {
+        long available = cursor.get();
+        if (available >= next) {
+          return available;
+        } else if (stopping && available == cursor.get()) {
+          // Stopping is only set after the last line has been published.
+          return available;
+        }
+        waitStrategy.idle(++attempts);
+      }
+    }
+
+    private void barrier(Slot slot) {
+      int attempts = 0;
+      if (index != 0) {
+        arrivals.incrementAndGet();
+        while (released.get() < slot.barrier) {
+          waitStrategy.idle(++attempts);
+        }
+        return;
+      }
+
+      // Barriers are reached in the same order by every lane so the arrivals only ever grow.
+      long expected = slot.barrier * (lanes.length - 1);
+      while (arrivals.get() < expected) {
+        waitStrategy.idle(++attempts);
+      }
+      try {
+        handle(slot);
+      } finally {
+        released.lazySet(slot.barrier);
+      }
+    }
+
+    private void handle(Slot slot) {
+      try {
+        parser.parse(slot.bytes, 0, slot.length);
+      } catch (RuntimeException e) {
+        listener.onLaneError(index, e);
+      }
+    }
+  }
+}
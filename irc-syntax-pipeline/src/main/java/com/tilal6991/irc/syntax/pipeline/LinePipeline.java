@@ -0,0 +1,501 @@
+package com.tilal6991.irc.syntax.pipeline;
+
+import com.tilal6991.irc.syntax.CommandSet;
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.LineFramer;
+import com.tilal6991.irc.syntax.MessageCallback;
+import com.tilal6991.irc.syntax.MessageParser;
+import com.tilal6991.irc.syntax.MessageTokenizer;
+import com.tilal6991.irc.syntax.MessageTokens;
+import com.tilal6991.irc.syntax.ParseError;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Frames and tokenizes IRC lines on the thread which feeds it and parses them into callbacks on
+ * threads of their own, so a slow callback does not hold up reading. Lines are handed over through
+ * a ring of slots which are allocated up front and reused as the ring wraps around, each holding
+ * the bytes and tokens of one line.
+ *
+ * <p>The callbacks are arranged in stages, each running on its own thread with its own parser.
+ * Every line goes through the stages in the order they were added and a stage only sees a line
+ * once the stage before it has finished with it, so the stages share the tokens of a slot without
+ * copying them. Lines whose command none of the stages is interested in are dropped before they
+ * reach the ring. Values returned by callbacks are ignored.
+ *
+ * <p>Lines are handed over in batches. The feeding thread publishes the lines it has framed at the
+ * end of every feed or read call, or after {@link Builder#batchSize(int)} lines if that comes
+ * first, and each stage takes at most that many lines at a time before reporting its progress and
+ * notifying its {@link BatchListener}. When the ring is full, the feeding thread waits for the last
+ * stage to free a slot.
+ *
+ * <p>The feed, read and close methods must not be called concurrently.
+ */
+public final class LinePipeline implements Closeable {
+
+  /** Default number of slots in the ring. */
+  public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+  /** Default maximum number of lines handed over at once. */
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  // Stops the tokenizer as soon as the command has been read.
+  private static final CommandSet NO_COMMANDS = CommandSet.of();
+
+  private static final BatchListener NO_BATCH_LISTENER = new BatchListener() {
+    @Override
+    public void onBatchEnd(int lines) {
+    }
+  };
+
+  private final Slot[] slots;
+  private final int mask;
+  private final int batchSize;
+  private final WaitStrategy waitStrategy;
+  private final Listener listener;
+  private final CommandSet interest;
+  private final LineFramer framer;
+  private final Stage[] stages;
+
+  // Sequence of the last line published to the first stage.
+  private final Sequence cursor = new Sequence(-1);
+  private volatile boolean stopping;
+
+  // Only accessed by the feeding thread.
+  private long claimed = -1;
+  private long published = -1;
+  private long freed = -1;
+  private boolean closed;
+
+  private LinePipeline(Builder builder) {
+    slots = new Slot[builder.bufferSize];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = new Slot();
+    }
+    mask = slots.length - 1;
+    batchSize = Math.min(builder.batchSize, slots.length);
+    waitStrategy = builder.waitStrategy;
+    listener = builder.listener;
+    framer = new LineFramer(new Framer(), builder.maxLineLength);
+
+    int count = builder.callbacks.size();
+    stages = new Stage[count];
+    CommandSet[] interests = new CommandSet[count];
+    for (int i = 0; i < count; i++) {
+      Sequence barrier = i == 0 ? cursor : stages[i - 1].sequence;
+      stages[i] = new Stage(i, builder.callbacks.get(i), builder.batchListeners.get(i), barrier);
+      interests[i] = MessageParser.interestOf(builder.callbacks.get(i));
+    }
+    interest = CommandSet.union(interests);
+
+    for (Stage stage : stages) {
+      Thread thread = new Thread(stage, "irc-pipeline-" + stage.index);
+      thread.setDaemon(true);
+      stage.thread = thread;
+      thread.start();
+    }
+  }
+
+  /**
+   * Returns a builder of a pipeline.
+   *
+   * @param listener the listener to notify of lines which could not be handled.
+   */
+  @Nonnull
+  public static Builder builder(@Nonnull Listener listener) {
+    return new Builder(listener);
+  }
+
+  /**
+   * Copies bytes which have been obtained elsewhere into the pipeline and publishes every line
+   * which was completed by them.
+   *
+   * @param bytes the array containing the bytes.
+   * @param offset the index of the first byte.
+   * @param length the number of bytes.
+   * @throws IllegalStateException if the pipeline has been closed.
+   */
+  public void feed(@Nonnull byte[] bytes, int offset, int length) {
+    checkOpen();
+    framer.feed(bytes, offset, length);
+    publish();
+  }
+
+  /**
+   * Copies the remaining bytes of the buffer into the pipeline and publishes every line which was
+   * completed by them. The position of the buffer is advanced to its limit.
+   *
+   * @param bytes the buffer containing the bytes.
+   * @throws IllegalStateException if the pipeline has been closed.
+   */
+  public void feed(@Nonnull ByteBuffer bytes) {
+    checkOpen();
+    framer.feed(bytes);
+    publish();
+  }
+
+  /**
+   * Performs a single read from the channel and publishes every line which was completed by it,
+   * including any unterminated final line if the end of the stream was reached.
+   *
+   * @param channel the channel to read from; may be non-blocking.
+   * @return the number of bytes read, possibly zero, or -1 if the end of the stream was reached.
+   * @throws IOException if the channel throws.
+   * @throws IllegalStateException if the pipeline has been closed.
+   */
+  public int read(@Nonnull ReadableByteChannel channel) throws IOException {
+    checkOpen();
+    try {
+      return framer.read(channel);
+    } finally {
+      publish();
+    }
+  }
+
+  /**
+   * Performs a single read from the stream and publishes every line which was completed by it,
+   * including any unterminated final line if the end of the stream was reached.
+   *
+   * @param stream the stream to read from.
+   * @return the number of bytes read or -1 if the end of the stream was reached.
+   * @throws IOException if the stream throws.
+   * @throws IllegalStateException if the pipeline has been closed.
+   */
+  public int read(@Nonnull InputStream stream) throws IOException {
+    checkOpen();
+    try {
+      return framer.read(stream);
+    } finally {
+      publish();
+    }
+  }
+
+  /**
+   * Publishes any unterminated final line which was fed to the pipeline and waits for every stage
+   * to finish with the lines published so far before stopping their threads.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    framer.finish();
+    publish();
+    closed = true;
+    stopping = true;
+
+    boolean interrupted = false;
+    for (Stage stage : stages) {
+      while (true) {
+        try {
+          stage.thread.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Pipeline has been closed.");
+    }
+  }
+
+  private void publish() {
+    if (claimed != published) {
+      published = claimed;
+      cursor.lazySet(published);
+    }
+  }
+
+  /** Returns the slot for the next line once the last stage has finished with its previous line. */
+  private Slot nextSlot() {
+    long wrap = claimed + 1 - slots.length;
+    if (wrap > freed) {
+      // The stages may be waiting on lines which have not been published yet.
+      publish();
+
+      Sequence last = stages[stages.length - 1].sequence;
+      int attempts = 0;
+      while ((freed = last.get()) < wrap) {
+        waitStrategy.idle(++attempts);
+      }
+    }
+    return slots[(int) (claimed + 1) & mask];
+  }
+
+  private static <T> FusedMessageParser<T> parserOf(MessageCallback<T> callback) {
+    return new FusedMessageParser<>(callback);
+  }
+
+  /** Builder of {@link LinePipeline}s. */
+  public static final class Builder {
+
+    private final Listener listener;
+    private final List<MessageCallback<?>> callbacks = new ArrayList<>();
+    private final List<BatchListener> batchListeners = new ArrayList<>();
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxLineLength = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+    private Builder(Listener listener) {
+      this.listener = listener;
+    }
+
+    /**
+     * Sets the number of slots in the ring.
+     *
+     * @param size the number of slots, which must be a power of two.
+     */
+    @Nonnull
+    public Builder bufferSize(int size) {
+      if (size <= 0 || Integer.bitCount(size) != 1) {
+        throw new IllegalArgumentException("Buffer size must be a power of two: " + size);
+      }
+      this.bufferSize = size;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of lines handed over at once, both when publishing lines to the
+     * stages and when a stage takes lines. Larger batches mean fewer writes of shared state per
+     * line; smaller ones mean a stage starts on a line sooner. Capped at the buffer size.
+     */
+    @Nonnull
+    public Builder batchSize(int size) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("Batch size must be positive: " + size);
+      }
+      this.batchSize = size;
+      return this;
+    }
+
+    /** Sets the maximum length of a line, not including the terminator. */
+    @Nonnull
+    public Builder maxLineLength(int length) {
+      if (length <= 0) {
+        throw new IllegalArgumentException("Maximum line length must be positive: " + length);
+      }
+      this.maxLineLength = length;
+      return this;
+    }
+
+    /**
+     * Sets how the threads of the pipeline wait for each other; {@link WaitStrategy#PARK} by
+     * default.
+     */
+    @Nonnull
+    public Builder waitStrategy(@Nonnull WaitStrategy strategy) {
+      this.waitStrategy = strategy;
+      return this;
+    }
+
+    /**
+     * Adds a stage which parses every line into the callback after any stages added before it.
+     *
+     * @param callback the callback to parse the lines into.
+     */
+    @Nonnull
+    public Builder stage(@Nonnull MessageCallback<?> callback) {
+      return stage(callback, NO_BATCH_LISTENER);
+    }
+
+    /**
+     * Adds a stage which parses every line into the callback after any stages added before it and
+     * notifies the listener at the end of every batch of lines, for example to flush work which
+     * the callback has buffered.
+     *
+     * @param callback the callback to parse the lines into.
+     * @param batchListener the listener to notify on the thread of the stage.
+     */
+    @Nonnull
+    public Builder stage(@Nonnull MessageCallback<?> callback,
+        @Nonnull BatchListener batchListener) {
+      callbacks.add(callback);
+      batchListeners.add(batchListener);
+      return this;
+    }
+
+    /**
+     * Creates the pipeline and starts the thread of every stage.
+     *
+     * @throws IllegalStateException if no stage has been added.
+     */
+    @Nonnull
+    public LinePipeline build() {
+      if (callbacks.isEmpty()) {
+        throw new IllegalStateException("Pipeline must have at least one stage.");
+      }
+      return new LinePipeline(this);
+    }
+  }
+
+  /** Listener of lines which could not be handled by the pipeline. */
+  public interface Listener {
+
+    /**
+     * Callback method for a line which was discarded because it was longer than the maximum. Called
+     * on the feeding thread.
+     *
+     * @param length the length of the discarded line, not including the terminator.
+     */
+    void onOversizedLine(int length);
+
+    /**
+     * Callback method for an exception thrown by the callback or batch listener of a stage, after
+     * which the stage carries on with the next line. Called on the thread of the stage and must not
+     * throw.
+     *
+     * @param stage the index of the stage in the order the stages were added.
+     * @param error the exception thrown by the callback.
+     */
+    void onStageError(int stage, @Nonnull RuntimeException error);
+  }
+
+  /** Listener of the batches of lines taken by a stage. */
+  public interface BatchListener {
+
+    /**
+     * Callback method for the end of a batch, once every line in it has been passed to the
+     * callback of the stage.
+     *
+     * @param lines the number of lines in the batch.
+     */
+    void onBatchEnd(int lines);
+  }
+
+  /** Bytes and tokens of one line. The bytes only grow, up to the maximum line length. */
+  private static final class Slot {
+
+    private final MessageTokens tokens = new MessageTokens();
+    private byte[] bytes = new byte[LineFramer.MAX_MESSAGE_LENGTH];
+    private ParseError error;
+  }
+
+  /** Copies every framed line which is wanted into the next slot and claims the slot. */
+  private final class Framer implements LineFramer.Callback {
+
+    private final MessageTokens command = new MessageTokens();
+
+    @Override
+    public void onLine(@Nonnull byte[] buffer, int offset, int length) {
+      // Only the command is read before taking a slot, so unwanted lines never wait for the ring.
+      if (interest != CommandSet.all()) {
+        try {
+          MessageTokenizer.tokenize(buffer, offset, length, command, NO_COMMANDS);
+          if (!interest.contains(command.commandId())) {
+            return;
+          }
+        } catch (ParseError error) {
+          // Tokenized again below so the stages can report it.
+        }
+      }
+
+      Slot slot = nextSlot();
+      if (slot.bytes.length < length) {
+        slot.bytes = new byte[Math.max(length, slot.bytes.length * 2)];
+      }
+      System.arraycopy(buffer, offset, slot.bytes, 0, length);
+
+      try {
+        slot.error = null;
+        if (!MessageTokenizer.tokenize(slot.bytes, 0, length, slot.tokens, interest)) {
+          return;
+        }
+      } catch (ParseError error) {
+        slot.error = error;
+      }
+
+      claimed++;
+      if (claimed - published >= batchSize) {
+        publish();
+      }
+    }
+
+    @Override
+    public void onOversizedLine(int length) {
+      listener.onOversizedLine(length);
+    }
+  }
+
+  private final class Stage implements Runnable {
+
+    private final int index;
+    private final MessageCallback<?> callback;
+    private final FusedMessageParser<?> parser;
+    private final BatchListener batchListener;
+    private final Sequence barrier;
+    private final Sequence sequence = new Sequence(-1);
+    private Thread thread;
+
+    Stage(int index, MessageCallback<?> callback, BatchListener batchListener, Sequence barrier) {
+      this.index = index;
+      this.callback = callback;
+      this.parser = parserOf(callback);
+      this.batchListener = batchListener;
+      this.barrier = barrier;
+    }
+
+    @Override
+    public void run() {
+      long next = 0;
+      while (true) {
+        long available = waitFor(next);
+        if (available < next) {
+          return;
+        }
+
+        long end = Math.min(available, next + batchSize - 1);
+        for (long i = next; i <= end; i++) {
+          handle(slots[(int) i & mask]);
+        }
+        sequence.lazySet(end);
+        try {
+          batchListener.onBatchEnd((int) (end - next + 1));
+        } catch (RuntimeException e) {
+          listener.onStageError(index, e);
+        }
+        next = end + 1;
+      }
+    }
+
+    /** Returns the last line available to the stage, which is before next once it should stop. */
+    private long waitFor(long next) {
+      int attempts = 0;
+      while (true) {
+        long available = barrier.get();
+        if (available >= next) {
+          return available;
+        } else if (stopping && available == cursor.get()) {
+          // Stopping is only set after the last line has been published.
+          return available;
+        }
+        waitStrategy.idle(++attempts);
+      }
+    }
+
+    private void handle(Slot slot) {
+      try {
+        if (slot.error == null) {
+          parser.parse(slot.tokens);
+        } else {
+          callback.onParseError(slot.tokens.line(), slot.error);
+        }
+      } catch (RuntimeException e) {
+        listener.onStageError(index, e);
+      }
+    }
+  }
+}
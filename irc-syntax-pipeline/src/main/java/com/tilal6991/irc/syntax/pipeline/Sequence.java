@@ -0,0 +1,20 @@
+package com.tilal6991.irc.syntax.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Position of a thread in the ring of a {@link LinePipeline}. The position of each thread is read
+ * constantly by its neighbours so it is padded onto a cache line of its own; otherwise every
+ * update would also invalidate whatever happens to share the line.
+ */
+final class Sequence extends AtomicLong {
+
+  private static final long serialVersionUID = 1L;
+
+  // Fills the rest of the cache line after the value.
+  long p1, p2, p3, p4, p5, p6, p7;
+
+  Sequence(long initial) {
+    super(initial);
+  }
+}
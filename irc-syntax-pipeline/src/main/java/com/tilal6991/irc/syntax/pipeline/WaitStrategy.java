@@ -0,0 +1,51 @@
+package com.tilal6991.irc.syntax.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the threads of a {@link LinePipeline} wait for lines to be published or for slots to be
+ * freed. Strategies further down trade latency for less CPU burnt while the pipeline is idle.
+ */
+public enum WaitStrategy {
+
+  /** Busy spins; lowest latency but keeps one core per waiting thread busy. */
+  SPIN {
+    @Override
+    void idle(int attempts) {
+      // Keep checking.
+    }
+  },
+
+  /** Spins briefly and then yields to other threads between checks. */
+  YIELD {
+    @Override
+    void idle(int attempts) {
+      if (attempts > SPIN_ATTEMPTS) {
+        Thread.yield();
+      }
+    }
+  },
+
+  /** Spins and yields briefly and then parks for a short time between checks. */
+  PARK {
+    @Override
+    void idle(int attempts) {
+      if (attempts > SPIN_ATTEMPTS + YIELD_ATTEMPTS) {
+        LockSupport.parkNanos(PARK_NANOS);
+      } else if (attempts > SPIN_ATTEMPTS) {
+        Thread.yield();
+      }
+    }
+  };
+
+  private static final int SPIN_ATTEMPTS = 100;
+  private static final int YIELD_ATTEMPTS = 100;
+  private static final long PARK_NANOS = 50_000;
+
+  /**
+   * Waits once before the condition is checked again.
+   *
+   * @param attempts the number of times the condition has been checked so far.
+   */
+  abstract void idle(int attempts);
+}
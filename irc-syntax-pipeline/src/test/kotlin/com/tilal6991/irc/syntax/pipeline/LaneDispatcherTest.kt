@@ -0,0 +1,195 @@
+package com.tilal6991.irc.syntax.pipeline
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.CaseMapping
+import com.tilal6991.irc.syntax.ParseError
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.util.Collections
+
+class LaneDispatcherTest {
+
+  private val listener = RecordingListener()
+
+  @Test fun testOrderWithinTargets() {
+    val callback = RecordingCallback()
+    val dispatcher = LaneDispatcher.builder(callback, listener)
+        .lanes(4)
+        .bufferSize(16)
+        .batchSize(4)
+        .build()
+
+    val text = StringBuilder()
+    for (i in 0 until 200) {
+      text.append(":n!u@h PRIVMSG #c${i % 10} :$i\r\n")
+      text.append(":q${i % 3}!u@h PRIVMSG me :$i\r\n")
+    }
+    feed(dispatcher, text.toString())
+    dispatcher.close()
+
+    for (c in 0 until 10) {
+      assertThat(callback.targets("#c$c")).isEqualTo((c until 200 step 10).map { "$it" })
+    }
+    for (q in 0 until 3) {
+      assertThat(callback.targets("q$q")).isEqualTo((q until 200 step 3).map { "$it" })
+    }
+    assertThat(callback.threads.values.toSet().size).isGreaterThan(1)
+    assertThat(listener.errors).isEmpty()
+  }
+
+  @Test fun testBarriers() {
+    val callback = object : RecordingCallback() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+        // Give the lanes a chance to drift apart.
+        Thread.sleep(1)
+        super.onPrivmsg(tags, prefix, target, message)
+      }
+    }
+    val dispatcher = LaneDispatcher.builder(callback, listener).lanes(4).build()
+
+    val text = StringBuilder()
+    for (i in 0 until 20) {
+      text.append(":n!u@h PRIVMSG #c${i % 5} :before $i\r\n")
+    }
+    text.append(":n!u@h QUIT :bye\r\n")
+    for (i in 0 until 20) {
+      text.append(":n!u@h PRIVMSG #c${i % 5} :after $i\r\n")
+    }
+    feed(dispatcher, text.toString())
+    dispatcher.close()
+
+    val quit = callback.events.indexOf("quit bye")
+    val before = callback.events.subList(0, quit)
+    val after = callback.events.subList(quit + 1, callback.events.size)
+    assertThat(before.filter { it.contains("before") }).hasSize(20)
+    assertThat(after.filter { it.contains("after") }).hasSize(20)
+  }
+
+  @Test fun testRouting() {
+    val callback = RecordingCallback()
+    val dispatcher = LaneDispatcher.builder(callback, listener).lanes(8).build()
+
+    feed(dispatcher, ":n!u@h PRIVMSG #Chan[1] :a\r\n" +
+        ":n!u@h PRIVMSG @#chan{1} :b\r\n" +
+        ":n!u@h PRIVMSG +#chan{1} :c\r\n" +
+        ":n!u@h JOIN #CHAN[1]\r\n" +
+        ":server 353 me = #chan{1} :me n\r\n")
+    dispatcher.close()
+
+    assertThat(callback.threads.keys)
+        .containsOnly("#Chan[1]", "@#chan{1}", "+#chan{1}", "#CHAN[1]", "#chan{1}")
+    assertThat(callback.threads.values.toSet()).hasSize(1)
+  }
+
+  @Test fun testCaseMappingFromIsupport() {
+    val callback = RecordingCallback()
+    val dispatcher = LaneDispatcher.builder(callback, listener).lanes(2).build()
+    assertThat(dispatcher.caseMapping()).isEqualTo(CaseMapping.RFC1459)
+
+    feed(dispatcher, ":server 005 me CHANTYPES=# CASEMAPPING=ascii :are supported\r\n")
+    assertThat(dispatcher.caseMapping()).isEqualTo(CaseMapping.ASCII)
+    dispatcher.close()
+  }
+
+  @Test fun testChannelTypesFromIsupport() {
+    val callback = RecordingCallback()
+    val dispatcher = LaneDispatcher.builder(callback, listener).lanes(8).build()
+
+    feed(dispatcher, ":server 005 me CHANTYPES=#+ STATUSMSG=@ :are supported\r\n" +
+        ":n!u@h PRIVMSG +Chan :a\r\n" +
+        ":n!u@h PRIVMSG @+chan :b\r\n" +
+        ":n!u@h JOIN +CHAN\r\n")
+    dispatcher.close()
+
+    assertThat(callback.threads.keys).containsOnly("+Chan", "@+chan", "+CHAN")
+    assertThat(callback.threads.values.toSet()).hasSize(1)
+  }
+
+  @Test fun testErrors() {
+    val callback = object : RecordingCallback() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+        if (message == "bad") {
+          throw IllegalStateException("Rejected.")
+        }
+        super.onPrivmsg(tags, prefix, target, message)
+      }
+    }
+    val dispatcher = LaneDispatcher.builder(callback, listener).lanes(2).build()
+
+    feed(dispatcher, ":n!u@h PRIVMSG #a :bad\r\n@a=b\r\n:n!u@h PRIVMSG #a :good\r\n")
+    dispatcher.close()
+
+    assertThat(callback.events).containsExactly("error @a=b", "#a good")
+    assertThat(listener.errors).hasSize(1)
+  }
+
+  @Test fun testClosed() {
+    val dispatcher = LaneDispatcher.builder(RecordingCallback(), listener).lanes(1).build()
+    dispatcher.close()
+
+    try {
+      feed(dispatcher, "PING :a\r\n")
+      fail("Expected IllegalStateException.")
+    } catch (e: IllegalStateException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  private fun feed(dispatcher: LaneDispatcher, text: String) {
+    val bytes = text.toByteArray()
+    dispatcher.feed(bytes, 0, bytes.size)
+  }
+
+  private open class RecordingCallback : AbstractMessageCallback<Unit>() {
+    val events: MutableList<String> = Collections.synchronizedList(mutableListOf())
+    val threads: MutableMap<String, Thread> = Collections.synchronizedMap(mutableMapOf())
+    private val byTarget: MutableMap<String, MutableList<String>> =
+        Collections.synchronizedMap(mutableMapOf())
+
+    fun targets(target: String): List<String> = byTarget[target] ?: emptyList()
+
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String) {
+      val key = if (target == "me") prefix!!.substringBefore('!') else target
+      record(key, message)
+      events.add("$target $message")
+    }
+
+    override fun onJoin(tags: List<String>?, prefix: String?, channel: String,
+        arguments: List<String>) {
+      record(channel, "join")
+    }
+
+    override fun onNames(tags: List<String>?, prefix: String?, target: String,
+        channelDescriptor: Char?, channel: String, names: List<String>) {
+      record(channel, "names")
+    }
+
+    override fun onQuit(tags: List<String>?, prefix: String?, reason: String?) {
+      events.add("quit $reason")
+    }
+
+    override fun onParseError(line: CharSequence, error: ParseError) {
+      events.add("error $line")
+    }
+
+    private fun record(key: String, value: String) {
+      threads[key] = Thread.currentThread()
+      byTarget.getOrPut(key) { Collections.synchronizedList(mutableListOf()) }.add(value)
+    }
+  }
+
+  private class RecordingListener : LaneDispatcher.Listener {
+    val errors: MutableList<String> = Collections.synchronizedList(mutableListOf())
+
+    override fun onOversizedLine(length: Int) {
+    }
+
+    override fun onLaneError(lane: Int, error: RuntimeException) {
+      errors.add("$lane ${error.message}")
+    }
+  }
+}
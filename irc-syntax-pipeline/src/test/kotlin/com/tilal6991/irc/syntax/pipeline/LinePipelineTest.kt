@@ -0,0 +1,214 @@
+package com.tilal6991.irc.syntax.pipeline
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.ParseError
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.util.Collections
+import java.util.Random
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class LinePipelineTest {
+
+  private val listener = RecordingListener()
+
+  @Test fun testStagesSeeEveryLineInOrder() {
+    val first = ChatCallback()
+    val overtaken = AtomicInteger()
+    val second = object : ChatCallback() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+        // The first stage must already have handled this line.
+        if (first.lines.size <= lines.size) {
+          overtaken.incrementAndGet()
+        }
+        super.onPrivmsg(tags, prefix, target, message)
+      }
+    }
+    val pipeline = LinePipeline.builder(listener)
+        .bufferSize(8)
+        .batchSize(4)
+        .stage(first)
+        .stage(second)
+        .build()
+
+    val text = (0 until 1000).joinToString("") { "@t=$it :n!u@h PRIVMSG #a :line $it\r\n" }
+    val bytes = text.toByteArray()
+    val random = Random(6991)
+    var offset = 0
+    while (offset < bytes.size) {
+      val count = Math.min(random.nextInt(200) + 1, bytes.size - offset)
+      pipeline.feed(bytes, offset, count)
+      offset += count
+    }
+    pipeline.close()
+
+    val expected = (0 until 1000).map { "#a line $it" }
+    assertThat(first.lines).isEqualTo(expected)
+    assertThat(second.lines).isEqualTo(expected)
+    assertThat(overtaken.get()).isZero()
+    assertThat(listener.errors).isEmpty()
+  }
+
+  @Test fun testWaitStrategies() {
+    for (strategy in WaitStrategy.values()) {
+      val callback = ChatCallback()
+      val pipeline = LinePipeline.builder(listener)
+          .bufferSize(16)
+          .waitStrategy(strategy)
+          .stage(callback)
+          .build()
+
+      val text = (0 until 200).joinToString("") { "PRIVMSG #a :$it\n" }
+      pipeline.read(ByteArrayInputStream(text.toByteArray()))
+      pipeline.read(ByteArrayInputStream(ByteArray(0)))
+      pipeline.close()
+
+      assertThat(callback.lines).hasSize(200)
+    }
+  }
+
+  @Test fun testInterestAndParseErrors() {
+    val callback = ChatCallback()
+    val pipeline = LinePipeline.builder(listener).stage(callback).build()
+
+    val bytes = "PING :a\r\nPRIVMSG #a\r\n@a=b\r\nJOIN #b\r\nPRIVMSG #a :ok\r\n".toByteArray()
+    pipeline.feed(bytes, 0, bytes.size)
+    pipeline.close()
+
+    assertThat(callback.lines).containsExactly("error PRIVMSG #a", "error @a=b", "#a ok")
+  }
+
+  @Test fun testUnwantedLinesDoNotWait() {
+    val release = CountDownLatch(1)
+    val callback = object : ChatCallback() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+        release.await()
+        super.onPrivmsg(tags, prefix, target, message)
+      }
+    }
+    val pipeline = LinePipeline.builder(listener).bufferSize(2).stage(callback).build()
+
+    // Fill the ring while the stage is stuck, then feed lines which no stage wants.
+    val wanted = "PRIVMSG #a :1\r\nPRIVMSG #a :2\r\n".toByteArray()
+    pipeline.feed(wanted, 0, wanted.size)
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val unwanted = "NOTICE #a :x\r\n".repeat(10).toByteArray()
+      executor.submit { pipeline.feed(unwanted, 0, unwanted.size) }.get(10, TimeUnit.SECONDS)
+    } finally {
+      release.countDown()
+      executor.shutdown()
+    }
+    pipeline.close()
+
+    assertThat(callback.lines).containsExactly("#a 1", "#a 2")
+  }
+
+  @Test fun testStageErrors() {
+    val callback = object : ChatCallback() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+        if (message == "bad") {
+          throw IllegalStateException("Rejected.")
+        }
+        super.onPrivmsg(tags, prefix, target, message)
+      }
+    }
+    val pipeline = LinePipeline.builder(listener).stage(ChatCallback()).stage(callback).build()
+
+    val bytes = "PRIVMSG #a :bad\r\nPRIVMSG #a :good\r\n".toByteArray()
+    pipeline.feed(bytes, 0, bytes.size)
+    pipeline.close()
+
+    assertThat(callback.lines).containsExactly("#a good")
+    assertThat(listener.errors).containsExactly("1 Rejected.")
+  }
+
+  @Test fun testOversizedAndFinalLines() {
+    val callback = ChatCallback()
+    val pipeline = LinePipeline.builder(listener).maxLineLength(32).stage(callback).build()
+
+    val bytes = ("PRIVMSG #a :" + "x".repeat(40) + "\r\nPRIVMSG #a :last").toByteArray()
+    pipeline.feed(bytes, 0, bytes.size)
+    pipeline.close()
+
+    assertThat(callback.lines).containsExactly("#a last")
+    assertThat(listener.oversized).containsExactly(52)
+  }
+
+  @Test fun testBatches() {
+    val sizes = Collections.synchronizedList(mutableListOf<Int>())
+    val pipeline = LinePipeline.builder(listener)
+        .batchSize(8)
+        .stage(ChatCallback(), LinePipeline.BatchListener { sizes.add(it) })
+        .build()
+
+    val bytes = (0 until 100).joinToString("") { "PRIVMSG #a :$it\n" }.toByteArray()
+    pipeline.feed(bytes, 0, bytes.size)
+    pipeline.close()
+
+    assertThat(sizes.sum()).isEqualTo(100)
+    assertThat(sizes.max()).isLessThanOrEqualTo(8)
+  }
+
+  @Test fun testClosed() {
+    val pipeline = LinePipeline.builder(listener).stage(ChatCallback()).build()
+    pipeline.close()
+    pipeline.close()
+
+    try {
+      pipeline.feed(ByteArray(1), 0, 1)
+      fail("Expected IllegalStateException.")
+    } catch (e: IllegalStateException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  @Test fun testInvalidBuilder() {
+    try {
+      LinePipeline.builder(listener).build()
+      fail("Expected IllegalStateException.")
+    } catch (e: IllegalStateException) {
+      // Don't bother checking exact message.
+    }
+    try {
+      LinePipeline.builder(listener).bufferSize(12)
+      fail("Expected IllegalArgumentException.")
+    } catch (e: IllegalArgumentException) {
+      // Don't bother checking exact message.
+    }
+  }
+
+  private open class ChatCallback : AbstractMessageCallback<Unit>() {
+    val lines: MutableList<String> = Collections.synchronizedList(mutableListOf())
+
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String) {
+      lines.add("$target $message")
+    }
+
+    override fun onParseError(line: CharSequence, error: ParseError) {
+      lines.add("error $line")
+    }
+  }
+
+  private class RecordingListener : LinePipeline.Listener {
+    val oversized: MutableList<Int> = Collections.synchronizedList(mutableListOf())
+    val errors: MutableList<String> = Collections.synchronizedList(mutableListOf())
+
+    override fun onOversizedLine(length: Int) {
+      oversized.add(length)
+    }
+
+    override fun onStageError(stage: Int, error: RuntimeException) {
+      errors.add("$stage ${error.message}")
+    }
+  }
+}
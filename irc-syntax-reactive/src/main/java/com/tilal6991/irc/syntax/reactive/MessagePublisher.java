@@ -0,0 +1,277 @@
+package com.tilal6991.irc.syntax.reactive;
+
+import com.tilal6991.irc.syntax.FusedMessageParser;
+import com.tilal6991.irc.syntax.MessageCallback;
+import com.tilal6991.irc.syntax.MessageParser;
+import com.tilal6991.irc.syntax.MessageReader;
+import com.tilal6991.irc.syntax.MessageTokens;
+import com.tilal6991.irc.syntax.ParseError;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publisher of the values a callback returns for the IRC lines of a stream. Lines are only read
+ * and parsed as the subscriber requests them: once the outstanding demand reaches zero nothing
+ * more is read from the stream until more is requested. Lines for which the callback returns
+ * null are skipped without using up any demand.
+ *
+ * <p>Reading happens on the given executor, never on the thread which calls
+ * {@link Subscription#request(long)} unless the executor runs tasks in place. Parse errors are
+ * passed to {@link MessageCallback#onParseError(CharSequence, ParseError)} as they would be by a
+ * parser; exceptions thrown by the stream or the callback terminate the subscription with
+ * {@link Subscriber#onError(Throwable)}. The stream is closed once the subscription completes,
+ * fails or is cancelled. Cancelling closes it straight away on the cancelling thread so that a
+ * read blocked on it is woken; whatever that read then throws is not reported.
+ *
+ * <p>A stream can only be read once so the publisher only allows a single subscriber.
+ */
+public final class MessagePublisher<T> implements Publisher<T> {
+
+  private final MessageReader reader;
+  private final Closeable source;
+  private final MessageCallback<T> callback;
+  private final FusedMessageParser<T> parser;
+  private final Executor executor;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * Creates a publisher of the lines in the stream.
+   *
+   * @param stream the stream to read from.
+   * @param callback the callback to parse the lines into.
+   * @param executor the executor to read and parse on.
+   */
+  public MessagePublisher(@Nonnull InputStream stream,
+      @Nonnull MessageCallback<T> callback,
+      @Nonnull Executor executor) {
+    this(new MessageReader(stream, MessageParser.interestOf(callback)), stream, callback,
+        executor);
+  }
+
+  /**
+   * Creates a publisher of the lines in the channel.
+   *
+   * @param channel the blocking channel to read from.
+   * @param callback the callback to parse the lines into.
+   * @param executor the executor to read and parse on.
+   * @throws IllegalArgumentException if the channel is in non-blocking mode.
+   */
+  public MessagePublisher(@Nonnull ReadableByteChannel channel,
+      @Nonnull MessageCallback<T> callback,
+      @Nonnull Executor executor) {
+    this(new MessageReader(channel, MessageParser.interestOf(callback)), channel, callback,
+        executor);
+    if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+      throw new IllegalArgumentException("Channel must be in blocking mode.");
+    }
+  }
+
+  private MessagePublisher(MessageReader reader, Closeable source, MessageCallback<T> callback,
+      Executor executor) {
+    this.reader = reader;
+    this.source = source;
+    this.callback = callback;
+    this.parser = new FusedMessageParser<>(callback);
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber must not be null.");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(CancelledSubscription.INSTANCE);
+      subscriber.onError(new IllegalStateException("Publisher only allows one subscriber."));
+      return;
+    }
+    subscriber.onSubscribe(new LineSubscription(subscriber));
+  }
+
+  /**
+   * Subscription which reads lines on the executor. The work-in-progress count makes sure only one
+   * drain runs at a time and that any request or cancellation arriving during it is picked up
+   * before it finishes.
+   */
+  private final class LineSubscription extends AtomicInteger implements Subscription, Runnable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Subscriber<? super T> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+
+    // Only accessed by the drain.
+    private boolean done;
+
+    LineSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("Request must be positive: " + n);
+      } else {
+        long current;
+        long next;
+        do {
+          current = requested.get();
+          next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!requested.compareAndSet(current, next));
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      // A drain blocked in a read would otherwise only see the cancellation after the next line.
+      closeSource();
+      schedule();
+    }
+
+    private void schedule() {
+      if (getAndIncrement() != 0) {
+        return;
+      }
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // The count is never released so this thread is the last one to touch the subscription.
+        if (!done) {
+          fail(e);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        try {
+          drain();
+        } catch (RuntimeException | Error e) {
+          // Thrown by the subscriber, which breaks its contract, so stop reading for it.
+          done = true;
+          closeSource();
+          throw e;
+        }
+        missed = addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      while (!done) {
+        if (cancelled) {
+          done = true;
+          closeSource();
+          return;
+        } else if (invalidRequest != null) {
+          fail(invalidRequest);
+          return;
+        }
+
+        long demand = requested.get();
+        if (demand == 0) {
+          return;
+        }
+
+        long emitted = 0;
+        while (emitted != demand && !done && !cancelled && invalidRequest == null) {
+          if (emitNext()) {
+            emitted++;
+          }
+        }
+        if (demand != Long.MAX_VALUE) {
+          requested.addAndGet(-emitted);
+        }
+      }
+    }
+
+    /** Reads and parses the next line, returning whether a value was passed to the subscriber. */
+    private boolean emitNext() {
+      T value;
+      try {
+        value = parseNext();
+      } catch (IOException | RuntimeException e) {
+        if (cancelled) {
+          // Most likely thrown because cancelling closed the stream under the read.
+          done = true;
+          return false;
+        }
+        fail(e);
+        return false;
+      }
+
+      if (done) {
+        closeSource();
+        subscriber.onComplete();
+        return false;
+      } else if (value == null) {
+        return false;
+      }
+      subscriber.onNext(value);
+      return true;
+    }
+
+    private T parseNext() throws IOException {
+      MessageTokens line;
+      try {
+        line = reader.next();
+      } catch (ParseError error) {
+        return callback.onParseError(reader.tokens().line(), error);
+      }
+
+      if (line == null) {
+        done = true;
+        return null;
+      }
+      return parser.parse(line);
+    }
+
+    private void fail(Throwable cause) {
+      done = true;
+      closeSource();
+      subscriber.onError(cause);
+    }
+  }
+
+  private void closeSource() {
+    try {
+      source.close();
+    } catch (IOException ignored) {
+      // The stream has either been fully read or is no longer wanted.
+    }
+  }
+
+  /** Subscription given to rejected subscribers before they are told why. */
+  private static final class CancelledSubscription implements Subscription {
+
+    static final CancelledSubscription INSTANCE = new CancelledSubscription();
+
+    @Override
+    public void request(long n) {
+      // Nothing will ever be published.
+    }
+
+    @Override
+    public void cancel() {
+      // Nothing to cancel.
+    }
+  }
+}
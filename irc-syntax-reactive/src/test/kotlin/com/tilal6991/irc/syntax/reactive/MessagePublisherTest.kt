@@ -0,0 +1,241 @@
+package com.tilal6991.irc.syntax.reactive
+
+import com.tilal6991.irc.syntax.AbstractMessageCallback
+import com.tilal6991.irc.syntax.ParseError
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class MessagePublisherTest {
+
+  private val direct = Executor { it.run() }
+
+  @Test fun testReadsOnlyWhatIsRequested() {
+    val lines = (0 until 1000).joinToString("") { "PRIVMSG #a :line $it\r\n" }
+    val stream = CountingStream(lines.toByteArray())
+    val subscriber = RecordingSubscriber()
+    MessagePublisher(stream, ChatCallback(), direct).subscribe(subscriber)
+
+    subscriber.subscription.request(2)
+    assertThat(subscriber.values).containsExactly("#a line 0", "#a line 1")
+    val read = stream.read
+    assertThat(read).isLessThan(lines.length)
+
+    // Without demand nothing more is read.
+    assertThat(stream.read).isEqualTo(read)
+
+    subscriber.subscription.request(Long.MAX_VALUE)
+    assertThat(subscriber.values).hasSize(1000)
+    assertThat(subscriber.completed).isTrue()
+    assertThat(stream.closed).isTrue()
+  }
+
+  @Test fun testSkippedLinesDoNotUseDemand() {
+    val subscriber = RecordingSubscriber()
+    MessagePublisher(stream("PING :a\r\nPRIVMSG #a :one\r\nJOIN #b\r\nPRIVMSG #a :two\r\n"),
+        ChatCallback(), direct).subscribe(subscriber)
+
+    subscriber.subscription.request(2)
+
+    assertThat(subscriber.values).containsExactly("#a one", "#a two")
+    assertThat(subscriber.completed).isFalse()
+
+    subscriber.subscription.request(1)
+    assertThat(subscriber.completed).isTrue()
+  }
+
+  @Test fun testParseErrors() {
+    val subscriber = RecordingSubscriber()
+    MessagePublisher(stream("@a=b\r\nPRIVMSG #a\r\nPRIVMSG #a :ok\r\n"), ChatCallback(), direct)
+        .subscribe(subscriber)
+
+    subscriber.subscription.request(Long.MAX_VALUE)
+
+    assertThat(subscriber.values).containsExactly("error @a=b", "error PRIVMSG #a", "#a ok")
+    assertThat(subscriber.completed).isTrue()
+  }
+
+  @Test fun testCancel() {
+    val stream = CountingStream("PRIVMSG #a :one\r\nPRIVMSG #a :two\r\n".toByteArray())
+    val subscriber = RecordingSubscriber()
+    MessagePublisher(stream, ChatCallback(), direct).subscribe(subscriber)
+
+    subscriber.subscription.request(1)
+    subscriber.subscription.cancel()
+    subscriber.subscription.request(1)
+
+    assertThat(subscriber.values).containsExactly("#a one")
+    assertThat(subscriber.completed).isFalse()
+    assertThat(stream.closed).isTrue()
+  }
+
+  @Test fun testCancelWakesBlockedRead() {
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val stream = BlockingStream()
+      val subscriber = RecordingSubscriber()
+      MessagePublisher(stream, ChatCallback(), executor).subscribe(subscriber)
+
+      subscriber.subscription.request(1)
+      assertThat(stream.reading.await(10, TimeUnit.SECONDS)).isTrue()
+      subscriber.subscription.cancel()
+
+      executor.shutdown()
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue()
+      assertThat(subscriber.error).isNull()
+      assertThat(subscriber.completed).isFalse()
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test fun testInvalidRequest() {
+    val subscriber = RecordingSubscriber()
+    MessagePublisher(stream("PRIVMSG #a :one\r\n"), ChatCallback(), direct).subscribe(subscriber)
+
+    subscriber.subscription.request(0)
+
+    assertThat(subscriber.error).isInstanceOf(IllegalArgumentException::class.java)
+  }
+
+  @Test fun testStreamError() {
+    val stream = object : InputStream() {
+      override fun read(): Int = throw IOException("Broken.")
+      override fun read(b: ByteArray, off: Int, len: Int): Int = throw IOException("Broken.")
+    }
+    val subscriber = RecordingSubscriber()
+    MessagePublisher(stream, ChatCallback(), direct).subscribe(subscriber)
+
+    subscriber.subscription.request(1)
+
+    assertThat(subscriber.error).isInstanceOf(IOException::class.java)
+  }
+
+  @Test fun testSingleSubscriber() {
+    val publisher = MessagePublisher(stream(""), ChatCallback(), direct)
+    publisher.subscribe(RecordingSubscriber())
+
+    val second = RecordingSubscriber()
+    publisher.subscribe(second)
+
+    assertThat(second.error).isInstanceOf(IllegalStateException::class.java)
+  }
+
+  @Test fun testExecutor() {
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val lines = (0 until 100).joinToString("") { "PRIVMSG #a :line $it\r\n" }
+      val done = CountDownLatch(1)
+      val values = Collections.synchronizedList(mutableListOf<String>())
+      val threads = Collections.synchronizedSet(mutableSetOf<Thread>())
+      MessagePublisher(stream(lines), ChatCallback(), executor).subscribe(
+          object : Subscriber<String> {
+            lateinit var subscription: Subscription
+
+            override fun onSubscribe(s: Subscription) {
+              subscription = s
+              s.request(1)
+            }
+
+            override fun onNext(t: String) {
+              values.add(t)
+              threads.add(Thread.currentThread())
+              subscription.request(1)
+            }
+
+            override fun onError(t: Throwable) {
+              done.countDown()
+            }
+
+            override fun onComplete() {
+              done.countDown()
+            }
+          })
+
+      assertThat(done.await(10, TimeUnit.SECONDS)).isTrue()
+      assertThat(values).isEqualTo((0 until 100).map { "#a line $it" })
+      assertThat(threads).doesNotContain(Thread.currentThread()).hasSize(1)
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  private fun stream(text: String) = ByteArrayInputStream(text.toByteArray())
+
+  private class CountingStream(bytes: ByteArray) : ByteArrayInputStream(bytes) {
+    var read = 0
+    var closed = false
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+      val count = super.read(b, off, len)
+      if (count > 0) {
+        read += count
+      }
+      return count
+    }
+
+    override fun close() {
+      closed = true
+    }
+  }
+
+  private class BlockingStream : InputStream() {
+    val reading = CountDownLatch(1)
+    private val closed = CountDownLatch(1)
+
+    override fun read(): Int = read(ByteArray(1), 0, 1)
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+      reading.countDown()
+      closed.await()
+      throw IOException("Stream closed.")
+    }
+
+    override fun close() {
+      closed.countDown()
+    }
+  }
+
+  private class ChatCallback : AbstractMessageCallback<String>() {
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String): String {
+      return "$target $message"
+    }
+
+    override fun onParseError(line: CharSequence, error: ParseError): String {
+      return "error $line"
+    }
+  }
+
+  private class RecordingSubscriber : Subscriber<String> {
+    lateinit var subscription: Subscription
+    val values = mutableListOf<String>()
+    var completed = false
+    var error: Throwable? = null
+
+    override fun onSubscribe(s: Subscription) {
+      subscription = s
+    }
+
+    override fun onNext(t: String) {
+      values.add(t)
+    }
+
+    override fun onError(t: Throwable) {
+      error = t
+    }
+
+    override fun onComplete() {
+      completed = true
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.tilal6991.irc.syntax;
 
+import java.lang.CharSequence;
 import java.lang.Character;
 import java.lang.Override;
 import java.lang.String;
@@ -123,6 +124,11 @@ public class AbstractMessageCallback<T> implements MessageCallback<T> {
     return null;
   }
 
+  @Override
+  public T onParseError(@Nonnull CharSequence line, @Nonnull ParseError error) {
+    throw error;
+  }
+
   @Override
   public T onPart(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String channel, @Nullable String reason) {
     return null;
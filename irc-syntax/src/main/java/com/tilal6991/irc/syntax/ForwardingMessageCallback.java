@@ -0,0 +1,192 @@
+package com.tilal6991.irc.syntax;
+
+import java.lang.CharSequence;
+import java.lang.Character;
+import java.lang.Override;
+import java.lang.String;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Callback which forwards every call to the callback returned by {@link #delegate()}. Subclasses
+ * can override any method to decorate it or switch the delegate between lines.
+ */
+public abstract class ForwardingMessageCallback<T> implements MessageCallback<T> {
+  /**
+   * Returns the callback to forward the next call to.
+   */
+  @Nonnull
+  protected abstract MessageCallback<T> delegate();
+
+  /**
+   * Returns the commands handled by this callback, as used by
+   * {@link MessageParser#interestOf(MessageCallback)}. These are the commands handled by the
+   * current delegate; subclasses which handle more or switch the delegate between lines should
+   * override this.
+   */
+  @Nonnull
+  public CommandSet interest() {
+    return MessageParser.interestOf(delegate());
+  }
+
+  @Override
+  public T onAccount(@Nullable List<String> tags, @Nullable String prefix, @Nullable String account) {
+    return delegate().onAccount(tags, prefix, account);
+  }
+
+  @Override
+  public T onAuthenticate(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String data) {
+    return delegate().onAuthenticate(tags, prefix, data);
+  }
+
+  @Override
+  public T onAway(@Nullable List<String> tags, @Nullable String prefix, @Nullable String message) {
+    return delegate().onAway(tags, prefix, message);
+  }
+
+  @Override
+  public T onBatch(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String modifiedReferenceTag, @Nonnull String type, @Nonnull List<String> arguments) {
+    return delegate().onBatch(tags, prefix, modifiedReferenceTag, type, arguments);
+  }
+
+  @Override
+  public T onCapAck(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+    return delegate().onCapAck(tags, prefix, clientId, modCapabilityAndValues);
+  }
+
+  @Override
+  public T onCapDel(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+    return delegate().onCapDel(tags, prefix, clientId, modCapabilityAndValues);
+  }
+
+  @Override
+  public T onCapList(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
+    return delegate().onCapList(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+  }
+
+  @Override
+  public T onCapLs(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
+    return delegate().onCapLs(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+  }
+
+  @Override
+  public T onCapNak(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+    return delegate().onCapNak(tags, prefix, clientId, modCapabilityAndValues);
+  }
+
+  @Override
+  public T onCapNew(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+    return delegate().onCapNew(tags, prefix, clientId, modCapabilityAndValues);
+  }
+
+  @Override
+  public T onChghost(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String newUser, @Nonnull String newHost) {
+    return delegate().onChghost(tags, prefix, newUser, newHost);
+  }
+
+  @Override
+  public T onEndOfMotd(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message) {
+    return delegate().onEndOfMotd(tags, prefix, target, message);
+  }
+
+  @Override
+  public T onEndOfNames(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String channel, @Nonnull String message) {
+    return delegate().onEndOfNames(tags, prefix, target, channel, message);
+  }
+
+  @Override
+  public T onInvite(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String channel) {
+    return delegate().onInvite(tags, prefix, target, channel);
+  }
+
+  @Override
+  public T onIsupport(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message, @Nonnull List<String> tokens) {
+    return delegate().onIsupport(tags, prefix, target, message, tokens);
+  }
+
+  @Override
+  public T onJoin(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String channel, @Nonnull List<String> arguments) {
+    return delegate().onJoin(tags, prefix, channel, arguments);
+  }
+
+  @Override
+  public T onKick(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String channel, @Nonnull String user, @Nullable String reason) {
+    return delegate().onKick(tags, prefix, channel, user, reason);
+  }
+
+  @Override
+  public T onMode(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull List<String> arguments) {
+    return delegate().onMode(tags, prefix, target, arguments);
+  }
+
+  @Override
+  public T onMotd(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message) {
+    return delegate().onMotd(tags, prefix, target, message);
+  }
+
+  @Override
+  public T onMotdStart(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message) {
+    return delegate().onMotdStart(tags, prefix, target, message);
+  }
+
+  @Override
+  public T onNames(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nullable Character channelDescriptor, @Nonnull String channel, @Nonnull List<String> names) {
+    return delegate().onNames(tags, prefix, target, channelDescriptor, channel, names);
+  }
+
+  @Override
+  public T onNick(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String nick) {
+    return delegate().onNick(tags, prefix, nick);
+  }
+
+  @Override
+  public T onNotice(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message) {
+    return delegate().onNotice(tags, prefix, target, message);
+  }
+
+  @Override
+  public T onParseError(@Nonnull CharSequence line, @Nonnull ParseError error) {
+    return delegate().onParseError(line, error);
+  }
+
+  @Override
+  public T onPart(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String channel, @Nullable String reason) {
+    return delegate().onPart(tags, prefix, channel, reason);
+  }
+
+  @Override
+  public T onPing(@Nullable List<String> tags, @Nullable String prefix, @Nullable String hostname) {
+    return delegate().onPing(tags, prefix, hostname);
+  }
+
+  @Override
+  public T onPrivmsg(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message) {
+    return delegate().onPrivmsg(tags, prefix, target, message);
+  }
+
+  @Override
+  public T onQuit(@Nullable List<String> tags, @Nullable String prefix, @Nullable String reason) {
+    return delegate().onQuit(tags, prefix, reason);
+  }
+
+  @Override
+  public T onUnknownCap(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String clientId, @Nonnull String subcommand, @Nonnull List<String> arguments) {
+    return delegate().onUnknownCap(tags, prefix, clientId, subcommand, arguments);
+  }
+
+  @Override
+  public T onUnknownCode(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, int code, @Nonnull List<String> arguments) {
+    return delegate().onUnknownCode(tags, prefix, target, code, arguments);
+  }
+
+  @Override
+  public T onUnknownCommand(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String command, @Nonnull List<String> arguments) {
+    return delegate().onUnknownCommand(tags, prefix, command, arguments);
+  }
+
+  @Override
+  public T onWelcome(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message) {
+    return delegate().onWelcome(tags, prefix, target, message);
+  }
+}
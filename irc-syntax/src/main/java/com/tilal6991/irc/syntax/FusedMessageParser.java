@@ -0,0 +1,302 @@
+package com.tilal6991.irc.syntax;
+
+import java.lang.Character;
+import java.lang.Override;
+import java.lang.String;
+import java.nio.ByteBuffer;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Parser which behaves exactly like {@link MessageParser} but checks the arguments of each line
+ * and dispatches it to the callback straight from its tokens, in a single switch per line,
+ * rather than going through {@link ArgumentParser} and {@link CodeParser} with a list of the
+ * arguments. Only the strings handed to the callback are extracted from the line. Instances
+ * are not thread safe.
+ */
+public final class FusedMessageParser<T> {
+  private final MessageCallback<T> callback;
+
+  private final CommandSet interest;
+
+  private final PrefixCache prefixes;
+
+  private final StringPool strings;
+
+  private final Delivery delivery;
+
+  private final MessageTokens own;
+
+  private MessageTokens tokens;
+
+  /**
+   * Creates a parser which only fully parses the lines handled by the callback as described in
+   * {@link MessageParser#MessageParser(MessageCallback)}.
+   */
+  public FusedMessageParser(@Nonnull MessageCallback<T> callback) {
+    this(callback, MessageParser.interestOf(callback));
+  }
+
+  /**
+   * Creates a parser which only fully parses lines whose command is in the interest set. Any other
+   * line is skipped as soon as its command has been read and null is returned for it.
+   */
+  public FusedMessageParser(@Nonnull MessageCallback<T> callback, @Nonnull CommandSet interest) {
+    this(callback, interest, null, null);
+  }
+
+  /**
+   * Creates a parser which uses the cache and pool as described in
+   * {@link MessageParser#MessageParser(MessageCallback, CommandSet, PrefixCache, StringPool)}.
+   */
+  public FusedMessageParser(@Nonnull MessageCallback<T> callback, @Nonnull CommandSet interest, @Nullable PrefixCache prefixes, @Nullable StringPool strings) {
+    this.callback = callback;
+    this.interest = interest;
+    this.prefixes = prefixes;
+    this.strings = strings;
+    this.delivery = new Delivery();
+    this.own = new MessageTokens();
+    this.tokens = own;
+  }
+
+  /**
+   * Dispatches a line which has already been fully tokenized, such as one returned by
+   * {@link MessageReader#next()}, to the callback. Null is returned if its command is not in the
+   * interest set.
+   */
+  public T parse(@Nonnull MessageTokens line) {
+    if (!interest.contains(line.commandId())) {
+      return null;
+    }
+    tokens = line;
+    delivery.delivered = false;
+    try {
+      return dispatch();
+    } catch (ParseError error) {
+      if (delivery.delivered) {
+        throw error;
+      }
+      return callback.onParseError(line.line(), error);
+    } finally {
+      tokens = own;
+    }
+  }
+
+  public T parse(@Nonnull String line) {
+    delivery.delivered = false;
+    try {
+      if (!MessageTokenizer.tokenize(line, tokens, interest)) {
+        return null;
+      }
+      return dispatch();
+    } catch (ParseError error) {
+      if (delivery.delivered) {
+        throw error;
+      }
+      return callback.onParseError(tokens.line(), error);
+    }
+  }
+
+  public T parse(@Nonnull byte[] line, int offset, int length) {
+    delivery.delivered = false;
+    try {
+      if (!MessageTokenizer.tokenize(line, offset, length, tokens, interest)) {
+        return null;
+      }
+      return dispatch();
+    } catch (ParseError error) {
+      if (delivery.delivered) {
+        throw error;
+      }
+      return callback.onParseError(tokens.line(), error);
+    }
+  }
+
+  public T parse(@Nonnull ByteBuffer buffer, int offset, int length) {
+    delivery.delivered = false;
+    try {
+      if (!MessageTokenizer.tokenize(buffer, offset, length, tokens, interest)) {
+        return null;
+      }
+      return dispatch();
+    } catch (ParseError error) {
+      if (delivery.delivered) {
+        throw error;
+      }
+      return callback.onParseError(tokens.line(), error);
+    }
+  }
+
+  private T dispatch() {
+    MessageTags tags = tokens.hasTags() ? tokens.tags().copy() : null;
+    String prefix = prefixes != null ? tokens.prefixString(prefixes) : strings != null ? tokens.prefixString(strings) : tokens.prefixString();
+    int commandId = tokens.commandId();
+    int count = tokens.argumentCount();
+    switch (commandId) {
+      case Commands.ACCOUNT:
+        Utils.checkCount(Commands.ACCOUNT, count, 1, 1);
+        return delivery.onAccount(tags, prefix, argument(0));
+      case Commands.AUTHENTICATE:
+        Utils.checkCount(Commands.AUTHENTICATE, count, 1, 1);
+        return delivery.onAuthenticate(tags, prefix, argument(0));
+      case Commands.AWAY:
+        Utils.checkCount(Commands.AWAY, count, 0, 1);
+        return delivery.onAway(tags, prefix, argumentOrNull(0, count));
+      case Commands.BATCH:
+        Utils.checkCount(Commands.BATCH, count, 2, Integer.MAX_VALUE);
+        return delivery.onBatch(tags, prefix, argument(0), argument(1), arguments(2, count));
+      case Commands.CAP:
+        Utils.checkCount(Commands.CAP, count, 1, Integer.MAX_VALUE);
+        return CapParser.parse(arguments(0, count), new Inner(tags, prefix, null));
+      case Commands.CHGHOST:
+        Utils.checkCount(Commands.CHGHOST, count, 2, 2);
+        return delivery.onChghost(tags, prefix, argument(0), argument(1));
+      case Commands.INVITE:
+        Utils.checkCount(Commands.INVITE, count, 2, 2);
+        return delivery.onInvite(tags, prefix, argument(0), argument(1));
+      case Commands.JOIN:
+        Utils.checkCount(Commands.JOIN, count, 1, Integer.MAX_VALUE);
+        return delivery.onJoin(tags, prefix, argument(0), arguments(1, count));
+      case Commands.KICK:
+        Utils.checkCount(Commands.KICK, count, 2, 3);
+        return delivery.onKick(tags, prefix, argument(0), argument(1), argumentOrNull(2, count));
+      case Commands.MODE:
+        Utils.checkCount(Commands.MODE, count, 2, Integer.MAX_VALUE);
+        return delivery.onMode(tags, prefix, argument(0), arguments(1, count));
+      case Commands.NICK:
+        Utils.checkCount(Commands.NICK, count, 1, 1);
+        return delivery.onNick(tags, prefix, argument(0));
+      case Commands.NOTICE:
+        Utils.checkCount(Commands.NOTICE, count, 2, 2);
+        return delivery.onNotice(tags, prefix, argument(0), argument(1));
+      case Commands.PART:
+        Utils.checkCount(Commands.PART, count, 1, 2);
+        return delivery.onPart(tags, prefix, argument(0), argumentOrNull(1, count));
+      case Commands.PING:
+        Utils.checkCount(Commands.PING, count, 0, 1);
+        return delivery.onPing(tags, prefix, argumentOrNull(0, count));
+      case Commands.PRIVMSG:
+        Utils.checkCount(Commands.PRIVMSG, count, 2, 2);
+        return delivery.onPrivmsg(tags, prefix, argument(0), argument(1));
+      case Commands.QUIT:
+        Utils.checkCount(Commands.QUIT, count, 0, 1);
+        return delivery.onQuit(tags, prefix, argumentOrNull(0, count));
+      default:
+        if (!Commands.isNumeric(commandId)) {
+          String command = strings == null ? tokens.commandString() : tokens.commandString(strings);
+          return delivery.onUnknownCommand(tags, prefix, command, arguments(0, count));
+        }
+        Utils.checkCount(commandId, count, 1, Integer.MAX_VALUE);
+        return reply(tags, prefix, commandId, argument(0), count);
+    }
+  }
+
+  private T reply(MessageTags tags, String prefix, int code, String target, int count) {
+    switch (code) {
+      case Commands.RPL_ENDOFMOTD:
+        Utils.checkCount(code, count - 1, 1, 1);
+        return delivery.onEndOfMotd(tags, prefix, target, argument(1));
+      case Commands.RPL_ENDOFNAMES:
+        Utils.checkCount(code, count - 1, 2, 2);
+        return delivery.onEndOfNames(tags, prefix, target, argument(1), argument(2));
+      case Commands.RPL_ISUPPORT:
+        Utils.checkCount(code, count - 1, 2, Integer.MAX_VALUE);
+        return delivery.onIsupport(tags, prefix, target, argument(count - 1), arguments(1, count - 1));
+      case Commands.RPL_MOTD:
+        Utils.checkCount(code, count - 1, 1, 1);
+        return delivery.onMotd(tags, prefix, target, argument(1));
+      case Commands.RPL_MOTDSTART:
+        Utils.checkCount(code, count - 1, 1, 1);
+        return delivery.onMotdStart(tags, prefix, target, argument(1));
+      case Commands.RPL_NAMREPLY:
+        return NamesParser.parse(arguments(1, count), new Inner(tags, prefix, target));
+      case Commands.RPL_WELCOME:
+        Utils.checkCount(code, count - 1, 1, 1);
+        return delivery.onWelcome(tags, prefix, target, argument(1));
+      default:
+        return delivery.onUnknownCode(tags, prefix, target, code, arguments(1, count));
+    }
+  }
+
+  private String argument(int index) {
+    return strings == null ? tokens.argumentString(index) : tokens.argumentString(index, strings);
+  }
+
+  private String argumentOrNull(int index, int count) {
+    return index < count ? argument(index) : null;
+  }
+
+  private List<String> arguments(int from, int to) {
+    return tokens.copyArguments(strings, from, to);
+  }
+
+  private class Inner implements CapParser.Callback<T>, NamesParser.Callback<T> {
+    private final MessageTags tags;
+
+    private final String prefix;
+
+    private final String target;
+
+    Inner(MessageTags tags, String prefix, String target) {
+      this.tags = tags;
+      this.prefix = prefix;
+      this.target = target;
+    }
+
+    @Override
+    public T onCapAck(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapAck(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapDel(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapDel(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapList(@Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapList(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapLs(@Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapLs(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapNak(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapNak(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapNew(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapNew(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onNames(@Nullable Character channelDescriptor, @Nonnull String channel, @Nonnull List<String> names) {
+      return delivery.onNames(tags, prefix, target, channelDescriptor, channel, names);
+    }
+
+    @Override
+    public T onUnknownCap(@Nonnull String clientId, @Nonnull String subcommand, @Nonnull List<String> arguments) {
+      return delivery.onUnknownCap(tags, prefix, clientId, subcommand, arguments);
+    }
+  }
+
+  /**
+   * Hands lines to the callback, noting when it has so that a parse error thrown by the
+   * callback itself, e.g. by a nested parse, is not reported as one of the line.
+   */
+  private final class Delivery extends ForwardingMessageCallback<T> {
+    private boolean delivered;
+
+    @Override
+    @Nonnull
+    protected MessageCallback<T> delegate() {
+      delivered = true;
+      return callback;
+    }
+  }
+}
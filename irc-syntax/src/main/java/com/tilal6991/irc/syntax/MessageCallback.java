@@ -1,5 +1,6 @@
 package com.tilal6991.irc.syntax;
 
+import java.lang.CharSequence;
 import java.lang.Character;
 import java.lang.String;
 import java.util.List;
@@ -122,6 +123,11 @@ public interface MessageCallback<T> {
    */
   T onNotice(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String target, @Nonnull String message);
 
+  /**
+   * Callback method for lines which could not be parsed.
+   */
+  T onParseError(@Nonnull CharSequence line, @Nonnull ParseError error);
+
   /**
    * Callback method for PART messages.
    */
@@ -1,8 +1,11 @@
 package com.tilal6991.irc.syntax;
 
+import java.lang.CharSequence;
 import java.lang.Character;
 import java.lang.Override;
 import java.lang.String;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -10,19 +13,215 @@ import javax.annotation.Nullable;
 public class MessageParser<T> {
   private final MessageCallback<T> callback;
 
+  private final CommandSet interest;
+
+  private final PrefixCache prefixes;
+
+  private final StringPool strings;
+
   private final Inner inner;
 
+  private final Delivery delivery;
+
+  private final MessageTokens tokens;
+
+  /**
+   * Creates a parser which only fully parses the lines handled by the callback, as returned by
+   * {@link #interestOf(MessageCallback)}.
+   */
   public MessageParser(@Nonnull MessageCallback<T> callback) {
+    this(callback, interestOf(callback));
+  }
+
+  /**
+   * Creates a parser which only fully parses lines whose command is in the interest set. Any other
+   * line is skipped as soon as its command has been read and null is returned for it.
+   */
+  public MessageParser(@Nonnull MessageCallback<T> callback, @Nonnull CommandSet interest) {
+    this(callback, interest, null, null);
+  }
+
+  /**
+   * Creates a parser which only fully parses lines whose command is in the interest set. If a
+   * cache is given, prefixes are passed to the callback as strings shared through it and
+   * the split {@link Prefix} of each can be looked up in the same cache without allocating. If
+   * a pool is given, commands, arguments and, without a cache, prefixes are deduplicated
+   * through it.
+   */
+  public MessageParser(@Nonnull MessageCallback<T> callback, @Nonnull CommandSet interest, @Nullable PrefixCache prefixes, @Nullable StringPool strings) {
     this.callback = callback;
+    this.interest = interest;
+    this.prefixes = prefixes;
+    this.strings = strings;
     this.inner = new Inner();
+    this.delivery = new Delivery();
+    this.tokens = new MessageTokens();
   }
 
   public T parse(@Nonnull String line) {
-    return MessageTokenizer.tokenize(line, inner);
+    delivery.delivered = false;
+    try {
+      if (!MessageTokenizer.tokenize(line, tokens, interest)) {
+        return null;
+      }
+      return inner.onLineTokenized(tokens);
+    } catch (ParseError error) {
+      if (delivery.delivered) {
+        throw error;
+      }
+      return inner.onParseError(tokens.line(), error);
+    }
   }
 
-  private class Inner implements MessageTokenizer.Callback<T>, ArgumentParser.Callback<T>, CapParser.Callback<T>, CodeParser.Callback<T>, NamesParser.Callback<T> {
-    private List<String> tags;
+  public T parse(@Nonnull byte[] line, int offset, int length) {
+    delivery.delivered = false;
+    try {
+      if (!MessageTokenizer.tokenize(line, offset, length, tokens, interest)) {
+        return null;
+      }
+      return inner.onLineTokenized(tokens);
+    } catch (ParseError error) {
+      if (delivery.delivered) {
+        throw error;
+      }
+      return inner.onParseError(tokens.line(), error);
+    }
+  }
+
+  public T parse(@Nonnull ByteBuffer buffer, int offset, int length) {
+    delivery.delivered = false;
+    try {
+      if (!MessageTokenizer.tokenize(buffer, offset, length, tokens, interest)) {
+        return null;
+      }
+      return inner.onLineTokenized(tokens);
+    } catch (ParseError error) {
+      if (delivery.delivered) {
+        throw error;
+      }
+      return inner.onParseError(tokens.line(), error);
+    }
+  }
+
+  /**
+   * Returns the commands handled by the callback. If the callback extends
+   * {@link AbstractMessageCallback}, these are the commands of the methods it
+   * overrides and if it extends {@link ForwardingMessageCallback}, those returned by
+   * {@link ForwardingMessageCallback#interest()}; otherwise every command is handled.
+   */
+  @Nonnull
+  public static CommandSet interestOf(@Nonnull MessageCallback<?> callback) {
+    if (callback instanceof ForwardingMessageCallback) {
+      return ((ForwardingMessageCallback<?>) callback).interest();
+    }
+    CommandSet interest = new CommandSet();
+    for (Class<?> type = callback.getClass(); type != AbstractMessageCallback.class; type = type.getSuperclass()) {
+      if (type == null) {
+        return CommandSet.all();
+      }
+      for (Method method : type.getDeclaredMethods()) {
+        switch (method.getName()) {
+          case "onAccount":
+            interest.add(Commands.ACCOUNT);
+            break;
+          case "onAuthenticate":
+            interest.add(Commands.AUTHENTICATE);
+            break;
+          case "onAway":
+            interest.add(Commands.AWAY);
+            break;
+          case "onBatch":
+            interest.add(Commands.BATCH);
+            break;
+          case "onCapAck":
+            interest.add(Commands.CAP);
+            break;
+          case "onCapDel":
+            interest.add(Commands.CAP);
+            break;
+          case "onCapList":
+            interest.add(Commands.CAP);
+            break;
+          case "onCapLs":
+            interest.add(Commands.CAP);
+            break;
+          case "onCapNak":
+            interest.add(Commands.CAP);
+            break;
+          case "onCapNew":
+            interest.add(Commands.CAP);
+            break;
+          case "onChghost":
+            interest.add(Commands.CHGHOST);
+            break;
+          case "onEndOfMotd":
+            interest.add(Commands.RPL_ENDOFMOTD);
+            break;
+          case "onEndOfNames":
+            interest.add(Commands.RPL_ENDOFNAMES);
+            break;
+          case "onInvite":
+            interest.add(Commands.INVITE);
+            break;
+          case "onIsupport":
+            interest.add(Commands.RPL_ISUPPORT);
+            break;
+          case "onJoin":
+            interest.add(Commands.JOIN);
+            break;
+          case "onKick":
+            interest.add(Commands.KICK);
+            break;
+          case "onMode":
+            interest.add(Commands.MODE);
+            break;
+          case "onMotd":
+            interest.add(Commands.RPL_MOTD);
+            break;
+          case "onMotdStart":
+            interest.add(Commands.RPL_MOTDSTART);
+            break;
+          case "onNames":
+            interest.add(Commands.RPL_NAMREPLY);
+            break;
+          case "onNick":
+            interest.add(Commands.NICK);
+            break;
+          case "onNotice":
+            interest.add(Commands.NOTICE);
+            break;
+          case "onPart":
+            interest.add(Commands.PART);
+            break;
+          case "onPing":
+            interest.add(Commands.PING);
+            break;
+          case "onPrivmsg":
+            interest.add(Commands.PRIVMSG);
+            break;
+          case "onQuit":
+            interest.add(Commands.QUIT);
+            break;
+          case "onUnknownCap":
+            interest.add(Commands.CAP);
+            break;
+          case "onUnknownCode":
+            interest.addNumerics();
+            break;
+          case "onUnknownCommand":
+            interest.add(Commands.UNKNOWN);
+            break;
+          case "onWelcome":
+            interest.add(Commands.RPL_WELCOME);
+            break;
+        }
+      }
+    }
+    return interest;
+  }
+
+  private class Inner implements ArgumentParser.Callback<T>, CapParser.Callback<T>, CodeParser.Callback<T>, NamesParser.Callback<T>, ParseError.Callback<T> {
+    private MessageTags tags;
 
     private String prefix;
 
@@ -30,22 +229,22 @@ public class MessageParser<T> {
 
     @Override
     public T onAccount(@Nullable String account) {
-      return callback.onAccount(tags, prefix, account);
+      return delivery.onAccount(tags, prefix, account);
     }
 
     @Override
     public T onAuthenticate(@Nonnull String data) {
-      return callback.onAuthenticate(tags, prefix, data);
+      return delivery.onAuthenticate(tags, prefix, data);
     }
 
     @Override
     public T onAway(@Nullable String message) {
-      return callback.onAway(tags, prefix, message);
+      return delivery.onAway(tags, prefix, message);
     }
 
     @Override
     public T onBatch(@Nonnull String modifiedReferenceTag, @Nonnull String type, @Nonnull List<String> arguments) {
-      return callback.onBatch(tags, prefix, modifiedReferenceTag, type, arguments);
+      return delivery.onBatch(tags, prefix, modifiedReferenceTag, type, arguments);
     }
 
     @Override
@@ -55,74 +254,74 @@ public class MessageParser<T> {
 
     @Override
     public T onCapAck(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
-      return callback.onCapAck(tags, prefix, clientId, modCapabilityAndValues);
+      return delivery.onCapAck(tags, prefix, clientId, modCapabilityAndValues);
     }
 
     @Override
     public T onCapDel(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
-      return callback.onCapDel(tags, prefix, clientId, modCapabilityAndValues);
+      return delivery.onCapDel(tags, prefix, clientId, modCapabilityAndValues);
     }
 
     @Override
     public T onCapList(@Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
-      return callback.onCapList(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+      return delivery.onCapList(tags, prefix, clientId, finalLine, modCapabilityAndValues);
     }
 
     @Override
     public T onCapLs(@Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
-      return callback.onCapLs(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+      return delivery.onCapLs(tags, prefix, clientId, finalLine, modCapabilityAndValues);
     }
 
     @Override
     public T onCapNak(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
-      return callback.onCapNak(tags, prefix, clientId, modCapabilityAndValues);
+      return delivery.onCapNak(tags, prefix, clientId, modCapabilityAndValues);
     }
 
     @Override
     public T onCapNew(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
-      return callback.onCapNew(tags, prefix, clientId, modCapabilityAndValues);
+      return delivery.onCapNew(tags, prefix, clientId, modCapabilityAndValues);
     }
 
     @Override
     public T onChghost(@Nonnull String newUser, @Nonnull String newHost) {
-      return callback.onChghost(tags, prefix, newUser, newHost);
+      return delivery.onChghost(tags, prefix, newUser, newHost);
     }
 
     @Override
     public T onEndOfMotd(@Nonnull String message) {
-      return callback.onEndOfMotd(tags, prefix, target, message);
+      return delivery.onEndOfMotd(tags, prefix, target, message);
     }
 
     @Override
     public T onEndOfNames(@Nonnull String channel, @Nonnull String message) {
-      return callback.onEndOfNames(tags, prefix, target, channel, message);
+      return delivery.onEndOfNames(tags, prefix, target, channel, message);
     }
 
     @Override
     public T onInvite(@Nonnull String target, @Nonnull String channel) {
-      return callback.onInvite(tags, prefix, target, channel);
+      return delivery.onInvite(tags, prefix, target, channel);
     }
 
     @Override
     public T onIsupport(@Nonnull String message, @Nonnull List<String> tokens) {
-      return callback.onIsupport(tags, prefix, target, message, tokens);
+      return delivery.onIsupport(tags, prefix, target, message, tokens);
     }
 
     @Override
     public T onJoin(@Nonnull String channel, @Nonnull List<String> arguments) {
-      return callback.onJoin(tags, prefix, channel, arguments);
+      return delivery.onJoin(tags, prefix, channel, arguments);
     }
 
     @Override
     public T onKick(@Nonnull String channel, @Nonnull String user, @Nullable String reason) {
-      return callback.onKick(tags, prefix, channel, user, reason);
+      return delivery.onKick(tags, prefix, channel, user, reason);
     }
 
-    @Override
-    public T onLineTokenized(@Nullable List<String> tags, @Nullable String prefix, @Nonnull String command, @Nonnull List<String> arguments) {
-      this.tags = tags;
-      this.prefix = prefix;
-      T temp = ArgumentParser.parse(command, arguments, this);
+    private T onLineTokenized(@Nonnull MessageTokens tokens) {
+      this.tags = tokens.hasTags() ? tokens.tags().copy() : null;
+      this.prefix = prefixes != null ? tokens.prefixString(prefixes) : strings != null ? tokens.prefixString(strings) : tokens.prefixString();
+      String command = strings == null ? tokens.commandString() : tokens.commandString(strings);
+      T temp = ArgumentParser.parse(tokens.commandId(), command, tokens.copyArguments(strings), this);
       this.tags = null;
       this.prefix = null;
       return temp;
@@ -130,17 +329,17 @@ public class MessageParser<T> {
 
     @Override
     public T onMode(@Nonnull String target, @Nonnull List<String> arguments) {
-      return callback.onMode(tags, prefix, target, arguments);
+      return delivery.onMode(tags, prefix, target, arguments);
     }
 
     @Override
     public T onMotd(@Nonnull String message) {
-      return callback.onMotd(tags, prefix, target, message);
+      return delivery.onMotd(tags, prefix, target, message);
     }
 
     @Override
     public T onMotdStart(@Nonnull String message) {
-      return callback.onMotdStart(tags, prefix, target, message);
+      return delivery.onMotdStart(tags, prefix, target, message);
     }
 
     @Override
@@ -150,37 +349,42 @@ public class MessageParser<T> {
 
     @Override
     public T onNames(@Nullable Character channelDescriptor, @Nonnull String channel, @Nonnull List<String> names) {
-      return callback.onNames(tags, prefix, target, channelDescriptor, channel, names);
+      return delivery.onNames(tags, prefix, target, channelDescriptor, channel, names);
     }
 
     @Override
     public T onNick(@Nonnull String nick) {
-      return callback.onNick(tags, prefix, nick);
+      return delivery.onNick(tags, prefix, nick);
     }
 
     @Override
     public T onNotice(@Nonnull String target, @Nonnull String message) {
-      return callback.onNotice(tags, prefix, target, message);
+      return delivery.onNotice(tags, prefix, target, message);
+    }
+
+    @Override
+    public T onParseError(@Nonnull CharSequence line, @Nonnull ParseError error) {
+      return callback.onParseError(line, error);
     }
 
     @Override
     public T onPart(@Nonnull String channel, @Nullable String reason) {
-      return callback.onPart(tags, prefix, channel, reason);
+      return delivery.onPart(tags, prefix, channel, reason);
     }
 
     @Override
     public T onPing(@Nullable String hostname) {
-      return callback.onPing(tags, prefix, hostname);
+      return delivery.onPing(tags, prefix, hostname);
     }
 
     @Override
     public T onPrivmsg(@Nonnull String target, @Nonnull String message) {
-      return callback.onPrivmsg(tags, prefix, target, message);
+      return delivery.onPrivmsg(tags, prefix, target, message);
     }
 
     @Override
     public T onQuit(@Nullable String reason) {
-      return callback.onQuit(tags, prefix, reason);
+      return delivery.onQuit(tags, prefix, reason);
     }
 
     @Override
@@ -193,22 +397,37 @@ public class MessageParser<T> {
 
     @Override
     public T onUnknownCap(@Nonnull String clientId, @Nonnull String subcommand, @Nonnull List<String> arguments) {
-      return callback.onUnknownCap(tags, prefix, clientId, subcommand, arguments);
+      return delivery.onUnknownCap(tags, prefix, clientId, subcommand, arguments);
     }
 
     @Override
     public T onUnknownCode(int code, @Nonnull List<String> arguments) {
-      return callback.onUnknownCode(tags, prefix, target, code, arguments);
+      return delivery.onUnknownCode(tags, prefix, target, code, arguments);
     }
 
     @Override
     public T onUnknownCommand(@Nonnull String command, @Nonnull List<String> arguments) {
-      return callback.onUnknownCommand(tags, prefix, command, arguments);
+      return delivery.onUnknownCommand(tags, prefix, command, arguments);
     }
 
     @Override
     public T onWelcome(@Nonnull String message) {
-      return callback.onWelcome(tags, prefix, target, message);
+      return delivery.onWelcome(tags, prefix, target, message);
+    }
+  }
+
+  /**
+   * Hands lines to the callback, noting when it has so that a parse error thrown by the
+   * callback itself, e.g. by a nested parse, is not reported as one of the line.
+   */
+  private final class Delivery extends ForwardingMessageCallback<T> {
+    private boolean delivered;
+
+    @Override
+    @Nonnull
+    protected MessageCallback<T> delegate() {
+      delivered = true;
+      return callback;
     }
   }
 }
@@ -0,0 +1,333 @@
+package com.tilal6991.irc.syntax;
+
+import java.lang.CharSequence;
+import java.lang.Character;
+import java.lang.IllegalArgumentException;
+import java.lang.Override;
+import java.lang.String;
+import java.nio.ByteBuffer;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Parser which, unlike {@link MessageParser}, holds no state between lines. A single instance
+ * can be shared by any number of threads and lines can be parsed from inside the callback,
+ * e.g. to replay the lines of a batch. The context of each line is passed down to the
+ * callback rather than stored in the parser.
+ */
+public final class SharedMessageParser<T> {
+  private final MessageCallback<T> callback;
+
+  private final CommandSet interest;
+
+  private final StringPool strings;
+
+  private final CursorPool cursors;
+
+  /**
+   * Creates a parser which only fully parses the lines handled by the callback as described in
+   * {@link MessageParser#MessageParser(MessageCallback)}.
+   */
+  public SharedMessageParser(@Nonnull MessageCallback<T> callback) {
+    this(callback, MessageParser.interestOf(callback));
+  }
+
+  /**
+   * Creates a parser which only fully parses lines whose command is in the interest set. Any other
+   * line is skipped as soon as its command has been read and null is returned for it.
+   */
+  public SharedMessageParser(@Nonnull MessageCallback<T> callback, @Nonnull CommandSet interest) {
+    this(callback, interest, null);
+  }
+
+  /**
+   * Creates a parser which only fully parses lines whose command is in the interest set. If a
+   * pool is given, commands, arguments and prefixes are deduplicated through it; as the
+   * parser is shared, the pool must be one created by {@link StringPool#striped(int, int)}.
+   */
+  public SharedMessageParser(@Nonnull MessageCallback<T> callback, @Nonnull CommandSet interest, @Nullable StringPool strings) {
+    if (strings != null && !strings.isShared()) {
+      throw new IllegalArgumentException("String pool must be created with StringPool.striped.");
+    }
+    this.callback = callback;
+    this.interest = interest;
+    this.strings = strings;
+    this.cursors = new CursorPool();
+  }
+
+  public T parse(@Nonnull String line) {
+    MessageTokens tokens = cursors.acquire();
+    Delivery delivery = null;
+    try {
+      if (!MessageTokenizer.tokenize(line, tokens, interest)) {
+        return null;
+      }
+      // Lines may be parsed from inside the callback so each has its own delivery.
+      delivery = new Delivery();
+      return dispatch(tokens, delivery);
+    } catch (ParseError error) {
+      if (delivery != null && delivery.delivered) {
+        throw error;
+      }
+      return callback.onParseError(tokens.line(), error);
+    } finally {
+      cursors.release(tokens);
+    }
+  }
+
+  public T parse(@Nonnull byte[] line, int offset, int length) {
+    MessageTokens tokens = cursors.acquire();
+    Delivery delivery = null;
+    try {
+      if (!MessageTokenizer.tokenize(line, offset, length, tokens, interest)) {
+        return null;
+      }
+      // Lines may be parsed from inside the callback so each has its own delivery.
+      delivery = new Delivery();
+      return dispatch(tokens, delivery);
+    } catch (ParseError error) {
+      if (delivery != null && delivery.delivered) {
+        throw error;
+      }
+      return callback.onParseError(tokens.line(), error);
+    } finally {
+      cursors.release(tokens);
+    }
+  }
+
+  public T parse(@Nonnull ByteBuffer buffer, int offset, int length) {
+    MessageTokens tokens = cursors.acquire();
+    Delivery delivery = null;
+    try {
+      if (!MessageTokenizer.tokenize(buffer, offset, length, tokens, interest)) {
+        return null;
+      }
+      // Lines may be parsed from inside the callback so each has its own delivery.
+      delivery = new Delivery();
+      return dispatch(tokens, delivery);
+    } catch (ParseError error) {
+      if (delivery != null && delivery.delivered) {
+        throw error;
+      }
+      return callback.onParseError(tokens.line(), error);
+    } finally {
+      cursors.release(tokens);
+    }
+  }
+
+  private T dispatch(MessageTokens tokens, Delivery delivery) {
+    // Everything is copied out of the cursor as it goes back to the pool after this line.
+    MessageTags tags = tokens.hasTags() ? tokens.tags().copy() : null;
+    String prefix = strings == null ? tokens.prefixString() : tokens.prefixString(strings);
+    String command = strings == null ? tokens.commandString() : tokens.commandString(strings);
+    return ArgumentParser.parse(tokens.commandId(), command, tokens.copyArguments(strings), new Inner(delivery, tags, prefix, null));
+  }
+
+  private class Inner implements ArgumentParser.Callback<T>, CapParser.Callback<T>, CodeParser.Callback<T>, NamesParser.Callback<T>, ParseError.Callback<T> {
+    private final Delivery delivery;
+
+    private final MessageTags tags;
+
+    private final String prefix;
+
+    private final String target;
+
+    Inner(Delivery delivery, MessageTags tags, String prefix, String target) {
+      this.delivery = delivery;
+      this.tags = tags;
+      this.prefix = prefix;
+      this.target = target;
+    }
+
+    @Override
+    public T onAccount(@Nullable String account) {
+      return delivery.onAccount(tags, prefix, account);
+    }
+
+    @Override
+    public T onAuthenticate(@Nonnull String data) {
+      return delivery.onAuthenticate(tags, prefix, data);
+    }
+
+    @Override
+    public T onAway(@Nullable String message) {
+      return delivery.onAway(tags, prefix, message);
+    }
+
+    @Override
+    public T onBatch(@Nonnull String modifiedReferenceTag, @Nonnull String type, @Nonnull List<String> arguments) {
+      return delivery.onBatch(tags, prefix, modifiedReferenceTag, type, arguments);
+    }
+
+    @Override
+    public T onCap(@Nonnull List<String> arguments) {
+      return CapParser.parse(arguments, this);
+    }
+
+    @Override
+    public T onCapAck(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapAck(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapDel(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapDel(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapList(@Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapList(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapLs(@Nonnull String clientId, boolean finalLine, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapLs(tags, prefix, clientId, finalLine, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapNak(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapNak(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onCapNew(@Nonnull String clientId, @Nullable List<String> modCapabilityAndValues) {
+      return delivery.onCapNew(tags, prefix, clientId, modCapabilityAndValues);
+    }
+
+    @Override
+    public T onChghost(@Nonnull String newUser, @Nonnull String newHost) {
+      return delivery.onChghost(tags, prefix, newUser, newHost);
+    }
+
+    @Override
+    public T onEndOfMotd(@Nonnull String message) {
+      return delivery.onEndOfMotd(tags, prefix, target, message);
+    }
+
+    @Override
+    public T onEndOfNames(@Nonnull String channel, @Nonnull String message) {
+      return delivery.onEndOfNames(tags, prefix, target, channel, message);
+    }
+
+    @Override
+    public T onInvite(@Nonnull String target, @Nonnull String channel) {
+      return delivery.onInvite(tags, prefix, target, channel);
+    }
+
+    @Override
+    public T onIsupport(@Nonnull String message, @Nonnull List<String> tokens) {
+      return delivery.onIsupport(tags, prefix, target, message, tokens);
+    }
+
+    @Override
+    public T onJoin(@Nonnull String channel, @Nonnull List<String> arguments) {
+      return delivery.onJoin(tags, prefix, channel, arguments);
+    }
+
+    @Override
+    public T onKick(@Nonnull String channel, @Nonnull String user, @Nullable String reason) {
+      return delivery.onKick(tags, prefix, channel, user, reason);
+    }
+
+    @Override
+    public T onMode(@Nonnull String target, @Nonnull List<String> arguments) {
+      return delivery.onMode(tags, prefix, target, arguments);
+    }
+
+    @Override
+    public T onMotd(@Nonnull String message) {
+      return delivery.onMotd(tags, prefix, target, message);
+    }
+
+    @Override
+    public T onMotdStart(@Nonnull String message) {
+      return delivery.onMotdStart(tags, prefix, target, message);
+    }
+
+    @Override
+    public T onNamReply(@Nonnull List<String> arguments) {
+      return NamesParser.parse(arguments, this);
+    }
+
+    @Override
+    public T onNames(@Nullable Character channelDescriptor, @Nonnull String channel, @Nonnull List<String> names) {
+      return delivery.onNames(tags, prefix, target, channelDescriptor, channel, names);
+    }
+
+    @Override
+    public T onNick(@Nonnull String nick) {
+      return delivery.onNick(tags, prefix, nick);
+    }
+
+    @Override
+    public T onNotice(@Nonnull String target, @Nonnull String message) {
+      return delivery.onNotice(tags, prefix, target, message);
+    }
+
+    @Override
+    public T onParseError(@Nonnull CharSequence line, @Nonnull ParseError error) {
+      return callback.onParseError(line, error);
+    }
+
+    @Override
+    public T onPart(@Nonnull String channel, @Nullable String reason) {
+      return delivery.onPart(tags, prefix, channel, reason);
+    }
+
+    @Override
+    public T onPing(@Nullable String hostname) {
+      return delivery.onPing(tags, prefix, hostname);
+    }
+
+    @Override
+    public T onPrivmsg(@Nonnull String target, @Nonnull String message) {
+      return delivery.onPrivmsg(tags, prefix, target, message);
+    }
+
+    @Override
+    public T onQuit(@Nullable String reason) {
+      return delivery.onQuit(tags, prefix, reason);
+    }
+
+    @Override
+    public T onReply(int code, @Nonnull String target, @Nonnull List<String> arguments) {
+      return CodeParser.parse(code, arguments, new Inner(delivery, tags, prefix, target));
+    }
+
+    @Override
+    public T onUnknownCap(@Nonnull String clientId, @Nonnull String subcommand, @Nonnull List<String> arguments) {
+      return delivery.onUnknownCap(tags, prefix, clientId, subcommand, arguments);
+    }
+
+    @Override
+    public T onUnknownCode(int code, @Nonnull List<String> arguments) {
+      return delivery.onUnknownCode(tags, prefix, target, code, arguments);
+    }
+
+    @Override
+    public T onUnknownCommand(@Nonnull String command, @Nonnull List<String> arguments) {
+      return delivery.onUnknownCommand(tags, prefix, command, arguments);
+    }
+
+    @Override
+    public T onWelcome(@Nonnull String message) {
+      return delivery.onWelcome(tags, prefix, target, message);
+    }
+  }
+
+  /**
+   * Hands lines to the callback, noting when it has so that a parse error thrown by the
+   * callback itself, e.g. by a nested parse, is not reported as one of the line.
+   */
+  private final class Delivery extends ForwardingMessageCallback<T> {
+    private boolean delivered;
+
+    @Override
+    @Nonnull
+    protected MessageCallback<T> delegate() {
+      delivered = true;
+      return callback;
+    }
+  }
+}
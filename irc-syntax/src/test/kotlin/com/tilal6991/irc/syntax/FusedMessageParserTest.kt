@@ -0,0 +1,45 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+
+class FusedMessageParserTest {
+
+  @Test fun testCallbackParseError() {
+    val errors = mutableListOf<String>()
+    val nested = SharedMessageParser(object : AbstractMessageCallback<Unit>() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+      }
+    })
+    val parser = FusedMessageParser(object : AbstractMessageCallback<Unit>() {
+      override fun onBatch(tags: List<String>?, prefix: String?, modifiedReferenceTag: String,
+          type: String, arguments: List<String>) {
+        nested.parse("PRIVMSG #x")
+      }
+
+      override fun onParseError(line: CharSequence, error: ParseError): Unit? {
+        errors.add(line.toString())
+        throw error
+      }
+    })
+
+    // The error of the nested line is left to its own parser rather than blamed on this one.
+    try {
+      parser.parse("BATCH -ref netjoin")
+      fail("Expected ParseError.")
+    } catch (e: ParseError) {
+      // Don't bother checking exact message.
+    }
+    assertThat(errors).isEmpty()
+
+    try {
+      parser.parse("BATCH -ref")
+      fail("Expected ParseError.")
+    } catch (e: ParseError) {
+      // Don't bother checking exact message.
+    }
+    assertThat(errors).containsExactly("BATCH -ref")
+  }
+}
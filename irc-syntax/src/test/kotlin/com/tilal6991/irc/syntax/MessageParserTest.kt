@@ -0,0 +1,63 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+
+class MessageParserTest {
+
+  @Test fun testInterestOfForwarding() {
+    val chat = object : AbstractMessageCallback<Unit>() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+      }
+    }
+    val forwarding = object : ForwardingMessageCallback<Unit>() {
+      override fun delegate(): MessageCallback<Unit> = chat
+    }
+
+    val interest = MessageParser.interestOf(forwarding)
+    assertThat(interest.contains(Commands.PRIVMSG)).isTrue()
+    assertThat(interest.contains(Commands.NOTICE)).isFalse()
+    assertThat(MessageParser.interestOf(object : ForwardingMessageCallback<Unit>() {
+      override fun delegate(): MessageCallback<Unit> = forwarding
+    }).contains(Commands.NOTICE)).isFalse()
+  }
+
+  @Test fun testCallbackParseError() {
+    val errors = mutableListOf<String>()
+    val nested = SharedMessageParser(object : AbstractMessageCallback<Unit>() {
+      override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+          message: String) {
+      }
+    })
+    val parser = MessageParser(object : AbstractMessageCallback<Unit>() {
+      override fun onBatch(tags: List<String>?, prefix: String?, modifiedReferenceTag: String,
+          type: String, arguments: List<String>) {
+        nested.parse("PRIVMSG #x")
+      }
+
+      override fun onParseError(line: CharSequence, error: ParseError): Unit? {
+        errors.add(line.toString())
+        throw error
+      }
+    })
+
+    // The error of the nested line is left to its own parser rather than blamed on this one.
+    try {
+      parser.parse("BATCH -ref netjoin")
+      fail("Expected ParseError.")
+    } catch (e: ParseError) {
+      // Don't bother checking exact message.
+    }
+    assertThat(errors).isEmpty()
+
+    try {
+      parser.parse("BATCH -ref")
+      fail("Expected ParseError.")
+    } catch (e: ParseError) {
+      // Don't bother checking exact message.
+    }
+    assertThat(errors).containsExactly("BATCH -ref")
+  }
+}
@@ -0,0 +1,82 @@
+package com.tilal6991.irc.syntax
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class SharedMessageParserTest {
+
+  @Test fun testNestedParse() {
+    val replay = listOf(":a!b@c PRIVMSG #x :one", ":d!e@f PRIVMSG #x :two")
+    lateinit var parser: SharedMessageParser<String>
+    parser = SharedMessageParser(object : ChatCallback() {
+      override fun onBatch(tags: List<String>?, prefix: String?, modifiedReferenceTag: String,
+          type: String, arguments: List<String>): String {
+        val lines = replay.map { parser.parse(it) }
+        return "$prefix $modifiedReferenceTag ${lines.joinToString(",")}"
+      }
+    })
+
+    assertThat(parser.parse(":irc.net BATCH -ref netjoin"))
+        .isEqualTo("irc.net -ref a!b@c #x one,d!e@f #x two")
+  }
+
+  @Test fun testNestedParseError() {
+    val errors = mutableListOf<String>()
+    lateinit var parser: SharedMessageParser<String>
+    parser = SharedMessageParser(object : ChatCallback() {
+      override fun onBatch(tags: List<String>?, prefix: String?, modifiedReferenceTag: String,
+          type: String, arguments: List<String>): String? {
+        return parser.parse("PRIVMSG #x")
+      }
+
+      override fun onParseError(line: CharSequence, error: ParseError): String? {
+        errors.add(line.toString())
+        throw error
+      }
+    })
+
+    try {
+      parser.parse("BATCH -ref netjoin")
+      fail("Expected ParseError.")
+    } catch (e: ParseError) {
+      // Don't bother checking exact message.
+    }
+    assertThat(errors).containsExactly("PRIVMSG #x")
+  }
+
+  @Test fun testConcurrentUse() {
+    val parser = SharedMessageParser(ChatCallback())
+    val executor = Executors.newFixedThreadPool(8)
+    try {
+      val results = executor.invokeAll((0 until 8).map { thread ->
+        Callable {
+          (0 until 2000).count {
+            if (it % 2 == 0) {
+              parser.parse(":n!u@h PRIVMSG #channel$thread :$it") == "n!u@h #channel$thread $it"
+            } else {
+              parser.parse(":irc.net 001 nick$thread :hi $it") == "irc.net nick$thread hi $it"
+            }
+          }
+        }
+      }).map { it.get() }
+      assertThat(results).containsOnly(2000)
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  private open class ChatCallback : AbstractMessageCallback<String>() {
+    override fun onPrivmsg(tags: List<String>?, prefix: String?, target: String,
+        message: String): String {
+      return "$prefix $target $message"
+    }
+
+    override fun onWelcome(tags: List<String>?, prefix: String?, target: String,
+        message: String): String {
+      return "$prefix $target $message"
+    }
+  }
+}